@@ -0,0 +1,108 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.api;
+
+import org.nzbhydra.benchmarks.BenchmarkFixtures;
+import org.nzbhydra.config.BaseConfig;
+import org.nzbhydra.config.ConfigProvider;
+import org.nzbhydra.downloading.FileHandler;
+import org.nzbhydra.indexers.Newznab;
+import org.nzbhydra.mapping.newznab.xml.NewznabXmlRoot;
+import org.nzbhydra.searching.CategoryProvider;
+import org.nzbhydra.searching.dtoseventsenums.SearchResultItem;
+import org.nzbhydra.searching.searchrequests.SearchRequest;
+import org.nzbhydra.web.UrlCalculator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import javax.xml.transform.stream.StreamResult;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building and marshalling of the newznab XML returned by the API. In the same package as {@link NewznabXmlTransformer}
+ * to be able to call the package private transformation method.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NewznabXmlTransformerBenchmark {
+
+    private static final int NUMBER_OF_INDEXERS = 40;
+
+    @Param({"100", "1000"})
+    public int numberOfResults;
+
+    private NewznabXmlTransformer transformer;
+    private SearchRequest searchRequest;
+    private List<SearchResultItem> results;
+    private NewznabXmlRoot rssRoot;
+
+    @Setup
+    public void setUp() throws Exception {
+        BaseConfig baseConfig = BenchmarkFixtures.baseConfig();
+        ConfigProvider configProvider = BenchmarkFixtures.configProvider(baseConfig);
+        CategoryProvider categoryProvider = BenchmarkFixtures.categoryProvider(baseConfig);
+
+        //The URL calculator is request scoped in the application
+        UrlCalculator urlCalculator = new UrlCalculator() {
+            @Override
+            public UriComponentsBuilder getRequestBasedUriBuilder() {
+                return UriComponentsBuilder.fromHttpUrl("http://127.0.0.1:5076");
+            }
+        };
+        FileHandler fileHandler = new FileHandler();
+        BenchmarkFixtures.inject(fileHandler, "configProvider", configProvider);
+        BenchmarkFixtures.inject(fileHandler, "urlCalculator", urlCalculator);
+
+        transformer = new NewznabXmlTransformer();
+        transformer.nzbHandler = fileHandler;
+        transformer.configProvider = configProvider;
+        searchRequest = BenchmarkFixtures.searchRequest(categoryProvider);
+
+        List<Newznab> indexers = BenchmarkFixtures.newznabs(NUMBER_OF_INDEXERS, configProvider, categoryProvider);
+        results = BenchmarkFixtures.multiplyResults(BenchmarkFixtures.parsedResults(indexers.get(0)), indexers, numberOfResults);
+        rssRoot = transformer.getRssRoot(results, 0, numberOfResults, searchRequest);
+    }
+
+    @Benchmark
+    public NewznabXmlRoot getRssRoot() {
+        return transformer.getRssRoot(results, 0, numberOfResults, searchRequest);
+    }
+
+    @Benchmark
+    public String marshalRssRoot() {
+        StringWriter writer = new StringWriter();
+        BenchmarkFixtures.marshaller().marshal(rssRoot, new StreamResult(writer));
+        return writer.toString();
+    }
+
+}
@@ -0,0 +1,182 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.benchmarks;
+
+import com.google.common.io.ByteStreams;
+import org.nzbhydra.config.BaseConfig;
+import org.nzbhydra.config.ConfigProvider;
+import org.nzbhydra.config.ConfigReaderWriter;
+import org.nzbhydra.config.indexer.IndexerConfig;
+import org.nzbhydra.indexers.Indexer;
+import org.nzbhydra.indexers.IndexerEntity;
+import org.nzbhydra.indexers.Newznab;
+import org.nzbhydra.mapping.newznab.xml.NewznabXmlRoot;
+import org.nzbhydra.searching.CategoryProvider;
+import org.nzbhydra.searching.SearchResultIdCalculator;
+import org.nzbhydra.searching.dtoseventsenums.SearchResultItem;
+import org.nzbhydra.searching.dtoseventsenums.SearchType;
+import org.nzbhydra.searching.searchrequests.SearchRequest;
+import org.nzbhydra.searching.searchrequests.SearchRequest.SearchSource;
+import org.nzbhydra.web.WebConfiguration;
+import org.springframework.oxm.jaxb.Jaxb2Marshaller;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.xml.transform.stream.StreamSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Builds the components and data used by the benchmarks without starting the application. Components are wired with the
+ * default config from baseConfig.yml.
+ */
+public class BenchmarkFixtures {
+
+    public static final String RECORDED_RESPONSE = "/org/nzbhydra/benchmarks/nzbsOrgResponse.xml";
+
+    private static final Jaxb2Marshaller MARSHALLER = new WebConfiguration().marshaller();
+
+    public static Jaxb2Marshaller marshaller() {
+        return MARSHALLER;
+    }
+
+    public static BaseConfig baseConfig() throws IOException {
+        return new ConfigReaderWriter().originalConfig();
+    }
+
+    public static ConfigProvider configProvider(BaseConfig baseConfig) {
+        ConfigProvider configProvider = new ConfigProvider();
+        ReflectionTestUtils.setField(configProvider, "baseConfig", baseConfig);
+        return configProvider;
+    }
+
+    public static CategoryProvider categoryProvider(BaseConfig baseConfig) {
+        CategoryProvider categoryProvider = new CategoryProvider();
+        ReflectionTestUtils.setField(categoryProvider, "baseConfig", baseConfig);
+        categoryProvider.afterPropertiesSet();
+        return categoryProvider;
+    }
+
+    /**
+     * Sets a field annotated with @Autowired (or any other field) on the given target, searching the class hierarchy.
+     */
+    public static void inject(Object target, String fieldName, Object value) {
+        ReflectionTestUtils.setField(target, fieldName, value);
+    }
+
+    public static IndexerConfig indexerConfig(String name) {
+        IndexerConfig indexerConfig = new IndexerConfig();
+        indexerConfig.setName(name);
+        indexerConfig.setHost("https://" + name + ".com");
+        indexerConfig.setApiKey("apikey");
+        return indexerConfig;
+    }
+
+    public static Newznab newznab(String name, ConfigProvider configProvider, CategoryProvider categoryProvider) {
+        Newznab newznab = new Newznab();
+        IndexerEntity indexerEntity = new IndexerEntity();
+        indexerEntity.setName(name);
+        newznab.initialize(indexerConfig(name), indexerEntity);
+        inject(newznab, "configProvider", configProvider);
+        inject(newznab, "categoryProvider", categoryProvider);
+        return newznab;
+    }
+
+    public static List<Newznab> newznabs(int count, ConfigProvider configProvider, CategoryProvider categoryProvider) {
+        List<Newznab> newznabs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            newznabs.add(newznab("indexer" + i, configProvider, categoryProvider));
+        }
+        return newznabs;
+    }
+
+    public static String recordedResponseAsString() throws IOException {
+        try (InputStream inputStream = BenchmarkFixtures.class.getResourceAsStream(RECORDED_RESPONSE)) {
+            return new String(ByteStreams.toByteArray(inputStream), StandardCharsets.UTF_8);
+        }
+    }
+
+    public static NewznabXmlRoot recordedResponse() throws IOException {
+        try (InputStream inputStream = BenchmarkFixtures.class.getResourceAsStream(RECORDED_RESPONSE)) {
+            return (NewznabXmlRoot) MARSHALLER.unmarshal(new StreamSource(inputStream));
+        }
+    }
+
+    /**
+     * Returns the results parsed from the recorded response by the given indexer.
+     */
+    public static List<SearchResultItem> parsedResults(Newznab newznab) throws IOException {
+        return ReflectionTestUtils.invokeMethod(newznab, "getSearchResultItems", recordedResponse());
+    }
+
+    public static SearchRequest searchRequest(CategoryProvider categoryProvider) {
+        SearchRequest searchRequest = new SearchRequest(SearchSource.API, SearchType.SEARCH, 0, 100);
+        searchRequest.setCategory(categoryProvider.getByInternalName("all"));
+        return searchRequest;
+    }
+
+    /**
+     * Creates the given number of results based on the parsed templates. Every template is repeated for each indexer
+     * (like the same release found on multiple indexers) with slightly different size and dates, so that the data
+     * contains realistic duplicates.
+     */
+    public static List<SearchResultItem> multiplyResults(List<SearchResultItem> templates, List<? extends Indexer> indexers, int count) {
+        List<SearchResultItem> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            SearchResultItem template = templates.get(i % templates.size());
+            int round = i / templates.size();
+            Indexer indexer = indexers.get(round % indexers.size());
+            SearchResultItem item = new SearchResultItem();
+            //Once every indexer has returned every template use new titles so that the number of unique releases grows with the count
+            String titleSuffix = round < indexers.size() ? "" : ("." + (round / indexers.size()));
+            item.setTitle(template.getTitle() + titleSuffix);
+            item.setIndexer(indexer);
+            item.setIndexerGuid(template.getIndexerGuid() + "-" + round);
+            item.setLink(template.getLink() + "&r=" + round);
+            item.setDetails(template.getDetails());
+            item.setSize(template.getSize() + round);
+            item.setPubDate(template.getPubDate().minus(round, ChronoUnit.MINUTES));
+            template.getUsenetDate().ifPresent(x -> item.setUsenetDate(x.minus(round, ChronoUnit.MINUTES)));
+            template.getPoster().ifPresent(item::setPoster);
+            template.getGroup().ifPresent(item::setGroup);
+            item.setCategory(template.getCategory());
+            item.setOriginalCategory(template.getOriginalCategory());
+            item.setAttributes(new HashMap<>(template.getAttributes()));
+            item.setDownloadType(template.getDownloadType());
+            item.setAgePrecise(true);
+            item.setFirstFound(template.getFirstFound());
+            item.setDescription(template.getDescription());
+            item.setCommentsLink(template.getCommentsLink());
+            item.setIndexerScore(template.getIndexerScore());
+            item.setPassworded(template.isPassworded());
+            item.setHasNfo(template.getHasNfo());
+            item.setGrabs(template.getGrabs());
+            item.setFiles(template.getFiles());
+            item.setCommentsCount(template.getCommentsCount());
+            long guid = SearchResultIdCalculator.calculateSearchResultId(item);
+            item.setGuid(guid);
+            item.setSearchResultId(guid);
+            results.add(item);
+        }
+        return results;
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.config;
+
+import org.nzbhydra.benchmarks.BenchmarkFixtures;
+import org.nzbhydra.config.indexer.IndexerConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Work done by {@link BaseConfig#replace(BaseConfig)} to keep the old config for listeners: copying it by writing it to
+ * YAML and reading it again compared to copying it field by field, and computing which parts changed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigCopyBenchmark {
+
+    private static final int NUMBER_OF_INDEXERS = 100;
+
+    private final ConfigReaderWriter configReaderWriter = new ConfigReaderWriter();
+    private BaseConfig baseConfig;
+    private BaseConfig changedConfig;
+
+    @Setup
+    public void setUp() throws Exception {
+        baseConfig = BenchmarkFixtures.baseConfig();
+        List<IndexerConfig> indexers = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_INDEXERS; i++) {
+            indexers.add(BenchmarkFixtures.indexerConfig("indexer" + i));
+        }
+        baseConfig.setIndexers(indexers);
+
+        changedConfig = ConfigCopier.copy(baseConfig);
+        changedConfig.getMain().setProxyHost("proxy");
+        changedConfig.getIndexers().get(50).setTimeout(10);
+    }
+
+    @Benchmark
+    public BaseConfig copyUsingYaml() {
+        return configReaderWriter.getCopy(baseConfig);
+    }
+
+    @Benchmark
+    public BaseConfig copyFieldByField() {
+        return ConfigCopier.copy(baseConfig);
+    }
+
+    @Benchmark
+    public ConfigChangeSet computeChangeSet() {
+        return ConfigChangeSet.between(baseConfig, changedConfig);
+    }
+
+}
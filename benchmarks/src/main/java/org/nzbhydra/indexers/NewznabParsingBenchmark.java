@@ -0,0 +1,73 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.indexers;
+
+import org.nzbhydra.benchmarks.BenchmarkFixtures;
+import org.nzbhydra.config.BaseConfig;
+import org.nzbhydra.mapping.newznab.xml.NewznabXmlRoot;
+import org.nzbhydra.searching.dtoseventsenums.SearchResultItem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.xml.transform.stream.StreamSource;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of a recorded newznab response with 100 results, i.e. what happens for every indexer in every search.
+ * In the same package as {@link Newznab} to be able to call the protected parsing method.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NewznabParsingBenchmark {
+
+    private Newznab newznab;
+    private String recordedResponse;
+    private NewznabXmlRoot unmarshalledResponse;
+
+    @Setup
+    public void setUp() throws Exception {
+        BaseConfig baseConfig = BenchmarkFixtures.baseConfig();
+        newznab = BenchmarkFixtures.newznab("indexer", BenchmarkFixtures.configProvider(baseConfig), BenchmarkFixtures.categoryProvider(baseConfig));
+        recordedResponse = BenchmarkFixtures.recordedResponseAsString();
+        unmarshalledResponse = BenchmarkFixtures.recordedResponse();
+    }
+
+    @Benchmark
+    public Object unmarshalResponse() {
+        return BenchmarkFixtures.marshaller().unmarshal(new StreamSource(new StringReader(recordedResponse)));
+    }
+
+    @Benchmark
+    public List<SearchResultItem> getSearchResultItems() {
+        return newznab.getSearchResultItems(unmarshalledResponse);
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.indexers;
+
+import org.nzbhydra.benchmarks.BenchmarkFixtures;
+import org.nzbhydra.config.BaseConfig;
+import org.nzbhydra.config.ConfigProvider;
+import org.nzbhydra.searching.CategoryProvider;
+import org.nzbhydra.searching.SearchResultIdCalculator;
+import org.nzbhydra.searching.db.SearchResultRepository;
+import org.nzbhydra.searching.dtoseventsenums.SearchResultItem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Persistence of the results of one indexer search in an in-memory H2 database with the real schema. Measures both a
+ * search returning only unknown results and a repeated search where all results are already known.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersistSearchResultsBenchmark {
+
+    private ConfigurableApplicationContext context;
+    private Newznab newznab;
+    private List<SearchResultItem> templates;
+    private List<SearchResultItem> knownResults;
+    private int round;
+
+    @Configuration
+    @EnableAutoConfiguration
+    @EntityScan("org.nzbhydra")
+    @EnableJpaRepositories("org.nzbhydra")
+    static class DatabaseConfiguration {
+    }
+
+    @State(Scope.Thread)
+    public static class NewResults {
+        List<SearchResultItem> results;
+
+        @Setup(Level.Invocation)
+        public void setUp(PersistSearchResultsBenchmark benchmark) {
+            results = benchmark.newResults();
+        }
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        //Use a new database for every trial so that benchmarks running in the same VM don't see each other's data
+        String databaseUrl = "jdbc:h2:mem:benchmark" + System.nanoTime() + ";DB_CLOSE_DELAY=-1";
+        context = new SpringApplicationBuilder(DatabaseConfiguration.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .run("--spring.datasource.url=" + databaseUrl,
+                        "--spring.datasource.jdbc-url=" + databaseUrl,
+                        "--spring.flyway.locations=classpath:/migration");
+
+        BaseConfig baseConfig = BenchmarkFixtures.baseConfig();
+        ConfigProvider configProvider = BenchmarkFixtures.configProvider(baseConfig);
+        CategoryProvider categoryProvider = BenchmarkFixtures.categoryProvider(baseConfig);
+        newznab = BenchmarkFixtures.newznab("indexer", configProvider, categoryProvider);
+        IndexerEntity indexerEntity = context.getBean(IndexerRepository.class).save(newznab.getIndexerEntity());
+        newznab.initialize(newznab.getConfig(), indexerEntity);
+        newznab.searchResultRepository = context.getBean(SearchResultRepository.class);
+
+        templates = BenchmarkFixtures.parsedResults(newznab);
+        knownResults = newResults();
+        newznab.persistSearchResults(knownResults);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    List<SearchResultItem> newResults() {
+        round++;
+        return BenchmarkFixtures.multiplyResults(templates, Collections.singletonList(newznab), templates.size()).stream()
+                .peek(x -> {
+                    x.setTitle(x.getTitle() + "." + round);
+                    x.setGuid(SearchResultIdCalculator.calculateSearchResultId(x));
+                    x.setSearchResultId(x.getGuid());
+                })
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<SearchResultItem> persistNewResults(NewResults newResults) {
+        return newznab.persistSearchResults(newResults.results);
+    }
+
+    @Benchmark
+    public List<SearchResultItem> persistKnownResults() {
+        return newznab.persistSearchResults(knownResults);
+    }
+
+}
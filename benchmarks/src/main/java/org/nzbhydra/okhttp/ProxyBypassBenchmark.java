@@ -0,0 +1,107 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.okhttp;
+
+import com.google.common.net.InetAddresses;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deciding if a request bypasses the proxy: matching every ignored domain as a regex per request (like it was done
+ * before {@link ProxyBypassMatcher} existed) compared to the compiled matcher with and without its cache of decisions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProxyBypassBenchmark {
+
+    private static final String[] HOSTS = {"api.nzbgeek.info", "nzbplanet.net", "192.168.1.10", "8.8.8.8", "indexer5.example.com", "localhost", "www.sub.domain20.org", "drunkenslug.com"};
+
+    private final List<String> ignoreDomains = new ArrayList<>();
+    private ProxyBypassMatcher matcher;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < 50; i++) {
+            ignoreDomains.add("indexer" + i + ".example.com");
+            ignoreDomains.add("*.domain" + i + ".org");
+        }
+        matcher = new ProxyBypassMatcher(true, ignoreDomains);
+    }
+
+    @Benchmark
+    public boolean regexPerRequest() throws UnknownHostException {
+        return isIgnoredUsingRegex(nextHost());
+    }
+
+    @Benchmark
+    public boolean compiledMatcher() {
+        return matcher.decide(nextHost());
+    }
+
+    @Benchmark
+    public boolean cachedMatcher() {
+        return matcher.isToBeIgnored(nextHost());
+    }
+
+    private String nextHost() {
+        index = (index + 1) % HOSTS.length;
+        return HOSTS[index];
+    }
+
+    private boolean isIgnoredUsingRegex(String host) throws UnknownHostException {
+        if (InetAddresses.isInetAddress(host)) {
+            long ip = toLong(InetAddress.getByName(host));
+            return host.equals("127.0.0.1")
+                    || (ip >= toLong(InetAddress.getByName("10.0.0.0")) && ip <= toLong(InetAddress.getByName("10.255.255.255")))
+                    || (ip >= toLong(InetAddress.getByName("172.16.0.0")) && ip <= toLong(InetAddress.getByName("172.16.255.255")))
+                    || (ip >= toLong(InetAddress.getByName("192.168.0.0")) && ip <= toLong(InetAddress.getByName("192.168.255.255")));
+        }
+        if (host.equals("localhost")) {
+            return true;
+        }
+        return ignoreDomains.stream().anyMatch(x -> host.toLowerCase().matches(("\\Q" + x.toLowerCase() + "\\E").replace("*", "\\E.*\\Q")));
+    }
+
+    private static long toLong(InetAddress ip) {
+        long result = 0;
+        for (byte octet : ip.getAddress()) {
+            result <<= 8;
+            result |= octet & 0xff;
+        }
+        return result;
+    }
+
+}
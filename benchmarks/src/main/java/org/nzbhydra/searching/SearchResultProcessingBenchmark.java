@@ -0,0 +1,101 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.searching;
+
+import org.nzbhydra.benchmarks.BenchmarkFixtures;
+import org.nzbhydra.config.BaseConfig;
+import org.nzbhydra.config.ConfigProvider;
+import org.nzbhydra.indexers.Newznab;
+import org.nzbhydra.searching.SearchResultAcceptor.AcceptorResult;
+import org.nzbhydra.searching.dtoseventsenums.DuplicateDetectionResult;
+import org.nzbhydra.searching.dtoseventsenums.SearchResultItem;
+import org.nzbhydra.searching.searchrequests.SearchRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Processing of the results of one search: acceptance checks, duplicate detection and ID calculation for a growing number
+ * of results from 40 indexers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchResultProcessingBenchmark {
+
+    private static final int NUMBER_OF_INDEXERS = 40;
+
+    @Param({"100", "1000", "10000"})
+    public int numberOfResults;
+
+    private SearchResultAcceptor searchResultAcceptor;
+    private DuplicateDetector duplicateDetector;
+    private SearchRequest searchRequest;
+    private List<SearchResultItem> results;
+    private Newznab indexer;
+
+    @Setup
+    public void setUp() throws Exception {
+        BaseConfig baseConfig = BenchmarkFixtures.baseConfig();
+        ConfigProvider configProvider = BenchmarkFixtures.configProvider(baseConfig);
+        CategoryProvider categoryProvider = BenchmarkFixtures.categoryProvider(baseConfig);
+
+        searchResultAcceptor = new SearchResultAcceptor();
+        BenchmarkFixtures.inject(searchResultAcceptor, "configProvider", configProvider);
+        duplicateDetector = new DuplicateDetector();
+        duplicateDetector.configProvider = configProvider;
+        searchRequest = BenchmarkFixtures.searchRequest(categoryProvider);
+
+        List<Newznab> indexers = BenchmarkFixtures.newznabs(NUMBER_OF_INDEXERS, configProvider, categoryProvider);
+        indexer = indexers.get(0);
+        List<SearchResultItem> templates = BenchmarkFixtures.parsedResults(indexer);
+        results = BenchmarkFixtures.multiplyResults(templates, indexers, numberOfResults);
+    }
+
+    @Benchmark
+    public AcceptorResult acceptResults() {
+        return searchResultAcceptor.acceptResults(results, searchRequest, indexer.getConfig());
+    }
+
+    @Benchmark
+    public DuplicateDetectionResult detectDuplicates() {
+        return duplicateDetector.detectDuplicates(results);
+    }
+
+    @Benchmark
+    public void calculateSearchResultIds(Blackhole blackhole) {
+        for (SearchResultItem result : results) {
+            blackhole.consume(SearchResultIdCalculator.calculateSearchResultId(result));
+        }
+    }
+
+}
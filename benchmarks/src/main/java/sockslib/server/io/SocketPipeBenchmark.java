@@ -0,0 +1,171 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package sockslib.server.io;
+
+import com.google.common.io.ByteStreams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import sockslib.client.Socks5;
+import sockslib.client.SocksSocket;
+import sockslib.server.SocksProxyServer;
+import sockslib.server.SocksServerBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips through the bundled SOCKS server to a local echo server over a number of open connections, relayed either
+ * by two threads per connection or by the selector relay.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SocketPipeBenchmark {
+
+    public enum RelayMode {
+        THREADS,
+        SELECTOR
+    }
+
+    @Param({"THREADS", "SELECTOR"})
+    public RelayMode relayMode;
+
+    @Param({"1", "64"})
+    public int numberOfConnections;
+
+    @Param({"1024", "16384"})
+    public int payloadSize;
+
+    private ServerSocket echoServer;
+    private SocksProxyServer socksServer;
+    private SelectorRelay selectorRelay;
+    private final List<Socket> connections = new ArrayList<>();
+    private byte[] payload;
+    private byte[] response;
+
+    @Setup
+    public void setUp() throws Exception {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        echoServer = new ServerSocket(0, 200, loopback);
+        Thread echoThread = new Thread(this::acceptEchoConnections, "EchoServer");
+        echoThread.setDaemon(true);
+        echoThread.start();
+
+        int socksPort = getFreePort(loopback);
+        SocksServerBuilder builder = SocksServerBuilder.newSocks5ServerBuilder().setBindAddr(loopback).setBindPort(socksPort).setDaemon(true);
+        if (relayMode == RelayMode.SELECTOR) {
+            selectorRelay = new SelectorRelay();
+            builder.setSelectorRelay(selectorRelay);
+        }
+        socksServer = builder.build();
+        socksServer.start();
+
+        for (int i = 0; i < numberOfConnections; i++) {
+            Socket connection = new SocksSocket(new Socks5(loopback, socksPort), loopback, echoServer.getLocalPort());
+            //Measure the relay, not Nagle's algorithm waiting for delayed ACKs
+            connection.setTcpNoDelay(true);
+            connections.add(connection);
+        }
+        payload = new byte[payloadSize];
+        new Random(1).nextBytes(payload);
+        response = new byte[payloadSize];
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (Socket connection : connections) {
+            connection.close();
+        }
+        connections.clear();
+        socksServer.shutdown();
+        if (selectorRelay != null) {
+            selectorRelay.shutdown();
+        }
+        echoServer.close();
+    }
+
+    @Benchmark
+    public byte[] echo() throws IOException {
+        //The payload of all connections fits into the socket buffers so it can be sent before reading any response
+        for (Socket connection : connections) {
+            OutputStream outputStream = connection.getOutputStream();
+            outputStream.write(payload);
+            outputStream.flush();
+        }
+        for (Socket connection : connections) {
+            ByteStreams.readFully(connection.getInputStream(), response);
+        }
+        return response;
+    }
+
+    private void acceptEchoConnections() {
+        while (!echoServer.isClosed()) {
+            try {
+                Socket socket = echoServer.accept();
+                socket.setTcpNoDelay(true);
+                Thread thread = new Thread(() -> echo(socket), "EchoConnection");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                //Server closed
+            }
+        }
+    }
+
+    private static void echo(Socket socket) {
+        try (Socket closeable = socket) {
+            InputStream inputStream = closeable.getInputStream();
+            OutputStream outputStream = closeable.getOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+                outputStream.flush();
+            }
+        } catch (IOException e) {
+            //Connection closed
+        }
+    }
+
+    private static int getFreePort(InetAddress address) throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0, 1, address)) {
+            return serverSocket.getLocalPort();
+        }
+    }
+
+}
@@ -0,0 +1,395 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.api;
+
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.Value;
+import org.nzbhydra.config.ConfigProvider;
+import org.nzbhydra.config.category.CategoriesConfig;
+import org.nzbhydra.mapping.newznab.NewznabParameters;
+import org.nzbhydra.metrics.Counter;
+import org.nzbhydra.metrics.Metrics;
+import org.nzbhydra.searching.CategoryProvider;
+import org.nzbhydra.searching.IndexerForSearchSelector;
+import org.nzbhydra.searching.SearchResult;
+import org.nzbhydra.searching.Searcher;
+import org.nzbhydra.searching.db.SearchEntity;
+import org.nzbhydra.searching.db.SearchRepository;
+import org.nzbhydra.searching.dtoseventsenums.DownloadType;
+import org.nzbhydra.searching.dtoseventsenums.SearchType;
+import org.nzbhydra.searching.searchrequests.SearchRequest;
+import org.nzbhydra.searching.searchrequests.SearchRequest.SearchSource;
+import org.nzbhydra.searching.searchrequests.SearchRequestFactory;
+import org.nzbhydra.web.SessionStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Tools like Sonarr or Radarr regularly poll for the latest releases using API searches without query. This learns the
+ * interval of these polls from the search history and executes the search shortly before the next poll is expected. The
+ * poll is then answered with the prefetched results without calling any indexer.
+ * <p>
+ * Polls are identified by their search type, categories, limit, download type and user agent. A poll is only prefetched
+ * when at least {@value #MIN_NUMBER_OF_POLLS} polls were made in the last 24 hours and most of the intervals between them
+ * are about the same. Prefetched searches are saved with the user agent {@value #PREFETCH_USER_AGENT} and limited per
+ * indexer by {@link org.nzbhydra.config.indexer.IndexerConfig#getPrefetchLimit()}. Like any other search they're API hits
+ * and count towards the indexers' hit limits.
+ */
+@Component
+public class ApiSearchPrefetcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(ApiSearchPrefetcher.class);
+    private static final Counter PREFETCH_HITS = Metrics.counter("hydra_api_prefetch_requests_total", "Expected API polls answered with prefetched results or not", "result", "hit");
+    private static final Counter PREFETCH_MISSES = Metrics.counter("hydra_api_prefetch_requests_total", "Expected API polls answered with prefetched results or not", "result", "miss");
+
+    public static final String PREFETCH_USER_AGENT = "NZBHydra2 prefetch";
+    static final int MIN_NUMBER_OF_POLLS = 4;
+    static final Duration MIN_INTERVAL = Duration.ofMinutes(1);
+    static final Duration MAX_INTERVAL = Duration.ofHours(6);
+    static final Duration HISTORY_DURATION = Duration.ofHours(24);
+    static final Duration LEARN_INTERVAL = Duration.ofMinutes(5);
+    /**
+     * How long prefetched results may be used after the poll was expected
+     */
+    static final Duration MAX_DELAY_OF_POLL = Duration.ofMinutes(2);
+    /**
+     * An interval is regular if it differs at most by this share from the median interval
+     */
+    static final double TOLERATED_DEVIATION = 0.2;
+    static final double MIN_SHARE_OF_REGULAR_INTERVALS = 0.75;
+    private static final long CHECK_INTERVAL_SECONDS = 10;
+
+    @Autowired
+    protected Searcher searcher;
+    @Autowired
+    protected SearchRepository searchRepository;
+    @Autowired
+    protected SearchRequestFactory searchRequestFactory;
+    @Autowired
+    protected CategoryProvider categoryProvider;
+    @Autowired
+    protected ConfigProvider configProvider;
+    protected Clock clock = Clock.systemUTC();
+    private final Random random = new Random();
+
+    private final ConcurrentMap<PollKey, Poll> polls = new ConcurrentHashMap<>();
+    private Instant lastLearned;
+    private ScheduledExecutorService executor;
+
+    @PostConstruct
+    public void startScheduling() {
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("ApiSearchPrefetch").setDaemon(true).build());
+        executor.scheduleWithFixedDelay(this::prefetchSafely, CHECK_INTERVAL_SECONDS, CHECK_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stopScheduling() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Remembers the poll and returns the prefetched results for it if available. Those are only returned once. If the
+     * search is answered from them it's saved to the history.
+     */
+    public Optional<SearchResult> getPrefetchedResult(NewznabParameters params, SearchRequest searchRequest) {
+        if (!isEnabled() || !isPoll(params)) {
+            return Optional.empty();
+        }
+        PollKey pollKey = new PollKey(searchRequest.getSearchType(), getSortedCategories(params), params.getLimit(), searchRequest.getDownloadType(), SessionStorage.userAgent.get());
+        Poll poll = polls.computeIfAbsent(pollKey, x -> new Poll(searchRequest.getCategory().getName()));
+        Instant now = clock.instant();
+        SearchResult searchResult = null;
+        boolean expected;
+        synchronized (poll) {
+            expected = poll.interval != null;
+            if (poll.prefetchedResult != null && !poll.prefetchedAt.isBefore(now.minus(getLead()).minus(MAX_DELAY_OF_POLL))) {
+                searchResult = poll.prefetchedResult;
+                logger.info("Answering API search with results prefetched at {}", poll.prefetchedAt);
+            }
+            poll.prefetchedResult = null;
+            poll.lastPoll = now;
+        }
+        if (searchResult == null) {
+            if (expected) {
+                PREFETCH_MISSES.increment();
+            }
+            return Optional.empty();
+        }
+        PREFETCH_HITS.increment();
+        searcher.saveSearchEntity(searchRequest);
+        return Optional.of(searchResult);
+    }
+
+    /**
+     * @return true if the search is a poll for the latest releases, i.e. doesn't contain anything that would change between polls
+     */
+    static boolean isPoll(NewznabParameters params) {
+        boolean hasIdentifier = Stream.of(params.getRid(), params.getTvdbid(), params.getTvmazeid(), params.getTraktId(), params.getImdbid(), params.getTmdbid()).anyMatch(x -> !Strings.isNullOrEmpty(x));
+        boolean hasFilter = Stream.of(params.getMinage(), params.getMaxage(), params.getMinsize(), params.getMaxsize(), params.getSeason()).anyMatch(x -> x != null);
+        return Strings.isNullOrEmpty(params.getQ())
+                && !hasIdentifier
+                && !hasFilter
+                && Strings.isNullOrEmpty(params.getEp())
+                && Strings.isNullOrEmpty(params.getAuthor())
+                && Strings.isNullOrEmpty(params.getTitle())
+                && (params.getOffset() == null || params.getOffset() == 0)
+                && params.getCachetime() == null;
+    }
+
+    /**
+     * @return The median interval between the given (sorted) poll times if most intervals are about the same
+     */
+    static Optional<Duration> calculateInterval(List<Instant> pollTimes) {
+        if (pollTimes == null || pollTimes.size() < MIN_NUMBER_OF_POLLS) {
+            return Optional.empty();
+        }
+        List<Long> intervals = new ArrayList<>();
+        for (int i = 1; i < pollTimes.size(); i++) {
+            intervals.add(Duration.between(pollTimes.get(i - 1), pollTimes.get(i)).toMillis());
+        }
+        List<Long> sortedIntervals = intervals.stream().sorted().collect(Collectors.toList());
+        long median = sortedIntervals.get(sortedIntervals.size() / 2);
+        if (median < MIN_INTERVAL.toMillis() || median > MAX_INTERVAL.toMillis()) {
+            return Optional.empty();
+        }
+        long regularIntervals = intervals.stream().filter(x -> Math.abs(x - median) <= median * TOLERATED_DEVIATION).count();
+        if (regularIntervals < intervals.size() * MIN_SHARE_OF_REGULAR_INTERVALS) {
+            return Optional.empty();
+        }
+        return Optional.of(Duration.ofMillis(median));
+    }
+
+    private void prefetchSafely() {
+        try {
+            prefetch();
+        } catch (Exception e) {
+            logger.error("Error while prefetching API searches", e);
+        }
+    }
+
+    void prefetch() {
+        if (!isEnabled()) {
+            polls.clear();
+            return;
+        }
+        Instant now = clock.instant();
+        if (lastLearned == null || !now.isBefore(lastLearned.plus(LEARN_INTERVAL))) {
+            learnIntervals();
+            lastLearned = now;
+        }
+        Duration lead = getLead();
+        for (Entry<PollKey, Poll> entry : polls.entrySet()) {
+            Poll poll = entry.getValue();
+            synchronized (poll) {
+                boolean alreadyPrefetched = poll.lastPrefetch != null && poll.lastPrefetch.isAfter(poll.lastPoll);
+                if (poll.interval == null || alreadyPrefetched) {
+                    continue;
+                }
+                Instant expectedPoll = poll.lastPoll.plus(poll.interval);
+                if (now.isBefore(expectedPoll.minus(lead))) {
+                    continue;
+                }
+                poll.lastPrefetch = now;
+                if (now.isAfter(expectedPoll.plus(MAX_DELAY_OF_POLL))) {
+                    //Started too late (e.g. because of other prefetches), the poll was probably made already
+                    continue;
+                }
+            }
+            prefetch(entry.getKey(), poll);
+        }
+    }
+
+    private void prefetch(PollKey pollKey, Poll poll) {
+        BackgroundRequestAttributes requestAttributes = new BackgroundRequestAttributes();
+        //The indexer selection is request scoped
+        RequestContextHolder.setRequestAttributes(requestAttributes);
+        SessionStorage.userAgent.set(PREFETCH_USER_AGENT);
+        try {
+            SearchRequest searchRequest = searchRequestFactory.getSearchRequest(pollKey.getSearchType(), SearchSource.API, categoryProvider.fromSearchNewznabCategories(pollKey.getCategories(), CategoriesConfig.allCategory), random.nextInt(1000000), 0, pollKey.getLimit());
+            searchRequest.setDownloadType(pollKey.getDownloadType());
+            searchRequest.getInternalData().setNewznabCategories(pollKey.getCategories());
+            searchRequest.getInternalData().setPrefetch(true);
+            logger.info("Prefetching {} search in category {} expected from {}", pollKey.getSearchType(), poll.categoryName, pollKey.getUserAgent());
+            SearchResult searchResult = searcher.search(searchRequest);
+
+            if (searchResult.getPickingResult().getNotPickedIndexersWithReason().containsValue(IndexerForSearchSelector.PREFETCH_LIMIT_REACHED)) {
+                logger.info("Not using prefetched results because not all indexers could be searched");
+                return;
+            }
+            synchronized (poll) {
+                poll.prefetchedResult = searchResult;
+                poll.prefetchedAt = clock.instant();
+            }
+        } catch (Exception e) {
+            logger.warn("Error while prefetching search", e);
+        } finally {
+            requestAttributes.requestCompleted();
+            RequestContextHolder.resetRequestAttributes();
+            SessionStorage.userAgent.remove();
+            MDC.remove("SEARCH");
+        }
+    }
+
+    private void learnIntervals() {
+        Instant since = clock.instant().minus(HISTORY_DURATION);
+        polls.values().removeIf(x -> x.lastPoll.isBefore(since));
+        if (polls.isEmpty()) {
+            return;
+        }
+        Map<List<Object>, List<Instant>> pollTimesBySignature = searchRepository.findBySourceAndQueryIsNullAndTimeAfterOrderByTime(SearchSource.API, since).stream()
+                .filter(x -> x.getIdentifiers().isEmpty() && x.getSeason() == null && x.getEpisode() == null && x.getTitle() == null && x.getAuthor() == null)
+                .filter(x -> !PREFETCH_USER_AGENT.equals(x.getUserAgent()))
+                .collect(Collectors.groupingBy(x -> Arrays.asList(x.getSearchType(), x.getCategoryName(), x.getUserAgent()), Collectors.mapping(SearchEntity::getTime, Collectors.toList())));
+        for (Entry<PollKey, Poll> entry : polls.entrySet()) {
+            List<Instant> pollTimes = pollTimesBySignature.get(Arrays.asList(entry.getKey().getSearchType(), entry.getValue().categoryName, entry.getKey().getUserAgent()));
+            Duration interval = calculateInterval(pollTimes).orElse(null);
+            synchronized (entry.getValue()) {
+                if (interval != null && entry.getValue().interval == null) {
+                    logger.info("Learned that {} searches in category {} are made by {} every {}s", entry.getKey().getSearchType(), entry.getValue().categoryName, entry.getKey().getUserAgent(), interval.getSeconds());
+                }
+                entry.getValue().interval = interval;
+            }
+        }
+    }
+
+    /**
+     * Searches are started early enough to be finished before the poll is expected
+     */
+    private Duration getLead() {
+        return Duration.ofSeconds(configProvider.getBaseConfig().getSearching().getTimeout() + 10);
+    }
+
+    private boolean isEnabled() {
+        return configProvider.getBaseConfig().getSearching().isPrefetchRecurringSearches();
+    }
+
+    private static List<Integer> getSortedCategories(NewznabParameters params) {
+        if (params.getCat() == null) {
+            return Collections.emptyList();
+        }
+        return params.getCat().stream().sorted().distinct().collect(Collectors.toList());
+    }
+
+
+    @Value
+    static class PollKey {
+        private SearchType searchType;
+        private List<Integer> categories;
+        private Integer limit;
+        private DownloadType downloadType;
+        private String userAgent;
+    }
+
+    private static class Poll {
+        private final String categoryName;
+        private Instant lastPoll = Instant.EPOCH;
+        private Duration interval;
+        private Instant lastPrefetch;
+        private SearchResult prefetchedResult;
+        private Instant prefetchedAt;
+
+        Poll(String categoryName) {
+            this.categoryName = categoryName;
+        }
+    }
+
+    /**
+     * Allows using request scoped beans outside of a request
+     */
+    private static class BackgroundRequestAttributes implements RequestAttributes {
+
+        private final Map<String, Object> attributes = new HashMap<>();
+        private final List<Runnable> destructionCallbacks = new ArrayList<>();
+
+        @Override
+        public Object getAttribute(String name, int scope) {
+            return attributes.get(name);
+        }
+
+        @Override
+        public void setAttribute(String name, Object value, int scope) {
+            attributes.put(name, value);
+        }
+
+        @Override
+        public void removeAttribute(String name, int scope) {
+            attributes.remove(name);
+        }
+
+        @Override
+        public String[] getAttributeNames(int scope) {
+            return attributes.keySet().toArray(new String[0]);
+        }
+
+        @Override
+        public void registerDestructionCallback(String name, Runnable callback, int scope) {
+            destructionCallbacks.add(callback);
+        }
+
+        @Override
+        public Object resolveReference(String key) {
+            return null;
+        }
+
+        @Override
+        public String getSessionId() {
+            return PREFETCH_USER_AGENT;
+        }
+
+        @Override
+        public Object getSessionMutex() {
+            return this;
+        }
+
+        void requestCompleted() {
+            destructionCallbacks.forEach(Runnable::run);
+            destructionCallbacks.clear();
+            attributes.clear();
+        }
+    }
+
+}
@@ -16,39 +16,103 @@
 
 package org.nzbhydra.api;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.nzbhydra.config.ConfigChangeSet;
+import org.nzbhydra.config.ConfigChangedEvent;
 import org.nzbhydra.config.ConfigProvider;
 import org.nzbhydra.config.category.Category;
 import org.nzbhydra.mapping.newznab.OutputType;
 import org.nzbhydra.mapping.newznab.json.caps.*;
 import org.nzbhydra.mapping.newznab.xml.caps.*;
+import org.nzbhydra.metrics.Counter;
+import org.nzbhydra.metrics.Metrics;
 import org.nzbhydra.update.UpdateManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpHeaders;
+import org.springframework.context.event.EventListener;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.oxm.jaxb.Jaxb2Marshaller;
 import org.springframework.stereotype.Component;
 
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayOutputStream;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @Component
 public class CapsGenerator {
 
+    private static final Logger logger = LoggerFactory.getLogger(CapsGenerator.class);
+    private static final Counter CAPS_RENDERED = Metrics.counter("hydra_caps_cache_requests_total", "Caps requests answered from the cache of rendered caps or not", "result", "miss");
+    private static final Counter CAPS_CACHED = Metrics.counter("hydra_caps_cache_requests_total", "Caps requests answered from the cache of rendered caps or not", "result", "hit");
+
     @Autowired
     private UpdateManager updateManager;
     @Autowired
     private ConfigProvider configProvider;
+    @Autowired
+    private Jaxb2Marshaller marshaller;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Serialized caps by output type. Only depend on the config and are cleared when it's changed
+     */
+    private final Map<OutputType, RenderedCaps> renderedCaps = new ConcurrentHashMap<>();
+
+    /**
+     * @param ifNoneMatch Value of the request's If-None-Match header, may be null
+     * @return The serialized caps or a 304 response if the client already has them
+     */
+    ResponseEntity<?> getCaps(OutputType o, String ifNoneMatch) {
+        OutputType outputType = o == OutputType.XML ? OutputType.XML : OutputType.JSON;
+        RenderedCaps caps = renderedCaps.get(outputType);
+        if (caps == null) {
+            CAPS_RENDERED.increment();
+            caps = renderedCaps.computeIfAbsent(outputType, this::renderCaps);
+        } else {
+            CAPS_CACHED.increment();
+        }
+        if (ifNoneMatch != null && (ifNoneMatch.contains(caps.getEtag()) || ifNoneMatch.trim().equals("*"))) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(caps.getEtag()).build();
+        }
+        return ResponseEntity.ok().eTag(caps.getEtag()).contentType(outputType == OutputType.XML ? MediaType.APPLICATION_XML : MediaType.APPLICATION_JSON_UTF8).body(caps.getContent());
+    }
+
+    @EventListener
+    public void handleNewConfig(ConfigChangedEvent configChangedEvent) {
+        ConfigChangeSet changeSet = configChangedEvent.getChangeSet();
+        if (changeSet.isChanged("categoriesConfig") || changeSet.isChanged("searching.transformNewznabCategories")) {
+            renderedCaps.clear();
+        }
+    }
 
-    ResponseEntity<?> getCaps(OutputType o) {
-        if (o == OutputType.XML) {
-            return getXmlCaps();
+    private RenderedCaps renderCaps(OutputType outputType) {
+        byte[] content;
+        if (outputType == OutputType.XML) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            marshaller.marshal(getXmlCapsRoot(), new StreamResult(bos));
+            content = bos.toByteArray();
         } else {
-            return getJsonCaps();
+            try {
+                content = objectMapper.writeValueAsBytes(getJsonCapsRoot());
+            } catch (JsonProcessingException e) {
+                throw new RuntimeException("Unable to serialize caps", e);
+            }
         }
+        logger.debug("Rendered {} caps", outputType);
+        return new RenderedCaps(content, "\"" + Hashing.sha256().hashBytes(content).toString().substring(0, 32) + "\"");
     }
 
-    private ResponseEntity<?> getJsonCaps() {
+    private CapsJsonRoot getJsonCapsRoot() {
         CapsXmlRoot xmlCapsRoot = getXmlCapsRoot();
         CapsJsonRoot capsRoot = new CapsJsonRoot();
         capsRoot.setLimits(new CapsJsonLimits(new CapsJsonLimitsAttributes(String.valueOf(xmlCapsRoot.getLimits().getMax()), String.valueOf(xmlCapsRoot.getLimits().getDefaultValue()))));
@@ -78,17 +142,7 @@ public class CapsGenerator {
         }
 
         capsRoot.setCategories(new CapsJsonCategoriesHolder(categories));
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        return new ResponseEntity<>(capsRoot, headers, HttpStatus.OK);
-    }
-
-    private ResponseEntity<?> getXmlCaps() {
-        CapsXmlRoot capsRoot = getXmlCapsRoot();
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_XML);
-        return new ResponseEntity<>(capsRoot, headers, HttpStatus.OK);
+        return capsRoot;
     }
 
     private CapsXmlRoot getXmlCapsRoot() {
@@ -219,4 +273,12 @@ public class CapsGenerator {
         }
 
     }
+
+    @Data
+    @AllArgsConstructor
+    private static class RenderedCaps {
+        private byte[] content;
+        private String etag;
+    }
+
 }
@@ -3,6 +3,7 @@ package org.nzbhydra.api;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Strings;
 import com.google.common.base.Throwables;
+import com.google.common.hash.Hashing;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import org.apache.catalina.connector.ClientAbortException;
@@ -18,6 +19,8 @@ import org.nzbhydra.mapping.newznab.NewznabResponse;
 import org.nzbhydra.mapping.newznab.OutputType;
 import org.nzbhydra.mapping.newznab.xml.NewznabXmlError;
 import org.nzbhydra.mediainfo.InfoProvider.IdType;
+import org.nzbhydra.metrics.Counter;
+import org.nzbhydra.metrics.Metrics;
 import org.nzbhydra.searching.CategoryProvider;
 import org.nzbhydra.searching.SearchResult;
 import org.nzbhydra.searching.Searcher;
@@ -26,6 +29,9 @@ import org.nzbhydra.searching.dtoseventsenums.SearchType;
 import org.nzbhydra.searching.searchrequests.SearchRequest;
 import org.nzbhydra.searching.searchrequests.SearchRequest.SearchSource;
 import org.nzbhydra.searching.searchrequests.SearchRequestFactory;
+import org.nzbhydra.web.AsyncRequestExecutor;
+import org.nzbhydra.web.NewznabResponseRenderer;
+import org.nzbhydra.web.ServerBusyException;
 import org.nzbhydra.web.SessionStorage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,9 +44,16 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 
+import java.io.IOException;
 import java.time.Clock;
 import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.Map.Entry;
@@ -56,6 +69,8 @@ public class ExternalApi {
     private static final int MAX_CACHE_AGE_HOURS = 24;
 
     private static final Logger logger = LoggerFactory.getLogger(ExternalApi.class);
+    private static final Counter API_CACHE_HITS = Metrics.counter("hydra_api_cache_requests_total", "API searches with a cache time answered from the cache or not", "result", "hit");
+    private static final Counter API_CACHE_MISSES = Metrics.counter("hydra_api_cache_requests_total", "API searches with a cache time answered from the cache or not", "result", "miss");
 
     @Value("${nzbhydra.dev.noApiKey:false}")
     private boolean noApiKeyNeeded = false;
@@ -78,14 +93,42 @@ public class ExternalApi {
     private org.nzbhydra.historystats.Stats stats;
     @Autowired
     private CapsGenerator capsGenerator;
+    @Autowired
+    private AsyncRequestExecutor asyncRequestExecutor;
+    @Autowired
+    protected ApiSearchPrefetcher apiSearchPrefetcher;
+    @Autowired
+    private NewznabResponseRenderer newznabResponseRenderer;
     protected Clock clock = Clock.systemUTC();
     private Random random = new Random();
 
     private ConcurrentMap<Integer, CacheEntryValue> cache = new ConcurrentHashMap<>();
 
 
+    /**
+     * Searches are executed asynchronously so that they don't block one of the few request threads of the servlet
+     * container while waiting for the indexers.
+     *
+     * @return Either a {@link ResponseEntity} or a {@link org.springframework.web.context.request.async.DeferredResult} for searches
+     */
     @RequestMapping(value = {"/api", "/rss", "/torznab/api"}, consumes = MediaType.ALL_VALUE)
-    public ResponseEntity<? extends Object> api(NewznabParameters params) throws Exception {
+    public Object api(NewznabParameters params) throws Exception {
+        if (isSearch(params)) {
+            return asyncRequestExecutor.execute(() -> handleApiRequest(params));
+        }
+        return handleApiRequest(params);
+    }
+
+    public ResponseEntity<? extends Object> handleApiRequest(NewznabParameters params) throws Exception {
+        long start = System.nanoTime();
+        try {
+            return doApi(params);
+        } finally {
+            Metrics.histogram("hydra_api_request_duration_seconds", "Duration of handling external API requests", "type", String.valueOf(params.getT())).recordSince(start);
+        }
+    }
+
+    private ResponseEntity<? extends Object> doApi(NewznabParameters params) throws Exception {
         logger.info("Received external {}API call: {}", (isTorznabCall() ? "torznab " : ""), params);
 
         if (!noApiKeyNeeded && !Objects.equals(params.getApikey(), configProvider.getBaseConfig().getMain().getApiKey())) {
@@ -93,16 +136,13 @@ public class ExternalApi {
             throw new WrongApiKeyException("Wrong api key");
         }
 
-        if (Stream.of(ActionAttribute.SEARCH, ActionAttribute.BOOK, ActionAttribute.TVSEARCH, ActionAttribute.MOVIE).anyMatch(x -> x == params.getT())) {
+        if (isSearch(params)) {
             if (params.getCachetime() != null) {
                 return handleCachingSearch(params);
             }
             NewznabResponse searchResult = search(params);
             HttpHeaders httpHeaders = new HttpHeaders();
             httpHeaders.set(HttpHeaders.CONTENT_TYPE, searchResult.getContentHeader());
-            if (params.getO() != OutputType.JSON) {
-                searchResult.setSearchType(isTorznabCall() ? "torznab" : "newznab");
-            }
             return new ResponseEntity<>(searchResult, httpHeaders, HttpStatus.OK);
 
         }
@@ -112,7 +152,7 @@ public class ExternalApi {
         }
 
         if (params.getT() == ActionAttribute.CAPS) {
-            return capsGenerator.getCaps(params.getO());
+            return capsGenerator.getCaps(params.getO(), getRequestHeader(HttpHeaders.IF_NONE_MATCH));
         }
 
         logger.error("Incorrect API request: {}", params);
@@ -120,7 +160,11 @@ public class ExternalApi {
         return new ResponseEntity<Object>(error, HttpStatus.OK);
     }
 
-    protected ResponseEntity<?> handleCachingSearch(NewznabParameters params) {
+    /**
+     * Cached results are stored serialized. Their ETag is derived from the serialized results so that clients polling
+     * the same search get a 304 response as long as the results don't change.
+     */
+    protected ResponseEntity<?> handleCachingSearch(NewznabParameters params) throws IOException {
         //Remove old entries
         cache.entrySet().removeIf(x -> x.getValue().getLastUpdate().isBefore(clock.instant().minus(MAX_CACHE_AGE_HOURS, ChronoUnit.HOURS)));
 
@@ -130,7 +174,8 @@ public class ExternalApi {
             if (cacheEntryValue.getLastUpdate().isAfter(clock.instant().minus(params.getCachetime(), ChronoUnit.MINUTES))) {
                 Instant nextUpdate = cacheEntryValue.getLastUpdate().plus(params.getCachetime(), ChronoUnit.MINUTES);
                 logger.info("Returning cached search result. Next update of search will be done at {}", nextUpdate);
-                return new ResponseEntity<>(cacheEntryValue.getSearchResult(), HttpStatus.OK);
+                API_CACHE_HITS.increment();
+                return getCachedResponse(cacheEntryValue);
             } else {
                 logger.info("Updating search because cache time is exceeded");
             }
@@ -143,10 +188,53 @@ public class ExternalApi {
             keyToEvict.ifPresent(newznabParametersCacheEntryValueEntry -> cache.remove(newznabParametersCacheEntryValueEntry.getKey()));
         }
 
+        API_CACHE_MISSES.increment();
         NewznabResponse searchResult = search(params);
+        byte[] content = newznabResponseRenderer.render(searchResult);
+        String etag = "\"" + Hashing.sha256().hashBytes(content).toString().substring(0, 32) + "\"";
+        Instant lastModified = clock.instant();
+        CacheEntryValue previousEntry = cache.get(params.cacheKey());
+        if (previousEntry != null && previousEntry.getEtag().equals(etag)) {
+            //Results haven't changed since the last search
+            lastModified = previousEntry.getLastModified();
+        }
         logger.info("Putting search result into cache");
-        cache.put(params.cacheKey(), new CacheEntryValue(params, clock.instant(), searchResult));
-        return new ResponseEntity<>(searchResult, HttpStatus.OK);
+        cacheEntryValue = new CacheEntryValue(params, clock.instant(), lastModified, searchResult.getContentHeader(), content, etag);
+        cache.put(params.cacheKey(), cacheEntryValue);
+        return getCachedResponse(cacheEntryValue);
+    }
+
+    private ResponseEntity<?> getCachedResponse(CacheEntryValue cacheEntryValue) {
+        String ifNoneMatch = getRequestHeader(HttpHeaders.IF_NONE_MATCH);
+        boolean notModified;
+        if (ifNoneMatch != null) {
+            notModified = ifNoneMatch.contains(cacheEntryValue.getEtag()) || ifNoneMatch.trim().equals("*");
+        } else {
+            notModified = isNotModifiedSince(getRequestHeader(HttpHeaders.IF_MODIFIED_SINCE), cacheEntryValue.getLastModified());
+        }
+        if (notModified) {
+            logger.debug("Returning 304 because client already has the cached search result");
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(cacheEntryValue.getEtag()).lastModified(cacheEntryValue.getLastModified().toEpochMilli()).build();
+        }
+        return ResponseEntity.ok()
+                .eTag(cacheEntryValue.getEtag())
+                .lastModified(cacheEntryValue.getLastModified().toEpochMilli())
+                .contentType(MediaType.parseMediaType(cacheEntryValue.getContentType()))
+                .contentLength(cacheEntryValue.getContent().length)
+                .body(cacheEntryValue.getContent());
+    }
+
+    private boolean isNotModifiedSince(String ifModifiedSince, Instant lastModified) {
+        if (ifModifiedSince == null) {
+            return false;
+        }
+        try {
+            //HTTP dates only have a precision of seconds
+            return !lastModified.truncatedTo(ChronoUnit.SECONDS).isAfter(ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant());
+        } catch (DateTimeParseException e) {
+            logger.debug("Unable to parse If-Modified-Since header {}", ifModifiedSince);
+            return false;
+        }
     }
 
 
@@ -158,7 +246,7 @@ public class ExternalApi {
         DownloadResult downloadResult;
         try {
 
-            downloadResult = fileHandler.getFileByGuid(Long.valueOf(params.getId()), configProvider.getBaseConfig().getSearching().getNzbAccessType(), SearchSource.API);
+            downloadResult = fileHandler.streamFileByGuid(Long.valueOf(params.getId()), configProvider.getBaseConfig().getSearching().getNzbAccessType(), SearchSource.API);
         } catch (InvalidSearchResultIdException e) {
             return ResponseEntity.ok().contentType(MediaType.APPLICATION_XML).body("<error code=\"300\" description=\"Invalid or outdated search result ID\"/>");
         }
@@ -177,13 +265,28 @@ public class ExternalApi {
         } else {
             searchRequest.setDownloadType(DownloadType.NZB);
         }
-        SearchResult searchResult = searcher.search(searchRequest);
+        SearchResult searchResult = apiSearchPrefetcher.getPrefetchedResult(params, searchRequest).orElseGet(() -> searcher.search(searchRequest));
 
         NewznabResponse transformedResults = transformResults(searchResult, params, searchRequest);
+        if (params.getO() != OutputType.JSON) {
+            transformedResults.setSearchType(isTorznabCall() ? "torznab" : "newznab");
+        }
         logger.info("Search took {}ms. Returning {} results", stopwatch.elapsed(TimeUnit.MILLISECONDS), searchResult.getSearchResultItems().size());
         return transformedResults;
     }
 
+    private String getRequestHeader(String name) {
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        if (!(requestAttributes instanceof ServletRequestAttributes)) {
+            return null;
+        }
+        return ((ServletRequestAttributes) requestAttributes).getRequest().getHeader(name);
+    }
+
+    private boolean isSearch(NewznabParameters params) {
+        return Stream.of(ActionAttribute.SEARCH, ActionAttribute.BOOK, ActionAttribute.TVSEARCH, ActionAttribute.MOVIE).anyMatch(x -> x == params.getT());
+    }
+
     private boolean isTorznabCall() {
         return SessionStorage.requestUrl.get() != null && SessionStorage.requestUrl.get().toLowerCase().contains("torznab");
     }
@@ -194,6 +297,14 @@ public class ExternalApi {
         return error;
     }
 
+    @ExceptionHandler(value = ServerBusyException.class)
+    public ResponseEntity<NewznabXmlError> handleServerBusy(ServerBusyException e) {
+        logger.warn("Rejecting API request: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(new NewznabXmlError("900", e.getMessage()));
+    }
+
     @ExceptionHandler(value = Exception.class)
     public ResponseEntity handleUnexpectedError(Exception e) {
         if (e instanceof ClientAbortException || Throwables.getCausalChain(e).stream().anyMatch(x -> x instanceof ClientAbortException)) {
@@ -274,7 +385,10 @@ public class ExternalApi {
     private static class CacheEntryValue {
         private final NewznabParameters params;
         private final Instant lastUpdate;
-        private final NewznabResponse searchResult;
+        private final Instant lastModified;
+        private final String contentType;
+        private final byte[] content;
+        private final String etag;
 
         @Override
         public boolean equals(Object o) {
@@ -290,12 +404,12 @@ public class ExternalApi {
             CacheEntryValue that = (CacheEntryValue) o;
             return com.google.common.base.Objects.equal(params, that.params) &&
                     com.google.common.base.Objects.equal(lastUpdate, that.lastUpdate) &&
-                    com.google.common.base.Objects.equal(searchResult, that.searchResult);
+                    com.google.common.base.Objects.equal(etag, that.etag);
         }
 
         @Override
         public int hashCode() {
-            return com.google.common.base.Objects.hashCode(super.hashCode(), params, lastUpdate, searchResult);
+            return com.google.common.base.Objects.hashCode(super.hashCode(), params, lastUpdate, etag);
         }
     }
 
@@ -0,0 +1,39 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.api;
+
+import org.nzbhydra.searching.dtoseventsenums.SearchResultItem;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Builds the newznab attributes of a result for API responses: all attributes received from the indexer, with the guid
+ * replaced by the result's ID in Hydra. The result's own attribute map is not changed.
+ */
+public class NewznabAttributesBuilder {
+
+    /**
+     * @return The attributes sorted by name
+     */
+    public static SortedMap<String, String> build(SearchResultItem searchResultItem) {
+        SortedMap<String, String> attributes = new TreeMap<>(searchResultItem.getAttributes());
+        attributes.put("guid", String.valueOf(searchResultItem.getSearchResultId()));
+        return attributes;
+    }
+
+}
@@ -28,7 +28,6 @@ import org.springframework.stereotype.Component;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -79,8 +78,7 @@ public class NewznabXmlTransformer {
         } else {
             rssItem.setPubDate(searchResultItem.getBestDate()); //Contain usenet date because results with neither should've been
         }
-        searchResultItem.getAttributes().put("guid", String.valueOf(searchResultItem.getSearchResultId()));
-        List<NewznabAttribute> newznabAttributes = searchResultItem.getAttributes().entrySet().stream().map(attribute -> new NewznabAttribute(attribute.getKey(), attribute.getValue())).sorted(Comparator.comparing(NewznabAttribute::getName)).collect(Collectors.toList());
+        List<NewznabAttribute> newznabAttributes = NewznabAttributesBuilder.build(searchResultItem).entrySet().stream().map(attribute -> new NewznabAttribute(attribute.getKey(), attribute.getValue())).collect(Collectors.toList());
         newznabAttributes.add(new NewznabAttribute("hydraIndexerScore", String.valueOf(searchResultItem.getIndexer().getConfig().getScore().orElse(null))));
         newznabAttributes.add(new NewznabAttribute("hydraIndexerHost", getIndexerHost(searchResultItem)));
         newznabAttributes.add(new NewznabAttribute("hydraIndexerName", String.valueOf(searchResultItem.getIndexer().getName())));
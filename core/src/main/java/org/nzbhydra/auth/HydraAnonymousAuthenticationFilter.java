@@ -50,6 +50,9 @@ public class HydraAnonymousAuthenticationFilter extends AnonymousAuthenticationF
 
     @EventListener
     public void handleConfigChangedEvent(ConfigChangedEvent event) {
+        if (!event.getChangeSet().isChanged("auth")) {
+            return;
+        }
         updateAuthorities(event.getNewConfig().getAuth());
         if (!authorities.isEmpty()) {
             enable();
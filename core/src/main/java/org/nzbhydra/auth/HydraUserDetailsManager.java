@@ -108,6 +108,9 @@ public class HydraUserDetailsManager implements UserDetailsManager {
 
     @EventListener
     public void handleConfigChangedEvent(ConfigChangedEvent event) {
+        if (!event.getChangeSet().isChanged("auth")) {
+            return;
+        }
         updateUsers(event.getNewConfig().getAuth());
     }
 }
@@ -0,0 +1,25 @@
+package org.nzbhydra.backup;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ArchiveProgressEvent {
+
+    private String archiveName;
+    /**
+     * The entry which was just written or null if the archive was finished
+     */
+    private String entryName;
+    private int entriesWritten;
+    private long bytesWritten;
+    private boolean finished;
+    /**
+     * True if writing the archive was aborted because of an error
+     */
+    private boolean failed;
+
+}
@@ -12,19 +12,22 @@ import org.nzbhydra.update.UpdateManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
-import javax.persistence.EntityManager;
-import javax.persistence.PersistenceContext;
+import javax.sql.DataSource;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.Writer;
+import java.io.OutputStream;
 import java.net.URI;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -39,15 +42,16 @@ public class BackupAndRestore {
     private static final Pattern FILE_PATTERN = Pattern.compile("nzbhydra-(\\d{4}-\\d{2}-\\d{2} \\d{2}-\\d{2}-\\d{2})\\.zip");
     private static final DateTimeFormatter DATE_PATTERN = DateTimeFormatter.ofPattern("yyyy-MM-dd HH-mm-ss");
 
-    @PersistenceContext
-    private EntityManager entityManager;
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private ApplicationEventPublisher applicationEventPublisher;
     @Autowired
     private ConfigProvider configProvider;
     @Autowired
     private UpdateManager updateManager;
     private ConfigReaderWriter configReaderWriter = new ConfigReaderWriter();
 
-    @Transactional
     public File backup() throws Exception {
         File backupFolder = getBackupFolder();
         if (!backupFolder.exists()) {
@@ -62,22 +66,33 @@ public class BackupAndRestore {
         logger.info("Creating backup");
 
         File backupZip = new File(backupFolder, "nzbhydra-" + LocalDateTime.now().format(DATE_PATTERN) + ".zip");
-        backupDatabase(backupZip);
-        Map<String, String> env = new HashMap<>();
-        env.put("create", "true");
-        URI uri = URI.create("jar:" + backupZip.toPath().toUri());
-        try (FileSystem fs = FileSystems.newFileSystem(uri, env)) {
-            Path nf = fs.getPath("nzbhydra.yml");
-            try (Writer writer = java.nio.file.Files.newBufferedWriter(nf, StandardCharsets.UTF_8, StandardOpenOption.CREATE)) {
-                writer.write(configReaderWriter.getAsYamlString(configProvider.getBaseConfig()));
-                logger.debug("Successfully wrote config to backup ZIP");
-            }
+        File tempZip = new File(backupFolder, backupZip.getName() + ".tmp");
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(tempZip))) {
+            backup(backupZip.getName(), outputStream, backupFolder);
+        } catch (Exception e) {
+            Files.deleteIfExists(tempZip.toPath());
+            throw e;
         }
+        Files.move(tempZip.toPath(), backupZip.toPath(), StandardCopyOption.REPLACE_EXISTING);
 
         logger.info("Successfully wrote backup to file {}", backupZip.getAbsolutePath());
         return backupZip;
     }
 
+    /**
+     * Writes the database snapshot and the config as one ZIP to the given stream.
+     *
+     * @param stagingFolder Folder in which the database snapshot is written before it's copied to the ZIP
+     */
+    public void backup(String archiveName, OutputStream outputStream, File stagingFolder) throws Exception {
+        try (StreamingZipArchiver archiver = new StreamingZipArchiver(archiveName, outputStream, applicationEventPublisher::publishEvent)) {
+            backupDatabase(archiver, stagingFolder);
+            archiver.addString("nzbhydra.yml", configReaderWriter.getAsYamlString(configProvider.getBaseConfig()));
+            logger.debug("Successfully wrote config to backup ZIP");
+            archiver.finish();
+        }
+    }
+
     protected void deleteOldBackupFiles(File backupFolder) {
         if (configProvider.getBaseConfig().getMain().getDeleteBackupsAfterWeeks().isPresent()) {
             logger.info("Deleting old backups if any exist");
@@ -115,6 +130,10 @@ public class BackupAndRestore {
             return Collections.emptyList();
         }
         for (File file : backupFolder.listFiles()) {
+            if (file.getName().endsWith(".tmp")) {
+                //Backup currently being written
+                continue;
+            }
             try {
                 entries.add(new BackupEntry(file.getName(), Files.readAttributes(file.toPath(), BasicFileAttributes.class).creationTime().toInstant()));
             } catch (IOException e) {
@@ -126,11 +145,21 @@ public class BackupAndRestore {
     }
 
 
-    private void backupDatabase(File targetFile) {
-        String formattedFilepath = targetFile.getAbsolutePath().replace("\\", "/");
-        logger.info("Backing up database to " + formattedFilepath);
-        entityManager.createNativeQuery("BACKUP TO '" + formattedFilepath + "';").executeUpdate();
-        logger.debug("Wrote database backup files to {}", targetFile.getAbsolutePath());
+    private void backupDatabase(StreamingZipArchiver archiver, File stagingFolder) throws IOException, SQLException {
+        //H2 can only write its backup to a file. We use a plain auto-commit connection instead of the JPA transaction so that no transaction is held while the backup is written and copied
+        //Staged next to the target instead of the system temp folder which may be small or on another file system. The suffix makes sure it's not listed or deleted as a backup
+        File databaseBackupFile = File.createTempFile("nzbhydra-database", ".zip.tmp", stagingFolder);
+        try {
+            String formattedFilepath = databaseBackupFile.getAbsolutePath().replace("\\", "/");
+            logger.info("Backing up database to " + formattedFilepath);
+            try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+                statement.execute("BACKUP TO '" + formattedFilepath + "'");
+            }
+            logger.debug("Wrote database backup files to {}", formattedFilepath);
+            archiver.addEntriesOfZip(databaseBackupFile);
+        } finally {
+            Files.deleteIfExists(databaseBackupFile.toPath());
+        }
     }
 
     public GenericResponse restore(String filename) {
@@ -0,0 +1,129 @@
+package org.nzbhydra.backup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes entries to a single ZIP stream in one pass. Files and the entries of other ZIPs are copied through a fixed size
+ * buffer so the memory used doesn't depend on the size of the archived data. The target stream may be a file or an HTTP response.
+ * <p>
+ * {@link #finish()} must be called after the last entry was written. If the archiver is closed without being finished
+ * (e.g. because writing an entry failed) a failure event is published instead.
+ */
+public class StreamingZipArchiver implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamingZipArchiver.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String archiveName;
+    private final ZipOutputStream zos;
+    private final Consumer<ArchiveProgressEvent> progressListener;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int entriesWritten = 0;
+    private long bytesWritten = 0;
+    private boolean finished = false;
+
+    public StreamingZipArchiver(String archiveName, OutputStream outputStream, Consumer<ArchiveProgressEvent> progressListener) {
+        this.archiveName = archiveName;
+        this.zos = new ZipOutputStream(outputStream);
+        this.progressListener = progressListener;
+    }
+
+    public void addString(String entryName, String content) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        zos.putNextEntry(new ZipEntry(entryName));
+        zos.write(bytes);
+        zos.closeEntry();
+        entryFinished(entryName, bytes.length);
+    }
+
+    public void addFile(String entryName, File file) throws IOException {
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE)) {
+            addStream(entryName, inputStream);
+        }
+    }
+
+    public void addStream(String entryName, InputStream inputStream) throws IOException {
+        ZipEntry zipEntry = new ZipEntry(entryName);
+        zos.putNextEntry(zipEntry);
+        long copied = copy(inputStream);
+        zos.closeEntry();
+        entryFinished(entryName, copied);
+    }
+
+    /**
+     * Copies all entries of the given ZIP file into this archive, keeping their names.
+     */
+    public void addEntriesOfZip(File zipFile) throws IOException {
+        try (ZipInputStream zis = new ZipInputStream(new BufferedInputStream(new FileInputStream(zipFile), BUFFER_SIZE))) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                addStream(entry.getName(), zis);
+            }
+        }
+    }
+
+    public int getEntriesWritten() {
+        return entriesWritten;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Writes the end of the archive. No more entries may be added afterwards.
+     */
+    public void finish() throws IOException {
+        zos.finish();
+        finished = true;
+        logger.debug("Finished archive {} with {} entries and {} bytes of uncompressed content", archiveName, entriesWritten, bytesWritten);
+        progressListener.accept(new ArchiveProgressEvent(archiveName, null, entriesWritten, bytesWritten, true, false));
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            zos.close();
+        } finally {
+            if (!finished) {
+                logger.warn("Archive {} was not finished, {} entries were written", archiveName, entriesWritten);
+                progressListener.accept(new ArchiveProgressEvent(archiveName, null, entriesWritten, bytesWritten, false, true));
+            }
+        }
+    }
+
+    private long copy(InputStream inputStream) throws IOException {
+        long copied = 0;
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            zos.write(buffer, 0, read);
+            copied += read;
+        }
+        return copied;
+    }
+
+    private void entryFinished(String entryName, long entrySize) {
+        entriesWritten++;
+        bytesWritten += entrySize;
+        logger.debug("Wrote entry {} with {} bytes to archive {}", entryName, entrySize, archiveName);
+        progressListener.accept(new ArchiveProgressEvent(archiveName, entryName, entriesWritten, bytesWritten, false, false));
+    }
+
+}
@@ -17,6 +17,7 @@ import org.springframework.stereotype.Component;
 import javax.annotation.PostConstruct;
 import java.io.IOException;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Component
@@ -49,21 +50,39 @@ public class BaseConfig extends ValidatingConfig<BaseConfig> {
         replace(newConfig, true);
     }
 
+    /**
+     * Indexers which weren't changed keep their config instance because it's referenced (and updated) by the indexer
+     * implementations. Listeners of the {@link ConfigChangedEvent} can use its {@link ConfigChangeSet} to only update what
+     * was changed.
+     */
     private void replace(BaseConfig newConfig, boolean fireConfigChangedEvent) {
-        BaseConfig oldBaseConfig = configReaderWriter.getCopy(this);
+        BaseConfig oldBaseConfig = getCopy();
+        newConfig.setIndexers(newConfig.getIndexers().stream().sorted(Comparator.comparing(IndexerConfig::getName)).collect(Collectors.toList()));
+        ConfigChangeSet changeSet = ConfigChangeSet.between(oldBaseConfig, newConfig);
+        logger.debug("Changes in new config: {}", changeSet);
 
+        Map<String, IndexerConfig> oldIndexersByName = indexers.stream().collect(Collectors.toMap(IndexerConfig::getName, Function.identity(), (a, b) -> a));
         main = newConfig.getMain();
         categoriesConfig = newConfig.getCategoriesConfig();
-        indexers = newConfig.getIndexers().stream().sorted(Comparator.comparing(IndexerConfig::getName)).collect(Collectors.toList());
+        indexers = newConfig.getIndexers().stream().map(x -> changeSet.isIndexerChanged(x.getName()) ? x : oldIndexersByName.getOrDefault(x.getName(), x)).collect(Collectors.toList());
         downloading = newConfig.getDownloading();
         searching = newConfig.getSearching();
         auth = newConfig.getAuth();
         if (fireConfigChangedEvent) {
-            ConfigChangedEvent configChangedEvent = new ConfigChangedEvent(this, oldBaseConfig, this);
+            ConfigChangedEvent configChangedEvent = new ConfigChangedEvent(this, oldBaseConfig, this, changeSet);
             applicationEventPublisher.publishEvent(configChangedEvent);
         }
     }
 
+    private BaseConfig getCopy() {
+        try {
+            return ConfigCopier.copy(this);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Unable to copy config, falling back to copy using YAML: {}", e.getMessage());
+            return configReaderWriter.getCopy(this);
+        }
+    }
+
     public void save() {
         configReaderWriter.save(this);
     }
@@ -0,0 +1,149 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.config;
+
+import lombok.Getter;
+import org.nzbhydra.config.category.Category;
+import org.nzbhydra.config.indexer.IndexerConfig;
+
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * Lists what changed between two configs so that listeners of {@link ConfigChangedEvent} only need to rebuild what's
+ * affected.
+ * <p>
+ * Changed settings are identified by their path in the config, e.g. <tt>main.proxyHost</tt>. Config objects are compared
+ * field by field, anything else (including lists) as a whole. Indexers and categories are additionally compared by name.
+ */
+@Getter
+public class ConfigChangeSet {
+
+    private static final ConfigChangeSet UNKNOWN = new ConfigChangeSet(true);
+
+    private final boolean unknown;
+    private final Set<String> changedSettings = new TreeSet<>();
+    private final Set<String> addedIndexers = new TreeSet<>();
+    private final Set<String> removedIndexers = new TreeSet<>();
+    private final Set<String> changedIndexers = new TreeSet<>();
+    /**
+     * Names of added, removed or changed categories
+     */
+    private final Set<String> changedCategories = new TreeSet<>();
+
+    private ConfigChangeSet(boolean unknown) {
+        this.unknown = unknown;
+    }
+
+    /**
+     * @return A change set for which everything is changed, e.g. when the old config is not known
+     */
+    public static ConfigChangeSet unknown() {
+        return UNKNOWN;
+    }
+
+    public static ConfigChangeSet between(BaseConfig oldConfig, BaseConfig newConfig) {
+        if (oldConfig == null || newConfig == null) {
+            return UNKNOWN;
+        }
+        ConfigChangeSet changeSet = new ConfigChangeSet(false);
+        changeSet.compare("", oldConfig, newConfig);
+
+        compareByName(oldConfig.getIndexers(), newConfig.getIndexers(), IndexerConfig::getName, changeSet.addedIndexers, changeSet.removedIndexers, changeSet.changedIndexers);
+        Set<String> changedCategories = new HashSet<>();
+        compareByName(oldConfig.getCategoriesConfig().getCategories(), newConfig.getCategoriesConfig().getCategories(), Category::getName, changedCategories, changedCategories, changedCategories);
+        changeSet.changedCategories.addAll(changedCategories);
+        return changeSet;
+    }
+
+    /**
+     * @param path Path of a setting or a part of the config, e.g. <tt>main</tt> or <tt>main.proxyHost</tt>
+     * @return true if the setting or anything in the part of the config was changed
+     */
+    public boolean isChanged(String path) {
+        if (unknown) {
+            return true;
+        }
+        for (String changedSetting : changedSettings) {
+            if (changedSetting.equals(path) || changedSetting.startsWith(path + ".") || path.startsWith(changedSetting + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isAnythingChanged() {
+        return unknown || !changedSettings.isEmpty();
+    }
+
+    public boolean isIndexerChanged(String name) {
+        return unknown || addedIndexers.contains(name) || removedIndexers.contains(name) || changedIndexers.contains(name);
+    }
+
+    private void compare(String path, Object oldValue, Object newValue) {
+        if (ConfigCopier.isConfigObject(oldValue) && ConfigCopier.isConfigObject(newValue) && oldValue.getClass() == newValue.getClass()) {
+            for (Field field : ConfigCopier.getFields(oldValue.getClass())) {
+                compare(path.isEmpty() ? field.getName() : path + "." + field.getName(), ConfigCopier.getValue(field, oldValue), ConfigCopier.getValue(field, newValue));
+            }
+        } else if (!ConfigCopier.deepEquals(oldValue, newValue)) {
+            changedSettings.add(path);
+        }
+    }
+
+    private static <T> void compareByName(List<T> oldElements, List<T> newElements, Function<T, String> nameFunction, Set<String> added, Set<String> removed, Set<String> changed) {
+        Map<String, T> oldByName = byName(oldElements, nameFunction);
+        Map<String, T> newByName = byName(newElements, nameFunction);
+        for (Map.Entry<String, T> entry : newByName.entrySet()) {
+            if (!oldByName.containsKey(entry.getKey())) {
+                added.add(entry.getKey());
+            } else if (!ConfigCopier.deepEquals(oldByName.get(entry.getKey()), entry.getValue())) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (String name : oldByName.keySet()) {
+            if (!newByName.containsKey(name)) {
+                removed.add(name);
+            }
+        }
+    }
+
+    private static <T> Map<String, T> byName(List<T> elements, Function<T, String> nameFunction) {
+        if (elements == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, T> byName = new LinkedHashMap<>();
+        for (T element : elements) {
+            byName.put(nameFunction.apply(element), element);
+        }
+        return byName;
+    }
+
+    @Override
+    public String toString() {
+        if (unknown) {
+            return "ConfigChangeSet{unknown}";
+        }
+        return "ConfigChangeSet{settings=" + changedSettings + ", addedIndexers=" + addedIndexers + ", removedIndexers=" + removedIndexers + ", changedIndexers=" + changedIndexers + ", changedCategories=" + changedCategories + "}";
+    }
+}
@@ -8,6 +8,7 @@ public class ConfigChangedEvent extends ApplicationEvent {
 
     private BaseConfig oldConfig;
     private BaseConfig newConfig;
+    private ConfigChangeSet changeSet = ConfigChangeSet.unknown();
 
     /**
      * Create a new ApplicationEvent.
@@ -19,8 +20,13 @@ public class ConfigChangedEvent extends ApplicationEvent {
     }
 
     public ConfigChangedEvent(Object source, BaseConfig oldConfig, BaseConfig newConfig) {
+        this(source, oldConfig, newConfig, ConfigChangeSet.between(oldConfig, newConfig));
+    }
+
+    public ConfigChangedEvent(Object source, BaseConfig oldConfig, BaseConfig newConfig, ConfigChangeSet changeSet) {
         super(source);
         this.oldConfig = oldConfig;
         this.newConfig = newConfig;
+        this.changeSet = changeSet;
     }
 }
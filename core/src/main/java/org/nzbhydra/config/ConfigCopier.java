@@ -0,0 +1,207 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.config;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Copies and compares config objects field by field. The same fields are handled as when writing the config to YAML and
+ * reading it again (fields annotated with {@link JsonIgnore} and transient ones are skipped), but without serializing
+ * anything.
+ * <p>
+ * Config objects are instances of classes from our own packages (except enums). They're copied using their no-args
+ * constructor. Lists, sets and maps are copied, values which are known to be immutable are reused.
+ */
+public class ConfigCopier {
+
+    private static final ConcurrentMap<Class<?>, List<Field>> FIELDS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Class<?>, Constructor<?>> CONSTRUCTORS = new ConcurrentHashMap<>();
+
+    /**
+     * @throws IllegalArgumentException If the object contains anything that can't be copied
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T copy(T toCopy) {
+        return (T) copyValue(toCopy);
+    }
+
+    /**
+     * Compares the values like {@link java.util.Objects#equals(Object, Object)} but ignores the fields which are not copied
+     */
+    public static boolean deepEquals(Object a, Object b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null || a.getClass() != b.getClass()) {
+            return false;
+        }
+        if (isConfigObject(a)) {
+            for (Field field : getFields(a.getClass())) {
+                if (!deepEquals(getValue(field, a), getValue(field, b))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (a instanceof List) {
+            List<?> listA = (List<?>) a;
+            List<?> listB = (List<?>) b;
+            if (listA.size() != listB.size()) {
+                return false;
+            }
+            Iterator<?> iteratorB = listB.iterator();
+            for (Object elementA : listA) {
+                if (!deepEquals(elementA, iteratorB.next())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (a instanceof Map) {
+            Map<?, ?> mapA = (Map<?, ?>) a;
+            Map<?, ?> mapB = (Map<?, ?>) b;
+            if (!mapA.keySet().equals(mapB.keySet())) {
+                return false;
+            }
+            return mapA.entrySet().stream().allMatch(x -> deepEquals(x.getValue(), mapB.get(x.getKey())));
+        }
+        return a.equals(b);
+    }
+
+    static boolean isConfigObject(Object value) {
+        return value != null && !(value instanceof Enum) && value.getClass().getName().startsWith("org.nzbhydra.");
+    }
+
+    static List<Field> getFields(Class<?> clazz) {
+        return FIELDS.computeIfAbsent(clazz, ConfigCopier::findFields);
+    }
+
+    static Object getValue(Field field, Object object) {
+        try {
+            return field.get(object);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Unable to read field " + field, e);
+        }
+    }
+
+    private static Object copyValue(Object value) {
+        if (value == null || isImmutable(value)) {
+            return value;
+        }
+        if (isConfigObject(value)) {
+            return copyConfigObject(value);
+        }
+        if (value instanceof List) {
+            List<Object> copy = new ArrayList<>(((List<?>) value).size());
+            copyElements((List<?>) value, copy);
+            return copy;
+        }
+        if (value instanceof SortedSet) {
+            SortedSet<Object> copy = new TreeSet<>(((SortedSet<Object>) value).comparator());
+            copyElements((Set<?>) value, copy);
+            return copy;
+        }
+        if (value instanceof Set) {
+            Set<Object> copy = new LinkedHashSet<>();
+            copyElements((Set<?>) value, copy);
+            return copy;
+        }
+        if (value instanceof Map) {
+            Map<Object, Object> copy = value instanceof SortedMap ? new TreeMap<>(((SortedMap<Object, Object>) value).comparator()) : new LinkedHashMap<>();
+            for (Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                copy.put(copyValue(entry.getKey()), copyValue(entry.getValue()));
+            }
+            return copy;
+        }
+        throw new IllegalArgumentException("Unable to copy value of type " + value.getClass().getName());
+    }
+
+    private static void copyElements(Collection<?> source, Collection<Object> target) {
+        for (Object element : source) {
+            target.add(copyValue(element));
+        }
+    }
+
+    private static Object copyConfigObject(Object value) {
+        Constructor<?> constructor = CONSTRUCTORS.computeIfAbsent(value.getClass(), ConfigCopier::findConstructor);
+        try {
+            Object copy = constructor.newInstance();
+            for (Field field : getFields(value.getClass())) {
+                field.set(copy, copyValue(field.get(value)));
+            }
+            return copy;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Unable to copy instance of " + value.getClass().getName(), e);
+        }
+    }
+
+    private static boolean isImmutable(Object value) {
+        return value instanceof String
+                || value instanceof Number && value.getClass().getName().startsWith("java.lang.")
+                || value instanceof Boolean
+                || value instanceof Character
+                || value instanceof Enum
+                || value instanceof TemporalAccessor && value.getClass().getName().startsWith("java.time.");
+    }
+
+    private static Constructor<?> findConstructor(Class<?> clazz) {
+        try {
+            Constructor<?> constructor = clazz.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor;
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("No constructor without parameters found in " + clazz.getName(), e);
+        }
+    }
+
+    private static List<Field> findFields(Class<?> clazz) {
+        List<Field> fields = new ArrayList<>();
+        for (Class<?> current = clazz; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic() || field.isAnnotationPresent(JsonIgnore.class)) {
+                    continue;
+                }
+                field.setAccessible(true);
+                fields.add(field);
+            }
+        }
+        return Collections.unmodifiableList(fields);
+    }
+
+}
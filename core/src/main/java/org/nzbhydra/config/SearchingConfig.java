@@ -19,6 +19,7 @@ import java.util.Optional;
 @ConfigurationProperties
 public class SearchingConfig extends ValidatingConfig<SearchingConfig> {
 
+    private boolean adaptiveTimeouts = false;
     @JsonFormat(shape = Shape.STRING)
     private SearchSourceRestriction applyRestrictions = SearchSourceRestriction.BOTH;
 
@@ -29,6 +30,7 @@ public class SearchingConfig extends ValidatingConfig<SearchingConfig> {
     private String forbiddenRegex;
     private List<String> forbiddenWords = new ArrayList<>();
     private SearchSourceRestriction generateQueries = SearchSourceRestriction.NONE;
+    private boolean hedgeRequests = false;
     @JsonFormat(shape = Shape.STRING)
     private SearchSourceRestriction idFallbackToQueryGeneration = SearchSourceRestriction.NONE;
     private boolean ignorePassworded = false;
@@ -42,14 +44,17 @@ public class SearchingConfig extends ValidatingConfig<SearchingConfig> {
     private FileDownloadAccessType nzbAccessType = FileDownloadAccessType.REDIRECT;
     @JsonSetter()
     private List<String> removeTrailing = new ArrayList<>();
+    private boolean prefetchRecurringSearches = false;
     private String requiredRegex;
     private List<String> requiredWords = new ArrayList<>();
     private boolean showQuickFilterButtons = true;
+    private boolean skipRateLimitedIndexers = false;
     private Integer timeout = 30;
     private boolean transformNewznabCategories = true;
     private String userAgent = "NZBHydra2";
     private List<String> userAgents = new ArrayList<>(Arrays.asList("Mozilla", "Sonarr", "Radarr", "CouchPotato", "LazyLibrarian", "NZBGet", "sabNZBd"));
     private boolean useOriginalCategories = false;
+    private boolean warmIndexerConnections = false;
     private boolean wrapApiErrors = false;
 
     public SearchingConfig() {
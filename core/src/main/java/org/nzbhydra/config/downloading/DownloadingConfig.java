@@ -36,6 +36,8 @@ public class DownloadingConfig extends ValidatingConfig<DownloadingConfig> {
     private String saveTorrentsTo;
     private boolean sendMagnetLinks;
     private boolean updateStatuses;
+    private int nzbCacheSizeMb;
+    private int nzbCacheMaxAgeHours = 24;
 
     @Override
     public ConfigValidationResult validateConfig(BaseConfig oldConfig, DownloadingConfig newConfig) {
@@ -55,6 +57,12 @@ public class DownloadingConfig extends ValidatingConfig<DownloadingConfig> {
                 }
             }
         }
+        if (nzbCacheSizeMb < 0) {
+            errors.add("NZB cache size must not be negative");
+        }
+        if (nzbCacheMaxAgeHours < 1) {
+            errors.add("NZB cache max age must be at least one hour");
+        }
         List<ConfigValidationResult> validationResults = downloaders.stream().map(downloaderConfig -> downloaderConfig.validateConfig(oldConfig, downloaderConfig)).collect(Collectors.toList());
         List<String> downloaderErrors = validationResults.stream().map(ConfigValidationResult::getErrorMessages).flatMap(List::stream).collect(Collectors.toList());
         errors.addAll(downloaderErrors);
@@ -74,7 +74,10 @@ public class IndexerConfig extends ValidatingConfig<IndexerConfig> {
     private String name;
     @SensitiveData
     private String password = null;
+    private Integer prefetchLimit = null;
     private boolean preselect = true;
+    private Integer requestBurst = null;
+    private Integer requestsPerMinute = null;
     private List<String> schedule = new ArrayList<>();
     private Integer score = null;
     private SearchModuleType searchModuleType = SearchModuleType.NEWZNAB;
@@ -103,6 +106,18 @@ public class IndexerConfig extends ValidatingConfig<IndexerConfig> {
         return Optional.ofNullable(loadLimitOnRandom);
     }
 
+    public Optional<Integer> getPrefetchLimit() {
+        return Optional.ofNullable(prefetchLimit);
+    }
+
+    public Optional<Integer> getRequestBurst() {
+        return Optional.ofNullable(requestBurst);
+    }
+
+    public Optional<Integer> getRequestsPerMinute() {
+        return Optional.ofNullable(requestsPerMinute);
+    }
+
     public Optional<Integer> getGeneralMinSize() {
         return Optional.ofNullable(generalMinSize);
     }
@@ -182,6 +197,15 @@ public class IndexerConfig extends ValidatingConfig<IndexerConfig> {
         if (getDownloadLimit().isPresent() && getDownloadLimit().get() <= 0) {
             validationResult.getErrorMessages().add("Indexer " + getName() + " has a download limit of 0 or lower which doesn't make sense: ");
         }
+        if (getPrefetchLimit().isPresent() && getPrefetchLimit().get() <= 0) {
+            validationResult.getErrorMessages().add("Indexer " + getName() + " has a prefetch limit of 0 or lower which doesn't make sense");
+        }
+        if (getRequestsPerMinute().isPresent() && getRequestsPerMinute().get() <= 0) {
+            validationResult.getErrorMessages().add("Indexer " + getName() + " has a rate limit of 0 or lower which doesn't make sense");
+        }
+        if (getRequestBurst().isPresent() && getRequestBurst().get() <= 0) {
+            validationResult.getErrorMessages().add("Indexer " + getName() + " has a rate limit burst of 0 or lower which doesn't make sense");
+        }
 
         return validationResult;
     }
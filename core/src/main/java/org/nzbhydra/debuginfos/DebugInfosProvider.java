@@ -3,24 +3,27 @@ package org.nzbhydra.debuginfos;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import org.nzbhydra.Jackson;
 import org.nzbhydra.NzbHydra;
+import org.nzbhydra.backup.StreamingZipArchiver;
 import org.nzbhydra.config.ConfigProvider;
 import org.nzbhydra.logging.LogAnonymizer;
 import org.nzbhydra.update.UpdateManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
 import java.nio.file.Files;
 import java.util.stream.Stream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 @Component
 public class DebugInfosProvider {
@@ -35,8 +38,13 @@ public class DebugInfosProvider {
     private UpdateManager updateManager;
     @PersistenceContext
     private EntityManager entityManager;
+    @Autowired
+    private ApplicationEventPublisher applicationEventPublisher;
 
-    public byte[] getDebugInfosAsZip() throws IOException {
+    /**
+     * Writes log, config and other debug infos as ZIP directly to the given stream. Files are streamed, not loaded into memory.
+     */
+    public void writeDebugInfosAsZip(OutputStream outputStream) throws IOException {
         logger.info("Creating debug infos");
         logger.info("NZBHydra2 version: {}", updateManager.getCurrentVersionString());
         logger.info("Java command line: {}", System.getProperty("sun.java.command"));
@@ -59,32 +67,28 @@ public class DebugInfosProvider {
 
         String anonymizedConfig = getAnonymizedConfig();
         String anonymizedLog = logAnonymizer.getAnonymizedLog();
-        File tempFile = File.createTempFile("nzbhydradebuginfos", "zip");
-        try (FileOutputStream fos = new FileOutputStream(tempFile)) {
-            try (ZipOutputStream zos = new ZipOutputStream(fos)) {
-                writeStringToZip(zos, "nzbhy" +
-                        "dra.log", anonymizedLog.getBytes("UTF-8"));
-                writeStringToZip(zos, "nzbhydra-config.yaml", anonymizedConfig.getBytes("UTF-8"));
-                File traceFile = new File(new File(NzbHydra.getDataFolder(), "database"), "nzbhydra.trace.db");
-                if (traceFile.exists()) {
-                    writeFileToZip(zos, "nzbhydra.trace.db", traceFile);
-                }
-                File logsFolder = new File(NzbHydra.getDataFolder(), "logs");
-                //Write all GC logs
-                File[] files = logsFolder.listFiles((dir, name) -> name.startsWith("gclog"));
-                if (files != null) {
-                    for (File file : files) {
-                        writeFileToZip(zos, file.getName(), file);
-                    }
-                }
-                //Write wrapper log
-                File wrapperLog = new File(logsFolder, "wrapper.log");
-                if (wrapperLog.exists()) {
-                    writeFileToZip(zos, "wrapper.log", wrapperLog);
+        try (StreamingZipArchiver archiver = new StreamingZipArchiver("debuginfos", outputStream, applicationEventPublisher::publishEvent)) {
+            archiver.addString("nzbhydra.log", anonymizedLog);
+            archiver.addString("nzbhydra-config.yaml", anonymizedConfig);
+            File traceFile = new File(new File(NzbHydra.getDataFolder(), "database"), "nzbhydra.trace.db");
+            if (traceFile.exists()) {
+                archiver.addFile("nzbhydra.trace.db", traceFile);
+            }
+            File logsFolder = new File(NzbHydra.getDataFolder(), "logs");
+            //Write all GC logs
+            File[] files = logsFolder.listFiles((dir, name) -> name.startsWith("gclog"));
+            if (files != null) {
+                for (File file : files) {
+                    archiver.addFile(file.getName(), file);
                 }
             }
+            //Write wrapper log
+            File wrapperLog = new File(logsFolder, "wrapper.log");
+            if (wrapperLog.exists()) {
+                archiver.addFile("wrapper.log", wrapperLog);
+            }
+            archiver.finish();
         }
-        return Files.readAllBytes(tempFile.toPath());
     }
 
     protected void logDatabaseFolderSize() {
@@ -110,6 +114,15 @@ public class DebugInfosProvider {
         }
     }
 
+    /**
+     * Returns the current heap usage and number of threads, e.g. to be sampled by load tests.
+     */
+    public JvmStats getJvmStats() {
+        MemoryUsage heapUsage = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        return new JvmStats(heapUsage.getUsed(), heapUsage.getCommitted(), heapUsage.getMax(), threadMXBean.getThreadCount(), threadMXBean.getPeakThreadCount());
+    }
+
     public static boolean isRunInDocker() {
         return new File("/.dockerenv").exists();
     }
@@ -131,20 +144,6 @@ public class DebugInfosProvider {
         return String.valueOf(affectedRows);
     }
 
-    private void writeStringToZip(ZipOutputStream zos, String name, byte[] bytes) throws IOException {
-        ZipEntry zipEntry = new ZipEntry(name);
-        zipEntry.setSize(bytes.length);
-        zos.putNextEntry(zipEntry);
-        zos.write(bytes);
-        zos.closeEntry();
-    }
-
-    private void writeFileToZip(ZipOutputStream zos, String name, File file) throws IOException {
-        byte[] bytes = Files.readAllBytes(file.toPath());
-        writeStringToZip(zos, name, bytes);
-    }
-
-
     private String getAnonymizedConfig() throws JsonProcessingException {
         return Jackson.SENSITIVE_YAML_MAPPER.writeValueAsString(configProvider.getBaseConfig());
     }
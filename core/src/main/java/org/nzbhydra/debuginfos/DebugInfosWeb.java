@@ -13,6 +13,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.annotation.Secured;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletResponse;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
@@ -61,15 +62,22 @@ public class DebugInfosWeb {
 
     @Secured({"ROLE_ADMIN"})
     @RequestMapping(value = "/internalapi/debuginfos/logandconfig", produces = "application/zip", method = RequestMethod.GET)
-    public byte[] logAndInfosAsZip() throws IOException {
+    public void logAndInfosAsZip(HttpServletResponse response) throws IOException {
         try {
-            return debugInfos.getDebugInfosAsZip();
+            response.setContentType("application/zip");
+            debugInfos.writeDebugInfosAsZip(response.getOutputStream());
         } catch (IOException e) {
             logger.error("Error while getting debug infos", e);
             throw e;
         }
     }
 
+    @Secured({"ROLE_ADMIN"})
+    @RequestMapping(value = "/internalapi/debuginfos/jvmstats", method = RequestMethod.GET)
+    public JvmStats getJvmStats() {
+        return debugInfos.getJvmStats();
+    }
+
     @Secured({"ROLE_ADMIN"})
     @RequestMapping(value = "/internalapi/debuginfos/executesqlquery", method = RequestMethod.POST)
     public GenericResponse executeSqlQuery(@RequestBody String sql) throws IOException {
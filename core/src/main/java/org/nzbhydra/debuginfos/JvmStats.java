@@ -0,0 +1,18 @@
+package org.nzbhydra.debuginfos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class JvmStats {
+
+    private long heapUsed;
+    private long heapCommitted;
+    private long heapMax;
+    private int threadCount;
+    private int peakThreadCount;
+
+}
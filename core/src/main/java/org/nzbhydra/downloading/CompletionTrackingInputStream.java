@@ -0,0 +1,127 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.downloading;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Wraps the stream of a file being downloaded from an indexer and calls exactly one of the given callbacks when it's
+ * closed: the success callback if the stream was read completely, the failure callback with an error message otherwise.
+ * <p>
+ * The stream is usually closed after it was written to the client. If that never happens (e.g. an error occurs before
+ * the response is written) it's closed when the request is completed, see {@link #closeWhenRequestCompleted()}.
+ */
+public class CompletionTrackingInputStream extends FilterInputStream {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompletionTrackingInputStream.class);
+    static final String REQUEST_ATTRIBUTE = CompletionTrackingInputStream.class.getName();
+
+    private final Runnable onSuccess;
+    private final Consumer<String> onFailure;
+    /*
+    Read by whichever thread closes the stream: the one writing the response or the one completing the request
+     */
+    private volatile boolean endReached = false;
+    private volatile String error;
+    private final AtomicBoolean completed = new AtomicBoolean(false);
+
+    public CompletionTrackingInputStream(InputStream in, Runnable onSuccess, Consumer<String> onFailure) {
+        super(in);
+        this.onSuccess = onSuccess;
+        this.onFailure = onFailure;
+    }
+
+    @Override
+    public int read() throws IOException {
+        try {
+            int read = super.read();
+            endReached |= read == -1;
+            return read;
+        } catch (IOException e) {
+            error = e.getMessage();
+            throw e;
+        }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        try {
+            int read = super.read(b, off, len);
+            endReached |= read == -1;
+            return read;
+        } catch (IOException e) {
+            error = e.getMessage();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!completed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            super.close();
+        } finally {
+            if (error != null) {
+                onFailure.accept(error);
+            } else if (!endReached) {
+                onFailure.accept("Transfer was aborted before it was completed");
+            } else {
+                onSuccess.run();
+            }
+        }
+    }
+
+    /**
+     * Registers the stream with the current request so that it's closed by {@link #closeRegisteredStream(HttpServletRequest)}
+     * when the request is completed. Does nothing when not called during a request.
+     */
+    public CompletionTrackingInputStream closeWhenRequestCompleted() {
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        if (requestAttributes != null) {
+            requestAttributes.setAttribute(REQUEST_ATTRIBUTE, this, RequestAttributes.SCOPE_REQUEST);
+        }
+        return this;
+    }
+
+    /**
+     * Closes the stream registered with the request, if any. Has no effect if the stream was already closed.
+     */
+    public static void closeRegisteredStream(HttpServletRequest request) {
+        Object stream = request.getAttribute(REQUEST_ATTRIBUTE);
+        if (!(stream instanceof CompletionTrackingInputStream)) {
+            return;
+        }
+        request.removeAttribute(REQUEST_ATTRIBUTE);
+        try {
+            ((CompletionTrackingInputStream) stream).close();
+        } catch (IOException e) {
+            logger.debug("Error while closing stream after request was completed: {}", e.getMessage());
+        }
+    }
+}
@@ -16,12 +16,16 @@
 
 package org.nzbhydra.downloading;
 
+import com.google.common.io.ByteStreams;
 import lombok.Data;
 import org.nzbhydra.searching.dtoseventsenums.SearchResultItem;
+import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.util.regex.Matcher;
@@ -30,6 +34,11 @@ import java.util.regex.Pattern;
 @Data
 public class DownloadResult {
     private byte[] content;
+    /**
+     * Stream of the file's content if it's passed through to the client without loading it into memory
+     */
+    private InputStream contentStream;
+    private long contentLength = -1;
     private String url;
     private String title;
     private boolean successful;
@@ -53,6 +62,19 @@ public class DownloadResult {
         this.statusCode = statusCode;
     }
 
+    /**
+     * @return The file's content. If the result is streamed the stream is read completely and closed
+     */
+    public byte[] readContent() throws IOException {
+        if (content == null && contentStream != null) {
+            try (InputStream inputStream = contentStream) {
+                content = ByteStreams.toByteArray(inputStream);
+            }
+            contentStream = null;
+        }
+        return content;
+    }
+
     public boolean isRedirect() {
         return url != null;
     }
@@ -78,7 +100,15 @@ public class DownloadResult {
         } else {
             HttpHeaders headers = new HttpHeaders();
             headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + getFileName().replace("\\", "\\\\").replace("\"", "\\\"") + "\"");
-            response = new ResponseEntity<>(getContent(), headers, HttpStatus.OK);
+            if (contentStream != null) {
+                if (contentLength >= 0) {
+                    headers.setContentLength(contentLength);
+                }
+                //Written to the client and closed by the resource message converter
+                response = new ResponseEntity<>(new InputStreamResource(contentStream), headers, HttpStatus.OK);
+            } else {
+                response = new ResponseEntity<>(getContent(), headers, HttpStatus.OK);
+            }
         }
         return response;
     }
@@ -100,6 +130,13 @@ public class DownloadResult {
         return new DownloadResult(title, content, null, true, null, entity);
     }
 
+    public static DownloadResult createSuccessfulStreamingResult(String title, InputStream contentStream, long contentLength, FileDownloadEntity entity) {
+        DownloadResult result = new DownloadResult(title, null, null, true, null, entity);
+        result.setContentStream(contentStream);
+        result.setContentLength(contentLength);
+        return result;
+    }
+
     public static DownloadResult createSuccessfulRedirectResult(String title, String url, FileDownloadEntity entity) {
         return new DownloadResult(title, null, url, true, null, entity);
     }
@@ -1,14 +1,19 @@
 package org.nzbhydra.downloading;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
 import org.nzbhydra.config.ConfigProvider;
 import org.nzbhydra.config.MainConfig;
 import org.nzbhydra.config.downloading.FileDownloadAccessType;
+import org.nzbhydra.downloading.NzbCache.CachedNzb;
 import org.nzbhydra.indexers.*;
+import org.nzbhydra.logging.MdcThreadPoolExecutor;
 import org.nzbhydra.okhttp.HydraOkHttp3ClientHttpRequestFactory;
+import org.nzbhydra.okhttp.TooManyRequestsException;
 import org.nzbhydra.searching.SearchModuleProvider;
 import org.nzbhydra.searching.db.SearchResultEntity;
 import org.nzbhydra.searching.db.SearchResultRepository;
@@ -20,18 +25,30 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.util.UriComponentsBuilder;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -41,6 +58,12 @@ public class FileHandler {
 
     private static final Logger logger = LoggerFactory.getLogger(FileHandler.class);
 
+    private static final int ZIP_DOWNLOAD_WINDOW = 4;
+    protected static final String ZIP_FAILURES_ENTRY = "Failed downloads.txt";
+    /**
+     * The IDs of the search results added to a ZIP are written to its comment so that the UI can tell which were downloaded
+     */
+
     @Autowired
     protected ConfigProvider configProvider;
     @Autowired
@@ -48,23 +71,22 @@ public class FileHandler {
     @Autowired
     protected FileDownloadRepository downloadRepository;
     @Autowired
-    private IndexerApiAccessEntityShortRepository shortRepository;
+    private IndexerApiAccessWriter apiAccessWriter;
     @Autowired
     protected SearchModuleProvider searchModuleProvider;
     @Autowired
     protected HydraOkHttp3ClientHttpRequestFactory clientHttpRequestFactory;
     @Autowired
+    protected IndexerRateLimiter rateLimiter;
+    @Autowired
     protected ApplicationEventPublisher eventPublisher;
     @Autowired
     protected UrlCalculator urlCalculator;
+    @Autowired
+    protected NzbCache nzbCache;
 
     public DownloadResult getFileByGuid(long guid, FileDownloadAccessType fileDownloadAccessType, SearchSource accessSource) throws InvalidSearchResultIdException {
-        Optional<SearchResultEntity> optionalResult = searchResultRepository.findById(guid);
-        if (!optionalResult.isPresent()) {
-            logger.error("Download request with invalid/outdated GUID {}", guid);
-            throw new InvalidSearchResultIdException(guid, accessSource == SearchSource.INTERNAL);
-        }
-        SearchResultEntity result = optionalResult.get();
+        SearchResultEntity result = getSearchResult(guid, accessSource);
         String downloadType = result.getDownloadType() == DownloadType.NZB ? "NZB" : "Torrent";
         logger.info("{} download request for \"{}\" from indexer {}", downloadType, result.getTitle(), result.getIndexer().getName());
 
@@ -80,24 +102,122 @@ public class FileHandler {
         }
     }
 
+    /**
+     * Like {@link #getFileByGuid(long, FileDownloadAccessType, SearchSource)} but when proxying the file's content isn't
+     * loaded into memory. Instead the returned result contains a stream which must be written to the client and closed.
+     * The download is recorded when the stream is closed, at the latest when the request is completed.
+     */
+    public DownloadResult streamFileByGuid(long guid, FileDownloadAccessType fileDownloadAccessType, SearchSource accessSource) throws InvalidSearchResultIdException {
+        SearchResultEntity result = getSearchResult(guid, accessSource);
+        String downloadType = result.getDownloadType() == DownloadType.NZB ? "NZB" : "Torrent";
+        logger.info("{} download request for \"{}\" from indexer {}", downloadType, result.getTitle(), result.getIndexer().getName());
+
+        if (fileDownloadAccessType == FileDownloadAccessType.REDIRECT) {
+            return handleRedirect(accessSource, result);
+        }
+        if (result.getLink().contains("magnet:")) {
+            logger.warn("Unable to download magnet link as file");
+            return DownloadResult.createErrorResult("Unable to download magnet link as file");
+        }
+        if (result.getDownloadType() == DownloadType.NZB) {
+            Optional<CachedNzb> cachedNzb = nzbCache.get(result.getId());
+            if (cachedNzb.isPresent()) {
+                try {
+                    return streamCachedNzb(accessSource, result, cachedNzb.get());
+                } catch (IOException e) {
+                    logger.warn("Unable to read cached NZB for \"{}\". Will download it from the indexer: {}", result.getTitle(), e.getMessage());
+                }
+            }
+        }
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        Response response;
+        try {
+            response = openDownload(result);
+        } catch (IOException e) {
+            logger.error("Error while downloading NZB from URL {}: {}", result.getLink(), e.getMessage());
+            FileDownloadEntity downloadEntity = saveDownload(result, accessSource, FileDownloadStatus.NZB_DOWNLOAD_ERROR, e.getMessage());
+            return DownloadResult.createErrorResult("An error occurred while downloading " + result.getTitle() + " from indexer " + result.getIndexer().getName(), downloadEntity);
+        } catch (MagnetLinkRedirectException e) {
+            logger.warn("Unable to download magnet link as file");
+            return DownloadResult.createErrorResult("Unable to download magnet link as file");
+        }
+
+        try {
+            ResponseBody body = response.body();
+            FileDownloadEntity downloadEntity = new FileDownloadEntity(result, FileDownloadAccessType.PROXY, accessSource, FileDownloadStatus.NZB_DOWNLOAD_SUCCESSFUL, null);
+            InputStream bodyStream = result.getDownloadType() == DownloadType.NZB ? nzbCache.caching(result.getId(), body.byteStream()) : body.byteStream();
+            CompletionTrackingInputStream contentStream = new CompletionTrackingInputStream(bodyStream,
+                    () -> {
+                        logger.info("{} download from indexer successfully completed in {}ms", downloadType, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+                        saveDownload(downloadEntity, true);
+                        response.close();
+                    },
+                    error -> {
+                        logger.error("Error while streaming NZB from URL {}: {}", result.getLink(), error);
+                        downloadEntity.setStatus(FileDownloadStatus.NZB_DOWNLOAD_ERROR);
+                        downloadEntity.setError(error);
+                        saveDownload(downloadEntity, false);
+                        response.close();
+                    }).closeWhenRequestCompleted();
+            return DownloadResult.createSuccessfulStreamingResult(result.getTitle(), contentStream, body.contentLength(), downloadEntity);
+        } catch (RuntimeException e) {
+            response.close();
+            throw e;
+        }
+    }
+
+    private DownloadResult streamCachedNzb(SearchSource accessSource, SearchResultEntity result, CachedNzb cachedNzb) throws IOException {
+        logger.info("Using cached NZB for \"{}\"", result.getTitle());
+        FileDownloadEntity downloadEntity = new FileDownloadEntity(result, FileDownloadAccessType.PROXY, accessSource, FileDownloadStatus.NZB_DOWNLOAD_SUCCESSFUL, null);
+        //The indexer isn't accessed so only the download itself is recorded
+        CompletionTrackingInputStream contentStream = new CompletionTrackingInputStream(cachedNzb.openStream(),
+                () -> saveCachedDownload(downloadEntity),
+                error -> {
+                    logger.error("Error while streaming cached NZB for \"{}\": {}", result.getTitle(), error);
+                    downloadEntity.setStatus(FileDownloadStatus.NZB_DOWNLOAD_ERROR);
+                    downloadEntity.setError(error);
+                    saveCachedDownload(downloadEntity);
+                }).closeWhenRequestCompleted();
+        return DownloadResult.createSuccessfulStreamingResult(result.getTitle(), contentStream, cachedNzb.getSize(), downloadEntity);
+    }
+
+    private SearchResultEntity getSearchResult(long guid, SearchSource accessSource) throws InvalidSearchResultIdException {
+        Optional<SearchResultEntity> optionalResult = searchResultRepository.findById(guid);
+        if (!optionalResult.isPresent()) {
+            logger.error("Download request with invalid/outdated GUID {}", guid);
+            throw new InvalidSearchResultIdException(guid, accessSource == SearchSource.INTERNAL);
+        }
+        return optionalResult.get();
+    }
+
     public DownloadResult handleContentDownload(SearchSource accessSource, SearchResultEntity result, String downloadType) throws MagnetLinkRedirectException {
         if (result.getLink().contains("magnet:")) {
             logger.warn("Unable to download magnet link as file");
             return DownloadResult.createErrorResult("Unable to download magnet link as file");
         }
         byte[] fileContent;
+        if (result.getDownloadType() == DownloadType.NZB) {
+            Optional<CachedNzb> cachedNzb = nzbCache.get(result.getId());
+            if (cachedNzb.isPresent()) {
+                try {
+                    //Not loaded into memory, the caller reads the content when it needs it
+                    InputStream contentStream = cachedNzb.get().openStream();
+                    logger.info("Using cached NZB for \"{}\"", result.getTitle());
+                    FileDownloadEntity downloadEntity = new FileDownloadEntity(result, FileDownloadAccessType.PROXY, accessSource, FileDownloadStatus.NZB_DOWNLOAD_SUCCESSFUL, null);
+                    saveCachedDownload(downloadEntity);
+                    return DownloadResult.createSuccessfulStreamingResult(result.getTitle(), contentStream, cachedNzb.get().getSize(), downloadEntity);
+                } catch (IOException e) {
+                    logger.warn("Unable to read cached NZB for \"{}\". Will download it from the indexer: {}", result.getTitle(), e.getMessage());
+                }
+            }
+        }
         Stopwatch stopwatch = Stopwatch.createStarted();
         try {
             fileContent = downloadFile(result);
         } catch (IOException e) {
             //LATER get status code and use that
             logger.error("Error while downloading NZB from URL {}: {}", result.getLink(), e.getMessage());
-            FileDownloadEntity downloadEntity = new FileDownloadEntity(result, FileDownloadAccessType.PROXY, accessSource, FileDownloadStatus.NZB_DOWNLOAD_ERROR, e.getMessage());
-
-            downloadRepository.save(downloadEntity);
-            shortRepository.save(new IndexerApiAccessEntityShort(result.getIndexer(), false, IndexerApiAccessType.NZB));
-
-            eventPublisher.publishEvent(new FileDownloadEvent(downloadEntity));
+            FileDownloadEntity downloadEntity = saveDownload(result, accessSource, FileDownloadStatus.NZB_DOWNLOAD_ERROR, e.getMessage());
             return DownloadResult.createErrorResult("An error occurred while downloading " + result.getTitle() + " from indexer " + result.getIndexer().getName(), downloadEntity);
         }
 
@@ -105,97 +225,129 @@ public class FileHandler {
         //LATER CHeck content of file for errors, perhaps an indexer returns successful code but error in message for some reason
         logger.info("{} download from indexer successfully completed in {}ms", downloadType, responseTime);
 
-        FileDownloadEntity downloadEntity = new FileDownloadEntity(result, FileDownloadAccessType.PROXY, accessSource, FileDownloadStatus.NZB_DOWNLOAD_SUCCESSFUL, null);
+        FileDownloadEntity downloadEntity = saveDownload(result, accessSource, FileDownloadStatus.NZB_DOWNLOAD_SUCCESSFUL, null);
+        if (result.getDownloadType() == DownloadType.NZB) {
+            nzbCache.put(result.getId(), fileContent);
+        }
+        return DownloadResult.createSuccessfulDownloadResult(result.getTitle(), fileContent, downloadEntity);
+    }
+
+    private FileDownloadEntity saveDownload(SearchResultEntity result, SearchSource accessSource, FileDownloadStatus status, String error) {
+        FileDownloadEntity downloadEntity = new FileDownloadEntity(result, FileDownloadAccessType.PROXY, accessSource, status, error);
+        saveDownload(downloadEntity, status == FileDownloadStatus.NZB_DOWNLOAD_SUCCESSFUL);
+        return downloadEntity;
+    }
+
+    private void saveDownload(FileDownloadEntity downloadEntity, boolean successful) {
         downloadRepository.save(downloadEntity);
-        shortRepository.save(new IndexerApiAccessEntityShort(result.getIndexer(), true, IndexerApiAccessType.NZB));
+        apiAccessWriter.saveShort(new IndexerApiAccessEntityShort(downloadEntity.getSearchResult().getIndexer(), successful, IndexerApiAccessType.NZB));
         eventPublisher.publishEvent(new FileDownloadEvent(downloadEntity));
+    }
 
-        return DownloadResult.createSuccessfulDownloadResult(result.getTitle(), fileContent, downloadEntity);
+    private void saveCachedDownload(FileDownloadEntity downloadEntity) {
+        downloadRepository.save(downloadEntity);
+        eventPublisher.publishEvent(new FileDownloadEvent(downloadEntity));
     }
 
     public DownloadResult handleRedirect(SearchSource accessSource, SearchResultEntity result) {
         logger.debug("Redirecting to " + result.getLink());
         FileDownloadEntity downloadEntity = new FileDownloadEntity(result, FileDownloadAccessType.REDIRECT, accessSource, FileDownloadStatus.REQUESTED, null);
         downloadRepository.save(downloadEntity);
-        shortRepository.save(new IndexerApiAccessEntityShort(result.getIndexer(), true, IndexerApiAccessType.NZB));
+        apiAccessWriter.saveShort(new IndexerApiAccessEntityShort(result.getIndexer(), true, IndexerApiAccessType.NZB));
         eventPublisher.publishEvent(new FileDownloadEvent(downloadEntity));
         return DownloadResult.createSuccessfulRedirectResult(result.getTitle(), result.getLink(), downloadEntity);
     }
 
 
-    public FileZipResponse getFilesAsZip(List<Long> guids) throws Exception {
-        List<File> files = new ArrayList<>();
-        Path tempDirectory = null;
-        List<Long> successfulIds = new ArrayList<>();
-        List<Long> failedIds = new ArrayList<>();
-        for (Long guid : guids) {
-            DownloadResult result = getFileByGuid(guid, FileDownloadAccessType.PROXY, SearchSource.INTERNAL);
-            if (!result.isSuccessful()) {
-                continue;
+    /**
+     * Downloads the files for the given search results and writes them as ZIP to the given stream. Up to
+     * {@value #ZIP_DOWNLOAD_WINDOW} files are downloaded at the same time and added in the order in which they're completed.
+     * Files which could not be downloaded are listed in an additional entry.
+     *
+     * @return The GUIDs of the search results whose files were added to the ZIP
+     */
+    public List<Long> writeFilesAsZip(List<Long> guids, OutputStream outputStream) throws IOException {
+        ExecutorService executor = MdcThreadPoolExecutor.newWithInheritedMdc(Math.max(1, Math.min(guids.size(), ZIP_DOWNLOAD_WINDOW)));
+        CompletionService<DownloadResult> completionService = new ExecutorCompletionService<>(executor);
+        Iterator<Long> guidIterator = guids.iterator();
+        Set<String> entryNames = new HashSet<>();
+        Map<Future<DownloadResult>, Long> guidsByDownload = new HashMap<>();
+        List<String> failures = new ArrayList<>();
+        List<Long> addedGuids = new ArrayList<>();
+        int running = 0;
+        try (ZipOutputStream zos = new ZipOutputStream(outputStream)) {
+            while (running < ZIP_DOWNLOAD_WINDOW && guidIterator.hasNext()) {
+                submitZipDownload(completionService, guidIterator.next(), guidsByDownload);
+                running++;
             }
-            try {
-                tempDirectory = Files.createTempDirectory("nzbhydra");
-                String title = result.getFileName().replaceAll("[\\\\/:*?\"<>|]", "_");
-                File tempFile = new File(tempDirectory.toFile(), title); //TODO make usable with torrents
-                logger.debug("Writing content to temp file {}", tempFile.getAbsolutePath());
-                Files.write(tempFile.toPath(), result.getContent());
-                files.add(tempFile);
-                successfulIds.add(guid);
-            } catch (IOException e) {
-                logger.error("Unable to write file content to temporary file: " + e.getMessage());
-                failedIds.add(guid);
+            while (running > 0) {
+                DownloadResult result;
+                Future<DownloadResult> download = completionService.take();
+                Long guid = guidsByDownload.remove(download);
+                try {
+                    result = download.get();
+                } catch (ExecutionException e) {
+                    logger.error("Unexpected error while downloading file for ZIP", e.getCause());
+                    result = DownloadResult.createErrorResult("Unexpected error: " + e.getCause().getMessage());
+                }
+                running--;
+                //Only start the next download when one is done so that at most the window's files are kept in memory
+                if (guidIterator.hasNext()) {
+                    submitZipDownload(completionService, guidIterator.next(), guidsByDownload);
+                    running++;
+                }
+                if (!result.isSuccessful()) {
+                    failures.add(result.getError());
+                    continue;
+                }
+                String fileName = result.getFileName().replaceAll("[\\\\/:*?\"<>|]", "_");
+                String entryName = fileName;
+                for (int i = 2; !entryNames.add(entryName); i++) {
+                    entryName = Files.getNameWithoutExtension(fileName) + " (" + i + ")." + Files.getFileExtension(fileName);
+                }
+                logger.debug("Adding {} to ZIP", entryName);
+                zos.putNextEntry(new ZipEntry(entryName));
+                if (result.getContentStream() != null) {
+                    try (InputStream contentStream = result.getContentStream()) {
+                        ByteStreams.copy(contentStream, zos);
+                    }
+                } else {
+                    zos.write(result.getContent());
+                }
+                zos.closeEntry();
+                zos.flush();
+                addedGuids.add(guid);
             }
+            if (!failures.isEmpty()) {
+                zos.putNextEntry(new ZipEntry(ZIP_FAILURES_ENTRY));
+                zos.write(String.join("\r\n", failures).getBytes(StandardCharsets.UTF_8));
+                zos.closeEntry();
+            }
+            logger.info("Successfully added {}/{} files to ZIP", guids.size() - failures.size(), guids.size());
+            return addedGuids;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while creating ZIP", e);
+        } finally {
+            executor.shutdownNow();
         }
-        if (files.isEmpty()) {
-            return new FileZipResponse(false, null, "No files could be retrieved", Collections.emptyList(), guids);
-        }
-        File zip = createZip(files);
-        logger.info("Successfully added {}/{} files to ZIP", files.size(), guids.size());
-        if (tempDirectory != null) {
-            tempDirectory.toFile().delete();
-        }
-
-        String message = failedIds.isEmpty() ? "All files successfully retrieved" : failedIds.size() + " files could not be loaded";
-        return new FileZipResponse(true, zip.getAbsolutePath(), message, successfulIds, failedIds);
-    }
-
-    public File createZip(List<File> nzbFiles) throws Exception {
-        logger.info("Creating ZIP with files");
-
-        File tempFile = File.createTempFile("nzbhydra", ".zip");
-        tempFile.deleteOnExit();
-        logger.debug("Using temp file {}", tempFile.getAbsolutePath());
-        FileOutputStream fos = new FileOutputStream(tempFile);
-        ZipOutputStream zos = new ZipOutputStream(fos);
-
-        for (File file : nzbFiles) {
-            addToZipFile(file, zos);
-            file.delete();
-        }
-
-        zos.close();
-        fos.close();
-
-        return tempFile;
     }
 
-    private static void addToZipFile(File file, ZipOutputStream zos) throws IOException {
-        logger.debug("Adding file {} to temporary ZIP file", file.getAbsolutePath());
-        FileInputStream fis = new FileInputStream(file);
-        ZipEntry zipEntry = new ZipEntry(file.getName());
-        zos.putNextEntry(zipEntry);
-
-        byte[] bytes = new byte[1024];
-        int length;
-        while ((length = fis.read(bytes)) >= 0) {
-            zos.write(bytes, 0, length);
-        }
-
-        zos.closeEntry();
-        fis.close();
+    private void submitZipDownload(CompletionService<DownloadResult> completionService, Long guid, Map<Future<DownloadResult>, Long> guidsByDownload) {
+        Future<DownloadResult> download = completionService.submit(() -> {
+            try {
+                DownloadResult result = getFileByGuid(guid, FileDownloadAccessType.PROXY, SearchSource.INTERNAL);
+                if (!result.isSuccessful() && result.getDownloadEntity() != null) {
+                    result.setError(result.getDownloadEntity().getSearchResult().getTitle() + ": " + result.getError());
+                }
+                return result;
+            } catch (InvalidSearchResultIdException e) {
+                return DownloadResult.createErrorResult(e.getMessage());
+            }
+        });
+        guidsByDownload.put(download, guid);
     }
 
-
     public String getDownloadLink(Long searchResultId, boolean internal, DownloadType downloadType) {
         UriComponentsBuilder builder = urlCalculator.getRequestBasedUriBuilder();
         String getName = downloadType == DownloadType.NZB ? "getnzb" : "gettorrent";
@@ -230,26 +382,60 @@ public class FileHandler {
     }
 
 
+    /**
+     * Updates the status of all given downloads in one transaction.
+     */
+    @Transactional
+    public void updateStatusByEntities(Collection<FileDownloadEntity> entities, FileDownloadStatus status) {
+        for (FileDownloadEntity entity : entities) {
+            logger.info("Updating download status of \"{}\" from {} to {}", entity.getSearchResult().getTitle(), entity.getStatus(), status);
+            entity.setStatus(status);
+        }
+        downloadRepository.saveAll(entities);
+    }
+
+
     protected byte[] downloadFile(SearchResultEntity result) throws IOException, MagnetLinkRedirectException {
+        try (Response response = openDownload(result)) {
+            return response.body().bytes();
+        }
+    }
+
+    /**
+     * Requests the file from the indexer, following redirects. The returned response is successful, has a body and must be closed by the caller.
+     */
+    protected Response openDownload(SearchResultEntity result) throws IOException, MagnetLinkRedirectException {
         Request request = new Request.Builder().url(result.getLink()).build();
         Indexer indexerByName = searchModuleProvider.getIndexerByName(result.getIndexer().getName());
         Integer timeout = indexerByName.getConfig().getTimeout().orElse(configProvider.getBaseConfig().getSearching().getTimeout());
-        try (Response response = clientHttpRequestFactory.getOkHttpClientBuilder(request.url().uri()).readTimeout(timeout, TimeUnit.SECONDS).connectTimeout(timeout, TimeUnit.SECONDS).followRedirects(true).build().newCall(request).execute()) {
+        if (!rateLimiter.acquire(indexerByName.getConfig(), Duration.ofSeconds(timeout))) {
+            throw new IOException("Rate limit of indexer " + indexerByName.getName() + " doesn't allow another download within " + timeout + " seconds");
+        }
+        Response response = clientHttpRequestFactory.getOkHttpClientBuilder(request.url().uri()).readTimeout(timeout, TimeUnit.SECONDS).connectTimeout(timeout, TimeUnit.SECONDS).followRedirects(true).build().newCall(request).execute();
+        try {
             if (response.isRedirect()) {
+                response.close();
                 return handleRedirect(result, response);
             }
+            if (response.code() == TooManyRequestsException.STATUS_CODE) {
+                TooManyRequestsException exception = TooManyRequestsException.fromResponse(result.getLink(), response);
+                rateLimiter.blockUntil(indexerByName.getConfig(), exception.getRetryAfter().orElse(Instant.now().plus(1, ChronoUnit.MINUTES)));
+                throw exception;
+            }
             if (!response.isSuccessful()) {
                 throw new IOException("Unsuccessful NZB download from URL " + result.getLink() + ". Code: " + response.code() + ". Message: " + response.message());
             }
-            ResponseBody body = response.body();
-            if (body == null) {
+            if (response.body() == null) {
                 throw new IOException("NZB downloaded from " + result.getLink() + " is empty");
             }
-            return body.bytes();
+            return response;
+        } catch (IOException | MagnetLinkRedirectException | RuntimeException e) {
+            response.close();
+            throw e;
         }
     }
 
-    private byte[] handleRedirect(SearchResultEntity result, Response response) throws MagnetLinkRedirectException, IOException {
+    private Response handleRedirect(SearchResultEntity result, Response response) throws MagnetLinkRedirectException, IOException {
         String locationHeader = response.header("location");
         if (locationHeader != null) {
             if (locationHeader.startsWith("magnet:")) {
@@ -257,7 +443,7 @@ public class FileHandler {
             } else {
                 logger.info("Redirecting to URL {}", locationHeader);
                 result.setLink(locationHeader);
-                return downloadFile(result);
+                return openDownload(result);
             }
         }
         throw new IOException("Unable to handle redirect from URL " + result.getLink() + " because no redirection location is set");
@@ -0,0 +1,399 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.downloading;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.Longs;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.apache.commons.io.FileUtils;
+import org.nzbhydra.NzbHydra;
+import org.nzbhydra.config.ConfigChangedEvent;
+import org.nzbhydra.config.ConfigProvider;
+import org.nzbhydra.config.downloading.DownloadingConfig;
+import org.nzbhydra.metrics.Counter;
+import org.nzbhydra.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Caches the content of downloaded NZBs on disk so that repeated downloads of the same search result (e.g. by multiple
+ * *arr instances or retries) don't need to access the indexer again. Files are named by the search result ID and the
+ * hash of their content and written to a temp file first which is then moved, so a file in the cache is always complete.
+ * Entries are evicted when they're older than the configured maximum age or, least recently used first, when the
+ * cache exceeds its configured size.
+ */
+@Component
+public class NzbCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(NzbCache.class);
+
+    /**
+     * Search result IDs are hashes and may be negative
+     */
+    private static final Pattern CACHE_FILE_PATTERN = Pattern.compile("(-?\\d+)-([0-9a-f]+)\\.nzb");
+    private static final String TEMP_FILE_PREFIX = "writing-";
+    private static final Counter CACHE_HITS = Metrics.counter("hydra_nzb_cache_requests_total", "NZB downloads answered from the NZB cache or not", "result", "hit");
+    private static final Counter CACHE_MISSES = Metrics.counter("hydra_nzb_cache_requests_total", "NZB downloads answered from the NZB cache or not", "result", "miss");
+
+    @Autowired
+    private ConfigProvider configProvider;
+    protected Clock clock = Clock.systemUTC();
+    protected File cacheFolder;
+
+    /**
+     * Cache entries by search result ID in access order
+     */
+    private final LinkedHashMap<Long, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalSize = 0;
+    private boolean initialized = false;
+
+    public boolean isEnabled() {
+        return getConfig().getNzbCacheSizeMb() > 0;
+    }
+
+    /**
+     * @return The cached NZB for the given search result if it exists and is not expired
+     */
+    public synchronized Optional<CachedNzb> get(long searchResultId) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        initialize();
+        CacheEntry entry = entries.get(searchResultId);
+        if (entry == null) {
+            CACHE_MISSES.increment();
+            return Optional.empty();
+        }
+        if (isExpired(entry) || !entry.getFile().exists()) {
+            remove(searchResultId);
+            CACHE_MISSES.increment();
+            return Optional.empty();
+        }
+        CACHE_HITS.increment();
+        logger.debug("Found NZB for search result ID {} in cache", searchResultId);
+        return Optional.of(new CachedNzb(entry.getFile(), entry.getSize()));
+    }
+
+    public void put(long searchResultId, byte[] content) {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            Path tempFile = createTempFile();
+            Files.write(tempFile, content);
+            commit(searchResultId, tempFile, Hashing.sha256().hashBytes(content).toString(), content.length);
+        } catch (IOException e) {
+            logger.warn("Unable to write NZB for search result ID {} to cache: {}", searchResultId, e.getMessage());
+        }
+    }
+
+    /**
+     * Returns a stream which passes through the given stream's content and writes it to the cache. The content is
+     * only added to the cache if the stream was read completely before it's closed. If the cache is disabled or the
+     * cache file can't be created the given stream is returned.
+     */
+    public InputStream caching(long searchResultId, InputStream inputStream) {
+        if (!isEnabled()) {
+            return inputStream;
+        }
+        try {
+            return new CachingInputStream(searchResultId, inputStream, createTempFile());
+        } catch (IOException e) {
+            logger.warn("Unable to create cache file for search result ID {}: {}", searchResultId, e.getMessage());
+            return inputStream;
+        }
+    }
+
+    @EventListener
+    public synchronized void handleNewConfig(ConfigChangedEvent event) {
+        boolean cacheSettingsChanged = event.getChangeSet().isChanged("downloading.nzbCacheSizeMb") || event.getChangeSet().isChanged("downloading.nzbCacheMaxAgeHours");
+        if (!cacheSettingsChanged) {
+            return;
+        }
+        if (!isEnabled()) {
+            //Also when the cache wasn't used since the start, files cached before are still on disk
+            File folder = getCacheFolder();
+            if (folder.exists()) {
+                logger.info("NZB cache disabled. Deleting cache folder {}", folder);
+                try {
+                    FileUtils.deleteDirectory(folder);
+                } catch (IOException e) {
+                    logger.warn("Unable to delete NZB cache folder {}: {}", folder, e.getMessage());
+                }
+            }
+            entries.clear();
+            totalSize = 0;
+            initialized = false;
+        } else if (initialized) {
+            evict();
+        }
+    }
+
+    private synchronized void commit(long searchResultId, Path tempFile, String hash, long size) throws IOException {
+        if (!isEnabled()) {
+            //Disabled while the NZB was being written
+            Files.deleteIfExists(tempFile);
+            return;
+        }
+        initialize();
+        File cacheFile = new File(cacheFolder, searchResultId + "-" + hash + ".nzb");
+        Files.move(tempFile, cacheFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        CacheEntry previous = entries.get(searchResultId);
+        if (previous != null && !previous.getFile().equals(cacheFile)) {
+            remove(searchResultId);
+        } else if (previous != null) {
+            totalSize -= previous.getSize();
+        }
+        entries.put(searchResultId, new CacheEntry(cacheFile, size, clock.instant()));
+        totalSize += size;
+        logger.debug("Added NZB for search result ID {} with {} bytes to cache", searchResultId, size);
+        evict();
+    }
+
+    private Path createTempFile() throws IOException {
+        synchronized (this) {
+            initialize();
+        }
+        return Files.createTempFile(cacheFolder.toPath(), TEMP_FILE_PREFIX, ".nzb");
+    }
+
+    private void evict() {
+        long maxSize = getConfig().getNzbCacheSizeMb() * 1024L * 1024L;
+        Iterator<Map.Entry<Long, CacheEntry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, CacheEntry> entry = iterator.next();
+            if (totalSize > maxSize || isExpired(entry.getValue())) {
+                logger.debug("Evicting NZB for search result ID {} from cache", entry.getKey());
+                delete(entry.getValue().getFile());
+                totalSize -= entry.getValue().getSize();
+                iterator.remove();
+            }
+        }
+    }
+
+    private void remove(long searchResultId) {
+        CacheEntry entry = entries.remove(searchResultId);
+        if (entry != null) {
+            delete(entry.getFile());
+            totalSize -= entry.getSize();
+        }
+    }
+
+    private boolean isExpired(CacheEntry entry) {
+        return entry.getCreated().isBefore(clock.instant().minus(Duration.ofHours(getConfig().getNzbCacheMaxAgeHours())));
+    }
+
+    /**
+     * Loads the entries of files cached before the last shutdown and deletes incomplete files
+     */
+    private void initialize() {
+        if (initialized) {
+            return;
+        }
+        getCacheFolder();
+        if (!cacheFolder.exists() && !cacheFolder.mkdirs()) {
+            logger.error("Unable to create NZB cache folder {}", cacheFolder);
+        }
+        File[] files = cacheFolder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Matcher matcher = CACHE_FILE_PATTERN.matcher(file.getName());
+                Long searchResultId = matcher.matches() ? Longs.tryParse(matcher.group(1)) : null;
+                if (searchResultId != null) {
+                    CacheEntry previous = entries.put(searchResultId, new CacheEntry(file, file.length(), Instant.ofEpochMilli(file.lastModified())));
+                    if (previous != null) {
+                        delete(previous.getFile());
+                        totalSize -= previous.getSize();
+                    }
+                    totalSize += file.length();
+                } else if (file.getName().startsWith(TEMP_FILE_PREFIX) || matcher.matches()) {
+                    delete(file);
+                }
+            }
+        }
+        initialized = true;
+        logger.debug("Loaded {} NZBs with {} bytes from cache folder", entries.size(), totalSize);
+        evict();
+    }
+
+    private File getCacheFolder() {
+        if (cacheFolder == null) {
+            cacheFolder = new File(NzbHydra.getDataFolder(), "nzbcache");
+        }
+        return cacheFolder;
+    }
+
+    private static void delete(File file) {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            logger.warn("Unable to delete cache file {}: {}", file, e.getMessage());
+        }
+    }
+
+    private DownloadingConfig getConfig() {
+        return configProvider.getBaseConfig().getDownloading();
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class CacheEntry {
+        private File file;
+        private long size;
+        private Instant created;
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class CachedNzb {
+        private File file;
+        private long size;
+
+        public InputStream openStream() throws IOException {
+            return Files.newInputStream(file.toPath());
+        }
+
+        public byte[] readContent() throws IOException {
+            return Files.readAllBytes(file.toPath());
+        }
+    }
+
+    private class CachingInputStream extends FilterInputStream {
+
+        private final long searchResultId;
+        private final Path tempFile;
+        private final OutputStream cacheOutputStream;
+        private final Hasher hasher = Hashing.sha256().newHasher();
+        private long size = 0;
+        private boolean endReached = false;
+        private boolean failed = false;
+        private boolean closed = false;
+
+        CachingInputStream(long searchResultId, InputStream in, Path tempFile) throws IOException {
+            super(in);
+            this.searchResultId = searchResultId;
+            this.tempFile = tempFile;
+            this.cacheOutputStream = Files.newOutputStream(tempFile);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int read = read(b, 0, 1);
+            return read == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read == -1) {
+                endReached = true;
+            } else if (!failed) {
+                try {
+                    cacheOutputStream.write(b, off, read);
+                    hasher.putBytes(b, off, read);
+                    size += read;
+                } catch (IOException e) {
+                    logger.warn("Unable to write NZB for search result ID {} to cache: {}", searchResultId, e.getMessage());
+                    failed = true;
+                }
+            }
+            return read;
+        }
+
+        /**
+         * Reads the skipped bytes so that they're written to the cache
+         */
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(Math.max(n, 0), 8192)];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                if (read == -1) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        /**
+         * Bytes read again after a reset would be written to the cache twice
+         */
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            throw new IOException("mark/reset not supported");
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                try {
+                    cacheOutputStream.close();
+                    if (endReached && !failed) {
+                        commit(searchResultId, tempFile, hasher.hash().toString(), size);
+                    } else {
+                        Files.deleteIfExists(tempFile);
+                    }
+                } catch (IOException e) {
+                    logger.warn("Unable to write NZB for search result ID {} to cache: {}", searchResultId, e.getMessage());
+                    delete(tempFile.toFile());
+                }
+            }
+        }
+    }
+
+}
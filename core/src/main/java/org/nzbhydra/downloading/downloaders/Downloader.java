@@ -20,7 +20,6 @@ import com.google.common.base.MoreObjects;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Strings;
 import com.google.common.collect.Iterables;
-import com.google.common.collect.Sets;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -31,6 +30,7 @@ import org.nzbhydra.config.downloading.NzbAddingType;
 import org.nzbhydra.downloading.*;
 import org.nzbhydra.downloading.exceptions.DownloaderException;
 import org.nzbhydra.logging.LoggingMarkers;
+import org.nzbhydra.logging.MdcThreadPoolExecutor;
 import org.nzbhydra.searching.db.SearchResultEntity;
 import org.nzbhydra.searching.db.SearchResultRepository;
 import org.nzbhydra.searching.dtoseventsenums.SearchResultItem.DownloadType;
@@ -39,11 +39,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
-import javax.persistence.EntityNotFoundException;
+import java.io.IOException;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -52,6 +58,14 @@ public abstract class Downloader {
 
     private static final Logger logger = LoggerFactory.getLogger(Downloader.class);
 
+    private static final int MAX_PARALLEL_DOWNLOADS_PER_INDEXER = 2;
+    private static final int MAX_PARALLEL_ADDS = 3;
+    private static final int MAX_THREADS_PER_BATCH = 10;
+    /**
+     * Limits the number of NZBs downloaded from an indexer at the same time, for all batches and downloaders
+     */
+    private static final ConcurrentMap<String, Semaphore> INDEXER_SEMAPHORES = new ConcurrentHashMap<>();
+
     public enum StatusCheckType {
         QUEUE,
         HISTORY
@@ -64,68 +78,142 @@ public abstract class Downloader {
     protected SearchResultRepository searchResultRepository;
 
     protected DownloaderConfig downloaderConfig;
+    /**
+     * Limits the number of NZBs sent to this downloader at the same time
+     */
+    private Semaphore addSemaphore;
 
     public void intialize(DownloaderConfig downloaderConfig) {
         this.downloaderConfig = downloaderConfig;
+        this.addSemaphore = new Semaphore(MAX_PARALLEL_ADDS);
     }
 
     public boolean isEnabled() {
         return downloaderConfig != null && downloaderConfig.isEnabled();
     }
 
-    @Transactional
+    /**
+     * Not transactional on purpose: the NZBs are added in parallel and each download's database writes run in their own
+     * transaction, so no connection is held while waiting for indexers and the downloader.
+     */
     public AddNzbsResponse addBySearchResultIds(List<AddFilesRequest.SearchResult> searchResults, String category) {
         NzbAddingType addingType = downloaderConfig.getNzbAddingType();
-        Set<Long> addedNzbs = new HashSet<>();
-        Set<SearchResultEntity> missedNzbs = new HashSet<>();
+        List<Long> guids = searchResults.stream().map(x -> Long.valueOf(x.getSearchResultId())).collect(Collectors.toList());
+        Map<Long, SearchResultEntity> searchResultEntities = new HashMap<>();
+        for (SearchResultEntity searchResultEntity : searchResultRepository.findAllById(guids)) {
+            searchResultEntities.put(searchResultEntity.getId(), searchResultEntity);
+        }
+
+        List<Long> callableGuids = new ArrayList<>();
+        List<Callable<AddNzbResult>> callables = new ArrayList<>();
+        for (AddFilesRequest.SearchResult entry : searchResults) {
+            Long guid = Long.valueOf(entry.getSearchResultId());
+            String categoryToSend;
+            if (Strings.isNullOrEmpty(category) && !"N/A".equals(entry.getOriginalCategory())) {
+                categoryToSend = entry.getOriginalCategory();
+            } else {
+                categoryToSend = category;
+            }
+            SearchResultEntity searchResultEntity = searchResultEntities.get(guid);
+            callableGuids.add(guid);
+            if (searchResultEntity == null) {
+                logger.error("Unable to find search result with ID {} in the database", guid);
+                callables.add(() -> AddNzbResult.error(guid, "Unable to find the search result in the database. Unable to download"));
+                continue;
+            }
+            //Downloads from the same indexer are limited so that a big batch doesn't hammer a single indexer
+            Semaphore indexerSemaphore = INDEXER_SEMAPHORES.computeIfAbsent(searchResultEntity.getIndexer().getName(), x -> new Semaphore(MAX_PARALLEL_DOWNLOADS_PER_INDEXER));
+            callables.add(() -> addSearchResult(guid, searchResultEntity, categoryToSend, addingType, indexerSemaphore));
+        }
+
+        List<AddNzbResult> results = new ArrayList<>();
+        ExecutorService executor = MdcThreadPoolExecutor.newWithInheritedMdc(Math.max(1, Math.min(callables.size(), MAX_THREADS_PER_BATCH)));
         try {
-            for (AddFilesRequest.SearchResult entry : searchResults) {
-                Long guid = Long.valueOf(entry.getSearchResultId());
-                String categoryToSend;
-                if (Strings.isNullOrEmpty(category) && !"N/A".equals(entry.getOriginalCategory())) {
-                    categoryToSend = entry.getOriginalCategory();
-                } else {
-                    categoryToSend = category;
-                }
-                if (addingType == NzbAddingType.UPLOAD) {
-                    DownloadResult result = nzbHandler.getFileByGuid(guid, FileDownloadAccessType.PROXY, SearchSource.INTERNAL); //Uploading NZBs can only be done via proxying
-                    if (result.isSuccessful()) {
-                        String externalId = addNzb(result.getContent(), result.getTitle(), categoryToSend);
-                        result.getDownloadEntity().setExternalId(externalId);
-                        nzbHandler.updateStatusByEntity(result.getDownloadEntity(), FileDownloadStatus.NZB_ADDED);
-                        addedNzbs.add(guid);
-                    } else {
-                        missedNzbs.add(result.getDownloadEntity().getSearchResult());
-                    }
-                } else {
-                    SearchResultEntity searchResultEntity = searchResultRepository.getOne(guid);
-                    addLink(nzbHandler.getDownloadLink(guid, false, DownloadType.NZB), searchResultEntity.getTitle(), categoryToSend);
-                    addedNzbs.add(guid);
+            List<Future<AddNzbResult>> futures = executor.invokeAll(callables);
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    logger.error("Unexpected error while adding NZB", e);
+                    results.add(AddNzbResult.error(callableGuids.get(i), "Unexpected error while adding NZB: " + e.getCause().getMessage()));
                 }
             }
-        } catch (InvalidSearchResultIdException | DownloaderException | EntityNotFoundException e) {
-            String message;
-            if (e instanceof EntityNotFoundException) {
-                message = "Unable to find the search result in the database. Unable to download";
+        } catch (InterruptedException e) {
+            logger.error("Interrupted while adding NZBs", e);
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<FileDownloadEntity> downloadsToUpdate = results.stream().filter(x -> x.getDownloadEntity() != null).map(AddNzbResult::getDownloadEntity).collect(Collectors.toList());
+        if (!downloadsToUpdate.isEmpty()) {
+            nzbHandler.updateStatusByEntities(downloadsToUpdate, FileDownloadStatus.NZB_ADDED);
+        }
+        return buildAddNzbsResponse(guids, results);
+    }
+
+    private AddNzbResult addSearchResult(Long guid, SearchResultEntity searchResultEntity, String category, NzbAddingType addingType, Semaphore indexerSemaphore) throws InterruptedException {
+        try {
+            if (addingType == NzbAddingType.UPLOAD) {
+                DownloadResult result;
+                indexerSemaphore.acquire();
+                try {
+                    result = nzbHandler.getFileByGuid(guid, FileDownloadAccessType.PROXY, SearchSource.INTERNAL); //Uploading NZBs can only be done via proxying
+                } finally {
+                    indexerSemaphore.release();
+                }
+                if (!result.isSuccessful()) {
+                    return AddNzbResult.missed(guid, searchResultEntity.getTitle());
+                }
+                byte[] content;
+                try {
+                    content = result.readContent();
+                } catch (IOException e) {
+                    logger.error("Unable to read NZB for {}: {}", searchResultEntity.getTitle(), e.getMessage());
+                    return AddNzbResult.missed(guid, searchResultEntity.getTitle());
+                }
+                String externalId;
+                addSemaphore.acquire();
+                try {
+                    externalId = addNzb(content, result.getTitle(), category);
+                } finally {
+                    addSemaphore.release();
+                }
+                result.getDownloadEntity().setExternalId(externalId);
+                return AddNzbResult.added(guid, result.getDownloadEntity());
             } else {
-                message = e.getMessage();
+                addSemaphore.acquire();
+                try {
+                    addLink(nzbHandler.getDownloadLink(guid, false, DownloadType.NZB), searchResultEntity.getTitle(), category);
+                } finally {
+                    addSemaphore.release();
+                }
+                return AddNzbResult.added(guid, null);
             }
-            logger.error(message);
+        } catch (InvalidSearchResultIdException | DownloaderException e) {
+            logger.error(e.getMessage());
+            return AddNzbResult.error(guid, e.getMessage());
+        }
+    }
+
+    private AddNzbsResponse buildAddNzbsResponse(List<Long> guids, List<AddNzbResult> results) {
+        Set<Long> addedNzbs = results.stream().filter(AddNzbResult::isAdded).map(AddNzbResult::getGuid).collect(Collectors.toCollection(LinkedHashSet::new));
+        Set<Long> missedNzbIds = new LinkedHashSet<>(guids);
+        missedNzbIds.removeAll(addedNzbs);
+        Set<String> errors = results.stream().map(AddNzbResult::getError).filter(Objects::nonNull).collect(Collectors.toCollection(LinkedHashSet::new));
+        if (!errors.isEmpty()) {
+            String message = String.join(".\n", errors);
             if (!addedNzbs.isEmpty()) {
                 message += ".\n" + addedNzbs.size() + " were added successfully";
             }
-            Set<Long> searchResultIds = Sets.newHashSet(searchResults.stream().map(x -> Long.valueOf(x.getSearchResultId())).collect(Collectors.toSet()));
-            searchResultIds.removeAll(addedNzbs);
-            return new AddNzbsResponse(false, message, addedNzbs, searchResultIds);
+            return new AddNzbsResponse(false, message, addedNzbs, missedNzbIds);
         }
-        if (missedNzbs.isEmpty()) {
+        if (missedNzbIds.isEmpty()) {
             return new AddNzbsResponse(true, null, addedNzbs, Collections.emptyList());
-        } else {
-            logger.debug("At least one NZB was not downloaded successfully and could not be added to the downloader");
-            List<Long> missedNzbIds = missedNzbs.stream().map(SearchResultEntity::getId).collect(Collectors.toList());
-            String message = "NZBs for the following titles could not be downloaded:\r\n" + missedNzbs.stream().map(SearchResultEntity::getTitle).collect(Collectors.joining(", "));
-            return new AddNzbsResponse(true, message, addedNzbs, missedNzbIds);
         }
+        logger.debug("At least one NZB was not downloaded successfully and could not be added to the downloader");
+        String message = "NZBs for the following titles could not be downloaded:\r\n" + results.stream().map(AddNzbResult::getMissedTitle).filter(Objects::nonNull).collect(Collectors.joining(", "));
+        return new AddNzbsResponse(true, message, addedNzbs, missedNzbIds);
     }
 
 
@@ -225,6 +313,34 @@ public abstract class Downloader {
         private Collection<Long> missedIds;
     }
 
+    /**
+     * Outcome of adding a single search result of a batch
+     */
+    @Data
+    @AllArgsConstructor
+    private static class AddNzbResult {
+        private Long guid;
+        private boolean added;
+        private FileDownloadEntity downloadEntity;
+        /**
+         * Title of a result whose NZB could not be downloaded from the indexer
+         */
+        private String missedTitle;
+        private String error;
+
+        static AddNzbResult added(Long guid, FileDownloadEntity downloadEntity) {
+            return new AddNzbResult(guid, true, downloadEntity, null, null);
+        }
+
+        static AddNzbResult missed(Long guid, String title) {
+            return new AddNzbResult(guid, false, null, title, null);
+        }
+
+        static AddNzbResult error(Long guid, String error) {
+            return new AddNzbResult(guid, false, null, null, error);
+        }
+    }
+
     @Data
     @AllArgsConstructor
     @NoArgsConstructor
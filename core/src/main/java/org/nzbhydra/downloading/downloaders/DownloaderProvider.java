@@ -59,7 +59,9 @@ public class DownloaderProvider implements InitializingBean {
     @EventListener
     public void handleNewConfig(ConfigChangedEvent configChangedEvent) throws Exception {
         baseConfig = configChangedEvent.getNewConfig();
-        afterPropertiesSet();
+        if (configChangedEvent.getChangeSet().isChanged("downloading.downloaders")) {
+            afterPropertiesSet();
+        }
     }
 
     @Override
@@ -16,12 +16,14 @@
 
 package org.nzbhydra.downloading.nzbs;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.nzbhydra.api.WrongApiKeyException;
 import org.nzbhydra.config.BaseConfig;
 import org.nzbhydra.config.ConfigProvider;
 import org.nzbhydra.downloading.FileDownloadStatus;
 import org.nzbhydra.downloading.FileHandler;
-import org.nzbhydra.downloading.FileZipResponse;
 import org.nzbhydra.downloading.InvalidSearchResultIdException;
 import org.nzbhydra.indexers.NfoResult;
 import org.nzbhydra.indexers.exceptions.IndexerAccessException;
@@ -30,20 +32,25 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.annotation.Secured;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 public class NzbHandlingWeb {
 
     private static final Logger logger = LoggerFactory.getLogger(NzbHandlingWeb.class);
+    static final String ZIP_ID_HEADER = "X-NZBHydra-Zip-Id";
 
     @Value("${nzbhydra.dev.noApiKey:false}")
     private boolean noApiKeyNeeded = false;
@@ -53,6 +60,12 @@ public class NzbHandlingWeb {
     @Autowired
     private ConfigProvider configProvider;
 
+    //The IDs of the search results added to a ZIP are only known when it's written. The UI fetches them afterwards
+    private final Cache<String, List<Long>> addedGuidsByZipId = CacheBuilder.newBuilder()
+            .maximumSize(100)
+            .expireAfterWrite(1, TimeUnit.HOURS)
+            .build();
+
 
     /**
      * Provides an internal access to NZBs via GUID
@@ -62,32 +75,40 @@ public class NzbHandlingWeb {
     @RequestMapping(value = "/internalapi/nzb/{guid}", produces = "application/x-nzb")
     @Secured({"ROLE_USER"})
     public ResponseEntity<Object> downloadNzbInternal(@PathVariable("guid") long guid) throws InvalidSearchResultIdException {
-        return fileHandler.getFileByGuid(guid, configProvider.getBaseConfig().getSearching().getNzbAccessType(), SearchSource.INTERNAL).getAsResponseEntity();
+        return fileHandler.streamFileByGuid(guid, configProvider.getBaseConfig().getSearching().getNzbAccessType(), SearchSource.INTERNAL).getAsResponseEntity();
     }
 
     /**
-     * Provides an internal access to a ZIP file with NZBs via GUID
-     *
-     * @return The ZIP content or a generic response with an error
+     * Provides an internal access to a ZIP file with NZBs via GUID. NZBs which could not be downloaded are listed in a text file in the ZIP.
+     * The ZIP's ID is returned in the header {@value #ZIP_ID_HEADER} and can be used to get the GUIDs of the NZBs which were added.
      */
-    @RequestMapping(value = "/internalapi/nzbzip", produces = MediaType.APPLICATION_JSON_VALUE, method = RequestMethod.POST)
+    @RequestMapping(value = "/internalapi/nzbzip", produces = "application/zip", method = RequestMethod.POST)
     @Secured({"ROLE_USER"})
-    public FileZipResponse getNzbZipData(@RequestBody List<Long> guids) {
+    public void downloadNzbZip(@RequestBody List<Long> guids, HttpServletResponse response) throws IOException {
         try {
-            return fileHandler.getFilesAsZip(guids);
-        } catch (Exception e) {
+            response.setContentType("application/zip");
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"NZBHydra NZBs.zip\"");
+            String zipId = UUID.randomUUID().toString();
+            response.setHeader(ZIP_ID_HEADER, zipId);
+            //Don't let the ZIP close the response so that the added GUIDs are stored before the client has received the complete ZIP
+            List<Long> addedGuids = fileHandler.writeFilesAsZip(guids, new CloseShieldOutputStream(response.getOutputStream()));
+            addedGuidsByZipId.put(zipId, addedGuids);
+        } catch (IOException e) {
             logger.error("Error while creating ZIP with NZBs", e);
-            return new FileZipResponse(false, null, "Error while creating ZIP with NZBs: " + e.getMessage(), Collections.emptyList(), guids);
+            throw e;
         }
     }
 
-    @RequestMapping(value = "/internalapi/nzbzipDownload", produces = MediaType.APPLICATION_JSON_VALUE, method = RequestMethod.POST)
+    /**
+     * @return The GUIDs of the search results which were added to the ZIP with the given ID or an empty list if the ZIP is unknown
+     */
+    @RequestMapping(value = "/internalapi/nzbzip/{zipId}/added", produces = MediaType.APPLICATION_JSON_VALUE, method = RequestMethod.GET)
     @Secured({"ROLE_USER"})
-    public FileSystemResource downloadNzbZip(@RequestBody String zipFilepath) {
-        return new FileSystemResource(zipFilepath);
+    public List<Long> getGuidsAddedToZip(@PathVariable("zipId") String zipId) {
+        List<Long> addedGuids = addedGuidsByZipId.getIfPresent(zipId);
+        return addedGuids == null ? Collections.emptyList() : addedGuids;
     }
 
-
     @RequestMapping(value = "/internalapi/nfo/{guid}", produces = MediaType.APPLICATION_JSON_VALUE)
     @Secured({"ROLE_USER"})
     public NfoResult getNfo(@PathVariable("guid") long guid) throws IndexerAccessException {
@@ -127,7 +148,7 @@ public class NzbHandlingWeb {
     @RequestMapping(value = "/getnzb/user/{guid}", produces = "application/x-nzb")
     @Secured({"ROLE_USER"})
     public ResponseEntity<Object> downloadNzbForUsers(@PathVariable("guid") long guid) throws InvalidSearchResultIdException {
-        return fileHandler.getFileByGuid(guid, configProvider.getBaseConfig().getSearching().getNzbAccessType(), SearchSource.INTERNAL).getAsResponseEntity();
+        return fileHandler.streamFileByGuid(guid, configProvider.getBaseConfig().getSearching().getNzbAccessType(), SearchSource.INTERNAL).getAsResponseEntity();
     }
 
     /**
@@ -144,7 +165,7 @@ public class NzbHandlingWeb {
         }
 
         try {
-            return fileHandler.getFileByGuid(guid, baseConfig.getSearching().getNzbAccessType(), SearchSource.API).getAsResponseEntity();
+            return fileHandler.streamFileByGuid(guid, baseConfig.getSearching().getNzbAccessType(), SearchSource.API).getAsResponseEntity();
         } catch (InvalidSearchResultIdException e) {
             //Should be RssError but causes an exception in ServletInvocableHandlerMethod.invokeAndHandle()
             return ResponseEntity.ok().contentType(MediaType.APPLICATION_XML).body("<error code=\"300\" description=\"Invalid or outdated search result ID\"/>");
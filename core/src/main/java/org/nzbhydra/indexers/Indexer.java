@@ -2,6 +2,7 @@ package org.nzbhydra.indexers;
 
 import com.google.common.base.Objects;
 import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import joptsimple.internal.Strings;
 import org.nzbhydra.config.ConfigProvider;
 import org.nzbhydra.config.indexer.IndexerConfig;
@@ -12,6 +13,8 @@ import org.nzbhydra.mediainfo.InfoProvider;
 import org.nzbhydra.mediainfo.InfoProvider.IdType;
 import org.nzbhydra.mediainfo.InfoProviderException;
 import org.nzbhydra.mediainfo.MediaInfo;
+import org.nzbhydra.metrics.Histogram;
+import org.nzbhydra.metrics.Metrics;
 import org.nzbhydra.searching.CategoryProvider;
 import org.nzbhydra.searching.SearchResultAcceptor;
 import org.nzbhydra.searching.SearchResultAcceptor.AcceptorResult;
@@ -32,13 +35,16 @@ import org.springframework.web.util.UriComponentsBuilder;
 
 import javax.persistence.EntityExistsException;
 import java.net.URI;
+import java.time.Clock;
 import java.time.Instant;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 @Component
@@ -50,8 +56,11 @@ public abstract class Indexer<T> {
         NEWZNAB
     }
 
-    protected static final List<Integer> DISABLE_PERIODS = Arrays.asList(0, 15, 30, 60, 3 * 60, 6 * 60, 12 * 60, 24 * 60);
     private static final Logger logger = LoggerFactory.getLogger(Indexer.class);
+    //Status changes are written to the config file in the background, one save covers all changes made while waiting for it
+    private static final ExecutorService CONFIG_SAVE_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("IndexerStatusSave").setDaemon(true).build());
+    private static final AtomicBoolean configSavePending = new AtomicBoolean();
+    private static final Histogram PERSIST_SEARCH_RESULTS_DURATION = Metrics.histogram("hydra_persist_search_results_duration_seconds", "Duration of saving new search results to the database");
 
     List<DateTimeFormatter> DATE_FORMATs = Arrays.asList(DateTimeFormatter.RFC_1123_DATE_TIME, DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.ENGLISH));
 
@@ -59,6 +68,7 @@ public abstract class Indexer<T> {
 
     protected IndexerEntity indexer;
     protected IndexerConfig config;
+    protected IndexerCircuitBreaker circuitBreaker;
 
     @Autowired
     protected ConfigProvider configProvider;
@@ -71,6 +81,8 @@ public abstract class Indexer<T> {
     @Autowired
     protected IndexerApiAccessEntityShortRepository indexerApiAccessShortRepository;
     @Autowired
+    protected IndexerApiAccessWriter apiAccessWriter;
+    @Autowired
     protected IndexerWebAccess indexerWebAccess;
     @Autowired
     protected SearchResultAcceptor resultAcceptor;
@@ -85,7 +97,11 @@ public abstract class Indexer<T> {
     public void initialize(IndexerConfig config, IndexerEntity indexer) {
         this.indexer = indexer;
         this.config = config;
-
+        circuitBreaker = new IndexerCircuitBreaker(config.getName(), Clock.systemUTC(), this::onCircuitBreakerTransition);
+        if (config.getState() == IndexerConfig.State.DISABLED_SYSTEM_TEMPORARY || config.getDisabledLevel() > 0) {
+            //Keep the escalation of the open period across restarts
+            circuitBreaker.restoreOpen(config.getDisabledUntil() == null ? null : Instant.ofEpochMilli(config.getDisabledUntil()), config.getDisabledLevel());
+        }
     }
 
     public IndexerSearchResult search(SearchRequest searchRequest, int offset, Integer limit) {
@@ -138,6 +154,21 @@ public abstract class Indexer<T> {
     }
 
     protected IndexerSearchResult searchInternal(SearchRequest searchRequest, int offset, Integer limit) throws IndexerSearchAbortedException, IndexerAccessException {
+        long start = System.nanoTime();
+        boolean successful = false;
+        try {
+            IndexerSearchResult indexerSearchResult = doSearchInternal(searchRequest, offset, limit);
+            successful = true;
+            return indexerSearchResult;
+        } finally {
+            Metrics.histogram("hydra_indexer_search_duration_seconds", "Duration of searches per indexer including parsing and persisting of results", "indexer", getName()).recordSince(start);
+            if (!successful) {
+                Metrics.counter("hydra_indexer_search_errors_total", "Failed searches per indexer", "indexer", getName()).increment();
+            }
+        }
+    }
+
+    private IndexerSearchResult doSearchInternal(SearchRequest searchRequest, int offset, Integer limit) throws IndexerSearchAbortedException, IndexerAccessException {
         UriComponentsBuilder builder = buildSearchUrl(searchRequest, offset, limit);
         URI url = builder.build().toUri();
 
@@ -204,6 +235,15 @@ public abstract class Indexer<T> {
 
     @Transactional
     protected List<SearchResultItem> persistSearchResults(List<SearchResultItem> searchResultItems) {
+        long start = System.nanoTime();
+        try {
+            return doPersistSearchResults(searchResultItems);
+        } finally {
+            PERSIST_SEARCH_RESULTS_DURATION.recordSince(start);
+        }
+    }
+
+    private List<SearchResultItem> doPersistSearchResults(List<SearchResultItem> searchResultItems) {
         Stopwatch stopwatch = Stopwatch.createStarted();
         synchronized (lock) { //Locking per indexer prevents multiple threads trying to save the same "new" results to the database
             ArrayList<SearchResultEntity> searchResultEntities = new ArrayList<>();
@@ -240,15 +280,8 @@ public abstract class Indexer<T> {
     }
 
     protected void handleSuccess(IndexerApiAccessType accessType, Long responseTime) {
-        //New state can only be enabled, if the user has disabled the indexer it wouldn't've been called
-        if (getConfig().getDisabledLevel() > 0) {
-            debug("Indexer was successfully called after {} failed attempts in a row", getConfig().getDisabledLevel());
-        }
-        getConfig().setState(IndexerConfig.State.ENABLED);
-        getConfig().setLastError(null);
-        getConfig().setDisabledUntil(null);
-        getConfig().setDisabledLevel(0);
-        configProvider.getBaseConfig().save();
+        //The config is only changed and saved if this closes the circuit
+        circuitBreaker.recordSuccess();
         saveApiAccess(accessType, responseTime, IndexerAccessResult.SUCCESSFUL, true);
     }
 
@@ -256,19 +289,59 @@ public abstract class Indexer<T> {
         if (disablePermanently) {
             getLogger().warn("Because an unrecoverable error occurred {} will be permanently disabled until reenabled by the user", indexer.getName());
             getConfig().setState(IndexerConfig.State.DISABLED_SYSTEM);
+            getConfig().setLastError(reason);
+            saveConfigAsync();
         } else if (!configProvider.getBaseConfig().getSearching().isIgnoreTemporarilyDisabled()) {
+            circuitBreaker.recordFailure(reason);
+        }
+
+        saveApiAccess(accessType, responseTime, accessResult, false);
+    }
+
+    protected void handleApiLimitReached(String reason, IndexerApiAccessType accessType) {
+        if (!configProvider.getBaseConfig().getSearching().isIgnoreTemporarilyDisabled()) {
+            circuitBreaker.recordApiLimitReached(reason);
+        }
+        saveApiAccess(accessType, null, IndexerAccessResult.API_ERROR, false);
+    }
 
+    private void onCircuitBreakerTransition(IndexerCircuitBreaker circuitBreaker, IndexerCircuitBreaker.State from, IndexerCircuitBreaker.State to, String reason) {
+        Metrics.counter("hydra_indexer_circuit_breaker_transitions_total", "State changes of the indexers' circuit breakers", "indexer", getName(), "state", to.name()).increment();
+        if (to == IndexerCircuitBreaker.State.HALF_OPEN) {
+            //Nothing to persist, the trial call will either close or open the circuit
+            debug("Open period has passed, the next call is a trial");
+            return;
+        }
+        if (getConfig().getState() == IndexerConfig.State.DISABLED_SYSTEM || getConfig().getState() == IndexerConfig.State.DISABLED_USER) {
+            return;
+        }
+        if (to == IndexerCircuitBreaker.State.CLOSED) {
+            info("Indexer was successfully called after having been disabled {} times in a row", circuitBreaker.getOpenedInARow() == 0 ? getConfig().getDisabledLevel() : circuitBreaker.getOpenedInARow());
+            getConfig().setState(IndexerConfig.State.ENABLED);
+            getConfig().setLastError(null);
+            getConfig().setDisabledUntil(null);
+            getConfig().setDisabledLevel(0);
+        } else {
+            getLogger().warn("Because of errors {} will be temporarily disabled until {}. This is disabling number {} in a row", getName(), circuitBreaker.getOpenUntil(), circuitBreaker.getOpenedInARow());
             getConfig().setState(IndexerConfig.State.DISABLED_SYSTEM_TEMPORARY);
-            getConfig().setDisabledLevel(getConfig().getDisabledLevel() + 1);
-            long minutesToAdd = DISABLE_PERIODS.get(Math.min(DISABLE_PERIODS.size() - 1, getConfig().getDisabledLevel()));
-            Instant disabledUntil = Instant.now().plus(minutesToAdd, ChronoUnit.MINUTES);
-            getConfig().setDisabledUntil(disabledUntil.toEpochMilli());
-            getLogger().warn("Because an error occurred {} will be temporarily disabled until {}. This is error number {} in a row", indexer.getName(), disabledUntil, getConfig().getDisabledLevel());
+            getConfig().setLastError(reason);
+            getConfig().setDisabledUntil(circuitBreaker.getOpenUntil().toEpochMilli());
+            getConfig().setDisabledLevel(circuitBreaker.getOpenedInARow());
         }
-        getConfig().setLastError(reason);
-        configProvider.getBaseConfig().save();
+        saveConfigAsync();
+    }
 
-        saveApiAccess(accessType, responseTime, accessResult, false);
+    private void saveConfigAsync() {
+        if (configSavePending.compareAndSet(false, true)) {
+            CONFIG_SAVE_EXECUTOR.execute(() -> {
+                configSavePending.set(false);
+                try {
+                    configProvider.getBaseConfig().save();
+                } catch (Exception e) {
+                    logger.error("Unable to save indexer status to config", e);
+                }
+            });
+        }
     }
 
     private void saveApiAccess(IndexerApiAccessType accessType, Long responseTime, IndexerAccessResult accessResult, boolean successful) {
@@ -277,9 +350,7 @@ public abstract class Indexer<T> {
         apiAccess.setResponseTime(responseTime);
         apiAccess.setResult(accessResult);
         apiAccess.setTime(Instant.now());
-        indexerApiAccessRepository.save(apiAccess);
-
-        indexerApiAccessShortRepository.save(new IndexerApiAccessEntityShort(indexer, successful, accessType));
+        apiAccessWriter.save(apiAccess, new IndexerApiAccessEntityShort(indexer, successful, accessType));
     }
 
     protected void handleIndexerAccessException(IndexerAccessException e, IndexerApiAccessType accessType) {
@@ -290,8 +361,20 @@ public abstract class Indexer<T> {
             error("Indexer refused authentication");
             disablePermanently = true;
             apiAccessResult = IndexerAccessResult.AUTH_ERROR;
+        } else if (e instanceof IndexerRateLimitedException) {
+            //Not the indexer's fault, the circuit breaker must not open because of this
+            warn(message);
+            if (e.getCause() != null) {
+                //The indexer was actually called and answered with 429
+                saveApiAccess(accessType, null, IndexerAccessResult.API_ERROR, false);
+            }
+            return;
         } else if (e instanceof IndexerErrorCodeException) {
             error(message);
+            if (((IndexerErrorCodeException) e).isApiLimitReached()) {
+                handleApiLimitReached(message, accessType);
+                return;
+            }
             apiAccessResult = IndexerAccessResult.API_ERROR;
         } else if (e instanceof IndexerUnreachableException) {
             message = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
@@ -428,6 +511,10 @@ public abstract class Indexer<T> {
         return indexer;
     }
 
+    public IndexerCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
     public String cleanUpTitle(String title) {
         if (Strings.isNullOrEmpty(title)) {
             return title;
@@ -6,6 +6,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 
 import java.util.Collection;
+import java.util.List;
 
 public interface IndexerApiAccessRepository extends JpaRepository<IndexerApiAccessEntity, Integer> {
 
@@ -13,6 +14,8 @@ public interface IndexerApiAccessRepository extends JpaRepository<IndexerApiAcce
 
     Page<IndexerApiAccessEntity> findByIndexerOrderByTimeDesc(IndexerEntity indexerEntity, Pageable pageable);
 
+    List<IndexerApiAccessEntity> findByIndexerAndResultAndResponseTimeNotNullOrderByTimeDesc(IndexerEntity indexerEntity, IndexerAccessResult result, Pageable pageable);
+
     void deleteAllByIndexerIn(Collection<IndexerEntity> searchEntity);
 
 
@@ -0,0 +1,139 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.indexers;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.nzbhydra.metrics.Histogram;
+import org.nzbhydra.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects indexer API accesses and writes them in batches instead of one insert and transaction per access. Accesses are
+ * written at least every second. Accesses are only removed from the queue after they were written so that they're not lost if
+ * writing fails and so that {@link #getQueuedAccessTimes(int, IndexerApiAccessType)} can include them when hit limits are checked.
+ */
+@Component
+public class IndexerApiAccessWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexerApiAccessWriter.class);
+
+    private static final int MAX_QUEUED_ACCESSES = 5000;
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;
+    private static final Histogram FLUSH_DURATION = Metrics.histogram("hydra_db_api_access_write_duration_seconds", "Duration of writing queued API accesses to the database");
+
+    @Autowired
+    private IndexerApiAccessRepository apiAccessRepository;
+    @Autowired
+    private IndexerApiAccessEntityShortRepository shortRepository;
+
+    private final BlockingQueue<IndexerApiAccessEntity> apiAccesses = new LinkedBlockingQueue<>(MAX_QUEUED_ACCESSES);
+    private final BlockingQueue<IndexerApiAccessEntityShort> shortApiAccesses = new LinkedBlockingQueue<>(MAX_QUEUED_ACCESSES);
+    private ScheduledExecutorService executor;
+
+    @PostConstruct
+    public void startWriting() {
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("ApiAccessWriter").setDaemon(true).build());
+        executor.scheduleWithFixedDelay(this::flushSafely, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        Metrics.gauge("hydra_db_api_access_queue_size", "Number of API accesses waiting to be written to the database", apiAccesses::size);
+    }
+
+    @PreDestroy
+    public void stopWriting() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+        flushSafely();
+    }
+
+    public void save(IndexerApiAccessEntity apiAccess, IndexerApiAccessEntityShort shortApiAccess) {
+        while (!apiAccesses.offer(apiAccess)) {
+            //Queue is full, the database apparently can't keep up. Write synchronously to provide backpressure
+            flush();
+        }
+        saveShort(shortApiAccess);
+    }
+
+    public void saveShort(IndexerApiAccessEntityShort shortApiAccess) {
+        while (!shortApiAccesses.offer(shortApiAccess)) {
+            flush();
+        }
+    }
+
+    /**
+     * @return The times of short term accesses of the given type to the indexer which are not yet written to the database
+     */
+    public List<Instant> getQueuedAccessTimes(int indexerId, IndexerApiAccessType accessType) {
+        List<Instant> times = new ArrayList<>();
+        for (IndexerApiAccessEntityShort shortApiAccess : shortApiAccesses) {
+            if (shortApiAccess.getIndexerId() == indexerId && shortApiAccess.getApiAccessType() == accessType) {
+                times.add(shortApiAccess.getTime());
+            }
+        }
+        return times;
+    }
+
+    /**
+     * Writes all queued accesses to the database. If writing fails the accesses stay in the queue and are written with the next flush.
+     */
+    public synchronized void flush() {
+        //Only this method removes from the queues so the copies are the heads of the queues, even if accesses are added concurrently
+        List<IndexerApiAccessEntity> apiAccessesToSave = new ArrayList<>(apiAccesses);
+        List<IndexerApiAccessEntityShort> shortApiAccessesToSave = new ArrayList<>(shortApiAccesses);
+        long start = System.nanoTime();
+        if (!apiAccessesToSave.isEmpty()) {
+            apiAccessRepository.saveAll(apiAccessesToSave);
+            removeFromHead(apiAccesses, apiAccessesToSave.size());
+        }
+        if (!shortApiAccessesToSave.isEmpty()) {
+            shortRepository.saveAll(shortApiAccessesToSave);
+            removeFromHead(shortApiAccesses, shortApiAccessesToSave.size());
+        }
+        if (!apiAccessesToSave.isEmpty() || !shortApiAccessesToSave.isEmpty()) {
+            FLUSH_DURATION.recordSince(start);
+            logger.debug("Wrote {} API accesses and {} short term API accesses to database", apiAccessesToSave.size(), shortApiAccessesToSave.size());
+        }
+    }
+
+    private static void removeFromHead(BlockingQueue<?> queue, int count) {
+        for (int i = 0; i < count; i++) {
+            queue.poll();
+        }
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            logger.error("Error while writing API accesses to database", e);
+        }
+    }
+
+}
@@ -0,0 +1,217 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.indexers;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Decides if an indexer may be called based on the outcome of the last calls.
+ * <p>
+ * While closed every call is permitted. When at least half of the last {@value #WINDOW_SIZE} calls failed the circuit is
+ * opened and no calls are permitted. Once the open period has passed the next caller is granted a single trial call
+ * (half open), everybody else still skips the indexer. A successful trial closes the circuit, a failed one opens it again
+ * for twice the previous period, starting with {@link #INITIAL_OPEN_DURATION} up to {@link #MAX_OPEN_DURATION}. When the
+ * indexer reports that its API limit was reached the circuit is opened right away for {@link #API_LIMIT_OPEN_DURATION}.
+ * <p>
+ * State changes are reported to a {@link TransitionListener}, calls that don't change the state only update memory.
+ */
+public class IndexerCircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    public interface TransitionListener {
+        void onTransition(IndexerCircuitBreaker circuitBreaker, State from, State to, String reason);
+    }
+
+    static final int WINDOW_SIZE = 10;
+    static final int MINIMUM_NUMBER_OF_CALLS = 3;
+    static final Duration INITIAL_OPEN_DURATION = Duration.ofSeconds(30);
+    static final Duration MAX_OPEN_DURATION = Duration.ofHours(24);
+    static final Duration API_LIMIT_OPEN_DURATION = Duration.ofHours(1);
+    /**
+     * If the result of a trial call isn't reported in time (e.g. because of a bug or a very slow indexer) another trial is permitted
+     */
+    static final Duration TRIAL_TIMEOUT = Duration.ofMinutes(2);
+
+    private final String indexerName;
+    private final Clock clock;
+    private final TransitionListener transitionListener;
+
+    private volatile State state = State.CLOSED;
+    private volatile long openUntil;
+    private int openedInARow;
+    private long trialStarted;
+
+    private final boolean[] failures = new boolean[WINDOW_SIZE];
+    private int windowPosition;
+    private int numberOfCalls;
+    private int numberOfFailures;
+
+    public IndexerCircuitBreaker(String indexerName, Clock clock, TransitionListener transitionListener) {
+        this.indexerName = indexerName;
+        this.clock = clock;
+        this.transitionListener = transitionListener;
+    }
+
+    /**
+     * Restores a circuit that was opened before a restart or a reload of the indexers. If the time has already passed the
+     * next call will be a trial.
+     */
+    public synchronized void restoreOpen(Instant until, int openedInARow) {
+        this.state = State.OPEN;
+        this.openUntil = until == null ? 0 : until.toEpochMilli();
+        this.openedInARow = Math.max(1, openedInARow);
+    }
+
+    /**
+     * Returns if the indexer may be called. If the open period has passed this grants the trial call to the caller, so the
+     * result of the call must be reported using {@link #recordSuccess()} or {@link #recordFailure(String)}.
+     */
+    public boolean isCallPermitted() {
+        State current = state;
+        if (current == State.CLOSED) {
+            return true;
+        }
+        if (current == State.OPEN && clock.millis() < openUntil) {
+            return false;
+        }
+        return tryAcquireTrial();
+    }
+
+    private synchronized boolean tryAcquireTrial() {
+        long now = clock.millis();
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.OPEN) {
+            if (now < openUntil) {
+                return false;
+            }
+            trialStarted = now;
+            transition(State.HALF_OPEN, "Open period has passed");
+            return true;
+        }
+        if (now - trialStarted >= TRIAL_TIMEOUT.toMillis()) {
+            trialStarted = now;
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized void recordSuccess() {
+        if (state == State.CLOSED) {
+            addToWindow(false);
+            return;
+        }
+        //A success while open means another kind of call (e.g. an NZB download) worked, good enough
+        openedInARow = 0;
+        openUntil = 0;
+        resetWindow();
+        transition(State.CLOSED, null);
+    }
+
+    /**
+     * Records a failed call which is counted in the failure rate. Failed trial calls open the circuit again right away.
+     */
+    public synchronized void recordFailure(String reason) {
+        if (state == State.HALF_OPEN) {
+            open(reason, nextOpenDuration());
+        } else if (state == State.CLOSED) {
+            addToWindow(true);
+            if (numberOfCalls >= MINIMUM_NUMBER_OF_CALLS && numberOfFailures * 2 >= numberOfCalls) {
+                open(reason, nextOpenDuration());
+            }
+        }
+        //Calls made before the circuit was opened don't extend the open period
+    }
+
+    /**
+     * Opens the circuit regardless of the failure rate because calling the indexer won't work until its limit is reset.
+     */
+    public synchronized void recordApiLimitReached(String reason) {
+        long until = clock.millis() + API_LIMIT_OPEN_DURATION.toMillis();
+        if (state == State.OPEN && openUntil >= until) {
+            return;
+        }
+        open(reason, API_LIMIT_OPEN_DURATION);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public Instant getOpenUntil() {
+        return state == State.CLOSED ? null : Instant.ofEpochMilli(openUntil);
+    }
+
+    public synchronized int getOpenedInARow() {
+        return openedInARow;
+    }
+
+    public String getIndexerName() {
+        return indexerName;
+    }
+
+    private Duration nextOpenDuration() {
+        //Shift at most 20 times, more than enough to reach the maximum and no overflow
+        long millis = INITIAL_OPEN_DURATION.toMillis() << Math.min(openedInARow, 20);
+        return Duration.ofMillis(Math.min(millis, MAX_OPEN_DURATION.toMillis()));
+    }
+
+    private void open(String reason, Duration duration) {
+        openedInARow++;
+        openUntil = clock.millis() + duration.toMillis();
+        resetWindow();
+        transition(State.OPEN, reason);
+    }
+
+    private void transition(State newState, String reason) {
+        State oldState = state;
+        state = newState;
+        if (transitionListener != null) {
+            transitionListener.onTransition(this, oldState, newState, reason);
+        }
+    }
+
+    private void addToWindow(boolean failure) {
+        if (numberOfCalls == WINDOW_SIZE) {
+            if (failures[windowPosition]) {
+                numberOfFailures--;
+            }
+        } else {
+            numberOfCalls++;
+        }
+        failures[windowPosition] = failure;
+        if (failure) {
+            numberOfFailures++;
+        }
+        windowPosition = (windowPosition + 1) % WINDOW_SIZE;
+    }
+
+    private void resetWindow() {
+        windowPosition = 0;
+        numberOfCalls = 0;
+        numberOfFailures = 0;
+    }
+
+}
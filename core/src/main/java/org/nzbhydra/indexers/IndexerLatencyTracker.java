@@ -0,0 +1,116 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.indexers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the response times of the last calls to every indexer. Initially filled with the response times of successful
+ * API accesses stored in the database so that the distribution is known right after startup.
+ */
+@Component
+public class IndexerLatencyTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexerLatencyTracker.class);
+
+    static final int WINDOW_SIZE = 200;
+    /**
+     * Quantiles of fewer response times are not meaningful
+     */
+    static final int MIN_SAMPLES = 20;
+
+    @Autowired
+    private IndexerRepository indexerRepository;
+    @Autowired
+    private IndexerApiAccessRepository apiAccessRepository;
+
+    private final Map<String, LatencyWindow> windows = new ConcurrentHashMap<>();
+
+    public void record(String indexerName, long responseTimeMillis) {
+        getWindow(indexerName).add(responseTimeMillis);
+    }
+
+    /**
+     * @param quantile Quantile between 0 and 1
+     * @return The response time in milliseconds at the given quantile or empty if not enough response times are known
+     */
+    public Optional<Long> getResponseTime(String indexerName, double quantile) {
+        return getWindow(indexerName).getValueAtQuantile(quantile);
+    }
+
+    private LatencyWindow getWindow(String indexerName) {
+        LatencyWindow window = windows.get(indexerName);
+        if (window != null) {
+            return window;
+        }
+        return windows.computeIfAbsent(indexerName, this::loadWindow);
+    }
+
+    private LatencyWindow loadWindow(String indexerName) {
+        LatencyWindow window = new LatencyWindow();
+        try {
+            IndexerEntity indexerEntity = indexerRepository.findByName(indexerName);
+            if (indexerEntity != null) {
+                List<IndexerApiAccessEntity> accesses = apiAccessRepository.findByIndexerAndResultAndResponseTimeNotNullOrderByTimeDesc(indexerEntity, IndexerAccessResult.SUCCESSFUL, PageRequest.of(0, WINDOW_SIZE));
+                //Add oldest first so that the newest are kept longest
+                for (int i = accesses.size() - 1; i >= 0; i--) {
+                    window.add(accesses.get(i).getResponseTime());
+                }
+                logger.debug("Loaded {} response times of indexer {}", accesses.size(), indexerName);
+            }
+        } catch (Exception e) {
+            logger.warn("Unable to load response times of indexer {}: {}", indexerName, e.getMessage());
+        }
+        return window;
+    }
+
+    /**
+     * Ring buffer of the last {@value #WINDOW_SIZE} response times
+     */
+    static class LatencyWindow {
+        private final long[] values = new long[WINDOW_SIZE];
+        private int size = 0;
+        private int next = 0;
+
+        synchronized void add(long value) {
+            values[next] = value;
+            next = (next + 1) % WINDOW_SIZE;
+            size = Math.min(size + 1, WINDOW_SIZE);
+        }
+
+        synchronized Optional<Long> getValueAtQuantile(double quantile) {
+            if (size < MIN_SAMPLES) {
+                return Optional.empty();
+            }
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(quantile * size) - 1;
+            return Optional.of(sorted[Math.max(0, Math.min(size - 1, index))]);
+        }
+    }
+
+}
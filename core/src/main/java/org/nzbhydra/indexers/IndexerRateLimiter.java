@@ -0,0 +1,217 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.indexers;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.nzbhydra.config.indexer.IndexerConfig;
+import org.nzbhydra.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate of requests to an indexer using a token bucket per indexer. All calls to an indexer (searches, caps
+ * checks and NZB downloads) take a token. The bucket holds up to {@link IndexerConfig#getRequestBurst()} tokens and is
+ * refilled with {@link IndexerConfig#getRequestsPerMinute()} tokens per minute.
+ * <p>
+ * Independent of any configured rate an indexer can be blocked until a given time, e.g. when it responded with a 429 and
+ * a Retry-After header.
+ * <p>
+ * Callers may either wait for a token up to a deadline ({@link #acquire(IndexerConfig, Duration)}) or skip the indexer if
+ * no token is available right now ({@link #tryAcquire(IndexerConfig)}).
+ */
+@Component
+public class IndexerRateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexerRateLimiter.class);
+
+    protected Clock clock = Clock.systemUTC();
+
+    private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * Takes a token, waiting for it if necessary.
+     *
+     * @return false if no token will be available within the given time or the thread was interrupted while waiting
+     */
+    public boolean acquire(IndexerConfig indexerConfig, Duration maxWait) {
+        TokenBucket bucket = getBucket(indexerConfig);
+        long waitMillis = bucket.reserve(clock.millis(), maxWait.toMillis());
+        if (waitMillis < 0) {
+            Metrics.counter("hydra_indexer_rate_limited_total", "Calls to indexers not made because of the rate limit", "indexer", indexerConfig.getName()).increment();
+            return false;
+        }
+        if (waitMillis > 0) {
+            logger.debug("Waiting {}ms for rate limit of indexer {}", waitMillis, indexerConfig.getName());
+            try {
+                TimeUnit.MILLISECONDS.sleep(waitMillis);
+            } catch (InterruptedException e) {
+                //The indexer won't be called so others may use the token
+                bucket.release();
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Takes a token if one is available right now.
+     */
+    public boolean tryAcquire(IndexerConfig indexerConfig) {
+        return acquire(indexerConfig, Duration.ZERO);
+    }
+
+    /**
+     * @return The time to wait until a token is available, without taking it
+     */
+    public Duration getWaitTime(IndexerConfig indexerConfig) {
+        return Duration.ofMillis(getBucket(indexerConfig).getWaitMillis(clock.millis()));
+    }
+
+    /**
+     * Prevents any calls to the indexer until the given time.
+     */
+    public void blockUntil(IndexerConfig indexerConfig, Instant until) {
+        logger.warn("Indexer {} asked to wait until {} before calling it again", indexerConfig.getName(), until);
+        getBucket(indexerConfig).blockUntil(until.toEpochMilli());
+    }
+
+    /**
+     * @return The time a token was last taken for the indexer, if any
+     */
+    public Optional<Instant> getLastCall(IndexerConfig indexerConfig) {
+        return getBucket(indexerConfig).getLastCall();
+    }
+
+    public RateLimitStatus getStatus(IndexerConfig indexerConfig) {
+        return getBucket(indexerConfig).getStatus(clock.millis());
+    }
+
+    private TokenBucket getBucket(IndexerConfig indexerConfig) {
+        TokenBucket bucket = buckets.get(indexerConfig.getName());
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(indexerConfig.getName(), x -> new TokenBucket(clock.millis()));
+        }
+        //The config may have been changed since the bucket was created
+        bucket.configure(indexerConfig.getRequestsPerMinute().orElse(null), indexerConfig.getRequestBurst().orElse(1));
+        return bucket;
+    }
+
+
+    static class TokenBucket {
+
+        private Integer requestsPerMinute;
+        private int burst = 1;
+        private double tokens;
+        private long lastRefill;
+        private long blockedUntil;
+        private Long lastCall;
+
+        TokenBucket(long now) {
+            lastRefill = now;
+        }
+
+        synchronized void configure(Integer requestsPerMinute, int burst) {
+            this.burst = Math.max(1, burst);
+            if (requestsPerMinute != null && requestsPerMinute <= 0) {
+                //Rejected by the config validation but may still be in a config file, a rate of 0 would never refill the bucket
+                requestsPerMinute = null;
+            }
+            if (requestsPerMinute != null && !requestsPerMinute.equals(this.requestsPerMinute)) {
+                //Start with a full bucket when a limit is set so that the first calls don't have to wait
+                tokens = this.burst;
+            }
+            this.requestsPerMinute = requestsPerMinute;
+        }
+
+        /**
+         * Takes a token which may only become available in the future.
+         *
+         * @return The time to wait until the token may be used or -1 if that's longer than the given maximum in which case no token is taken
+         */
+        synchronized long reserve(long now, long maxWaitMillis) {
+            long waitMillis = getWaitMillis(now);
+            if (waitMillis > maxWaitMillis) {
+                return -1;
+            }
+            if (requestsPerMinute != null) {
+                //May become negative, the following callers will have to wait longer
+                tokens -= 1;
+            }
+            lastCall = now + waitMillis;
+            return waitMillis;
+        }
+
+        /**
+         * Gives back a token taken by {@link #reserve(long, long)} which won't be used.
+         */
+        synchronized void release() {
+            if (requestsPerMinute != null) {
+                tokens = Math.min(burst, tokens + 1);
+            }
+        }
+
+        synchronized long getWaitMillis(long now) {
+            refill(now);
+            long waitMillis = Math.max(0, blockedUntil - now);
+            if (requestsPerMinute != null && tokens < 1) {
+                waitMillis = Math.max(waitMillis, (long) Math.ceil((1 - tokens) * 60_000 / requestsPerMinute));
+            }
+            return waitMillis;
+        }
+
+        synchronized Optional<Instant> getLastCall() {
+            return lastCall == null ? Optional.empty() : Optional.of(Instant.ofEpochMilli(lastCall));
+        }
+
+        synchronized void blockUntil(long until) {
+            blockedUntil = Math.max(blockedUntil, until);
+        }
+
+        synchronized RateLimitStatus getStatus(long now) {
+            refill(now);
+            return new RateLimitStatus(requestsPerMinute, burst, requestsPerMinute == null ? null : Math.max(0, tokens), blockedUntil > now ? Instant.ofEpochMilli(blockedUntil) : null);
+        }
+
+        private void refill(long now) {
+            if (requestsPerMinute != null && now > lastRefill) {
+                tokens = Math.min(burst, tokens + (now - lastRefill) * requestsPerMinute / 60_000D);
+            }
+            lastRefill = now;
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class RateLimitStatus {
+        private Integer requestsPerMinute;
+        private int burst;
+        private Double availableRequests;
+        private Instant blockedUntil;
+    }
+
+}
@@ -21,6 +21,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.nzbhydra.config.ConfigProvider;
 import org.nzbhydra.config.indexer.IndexerConfig;
+import org.nzbhydra.indexers.IndexerRateLimiter.RateLimitStatus;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -34,6 +35,8 @@ public class IndexerStatuses {
 
     @Autowired
     private ConfigProvider configProvider;
+    @Autowired
+    private IndexerRateLimiter rateLimiter;
 
     public List<IndexerStatus> getSortedStatuses() {
         return configProvider.getBaseConfig().getIndexers().stream()
@@ -41,18 +44,25 @@ public class IndexerStatuses {
                         Comparator.comparing(IndexerConfig::getState)
                                 .thenComparing(o -> o.getName().toLowerCase())
                 )
-                .map(
-                        x -> new IndexerStatus(
-                                x.getName(),
-                                x.getState().name(),
-                                x.getDisabledLevel(),
-                                (x.getDisabledUntil() == null ? null : Instant.ofEpochMilli(x.getDisabledUntil())),
-                                x.getLastError()
-                        )
-                )
+                .map(this::toStatus)
                 .collect(Collectors.toList());
     }
 
+    private IndexerStatus toStatus(IndexerConfig config) {
+        RateLimitStatus rateLimitStatus = rateLimiter.getStatus(config);
+        return new IndexerStatus(
+                config.getName(),
+                config.getState().name(),
+                config.getDisabledLevel(),
+                (config.getDisabledUntil() == null ? null : Instant.ofEpochMilli(config.getDisabledUntil())),
+                config.getLastError(),
+                rateLimitStatus.getRequestsPerMinute(),
+                rateLimitStatus.getBurst(),
+                rateLimitStatus.getAvailableRequests() == null ? null : (int) Math.floor(rateLimitStatus.getAvailableRequests()),
+                rateLimitStatus.getBlockedUntil()
+        );
+    }
+
     @Data
     @AllArgsConstructor
     @NoArgsConstructor
@@ -62,6 +72,10 @@ public class IndexerStatuses {
         private int level;
         private Instant disabledUntil;
         private String lastError;
+        private Integer requestsPerMinute;
+        private int requestBurst;
+        private Integer availableRequests;
+        private Instant rateLimitedUntil;
 
     }
 }
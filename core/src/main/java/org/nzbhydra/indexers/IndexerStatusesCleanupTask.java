@@ -43,16 +43,20 @@ public class IndexerStatusesCleanupTask {
 
     @HydraTask(configId = "cleanUpIndexerStatuses", name = "Clean up indexer statuses", interval = MINUTE)
     public void cleanup() {
+        boolean anyChanged = false;
         for (IndexerConfig config : configProvider.getBaseConfig().getIndexers()) {
             if (config.getState() == IndexerConfig.State.DISABLED_SYSTEM_TEMPORARY && config.getDisabledUntil() != null && Instant.ofEpochMilli(config.getDisabledUntil()).isBefore(Instant.now())) {
-                //Do not reset the level. When the indexer is called the next time (when disabledUntil is in the past)
-                //and an error occurs the level is increased and the indexer gets disabled for a longer time
+                //Do not reset the level. The indexer's circuit breaker is still open and will only be closed by a successful
+                //call. If the trial call fails it's disabled for a longer time
                 logger.debug("Setting indexer {} back to enabled after having been temporarily disabled until {}", config.getName(), Instant.ofEpochMilli(config.getDisabledUntil()));
                 config.setState(IndexerConfig.State.ENABLED);
                 config.setDisabledUntil(null);
                 config.setLastError(null);
+                anyChanged = true;
             }
         }
-        configReaderWriter.save(configProvider.getBaseConfig());
+        if (anyChanged) {
+            configReaderWriter.save(configProvider.getBaseConfig());
+        }
     }
 }
@@ -2,11 +2,17 @@ package org.nzbhydra.indexers;
 
 import com.google.common.base.Throwables;
 import com.google.common.io.BaseEncoding;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.nzbhydra.config.ConfigProvider;
+import org.nzbhydra.config.SearchingConfig;
 import org.nzbhydra.config.indexer.IndexerConfig;
 import org.nzbhydra.indexers.exceptions.IndexerAccessException;
 import org.nzbhydra.indexers.exceptions.IndexerProgramErrorException;
+import org.nzbhydra.indexers.exceptions.IndexerRateLimitedException;
 import org.nzbhydra.indexers.exceptions.IndexerUnreachableException;
+import org.nzbhydra.logging.MdcThreadPoolExecutor;
+import org.nzbhydra.metrics.Metrics;
+import org.nzbhydra.okhttp.TooManyRequestsException;
 import org.nzbhydra.okhttp.WebAccess;
 import org.nzbhydra.web.WebConfiguration;
 import org.slf4j.Logger;
@@ -17,36 +23,71 @@ import org.springframework.oxm.UnmarshallingFailureException;
 import org.springframework.stereotype.Component;
 import org.xml.sax.SAXParseException;
 
+import javax.annotation.PreDestroy;
 import javax.xml.transform.stream.StreamSource;
 import java.io.StringReader;
 import java.net.SocketTimeoutException;
 import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Component
 public class IndexerWebAccess {
 
     private static final Logger logger = LoggerFactory.getLogger(IndexerWebAccess.class);
 
+    private static final double ADAPTIVE_TIMEOUT_FACTOR = 2;
+    private static final long MIN_ADAPTIVE_TIMEOUT_MILLIS = 2000;
+    /**
+     * Used when an indexer responds with 429 without saying how long to wait
+     */
+    private static final Duration DEFAULT_RETRY_AFTER = Duration.ofMinutes(1);
+
     @Autowired
     protected ConfigProvider configProvider;
     @Autowired
     protected WebAccess webAccess;
+    @Autowired
+    protected IndexerLatencyTracker latencyTracker;
+    @Autowired
+    protected IndexerRateLimiter rateLimiter;
     protected Unmarshaller unmarshaller = new WebConfiguration().marshaller();
 
+    private final ExecutorService executor = createExecutor();
+
 
     @SuppressWarnings("unchecked")
     public <T> T get(URI uri, IndexerConfig indexerConfig) throws IndexerAccessException {
         return get(uri, indexerConfig, null);
     }
 
-    @SuppressWarnings("unchecked")
     public <T> T get(URI uri, IndexerConfig indexerConfig, Class responseType) throws IndexerAccessException {
-        int timeout = indexerConfig.getTimeout().orElse(configProvider.getBaseConfig().getSearching().getTimeout());
+        long start = System.nanoTime();
+        boolean successful = false;
+        try {
+            T response = doGet(uri, indexerConfig, responseType);
+            successful = true;
+            return response;
+        } finally {
+            Metrics.histogram("hydra_indexer_web_access_duration_seconds", "Duration of calls to indexers including unmarshalling of the response", "indexer", indexerConfig.getName()).recordSince(start);
+            if (!successful) {
+                Metrics.counter("hydra_indexer_web_access_errors_total", "Failed calls to indexers", "indexer", indexerConfig.getName()).increment();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T doGet(URI uri, IndexerConfig indexerConfig, Class responseType) throws IndexerAccessException {
+        long timeoutMillis = getTimeoutMillis(indexerConfig);
+        int timeout = (int) Math.ceil(timeoutMillis / 1000D);
         String userAgent = indexerConfig.getUserAgent().orElse(configProvider.getBaseConfig().getSearching().getUserAgent().orElse("NZBHydra2"));
 
         Map<String, String> headers = new HashMap<>();
@@ -56,44 +97,146 @@ public class IndexerWebAccess {
             headers.put("Authorization", "Basic " + BaseEncoding.base64().encode((indexerConfig.getUsername().get() + ":" + indexerConfig.getPassword().get()).getBytes()));
         }
 
-        Future<T> future;
-        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        //Wait at most as long as the call itself may take
+        if (!rateLimiter.acquire(indexerConfig, Duration.ofMillis(timeoutMillis))) {
+            throw new IndexerRateLimitedException("Rate limit of indexer " + indexerConfig.getName() + " doesn't allow another call within " + timeout + " seconds");
+        }
+
+        //Count a timeout as response time so that the adaptive timeout grows if the indexer became slower. Only once per
+        //request, its attempts may time out after the deadline below has already been reached
+        AtomicBoolean timeoutRecorded = new AtomicBoolean();
+        Runnable recordTimeout = () -> {
+            if (timeoutRecorded.compareAndSet(false, true)) {
+                latencyTracker.record(indexerConfig.getName(), timeoutMillis);
+            }
+        };
+
+        Callable<T> call = () -> {
+            long start = System.nanoTime();
+            String response;
+            try {
+                response = webAccess.callUrl(uri.toString(), headers, timeout);
+            } catch (SocketTimeoutException e) {
+                recordTimeout.run();
+                throw e;
+            }
+            latencyTracker.record(indexerConfig.getName(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            if (responseType == String.class) {
+                return (T) response;
+            }
+            try {
+                T unmarshalled = (T) unmarshaller.unmarshal(new StreamSource(new StringReader(response)));
+                return unmarshalled;
+            } catch (UnmarshallingFailureException e) {
+                logParseException(response, e);
+                throw e;
+            }
+        };
+
+        CompletionService<T> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<T>> futures = new ArrayList<>();
         try {
-            future = executorService.submit(() -> {
-                String response = webAccess.callUrl(uri.toString(), headers, timeout);
-                if (responseType == String.class) {
-                    return (T) response;
+            long start = System.nanoTime();
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis + 1000); //Give it one second more than the actual timeout
+            Optional<Long> hedgeDelay = getHedgeDelayMillis(indexerConfig, timeoutMillis);
+            futures.add(completionService.submit(call));
+            int running = 1;
+            ExecutionException firstFailure = null;
+            while (true) {
+                boolean mayHedge = hedgeDelay.isPresent() && futures.size() == 1;
+                long waitUntil = mayHedge ? Math.min(deadline, start + TimeUnit.MILLISECONDS.toNanos(hedgeDelay.get())) : deadline;
+                Future<T> done = completionService.poll(waitUntil - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (done == null && mayHedge && waitUntil < deadline) {
+                    if (!rateLimiter.tryAcquire(indexerConfig)) {
+                        //Don't wait for the rate limit, just keep waiting for the first request
+                        hedgeDelay = Optional.empty();
+                        continue;
+                    }
+                    logger.debug("No response from indexer {} within {}ms. Sending hedged request", indexerConfig.getName(), hedgeDelay.get());
+                    Metrics.counter("hydra_indexer_hedged_requests_total", "Calls to indexers repeated because the first call took longer than usual", "indexer", indexerConfig.getName()).increment();
+                    futures.add(completionService.submit(call));
+                    running++;
+                    continue;
+                }
+                if (done == null) {
+                    recordTimeout.run();
+                    throw new IndexerAccessException("Indexer did not complete request within " + timeout + " seconds");
                 }
                 try {
-                    T unmarshalled = (T) unmarshaller.unmarshal(new StreamSource(new StringReader(response)));
-                    return unmarshalled;
-                } catch (UnmarshallingFailureException e) {
-                    logParseException(response, e);
-                    throw e;
+                    return done.get();
+                } catch (ExecutionException e) {
+                    if (firstFailure == null) {
+                        firstFailure = e;
+                    }
+                    if (--running == 0) {
+                        throw mapException(firstFailure, indexerConfig, timeout);
+                    }
+                    //Wait for the other request
                 }
-            });
+            }
         } catch (RejectedExecutionException e) {
             logger.error("Unexpected execution exception while executing call for indexer " + indexerConfig.getName() + ". This will hopefully be fixed soon", e);
             throw new IndexerProgramErrorException("Unexpected error in hydra code. Sorry...");
+        } catch (IndexerAccessException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Unexpected error while accessing indexer", e);
         } finally {
-            executorService.shutdown();
+            futures.forEach(x -> x.cancel(true));
         }
-        try {
-            return future.get(timeout + 1, TimeUnit.SECONDS); //Give it one second more than the actual timeout
-        } catch (ExecutionException e) {
-            if (e.getCause() instanceof SocketTimeoutException) {
-                throw new IndexerUnreachableException("Connection with indexer timed out with a time out of " + timeout + " seconds: " + e.getCause().getMessage());
-            }
-            if (e.getCause() instanceof UnmarshallingFailureException) {
-                throw new IndexerAccessException("Unable to parse indexer output", e);
-            }
+    }
 
-            throw new IndexerUnreachableException("Error while communicating with indexer " + indexerConfig.getName() + ". Server returned: " + e.getMessage(), e.getCause());
-        } catch (TimeoutException e) {
-            throw new IndexerAccessException("Indexer did not complete request within " + timeout + " seconds");
-        } catch (Exception e) {
-            throw new RuntimeException("Unexpected error while accessing indexer", e);
+    private IndexerAccessException mapException(ExecutionException e, IndexerConfig indexerConfig, int timeout) {
+        if (e.getCause() instanceof TooManyRequestsException) {
+            Instant retryAfter = ((TooManyRequestsException) e.getCause()).getRetryAfter().orElse(Instant.now().plus(DEFAULT_RETRY_AFTER));
+            rateLimiter.blockUntil(indexerConfig, retryAfter);
+            return new IndexerRateLimitedException("Indexer " + indexerConfig.getName() + " refused the request because too many were made. Will wait until " + retryAfter, e.getCause());
+        }
+        if (e.getCause() instanceof SocketTimeoutException) {
+            return new IndexerUnreachableException("Connection with indexer timed out with a time out of " + timeout + " seconds: " + e.getCause().getMessage());
+        }
+        if (e.getCause() instanceof UnmarshallingFailureException) {
+            return new IndexerAccessException("Unable to parse indexer output", e);
         }
+        return new IndexerUnreachableException("Error while communicating with indexer " + indexerConfig.getName() + ". Server returned: " + e.getMessage(), e.getCause());
+    }
+
+    /**
+     * @return The configured timeout or, if adaptive timeouts are enabled, a multiple of the indexer's 99th percentile
+     * of response times, limited by the configured timeout.
+     */
+    protected long getTimeoutMillis(IndexerConfig indexerConfig) {
+        SearchingConfig searchingConfig = configProvider.getBaseConfig().getSearching();
+        long configuredTimeout = TimeUnit.SECONDS.toMillis(indexerConfig.getTimeout().orElse(searchingConfig.getTimeout()));
+        if (!searchingConfig.isAdaptiveTimeouts()) {
+            return configuredTimeout;
+        }
+        return latencyTracker.getResponseTime(indexerConfig.getName(), 0.99)
+                .map(p99 -> Math.min(configuredTimeout, Math.max(MIN_ADAPTIVE_TIMEOUT_MILLIS, (long) (p99 * ADAPTIVE_TIMEOUT_FACTOR))))
+                .orElse(configuredTimeout);
+    }
+
+    /**
+     * @return The time after which a second request should be sent if the first one hasn't returned yet. Only used for
+     * indexers without hit limit because every hedged request counts as an API hit.
+     */
+    protected Optional<Long> getHedgeDelayMillis(IndexerConfig indexerConfig, long timeoutMillis) {
+        if (!configProvider.getBaseConfig().getSearching().isHedgeRequests() || indexerConfig.getHitLimit().isPresent()) {
+            return Optional.empty();
+        }
+        return latencyTracker.getResponseTime(indexerConfig.getName(), 0.95).filter(p95 -> p95 < timeoutMillis);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static ExecutorService createExecutor() {
+        //Threads are only waiting for the indexers so their number isn't limited (like when a thread was created for every call)
+        MdcThreadPoolExecutor executor = MdcThreadPoolExecutor.newWithInheritedMdc(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>());
+        executor.setThreadFactory(new ThreadFactoryBuilder().setNameFormat("IndexerWebAccess-%d").setDaemon(true).build());
+        return executor;
     }
 
     protected void logParseException(String response, UnmarshallingFailureException e) {
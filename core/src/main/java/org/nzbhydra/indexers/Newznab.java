@@ -19,6 +19,7 @@ import org.nzbhydra.mediainfo.MediaInfo;
 import org.nzbhydra.searching.SearchResultAcceptor.AcceptorResult;
 import org.nzbhydra.searching.SearchResultIdCalculator;
 import org.nzbhydra.searching.UnknownResponseException;
+import org.nzbhydra.searching.dtoseventsenums.CompactAttributeMap;
 import org.nzbhydra.searching.dtoseventsenums.IndexerSearchResult;
 import org.nzbhydra.searching.dtoseventsenums.SearchResultItem;
 import org.nzbhydra.searching.dtoseventsenums.SearchResultItem.DownloadType;
@@ -39,7 +40,6 @@ import java.io.StringReader;
 import java.net.URI;
 import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -80,7 +80,6 @@ public class Newznab extends Indexer<Xml> {
 
     @Autowired
     private Unmarshaller unmarshaller;
-    private ConcurrentHashMap<Integer, Category> idToCategory = new ConcurrentHashMap<>();
 
 
     protected UriComponentsBuilder getBaseUri() {
@@ -451,52 +450,80 @@ public class Newznab extends Indexer<Xml> {
         return "application/x-nzb";
     }
 
+    /**
+     * Decodes the newznab attributes in one pass. All attributes are kept in the result's attribute map as they were
+     * received (the last value wins if an attribute occurs more than once), known ones are additionally written into the
+     * typed fields of the result. The numeric fields stay boxed because null tells later steps that an indexer didn't
+     * provide the attribute.
+     */
     protected void parseAttributes(NewznabXmlItem item, SearchResultItem searchResultItem) {
-        Map<String, String> attributes = item.getNewznabAttributes().stream().collect(Collectors.toMap(NewznabAttribute::getName, NewznabAttribute::getValue, (a, b) -> b));
-        List<Integer> newznabCategories = item.getNewznabAttributes().stream().filter(x -> x.getName().equals("category") && !"None".equals(x.getValue()) && !Strings.isNullOrEmpty(x.getValue())).map(newznabAttribute -> Integer.parseInt(newznabAttribute.getValue())).collect(Collectors.toList());
-        searchResultItem.setAttributes(attributes);
-
-        if (attributes.containsKey("usenetdate")) {
-            tryParseDate(attributes.get("usenetdate")).ifPresent(searchResultItem::setUsenetDate);
-        }
-        if (attributes.containsKey("password")) {
-            String passwordValue = attributes.get("password");
-            try {
-                if (Integer.parseInt(passwordValue) > 0) {
-                    searchResultItem.setPassworded(true);
-                }
-            } catch (NumberFormatException e) {
-                error("Unable to parse password value " + passwordValue);
+        Map<String, String> attributes = new CompactAttributeMap(item.getNewznabAttributes().size());
+        List<Integer> newznabCategories = Collections.emptyList();
+        boolean hasInfo = false;
+        for (NewznabAttribute attribute : item.getNewznabAttributes()) {
+            String name = attribute.getName();
+            String value = attribute.getValue();
+            if (name == null || value == null) {
+                continue;
+            }
+            attributes.put(name, value);
+            //Every case sets its field from the current value so that a later occurrence of an attribute overwrites an earlier one
+            switch (name) {
+                case "category":
+                    if (!"None".equals(value) && !value.isEmpty()) {
+                        if (newznabCategories.isEmpty()) {
+                            newznabCategories = new ArrayList<>(2);
+                        }
+                        newznabCategories.add(Integer.parseInt(value));
+                    }
+                    break;
+                case "usenetdate":
+                    searchResultItem.setUsenetDate(tryParseDate(value).orElse(null));
+                    break;
+                case "password":
+                    try {
+                        searchResultItem.setPassworded(Integer.parseInt(value) > 0);
+                    } catch (NumberFormatException e) {
+                        error("Unable to parse password value " + value);
+                        searchResultItem.setPassworded(false);
+                    }
+                    break;
+                case "nfo":
+                    searchResultItem.setHasNfo(value.equals("1") ? HasNfo.YES : HasNfo.NO);
+                    break;
+                case "info":
+                    hasInfo = true;
+                    break;
+                case "poster":
+                    searchResultItem.setPoster(value.equals("not available") ? null : value);
+                    break;
+                case "group":
+                    searchResultItem.setGroup(value.equals("not available") ? null : value);
+                    break;
+                case "files":
+                    searchResultItem.setFiles(Integer.parseInt(value));
+                    break;
+                case "comments":
+                    searchResultItem.setCommentsCount(Integer.parseInt(value));
+                    break;
+                case "grabs":
+                    searchResultItem.setGrabs(Integer.parseInt(value));
+                    break;
+                case "guid":
+                    searchResultItem.setIndexerGuid(value);
+                    break;
+                case "size":
+                    searchResultItem.setSize(Long.parseLong(value));
+                    break;
+                default:
+                    break;
             }
         }
-        if (attributes.containsKey("nfo")) {
-            searchResultItem.setHasNfo(attributes.get("nfo").equals("1") ? HasNfo.YES : HasNfo.NO);
-        }
-        if (attributes.containsKey("info") && (config.getBackend() == BackendType.NNTMUX || config.getBackend() == BackendType.NZEDB)) {
+        searchResultItem.setAttributes(attributes);
+        if (hasInfo && (config.getBackend() == BackendType.NNTMUX || config.getBackend() == BackendType.NZEDB)) {
             //Info attribute is always a link to an NFO
             searchResultItem.setHasNfo(HasNfo.YES);
         }
-        if (attributes.containsKey("poster") && !attributes.get("poster").equals("not available")) {
-            searchResultItem.setPoster(attributes.get("poster"));
-        }
-        if (attributes.containsKey("group") && !attributes.get("group").equals("not available")) {
-            searchResultItem.setGroup(attributes.get("group"));
-        }
-        if (attributes.containsKey("files")) {
-            searchResultItem.setFiles(Integer.valueOf(attributes.get("files")));
-        }
-        if (attributes.containsKey("comments")) {
-            searchResultItem.setCommentsCount(Integer.valueOf(attributes.get("comments")));
-        }
-        if (attributes.containsKey("grabs")) {
-            searchResultItem.setGrabs(Integer.valueOf(attributes.get("grabs")));
-        }
-        if (attributes.containsKey("guid")) {
-            searchResultItem.setIndexerGuid(attributes.get("guid"));
-        }
-        if (attributes.containsKey("size")) {
-            searchResultItem.setSize(Long.valueOf(attributes.get("size")));
-        }
 
         computeCategory(searchResultItem, newznabCategories);
 
@@ -515,28 +542,30 @@ public class Newznab extends Indexer<Xml> {
 
     protected void computeCategory(SearchResultItem searchResultItem, List<Integer> newznabCategories) {
         if (!newznabCategories.isEmpty()) {
-            Integer mostSpecific = newznabCategories.stream().max(Integer::compareTo).get();
+            int mostSpecific = newznabCategories.get(0);
+            for (Integer newznabCategory : newznabCategories) {
+                mostSpecific = Math.max(mostSpecific, newznabCategory);
+            }
             IndexerCategoryConfig mapping = config.getCategoryMapping();
             Category category;
             if (mapping == null) { //May be the case in some corner cases
                 category = categoryProvider.fromSearchNewznabCategories(newznabCategories, categoryProvider.getNotAvailable());
                 searchResultItem.setOriginalCategory(categoryProvider.getNotAvailable().getName());
             } else {
-                category = idToCategory.computeIfAbsent(mostSpecific, x -> {
-                    Optional<Category> categoryOptional = Optional.empty();
-                    if (mapping.getAnime().isPresent() && Objects.equals(mapping.getAnime().get(), mostSpecific)) {
-                        categoryOptional = categoryProvider.fromSubtype(Subtype.ANIME);
-                    } else if (mapping.getAudiobook().isPresent() && Objects.equals(mapping.getAudiobook().get(), mostSpecific)) {
-                        categoryOptional = categoryProvider.fromSubtype(Subtype.AUDIOBOOK);
-                    } else if (mapping.getEbook().isPresent() && Objects.equals(mapping.getEbook().get(), mostSpecific)) {
-                        categoryOptional = categoryProvider.fromSubtype(Subtype.EBOOK);
-                    } else if (mapping.getComic().isPresent() && Objects.equals(mapping.getComic().get(), mostSpecific)) {
-                        categoryOptional = categoryProvider.fromSubtype(Subtype.COMIC);
-                    } else if (mapping.getMagazine().isPresent() && Objects.equals(mapping.getMagazine().get(), mostSpecific)) {
-                        categoryOptional = categoryProvider.fromSubtype(Subtype.MAGAZINE);
-                    }
-                    return categoryOptional.orElse(categoryProvider.fromResultNewznabCategories(newznabCategories));
-                });
+                //Category lookups are precomputed by the category provider so no need to cache them here
+                Optional<Category> categoryOptional = Optional.empty();
+                if (isMappedTo(mapping.getAnime(), mostSpecific)) {
+                    categoryOptional = categoryProvider.fromSubtype(Subtype.ANIME);
+                } else if (isMappedTo(mapping.getAudiobook(), mostSpecific)) {
+                    categoryOptional = categoryProvider.fromSubtype(Subtype.AUDIOBOOK);
+                } else if (isMappedTo(mapping.getEbook(), mostSpecific)) {
+                    categoryOptional = categoryProvider.fromSubtype(Subtype.EBOOK);
+                } else if (isMappedTo(mapping.getComic(), mostSpecific)) {
+                    categoryOptional = categoryProvider.fromSubtype(Subtype.COMIC);
+                } else if (isMappedTo(mapping.getMagazine(), mostSpecific)) {
+                    categoryOptional = categoryProvider.fromSubtype(Subtype.MAGAZINE);
+                }
+                category = categoryOptional.isPresent() ? categoryOptional.get() : categoryProvider.fromResultNewznabCategories(newznabCategories);
                 //Use the indexer's own category mapping to build the category name
                 searchResultItem.setOriginalCategory(mapping.getNameFromId(mostSpecific));
             }
@@ -546,6 +575,10 @@ public class Newznab extends Indexer<Xml> {
         }
     }
 
+    private static boolean isMappedTo(Optional<Integer> mappedNumber, int number) {
+        return mappedNumber.isPresent() && mappedNumber.get() == number;
+    }
+
     protected Logger getLogger() {
         return logger;
     }
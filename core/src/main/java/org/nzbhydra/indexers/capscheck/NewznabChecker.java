@@ -18,6 +18,7 @@ package org.nzbhydra.indexers.capscheck;
 
 import com.google.common.base.Strings;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -48,9 +49,11 @@ import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import javax.annotation.PreDestroy;
 import java.net.URI;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -69,6 +72,14 @@ public class NewznabChecker {
      * Host/Indexer specific limits
      */
     private static final Set<CapsCheckLimit> CAPS_CHECK_LIMITS = Sets.newHashSet(new CapsCheckLimit(1, 2000, "rarbg"));
+    /**
+     * Maximum number of ID searches executed at the same time over all indexers being checked
+     */
+    public static final int MAX_CONCURRENT_PROBES = 10;
+    /**
+     * Maximum number of indexers checked at the same time when checking multiple indexers
+     */
+    public static final int MAX_PARALLEL_INDEXER_CHECKS = 5;
 
     @Autowired
     protected ConfigProvider configProvider;
@@ -77,6 +88,15 @@ public class NewznabChecker {
     @Autowired
     private ApplicationEventPublisher eventPublisher;
 
+    private ExecutorService probeExecutor;
+    /**
+     * Limits the number of concurrent connections per host, regardless of how many indexers using that host are checked
+     */
+    private final Map<String, Semaphore> hostSemaphores = new ConcurrentHashMap<>();
+    /**
+     * Probes which may not have finished yet. The executor wraps its tasks so the probes can't be taken from its queue on shutdown
+     */
+    private final Set<PermitHoldingProbe<?>> probes = ConcurrentHashMap.newKeySet();
 
     protected UriComponentsBuilder getBaseUri(IndexerConfig indexerConfig) {
         UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(indexerConfig.getHost()).path("/api");
@@ -157,22 +177,67 @@ public class NewznabChecker {
         boolean configComplete = true;
         int timeout = indexerConfig.getTimeout().orElse(configProvider.getBaseConfig().getSearching().getTimeout()) + 1;
         CapsCheckLimit capsCheckLimit = CAPS_CHECK_LIMITS.stream().filter(x -> indexerConfig.getHost().toLowerCase().contains(x.urlContains)).findFirst().orElse(new CapsCheckLimit(MAX_CONNECTIONS, PAUSE_BETWEEN_CALLS, null));
-        List<Callable<SingleCheckCapsResponse>> callables = new ArrayList<>();
-        for (int i = 0; i < requests.size(); i++) {
-            CheckCapsRequest request = requests.get(i);
-            callables.add(() -> {
-                Thread.sleep(capsCheckLimit.delayInMiliseconds); //Give indexer some time to breathe
-                return singleCheckCaps(request, indexerConfig);
-            });
-        }
+        Semaphore hostSemaphore = getHostSemaphore(indexerConfig, capsCheckLimit);
+        //A probe holds a permit for at most its delay and timeout. Allow for another check of the same host holding the permits
+        long permitTimeout = 2 * (capsCheckLimit.delayInMiliseconds + timeout * 1000L);
+        AtomicBoolean accessFailed = new AtomicBoolean(false);
 
         Set<SingleCheckCapsResponse> responses = new HashSet<>();
         Set<IdType> supportedIds;
         String backend = null;
-        ExecutorService executor = MdcThreadPoolExecutor.newWithInheritedMdc(capsCheckLimit.maxConnections);
+        List<Future<SingleCheckCapsResponse>> futures = new ArrayList<>();
         try {
             logger.info("Will check capabilities of indexer {} using {} concurrent connections and a delay of {}ms", indexerConfig.getName(), capsCheckLimit.maxConnections, capsCheckLimit.delayInMiliseconds);
-            List<Future<SingleCheckCapsResponse>> futures = executor.invokeAll(callables);
+            eventPublisher.publishEvent(new CheckerEvent(indexerConfig.getName(), "Checking support of " + requests.size() + " ID types"));
+            for (int i = 0; i < requests.size(); i++) {
+                CheckCapsRequest request = requests.get(i);
+                //Wait for a free connection to the host before submitting so that the shared pool's threads never block on it
+                if (!hostSemaphore.tryAcquire(permitTimeout, TimeUnit.MILLISECONDS)) {
+                    logger.warn("Skipping remaining {} ID checks for indexer {} because no connection to the host became free in {}ms", requests.size() - i, indexerConfig.getName(), permitTimeout);
+                    eventPublisher.publishEvent(new CheckerEvent(indexerConfig.getName(), "Skipped " + (requests.size() - i) + " remaining ID checks because other checks of the same host took too long"));
+                    allChecked = false;
+                    break;
+                }
+                if (accessFailed.get()) {
+                    hostSemaphore.release();
+                    logger.warn("Skipping remaining {} ID checks for indexer {} because it couldn't be accessed", requests.size() - i, indexerConfig.getName());
+                    eventPublisher.publishEvent(new CheckerEvent(indexerConfig.getName(), "Skipped " + (requests.size() - i) + " remaining ID checks because indexer couldn't be accessed"));
+                    allChecked = false;
+                    break;
+                }
+                PermitHoldingProbe<SingleCheckCapsResponse> future = new PermitHoldingProbe<>(() -> {
+                    try {
+                        Thread.sleep(capsCheckLimit.delayInMiliseconds); //Give indexer some time to breathe
+                        return singleCheckCaps(request, indexerConfig);
+                    } catch (IndexerAccessException e) {
+                        accessFailed.set(true);
+                        throw e;
+                    }
+                }, hostSemaphore);
+                try {
+                    executeProbe(future);
+                } catch (RejectedExecutionException e) {
+                    logger.error("Unable to execute ID checks for indexer {}", indexerConfig.getName(), e);
+                    allChecked = false;
+                    break;
+                }
+                futures.add(future);
+                if (i == 0) {
+                    //The first search tells us if the indexer can be accessed at all. Wait for it before sending any more
+                    try {
+                        future.get(timeout, TimeUnit.SECONDS);
+                    } catch (ExecutionException e) {
+                        accessFailed.set(true);
+                    } catch (TimeoutException e) {
+                        //Don't wait for it again below
+                        logger.error("Indexer {} failed to answer in {} seconds", indexerConfig.getName(), timeout);
+                        future.cancel(true);
+                        futures.remove(future);
+                        accessFailed.set(true);
+                        allChecked = false;
+                    }
+                }
+            }
             for (Future<SingleCheckCapsResponse> future : futures) {
                 try {
                     SingleCheckCapsResponse response = future.get(timeout, TimeUnit.SECONDS);
@@ -188,25 +253,28 @@ public class NewznabChecker {
                     }
                     allChecked = false;
                 } catch (TimeoutException e) {
-                    logger.error("Indexer {] failed to answer in {} seconds", indexerConfig.getName(), timeout);
+                    logger.error("Indexer {} failed to answer in {} seconds", indexerConfig.getName(), timeout);
+                    future.cancel(true);
+                    allChecked = false;
+                } catch (CancellationException e) {
+                    //Shut down
                     allChecked = false;
                 }
             }
-            supportedIds = responses.stream().filter(SingleCheckCapsResponse::isSupported).map(x -> Newznab.paramValueToIdMap.get(x.getKey())).collect(Collectors.toSet());
-            if (supportedIds.isEmpty()) {
-                logger.info("Indexer {} does not support searching by any IDs", indexerConfig.getName());
-            } else {
-                logger.info("Indexer {} supports searching using the following IDs: {}", indexerConfig.getName(), supportedIds.stream().map(Enum::name).collect(Collectors.joining(", ")));
-            }
-            indexerConfig.setSupportedSearchIds(new ArrayList<>(supportedIds));
-
         } catch (InterruptedException e) {
             logger.error("Unexpected error while checking caps", e);
+            futures.forEach(x -> x.cancel(true));
             allChecked = false;
-        } finally {
-            executor.shutdown();
         }
+        supportedIds = responses.stream().filter(SingleCheckCapsResponse::isSupported).map(x -> Newznab.paramValueToIdMap.get(x.getKey())).collect(Collectors.toSet());
+        if (supportedIds.isEmpty()) {
+            logger.info("Indexer {} does not support searching by any IDs", indexerConfig.getName());
+        } else {
+            logger.info("Indexer {} supports searching using the following IDs: {}", indexerConfig.getName(), supportedIds.stream().map(Enum::name).collect(Collectors.joining(", ")));
+        }
+        indexerConfig.setSupportedSearchIds(new ArrayList<>(supportedIds));
 
+        eventPublisher.publishEvent(new CheckerEvent(indexerConfig.getName(), "Checking supported search types and categories"));
         try {
             indexerConfig.setCategoryMapping(setSupportedSearchTypesAndIndexerCategoryMapping(indexerConfig, timeout));
             if (indexerConfig.getSupportedSearchTypes().isEmpty()) {
@@ -235,6 +303,7 @@ public class NewznabChecker {
         indexerConfig.setConfigComplete(configComplete);
         indexerConfig.setAllCapsChecked(allChecked);
         indexerConfig.setState(configComplete ? IndexerConfig.State.ENABLED : IndexerConfig.State.DISABLED_SYSTEM);
+        eventPublisher.publishEvent(new CheckerEvent(indexerConfig.getName(), "Caps check finished"));
 
         return new CheckCapsResponse(indexerConfig, allChecked, configComplete);
     }
@@ -253,7 +322,9 @@ public class NewznabChecker {
             return Collections.emptyList();
         }
         logger.info("Calling caps check for indexers {}", configsToCheck.stream().map(IndexerConfig::getName).collect(Collectors.joining(", ")));
-        ExecutorService executor = Executors.newFixedThreadPool(configsToCheck.size());
+        //Checking an indexer mostly means waiting for its probes in the shared pool, so a few threads are enough to keep that busy
+        ExecutorService executor = MdcThreadPoolExecutor.newWithInheritedMdc(Math.min(configsToCheck.size(), MAX_PARALLEL_INDEXER_CHECKS));
+        configsToCheck.forEach(x -> eventPublisher.publishEvent(new CheckerEvent(x.getName(), "Waiting for caps check")));
         List<CheckCapsResponse> responses = new ArrayList<>();
         try {
             List<Future<CheckCapsResponse>> futures = executor.invokeAll(configsToCheck.stream().map(x -> (Callable<CheckCapsResponse>) () -> checkCaps(x)).collect(Collectors.toList()));
@@ -268,11 +339,89 @@ public class NewznabChecker {
         } catch (InterruptedException e) {
             logger.error("Error while calling caps check for all indexers", e);
         } finally {
-            executor.shutdown();
+            executor.shutdownNow();
         }
         return responses;
     }
 
+    private synchronized ExecutorService getProbeExecutor() {
+        if (probeExecutor == null) {
+            MdcThreadPoolExecutor executor = MdcThreadPoolExecutor.newWithInheritedMdc(MAX_CONCURRENT_PROBES, MAX_CONCURRENT_PROBES, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+            executor.setThreadFactory(new ThreadFactoryBuilder().setNameFormat("CapsCheck-%d").setDaemon(true).build());
+            //No need to keep threads around between caps checks
+            executor.allowCoreThreadTimeOut(true);
+            probeExecutor = executor;
+        }
+        return probeExecutor;
+    }
+
+    void executeProbe(PermitHoldingProbe<?> probe) {
+        probes.removeIf(Future::isDone);
+        probes.add(probe);
+        try {
+            getProbeExecutor().execute(probe);
+        } catch (RejectedExecutionException e) {
+            probe.cancel(false);
+            throw e;
+        }
+    }
+
+    private Semaphore getHostSemaphore(IndexerConfig indexerConfig, CapsCheckLimit capsCheckLimit) {
+        String host = UriComponentsBuilder.fromHttpUrl(indexerConfig.getHost()).build().getHost();
+        return hostSemaphores.computeIfAbsent(host == null ? indexerConfig.getHost().toLowerCase() : host.toLowerCase(), x -> new Semaphore(capsCheckLimit.maxConnections));
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        //Releases the permits of probes which were never executed. Cancelled before the executor interrupts the running ones
+        //so that those don't end with an InterruptedException instead
+        probes.forEach(x -> x.cancel(true));
+        probes.clear();
+        if (probeExecutor != null) {
+            probeExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * ID check which holds one of its host's permits. The permit is released exactly once: after the check was executed
+     * or, if it's cancelled before it was started, when it's cancelled. Otherwise a check that's cancelled while waiting
+     * in the executor's queue would never give its permit back.
+     */
+    static class PermitHoldingProbe<T> extends FutureTask<T> {
+
+        private final Semaphore hostSemaphore;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+        private volatile boolean started = false;
+
+        PermitHoldingProbe(Callable<T> callable, Semaphore hostSemaphore) {
+            super(callable);
+            this.hostSemaphore = hostSemaphore;
+        }
+
+        @Override
+        public void run() {
+            started = true;
+            try {
+                super.run();
+            } finally {
+                release();
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (!started) {
+                release();
+            }
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                hostSemaphore.release();
+            }
+        }
+    }
+
     public IndexerCategoryConfig setSupportedSearchTypesAndIndexerCategoryMapping(IndexerConfig indexerConfig, int timeout) throws IndexerAccessException {
         List<IdType> supportedSearchIds = indexerConfig.getSupportedSearchIds();
         List<ActionAttribute> supportedSearchTypes = new ArrayList<>();
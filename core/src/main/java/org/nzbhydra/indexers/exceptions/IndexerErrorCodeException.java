@@ -3,11 +3,35 @@ package org.nzbhydra.indexers.exceptions;
 
 import org.nzbhydra.mapping.newznab.xml.NewznabXmlError;
 
+import java.util.stream.Stream;
+
 /**
  * Thrown when the indexer returns an error code that is not handled specifically (e.g. not an auth problem)
  */
 public class IndexerErrorCodeException extends IndexerAccessException {
+
+    private final String code;
+    private final String description;
+
     public IndexerErrorCodeException(NewznabXmlError response) {
         super(String.format("Indexer returned with error code %s and description %s", response.getCode(), response.getDescription()));
+        code = response.getCode();
+        description = response.getDescription();
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * @return true if the error code or description indicate that the API or download limit was reached
+     */
+    public boolean isApiLimitReached() {
+        //500 and 501 are the newznab codes for reached request and download limits, some indexers use other codes but say so in the description
+        return Stream.of("500", "501").anyMatch(x -> x.equals(code)) || (description != null && description.toLowerCase().contains("limit reached"));
     }
 }
@@ -0,0 +1,15 @@
+package org.nzbhydra.indexers.exceptions;
+
+/**
+ * Thrown when the indexer wasn't called because of its rate limit or when it answered that too many requests were made.
+ */
+public class IndexerRateLimitedException extends IndexerAccessException {
+
+    public IndexerRateLimitedException(String message) {
+        super(message);
+    }
+
+    public IndexerRateLimitedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -14,22 +14,24 @@
  *  limitations under the License.
  */
 
-package org.nzbhydra.downloading;
+package org.nzbhydra.metrics;
 
-import lombok.AllArgsConstructor;
-import lombok.Data;
-import lombok.NoArgsConstructor;
+import java.util.concurrent.atomic.LongAdder;
 
-import java.util.Collection;
+public class Counter {
 
-@Data
-@AllArgsConstructor
-@NoArgsConstructor
-public class FileZipResponse {
+    private final LongAdder value = new LongAdder();
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void increment(long amount) {
+        value.add(amount);
+    }
+
+    public long get() {
+        return value.sum();
+    }
 
-    private boolean successful;
-    private String zipFilepath;
-    private String message;
-    private Collection<Long> addedIds;
-    private Collection<Long> missedIds;
 }
@@ -0,0 +1,48 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.metrics;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * Access to the application wide {@link MetricsRegistry}. Static so that instrumented classes don't need an injected
+ * dependency and can keep their metrics in (static) fields.
+ */
+public final class Metrics {
+
+    private static final MetricsRegistry REGISTRY = new MetricsRegistry();
+
+    private Metrics() {
+    }
+
+    public static MetricsRegistry registry() {
+        return REGISTRY;
+    }
+
+    public static Counter counter(String name, String help, String... labels) {
+        return REGISTRY.counter(name, help, labels);
+    }
+
+    public static Histogram histogram(String name, String help, String... labels) {
+        return REGISTRY.histogram(name, help, labels);
+    }
+
+    public static void gauge(String name, String help, DoubleSupplier supplier, String... labels) {
+        REGISTRY.gauge(name, help, supplier, labels);
+    }
+
+}
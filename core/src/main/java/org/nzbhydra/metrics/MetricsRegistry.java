@@ -0,0 +1,172 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Holds counters, gauges and histograms by name and labels and writes them in the Prometheus text format. Metrics are
+ * created on first access and live as long as the registry. Callers on hot paths should keep a reference to the metric
+ * instead of looking it up for every update.
+ */
+public class MetricsRegistry {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+    private static final double NANOS_PER_SECOND = 1_000_000_000D;
+
+    private final Map<String, Family> families = new ConcurrentHashMap<>();
+
+    /**
+     * @param labels Alternating label names and values
+     */
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) getFamily(name, help, Type.COUNTER).getOrCreate(renderLabels(labels), Counter::new);
+    }
+
+    /**
+     * @param labels Alternating label names and values
+     */
+    public Histogram histogram(String name, String help, String... labels) {
+        return (Histogram) getFamily(name, help, Type.SUMMARY).getOrCreate(renderLabels(labels), Histogram::new);
+    }
+
+    /**
+     * Registers a gauge whose value is determined when the metrics are written. Replaces a gauge with the same name and labels.
+     *
+     * @param labels Alternating label names and values
+     */
+    public void gauge(String name, String help, DoubleSupplier supplier, String... labels) {
+        getFamily(name, help, Type.GAUGE).metrics.put(renderLabels(labels), supplier);
+    }
+
+    public void write(Writer writer) throws IOException {
+        for (Family family : new TreeMap<>(families).values()) {
+            writer.write("# HELP " + family.name + " " + family.help + "\n");
+            writer.write("# TYPE " + family.name + " " + family.type.name().toLowerCase() + "\n");
+            Map<String, Object> metrics = new TreeMap<>(family.metrics);
+            for (Map.Entry<String, Object> entry : metrics.entrySet()) {
+                String labels = entry.getKey();
+                Object metric = entry.getValue();
+                if (metric instanceof Counter) {
+                    writeLine(writer, family.name, labels, ((Counter) metric).get());
+                } else if (metric instanceof DoubleSupplier) {
+                    double value;
+                    try {
+                        value = ((DoubleSupplier) metric).getAsDouble();
+                    } catch (RuntimeException e) {
+                        continue;
+                    }
+                    writeLine(writer, family.name, labels, value);
+                } else {
+                    Histogram histogram = (Histogram) metric;
+                    for (double quantile : QUANTILES) {
+                        String quantileLabel = "quantile=\"" + quantile + "\"";
+                        writeLine(writer, family.name, labels.isEmpty() ? quantileLabel : labels + "," + quantileLabel, histogram.getValueAtQuantile(quantile) / NANOS_PER_SECOND);
+                    }
+                    writeLine(writer, family.name + "_sum", labels, histogram.getSum() / NANOS_PER_SECOND);
+                    writeLine(writer, family.name + "_count", labels, histogram.getCount());
+                }
+            }
+            if (family.type == Type.SUMMARY) {
+                //Not part of a summary but useful to see outliers
+                writer.write("# TYPE " + family.name + "_max gauge\n");
+                for (Map.Entry<String, Object> entry : metrics.entrySet()) {
+                    writeLine(writer, family.name + "_max", entry.getKey(), ((Histogram) entry.getValue()).getMax() / NANOS_PER_SECOND);
+                }
+            }
+        }
+    }
+
+    private static void writeLine(Writer writer, String name, String labels, double value) throws IOException {
+        writer.write(name);
+        if (!labels.isEmpty()) {
+            writer.write("{" + labels + "}");
+        }
+        writer.write(" ");
+        writer.write(value == Math.rint(value) && !Double.isInfinite(value) ? String.valueOf((long) value) : String.valueOf(value));
+        writer.write("\n");
+    }
+
+    private Family getFamily(String name, String help, Type type) {
+        Family family = families.get(name);
+        if (family == null) {
+            family = families.computeIfAbsent(name, x -> new Family(name, help, type));
+        }
+        if (family.type != type) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as " + family.type);
+        }
+        return family;
+    }
+
+    static String renderLabels(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be given as pairs of name and value");
+        }
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(labels[i]).append("=\"");
+            String value = labels[i + 1] == null ? "" : labels[i + 1];
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                if (c == '\\' || c == '"') {
+                    builder.append('\\').append(c);
+                } else if (c == '\n') {
+                    builder.append("\\n");
+                } else {
+                    builder.append(c);
+                }
+            }
+            builder.append('"');
+        }
+        return builder.toString();
+    }
+
+    private enum Type {
+        COUNTER,
+        GAUGE,
+        SUMMARY
+    }
+
+    private static class Family {
+        private final String name;
+        private final String help;
+        private final Type type;
+        private final Map<String, Object> metrics = new ConcurrentHashMap<>();
+
+        Family(String name, String help, Type type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+
+        Object getOrCreate(String labels, Supplier<Object> factory) {
+            //Avoid locking by computeIfAbsent for existing metrics
+            Object metric = metrics.get(labels);
+            return metric != null ? metric : metrics.computeIfAbsent(labels, x -> factory.get());
+        }
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.okhttp;
+
+import okhttp3.Dns;
+import org.nzbhydra.metrics.Counter;
+import org.nzbhydra.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.security.Security;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches the results of host lookups so that calls to indexers don't have to wait for the system's resolver. Successful
+ * and failed lookups are cached for the times configured for the JVM's own cache (security properties
+ * <tt>networkaddress.cache.ttl</tt> and <tt>networkaddress.cache.negative.ttl</tt>), so users can still tune them like
+ * before. The actual TTLs of DNS records are not exposed by the resolver.
+ * <p>
+ * Expired entries are dropped when they're looked up or when the cache is full. The cache never holds more than
+ * {@link #MAX_CACHED_HOSTS} hosts.
+ */
+public class CachingDns implements Dns {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachingDns.class);
+    private static final Counter CACHE_HITS = Metrics.counter("hydra_dns_lookups_total", "Host lookups answered from the cache or not", "result", "hit");
+    private static final Counter CACHE_MISSES = Metrics.counter("hydra_dns_lookups_total", "Host lookups answered from the cache or not", "result", "miss");
+
+    static final Duration DEFAULT_TTL = Duration.ofSeconds(60);
+    static final Duration DEFAULT_NEGATIVE_TTL = Duration.ofSeconds(10);
+    static final int MAX_CACHED_HOSTS = 1000;
+
+    private final Dns delegate;
+    private final Duration ttl;
+    private final Duration negativeTtl;
+    private final ConcurrentMap<String, CacheEntry> cache = new ConcurrentHashMap<>();
+    protected Clock clock = Clock.systemUTC();
+
+    public CachingDns() {
+        this(Dns.SYSTEM, getTtlFromSecurityProperty("networkaddress.cache.ttl", DEFAULT_TTL), getTtlFromSecurityProperty("networkaddress.cache.negative.ttl", DEFAULT_NEGATIVE_TTL));
+    }
+
+    public CachingDns(Dns delegate, Duration ttl, Duration negativeTtl) {
+        this.delegate = delegate;
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+    }
+
+    @Override
+    public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+        String key = hostname.toLowerCase();
+        CacheEntry cacheEntry = cache.get(key);
+        if (cacheEntry != null) {
+            if (cacheEntry.validUntil.isAfter(clock.instant())) {
+                CACHE_HITS.increment();
+                if (cacheEntry.exception != null) {
+                    throw new UnknownHostException(cacheEntry.exception.getMessage());
+                }
+                return cacheEntry.addresses;
+            }
+            cache.remove(key, cacheEntry);
+        }
+        CACHE_MISSES.increment();
+        try {
+            List<InetAddress> addresses = Collections.unmodifiableList(delegate.lookup(hostname));
+            if (!ttl.isZero()) {
+                put(key, new CacheEntry(addresses, null, clock.instant().plus(ttl)));
+            }
+            return addresses;
+        } catch (UnknownHostException e) {
+            logger.debug("Unable to resolve host {}", hostname);
+            if (!negativeTtl.isZero()) {
+                put(key, new CacheEntry(null, e, clock.instant().plus(negativeTtl)));
+            }
+            throw e;
+        }
+    }
+
+    private void put(String key, CacheEntry cacheEntry) {
+        if (cache.size() >= MAX_CACHED_HOSTS) {
+            Instant now = clock.instant();
+            cache.values().removeIf(x -> !x.validUntil.isAfter(now));
+            if (cache.size() >= MAX_CACHED_HOSTS) {
+                //Hosts are mostly the same few indexers and downloaders, this only happens when lots of different hosts are resolved
+                cache.clear();
+            }
+        }
+        cache.put(key, cacheEntry);
+    }
+
+    int getCachedHostsCount() {
+        return cache.size();
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * @return The configured duration or the default if the property isn't set. Negative values (meaning "forever") are
+     * treated like the default because indexers may move.
+     */
+    static Duration getTtlFromSecurityProperty(String name, Duration defaultTtl) {
+        String value = Security.getProperty(name);
+        if (value == null) {
+            return defaultTtl;
+        }
+        try {
+            long seconds = Long.parseLong(value.trim());
+            return seconds < 0 ? defaultTtl : Duration.ofSeconds(seconds);
+        } catch (NumberFormatException e) {
+            logger.warn("Unable to parse value {} of security property {}", value, name);
+            return defaultTtl;
+        }
+    }
+
+    private static class CacheEntry {
+        private final List<InetAddress> addresses;
+        private final UnknownHostException exception;
+        private final Instant validUntil;
+
+        CacheEntry(List<InetAddress> addresses, UnknownHostException exception, Instant validUntil) {
+            this.addresses = addresses;
+            this.exception = exception;
+            this.validUntil = validUntil;
+        }
+    }
+
+}
@@ -16,13 +16,16 @@
 
 package org.nzbhydra.okhttp;
 
-import com.google.common.net.InetAddresses;
 import joptsimple.internal.Strings;
 import okhttp3.*;
 import okhttp3.OkHttpClient.Builder;
+import org.nzbhydra.config.BaseConfig;
+import org.nzbhydra.config.ConfigChangedEvent;
 import org.nzbhydra.config.ConfigProvider;
 import org.nzbhydra.config.MainConfig;
 import org.nzbhydra.config.downloading.ProxyType;
+import org.nzbhydra.config.indexer.IndexerConfig;
+import org.nzbhydra.metrics.Metrics;
 import org.nzbhydra.misc.DelegatingSSLSocketFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,6 +33,7 @@ import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Primary;
+import org.springframework.context.event.EventListener;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.client.AsyncClientHttpRequest;
@@ -42,6 +46,7 @@ import sockslib.client.Socks5;
 import sockslib.client.SocksProxy;
 import sockslib.client.SocksSocket;
 
+import javax.annotation.PostConstruct;
 import javax.net.SocketFactory;
 import javax.net.ssl.*;
 import java.io.IOException;
@@ -56,6 +61,7 @@ import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -71,10 +77,90 @@ public class HydraOkHttp3ClientHttpRequestFactory
     private static final Logger logger = LoggerFactory.getLogger(HydraOkHttp3ClientHttpRequestFactory.class);
     private static Pattern HOST_PATTERN = Pattern.compile("(\\w+\\.)?(\\S+\\.\\S+)", Pattern.CASE_INSENSITIVE);
 
+    static final int MIN_IDLE_CONNECTIONS = 10;
+    static final int IDLE_CONNECTIONS_PER_INDEXER_HOST = 2;
+    static final long KEEP_ALIVE_MINUTES = 5;
+
     private OkHttpClient client;
+    private int currentMaxIdleConnections = MIN_IDLE_CONNECTIONS;
     @Autowired
     private ConfigProvider configProvider;
-    private final ConnectionPool connectionPool = new ConnectionPool(10, 5, TimeUnit.MINUTES);
+    private volatile ConnectionPool connectionPool = new ConnectionPool(MIN_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES);
+    private final CachingDns dns = new CachingDns();
+    /**
+     * Created when first needed and recreated when the proxy settings are changed
+     */
+    private volatile ProxyBypassMatcher proxyBypassMatcher;
+    /*
+    OkHttp only reuses pooled connections for requests with the same socket factory, hostname verifier and proxy
+    authenticator, so they must not be created per request
+     */
+    private final X509TrustManager defaultTrustManager;
+    private final SSLSocketFactory sslSocketFactory;
+    private final X509TrustManager allTrustingTrustManager;
+    private final SSLSocketFactory allTrustingSslSocketFactory;
+    private final HostnameVerifier allTrustingHostnameVerifier = (hostname, session) -> true;
+    private final okhttp3.Authenticator proxyAuthenticator = this::authenticateWithProxy;
+    /**
+     * Recreated when the SOCKS proxy settings are changed
+     */
+    private volatile SockProxySocketFactory sockProxySocketFactory;
+
+    public HydraOkHttp3ClientHttpRequestFactory() {
+        Metrics.gauge("hydra_http_connections", "Number of pooled connections to indexers and downloaders", () -> connectionPool.connectionCount(), "state", "total");
+        Metrics.gauge("hydra_http_connections", "Number of pooled connections to indexers and downloaders", () -> connectionPool.idleConnectionCount(), "state", "idle");
+        try {
+            defaultTrustManager = getDefaultX509TrustManager();
+            sslSocketFactory = new SniWhitelistingSocketFactory(getSslSocketFactory(new TrustManager[]{defaultTrustManager}));
+            allTrustingTrustManager = getAllTrustingX509TrustManager();
+            allTrustingSslSocketFactory = new SniWhitelistingSocketFactory(getSslSocketFactory(new TrustManager[]{allTrustingTrustManager}));
+        } catch (NoSuchAlgorithmException | KeyManagementException e) {
+            throw new RuntimeException("Unable to create SSLSocketFactory", e);
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        resizeConnectionPool(configProvider.getBaseConfig());
+    }
+
+    @EventListener
+    public void handleConfigChanged(ConfigChangedEvent event) {
+        if (event.getChangeSet().isChanged("indexers")) {
+            resizeConnectionPool(event.getNewConfig());
+        }
+        if (event.getChangeSet().isChanged("main.proxyIgnoreLocal") || event.getChangeSet().isChanged("main.proxyIgnoreDomains")) {
+            proxyBypassMatcher = ProxyBypassMatcher.fromConfig(event.getNewConfig().getMain());
+        }
+    }
+
+    /**
+     * OkHttp's connection pool is shared by all hosts. It's sized so that it can keep some idle connections to every
+     * enabled indexer. The pool only grows: a new one is only created when more idle connections are needed. The old
+     * pool isn't evicted, connections still in use are returned to it and closed after the keep alive time.
+     */
+    void resizeConnectionPool(BaseConfig baseConfig) {
+        int maxIdleConnections = getMaxIdleConnections(baseConfig);
+        if (maxIdleConnections <= currentMaxIdleConnections) {
+            return;
+        }
+        logger.debug("Keeping up to {} idle connections", maxIdleConnections);
+        connectionPool = new ConnectionPool(maxIdleConnections, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES);
+        currentMaxIdleConnections = maxIdleConnections;
+    }
+
+    ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    static int getMaxIdleConnections(BaseConfig baseConfig) {
+        long numberOfHosts = baseConfig.getIndexers().stream()
+                .filter(x -> x.getState() == IndexerConfig.State.ENABLED && x.getHost() != null)
+                .map(x -> x.getHost().toLowerCase())
+                .distinct()
+                .count();
+        return (int) Math.max(MIN_IDLE_CONNECTIONS, numberOfHosts * IDLE_CONNECTIONS_PER_INDEXER_HOST);
+    }
 
     @Override
     public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) {
@@ -130,14 +216,7 @@ public class HydraOkHttp3ClientHttpRequestFactory
         if (!configProvider.getBaseConfig().getMain().isVerifySsl() || (host != null && configProvider.getBaseConfig().getMain().getVerifySslDisabledFor().stream().anyMatch(x -> isSameHost(host, x)))) {
             builder = getUnsafeOkHttpClientBuilder(builder);
         } else {
-            try {
-                SSLSocketFactory sslSocketFactory = getSslSocketFactory(new TrustManager[]{
-                        getDefaultX509TrustManager()
-                });
-                builder = builder.sslSocketFactory(new SniWhitelistingSocketFactory(sslSocketFactory), getDefaultX509TrustManager());
-            } catch (NoSuchAlgorithmException | KeyManagementException e) {
-                throw new RuntimeException("Unable to create SSLSocketFactory", e);
-            }
+            builder = builder.sslSocketFactory(sslSocketFactory, defaultTrustManager);
         }
 
         MainConfig main = configProvider.getBaseConfig().getMain();
@@ -152,91 +231,52 @@ public class HydraOkHttp3ClientHttpRequestFactory
 
 
         if (main.getProxyType() == ProxyType.SOCKS) {
-            SockProxySocketFactory sockProxySocketFactory = new SockProxySocketFactory(main.getProxyHost(), main.getProxyPort(), main.getProxyUsername(), main.getProxyPassword());
-            return builder.socketFactory(sockProxySocketFactory);
+            return builder.socketFactory(getSockProxySocketFactory(main));
         } else if (main.getProxyType() == ProxyType.HTTP) {
-            builder = builder.proxy(new Proxy(Type.HTTP, new InetSocketAddress(main.getProxyHost(), main.getProxyPort()))).proxyAuthenticator((Route route, Response response) -> {
-                if (response.request().header("Proxy-Authorization") != null) {
-                    logger.warn("Authentication with proxy failed");
-                    return null; // Give up, we've already failed to authenticate.
-                }
-
-                String credential = Credentials.basic(main.getProxyUsername(), main.getProxyPassword());
-                return response.request().newBuilder()
-                        .header("Proxy-Authorization", credential).build();
-            });
+            builder = builder.proxy(new Proxy(Type.HTTP, new InetSocketAddress(main.getProxyHost(), main.getProxyPort()))).proxyAuthenticator(proxyAuthenticator);
         }
         return builder;
     }
 
-    protected Builder getBaseBuilder() {
-        return new OkHttpClient().newBuilder().connectionPool(connectionPool).readTimeout(timeout, TimeUnit.SECONDS);
+    private SockProxySocketFactory getSockProxySocketFactory(MainConfig main) {
+        SockProxySocketFactory factory = sockProxySocketFactory;
+        if (factory == null || !factory.isFor(main.getProxyHost(), main.getProxyPort(), main.getProxyUsername(), main.getProxyPassword())) {
+            factory = new SockProxySocketFactory(main.getProxyHost(), main.getProxyPort(), main.getProxyUsername(), main.getProxyPassword());
+            sockProxySocketFactory = factory;
+        }
+        return factory;
     }
 
-    protected boolean isUriToBeIgnoredByProxy(String host) {
-        MainConfig mainConfig = configProvider.getBaseConfig().getMain();
-        if (mainConfig.isProxyIgnoreLocal()) {
-            if (InetAddresses.isInetAddress(host)) {
-                try {
-                    InetAddress byName = InetAddress.getByName(host);
-                    long ipToLong = ipToLong(byName);
-                    return host.equals("127.0.0.1")
-                            ||
-                            (ipToLong >= ipToLong(InetAddress.getByName("10.0.0.0")) && ipToLong <= ipToLong(InetAddress.getByName("10.255.255.255")))
-                            ||
-                            (ipToLong >= ipToLong(InetAddress.getByName("172.16.0.0")) && ipToLong <= ipToLong(InetAddress.getByName("172.16.255.255")))
-                            ||
-                            (ipToLong >= ipToLong(InetAddress.getByName("192.168.0.0")) && ipToLong <= ipToLong(InetAddress.getByName("192.168.255.255")))
-                            ;
-                } catch (UnknownHostException e) {
-                    logger.error("Unable to parse host " + host, e);
-                    return false;
-                }
-            }
-            if (host.equals("localhost")) {
-                return true;
-            }
+    private Request authenticateWithProxy(Route route, Response response) {
+        if (response.request().header("Proxy-Authorization") != null) {
+            logger.warn("Authentication with proxy failed");
+            return null; // Give up, we've already failed to authenticate.
         }
 
-        if (mainConfig.getProxyIgnoreDomains() == null || mainConfig.getProxyIgnoreDomains().isEmpty()) {
-            return false;
-        }
+        MainConfig main = configProvider.getBaseConfig().getMain();
+        String credential = Credentials.basic(main.getProxyUsername(), main.getProxyPassword());
+        return response.request().newBuilder()
+                .header("Proxy-Authorization", credential).build();
+    }
 
-        return mainConfig.getProxyIgnoreDomains().stream().anyMatch(x -> host.toLowerCase().matches(("\\Q" + x.toLowerCase() + "\\E").replace("*", "\\E.*\\Q")));
+    protected Builder getBaseBuilder() {
+        return new OkHttpClient.Builder().connectionPool(connectionPool).dns(dns).readTimeout(timeout, TimeUnit.SECONDS);
     }
 
-    private static long ipToLong(InetAddress ip) {
-        byte[] octets = ip.getAddress();
-        long result = 0;
-        for (byte octet : octets) {
-            result <<= 8;
-            result |= octet & 0xff;
+    protected boolean isUriToBeIgnoredByProxy(String host) {
+        ProxyBypassMatcher matcher = proxyBypassMatcher;
+        if (matcher == null) {
+            matcher = ProxyBypassMatcher.fromConfig(configProvider.getBaseConfig().getMain());
+            proxyBypassMatcher = matcher;
         }
-        return result;
+        return matcher.isToBeIgnored(host);
     }
 
     //From https://gist.github.com/mefarazath/c9b588044d6bffd26aac3c520660bf40
     private Builder getUnsafeOkHttpClientBuilder(Builder builder) {
-        try {
-            // Create a trust manager that does not validate certificate chains
-            final TrustManager[] trustAllCerts = new TrustManager[]{
-                    getAllTrustingX509TrustManager()
-            };
-
-            final SSLSocketFactory sslSocketFactory = new SniWhitelistingSocketFactory(getSslSocketFactory(trustAllCerts));
-
-            return builder
-                    .sslSocketFactory(sslSocketFactory, (X509TrustManager) trustAllCerts[0])
-                    .hostnameVerifier(new HostnameVerifier() {
-                        @Override
-                        public boolean verify(String hostname, SSLSession session) {
-                            return true;
-                        }
-                    });
-
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        return builder
+                .sslSocketFactory(allTrustingSslSocketFactory, allTrustingTrustManager)
+                .hostnameVerifier(allTrustingHostnameVerifier);
     }
 
     private SSLSocketFactory getSslSocketFactory(TrustManager[] trustAllCerts) throws NoSuchAlgorithmException, KeyManagementException {
@@ -330,6 +370,10 @@ public class HydraOkHttp3ClientHttpRequestFactory
             this.password = password;
         }
 
+        boolean isFor(String host, int port, String username, String password) {
+            return Objects.equals(this.host, host) && this.port == port && Objects.equals(this.username, username) && Objects.equals(this.password, password);
+        }
+
         public Socket createSocket() throws IOException {
             SocksProxy proxy;
             if (!Strings.isNullOrEmpty(username)) {
@@ -0,0 +1,172 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.okhttp;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.nzbhydra.config.BaseConfig;
+import org.nzbhydra.config.ConfigChangedEvent;
+import org.nzbhydra.config.ConfigProvider;
+import org.nzbhydra.config.indexer.IndexerConfig;
+import org.nzbhydra.indexers.Indexer;
+import org.nzbhydra.indexers.IndexerCircuitBreaker;
+import org.nzbhydra.indexers.IndexerRateLimiter;
+import org.nzbhydra.searching.SearchModuleProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps connections to indexers open so that searches don't have to wait for DNS lookups, TCP and TLS handshakes.
+ * Every few minutes (shortly before pooled connections are evicted) and after the config was changed a HEAD request is sent
+ * to the root of every indexer host. That doesn't use any API hits and leaves a connection in the pool which is reused
+ * by the next search.
+ * <p>
+ * Only indexers which were called within the last {@link #RECENT_CALL_WINDOW} are warmed so that an idle instance doesn't
+ * keep contacting them. Indexers which are rate limited or whose circuit breaker isn't closed are skipped.
+ */
+@Component
+public class IndexerConnectionWarmer {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexerConnectionWarmer.class);
+
+    private static final long WARM_INTERVAL_SECONDS = TimeUnit.MINUTES.toSeconds(HydraOkHttp3ClientHttpRequestFactory.KEEP_ALIVE_MINUTES) - 30;
+    private static final int TIMEOUT_SECONDS = 10;
+    static final Duration RECENT_CALL_WINDOW = Duration.ofHours(1);
+
+    @Autowired
+    private HydraOkHttp3ClientHttpRequestFactory requestFactory;
+    @Autowired
+    private ConfigProvider configProvider;
+    @Autowired
+    private SearchModuleProvider searchModuleProvider;
+    @Autowired
+    private IndexerRateLimiter rateLimiter;
+
+    protected Clock clock = Clock.systemUTC();
+
+    private ScheduledExecutorService scheduler;
+    private final Dispatcher dispatcher = new Dispatcher(Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("ConnectionWarmer-%d").setDaemon(true).build()));
+
+    @PostConstruct
+    public void init() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("ConnectionWarmerScheduler").setDaemon(true).build());
+        scheduler.scheduleWithFixedDelay(() -> warmConnections(configProvider.getBaseConfig()), 30, WARM_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        dispatcher.executorService().shutdownNow();
+    }
+
+    @EventListener
+    public void handleConfigChanged(ConfigChangedEvent event) {
+        if (scheduler != null && (event.getChangeSet().isChanged("indexers") || event.getChangeSet().isChanged("main") || event.getChangeSet().isChanged("searching.warmIndexerConnections"))) {
+            scheduler.execute(() -> warmConnections(event.getNewConfig()));
+        }
+    }
+
+    void warmConnections(BaseConfig baseConfig) {
+        try {
+            if (!baseConfig.getSearching().isWarmIndexerConnections()) {
+                return;
+            }
+            Set<HttpUrl> urls = getUrlsToWarm();
+            logger.debug("Warming connections to {} indexer hosts", urls.size());
+            for (HttpUrl url : urls) {
+                warmConnection(url);
+            }
+        } catch (Exception e) {
+            logger.error("Error while warming connections to indexers", e);
+        }
+    }
+
+    Set<HttpUrl> getUrlsToWarm() {
+        return searchModuleProvider.getEnabledIndexers().stream()
+                .filter(this::isToBeWarmed)
+                .map(x -> x.getConfig().getHost())
+                .filter(Objects::nonNull)
+                .map(HttpUrl::parse)
+                .filter(Objects::nonNull)
+                .map(x -> new HttpUrl.Builder().scheme(x.scheme()).host(x.host()).port(x.port()).build())
+                .collect(Collectors.toSet());
+    }
+
+    private boolean isToBeWarmed(Indexer indexer) {
+        IndexerConfig config = indexer.getConfig();
+        Optional<Instant> lastCall = rateLimiter.getLastCall(config);
+        if (!lastCall.isPresent() || lastCall.get().isBefore(clock.instant().minus(RECENT_CALL_WINDOW))) {
+            return false;
+        }
+        if (!rateLimiter.getWaitTime(config).isZero()) {
+            logger.debug("Not warming connection to rate limited indexer {}", config.getName());
+            return false;
+        }
+        if (indexer.getCircuitBreaker() != null && indexer.getCircuitBreaker().getState() != IndexerCircuitBreaker.State.CLOSED) {
+            logger.debug("Not warming connection to indexer {} because its circuit breaker is {}", config.getName(), indexer.getCircuitBreaker().getState());
+            return false;
+        }
+        return true;
+    }
+
+    private void warmConnection(HttpUrl url) {
+        Request request = new Request.Builder().url(url).head().build();
+        requestFactory.getOkHttpClientBuilder(url.uri())
+                .dispatcher(dispatcher)
+                .connectTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .readTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .build()
+                .newCall(request)
+                .enqueue(new Callback() {
+                    @Override
+                    public void onFailure(Call call, IOException e) {
+                        logger.debug("Unable to warm connection to {}: {}", url, e.getMessage());
+                    }
+
+                    @Override
+                    public void onResponse(Call call, Response response) {
+                        //The status doesn't matter, the connection is returned to the pool when the response is closed
+                        response.close();
+                    }
+                });
+    }
+
+}
@@ -0,0 +1,253 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.okhttp;
+
+import com.google.common.base.Strings;
+import com.google.common.net.InetAddresses;
+import org.nzbhydra.config.MainConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * Decides which hosts are to be connected to directly instead of using the configured proxy. The list of ignored domains
+ * is compiled once: plain domains and wildcards for subdomains (<tt>*.example.com</tt>) are stored in a trie of domain
+ * labels, IPv4 ranges (<tt>10.1.0.0/16</tt>) in a table of ranges. Other wildcards (e.g. <tt>example*.com</tt>) fall back
+ * to a regex. Decisions are cached per host so that for most requests only a map lookup is needed.
+ * <p>
+ * Instances are immutable (except for the cache) and must be recreated when the config changes.
+ */
+public class ProxyBypassMatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProxyBypassMatcher.class);
+
+    static final int MAX_CACHED_DECISIONS = 1000;
+    private static final List<IpRange> LOCAL_RANGES = Collections.unmodifiableList(Arrays.asList(
+            IpRange.parse("127.0.0.0/8"),
+            IpRange.parse("10.0.0.0/8"),
+            IpRange.parse("172.16.0.0/12"),
+            IpRange.parse("192.168.0.0/16")
+    ));
+
+    private final boolean ignoreLocal;
+    private final DomainNode domains = new DomainNode();
+    private final List<IpRange> ipRanges = new ArrayList<>();
+    private final List<Pattern> patterns = new ArrayList<>();
+    private final ConcurrentMap<String, Boolean> decisions = new ConcurrentHashMap<>();
+
+    public ProxyBypassMatcher(boolean ignoreLocal, List<String> ignoreDomains) {
+        this.ignoreLocal = ignoreLocal;
+        if (ignoreLocal) {
+            ipRanges.addAll(LOCAL_RANGES);
+        }
+        if (ignoreDomains == null) {
+            return;
+        }
+        for (String entry : ignoreDomains) {
+            if (Strings.isNullOrEmpty(entry) || entry.trim().isEmpty()) {
+                continue;
+            }
+            add(entry.trim().toLowerCase(Locale.ROOT));
+        }
+    }
+
+    public static ProxyBypassMatcher fromConfig(MainConfig mainConfig) {
+        return new ProxyBypassMatcher(mainConfig.isProxyIgnoreLocal(), mainConfig.getProxyIgnoreDomains());
+    }
+
+    /**
+     * @param host The host of a URI (IPv6 addresses may be enclosed in brackets)
+     * @return true if no proxy should be used for connections to the host
+     */
+    public boolean isToBeIgnored(String host) {
+        if (host == null) {
+            return false;
+        }
+        Boolean decision = decisions.get(host);
+        if (decision != null) {
+            return decision;
+        }
+        decision = decide(host.toLowerCase(Locale.ROOT));
+        if (decisions.size() >= MAX_CACHED_DECISIONS) {
+            //Hosts are mostly the same few indexers and downloaders, this only happens when hydra is used with lots of different hosts
+            decisions.clear();
+        }
+        decisions.put(host, decision);
+        return decision;
+    }
+
+    int getCachedDecisionsCount() {
+        return decisions.size();
+    }
+
+    boolean decide(String host) {
+        if (ignoreLocal && host.equals("localhost")) {
+            return true;
+        }
+        String address = host.startsWith("[") && host.endsWith("]") ? host.substring(1, host.length() - 1) : host;
+        if (InetAddresses.isInetAddress(address)) {
+            InetAddress inetAddress = InetAddresses.forString(address);
+            if (inetAddress instanceof Inet4Address) {
+                long ip = IpRange.toLong(inetAddress);
+                for (IpRange ipRange : ipRanges) {
+                    if (ipRange.contains(ip)) {
+                        return true;
+                    }
+                }
+            } else if (ignoreLocal && inetAddress.isLoopbackAddress()) {
+                return true;
+            }
+        }
+        if (domains.matches(host)) {
+            return true;
+        }
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(host).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void add(String entry) {
+        if (entry.contains("/")) {
+            IpRange ipRange = IpRange.parse(entry);
+            if (ipRange != null) {
+                ipRanges.add(ipRange);
+                return;
+            }
+            logger.warn("Unable to parse IP range {} in domains to be ignored by proxy", entry);
+        }
+        int wildcardIndex = entry.lastIndexOf('*');
+        if (wildcardIndex == -1) {
+            domains.add(entry.split("\\."), false);
+        } else if (wildcardIndex == 0 && entry.startsWith("*.") && entry.length() > 2) {
+            domains.add(entry.substring(2).split("\\."), true);
+        } else {
+            patterns.add(Pattern.compile(("\\Q" + entry + "\\E").replace("*", "\\E.*\\Q")));
+        }
+    }
+
+    /**
+     * Node in a trie of domain labels, starting with the top level domain
+     */
+    private static class DomainNode {
+        private final Map<String, DomainNode> children = new HashMap<>();
+        /**
+         * The domain ending here is to be ignored
+         */
+        private boolean domain;
+        /**
+         * All subdomains of the domain ending here are to be ignored
+         */
+        private boolean subdomains;
+
+        void add(String[] labels, boolean subdomains) {
+            DomainNode node = this;
+            for (int i = labels.length - 1; i >= 0; i--) {
+                node = node.children.computeIfAbsent(labels[i], x -> new DomainNode());
+            }
+            if (subdomains) {
+                node.subdomains = true;
+            } else {
+                node.domain = true;
+            }
+        }
+
+        boolean matches(String host) {
+            DomainNode node = this;
+            int end = host.length();
+            while (true) {
+                int start = host.lastIndexOf('.', end - 1);
+                node = node.children.get(host.substring(start + 1, end));
+                if (node == null) {
+                    return false;
+                }
+                if (start == -1) {
+                    return node.domain;
+                }
+                if (node.subdomains) {
+                    return true;
+                }
+                end = start;
+            }
+        }
+    }
+
+    static class IpRange {
+        private final long from;
+        private final long to;
+
+        IpRange(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        boolean contains(long ip) {
+            return ip >= from && ip <= to;
+        }
+
+        /**
+         * @return The range in CIDR notation or null if it can't be parsed or isn't an IPv4 range
+         */
+        static IpRange parse(String cidr) {
+            int slashIndex = cidr.indexOf('/');
+            String address = cidr.substring(0, slashIndex);
+            if (!InetAddresses.isInetAddress(address)) {
+                return null;
+            }
+            InetAddress inetAddress = InetAddresses.forString(address);
+            if (!(inetAddress instanceof Inet4Address)) {
+                return null;
+            }
+            int prefixLength;
+            try {
+                prefixLength = Integer.parseInt(cidr.substring(slashIndex + 1));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (prefixLength < 0 || prefixLength > 32) {
+                return null;
+            }
+            long mask = (0xFFFFFFFFL << (32 - prefixLength)) & 0xFFFFFFFFL;
+            long from = toLong(inetAddress) & mask;
+            return new IpRange(from, from | (~mask & 0xFFFFFFFFL));
+        }
+
+        static long toLong(InetAddress ip) {
+            long result = 0;
+            for (byte octet : ip.getAddress()) {
+                result <<= 8;
+                result |= octet & 0xff;
+            }
+            return result;
+        }
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.okhttp;
+
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+
+/**
+ * Thrown when a server responded with status 429. Contains the time given in the Retry-After header, if any.
+ */
+public class TooManyRequestsException extends IOException {
+
+    public static final int STATUS_CODE = 429;
+
+    private final Instant retryAfter;
+
+    public TooManyRequestsException(String message, Instant retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public static TooManyRequestsException fromResponse(String url, Response response) {
+        Instant retryAfter = parseRetryAfter(response.header("Retry-After"), Instant.now()).orElse(null);
+        return new TooManyRequestsException(String.format("URL call to %s returned %d: %s", url, response.code(), response.message()), retryAfter);
+    }
+
+    public Optional<Instant> getRetryAfter() {
+        return Optional.ofNullable(retryAfter);
+    }
+
+    /**
+     * @param header Value of the Retry-After header, either a number of seconds or an HTTP date
+     */
+    static Optional<Instant> parseRetryAfter(String header, Instant now) {
+        if (header == null || header.trim().isEmpty()) {
+            return Optional.empty();
+        }
+        String value = header.trim();
+        try {
+            return Optional.of(now.plus(Duration.ofSeconds(Math.max(0, Long.parseLong(value)))));
+        } catch (NumberFormatException e) {
+            //Not a number of seconds
+        }
+        try {
+            return Optional.of(ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant());
+        } catch (DateTimeParseException e) {
+            return Optional.empty();
+        }
+    }
+}
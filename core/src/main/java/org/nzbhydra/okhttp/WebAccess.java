@@ -54,6 +54,11 @@ public class WebAccess {
         OkHttpClient client = requestFactory.getOkHttpClientBuilder(request.url().uri()).readTimeout(timeout, TimeUnit.SECONDS).connectTimeout(timeout, TimeUnit.SECONDS).writeTimeout(timeout, TimeUnit.SECONDS).build();
         logger.debug(LoggingMarkers.HTTP, "Calling URL {} with headers {} and timeout {}", url, headers.entrySet().stream().map(x -> x.getKey() + ":" + x.getValue()).collect(Collectors.joining(", ")), timeout);
         try (Response response = client.newCall(request).execute()) {
+            if (response.code() == TooManyRequestsException.STATUS_CODE) {
+                TooManyRequestsException exception = TooManyRequestsException.fromResponse(url, response);
+                logger.warn(exception.getMessage());
+                throw exception;
+            }
             if (!response.isSuccessful()) {
                 String error = String.format("URL call to %s returned %d: %s", url, response.code(), response.message());
                 logger.error(error);
@@ -1,6 +1,5 @@
 package org.nzbhydra.searching;
 
-import com.google.common.base.Joiner;
 import org.nzbhydra.config.BaseConfig;
 import org.nzbhydra.config.ConfigChangedEvent;
 import org.nzbhydra.config.SearchSourceRestriction;
@@ -40,10 +39,10 @@ public class CategoryProvider implements InitializingBean {
     protected Map<String, Category> categoryMap = new HashMap<>();
 
     /**
-     * Map of categories by their newznab numbers. Values may appear multiple times
+     * Lookup structures compiled from the categories whenever they are changed. Replaced as a whole so that concurrent
+     * lookups always see a consistent state.
      */
-    protected Map<Integer, Category> categoryMapByNumber = new HashMap<>();
-    protected Map<List<Integer>, Category> categoryMapByMultipleNumber = new HashMap<>();
+    private volatile CategoryTable categoryTable = new CategoryTable(Collections.emptyList());
 
     @Autowired
     protected BaseConfig baseConfig;
@@ -64,24 +63,20 @@ public class CategoryProvider implements InitializingBean {
 
     @org.springframework.context.event.EventListener
     public void handleNewConfigEvent(ConfigChangedEvent newConfig) {
-        initialize();
+        if (newConfig.getChangeSet().isChanged("categoriesConfig")) {
+            initialize();
+        }
     }
 
     protected void initialize() {
         categories = baseConfig.getCategoriesConfig().getCategories();
         if (categories != null) {
             categoryMap = categories.stream().collect(Collectors.toMap(Category::getName, Function.identity()));
-            categoryMapByNumber.clear();
-            for (Category category : categories) {
-                for (Integer integer : category.getNewznabCategories().stream().filter(x -> x.size() == 1).map(x -> x.get(0)).collect(Collectors.toList())) {
-                    categoryMapByNumber.put(integer, category);
-                }
-                category.getNewznabCategories().stream().filter(x -> x.size() > 1).forEach(x -> categoryMapByMultipleNumber.put(x, category));
-            }
+            categoryTable = new CategoryTable(categories);
         } else {
             logger.error("Configuration incomplete, categories not set");
             categoryMap = Collections.emptyMap();
-            categoryMapByNumber = new HashMap<>();
+            categoryTable = new CategoryTable(Collections.emptyList());
         }
     }
 
@@ -132,7 +127,7 @@ public class CategoryProvider implements InitializingBean {
     }
 
     public Optional<Category> fromSubtype(Subtype subtype) {
-        return categories.stream().filter(x -> x.getSubtype() == subtype).findFirst();
+        return Optional.ofNullable(categoryTable.bySubtype.get(subtype));
     }
 
 
@@ -174,61 +169,71 @@ public class CategoryProvider implements InitializingBean {
         if (cats == null || cats.isEmpty()) {
             return defaultCategory;
         }
+        CategoryTable table = categoryTable;
         if (cats.size() == 1) {
-            return categoryMapByNumber.getOrDefault(cats.get(0), getMatchingCategoryOrMatchingMainCategory(cats, defaultCategory));
+            Category category = table.getSingle(cats.get(0));
+            return category != null ? category : defaultCategory;
         }
 
-        Category result = null;
         cats.sort((o1, o2) -> Integer.compare(o2, o1));
-        String catsString = Joiner.on(",").join(cats);
 
         //If the list contains a main category always use that one
-        List<Integer> foundMainCategories = cats.stream().filter(x -> x % 1000 == 0).collect(Collectors.toList());
-        if (!foundMainCategories.isEmpty()) {
-            Category category = categoryMapByNumber.get(foundMainCategories.get(0));
+        int mainCategory = -1;
+        int numberOfMainCategories = 0;
+        for (Integer cat : cats) {
+            if (cat % 1000 == 0 && numberOfMainCategories++ == 0) {
+                mainCategory = cat;
+            }
+        }
+        if (numberOfMainCategories > 0) {
+            Category category = table.getExact(mainCategory);
             if (category != null) {
-                if (foundMainCategories.size() > 1) {
-                    logger.warn("Search supplied multiple main categories: {}. Will use ", catsString, category.getName());
-                } else if (cats.size() > 1) {
-                    logger.warn("Search supplied a general category and a subcategory: {}. Will use the subcategory {}", catsString, category.getName());
+                if (numberOfMainCategories > 1) {
+                    logger.warn("Search supplied multiple main categories: {}. Will use {}", cats, category.getName());
+                } else {
+                    logger.warn("Search supplied a general category and a subcategory: {}. Will use the subcategory {}", cats, category.getName());
                 }
                 return category;
             }
         }
 
-
-        if (cats.size() == 1) {
-            //No main categories found, specific subcategory must've been supplied
-            result = getMatchingCategoryOrMatchingMainCategory(cats, defaultCategory);
-        } else {
-            List<Integer> matchingSubcategories = cats.stream().filter(cat -> categoryMapByNumber.containsKey(cat)).collect(Collectors.toList());
-            if (matchingSubcategories.size() == 1) {
-                result = categoryMapByNumber.get(matchingSubcategories.get(0));
-            } else if (matchingSubcategories.size() == 0) {
-                result = getMatchingCategoryOrMatchingMainCategory(cats, defaultCategory);
-            } else if (matchingSubcategories.stream().map(x -> categoryMapByNumber.get(x)).distinct().count() == 1) {
-                //All match the sub category
-                result = categoryMapByNumber.get(matchingSubcategories.get(0));
+        Category result = null;
+        Category firstMatchingSubcategory = null;
+        int numberOfMatchingSubcategories = 0;
+        boolean allSubcategoriesMatchSameCategory = true;
+        for (Integer cat : cats) {
+            Category category = table.getExact(cat);
+            if (category != null) {
+                numberOfMatchingSubcategories++;
+                if (firstMatchingSubcategory == null) {
+                    firstMatchingSubcategory = category;
+                } else if (!firstMatchingSubcategory.equals(category)) {
+                    allSubcategoriesMatchSameCategory = false;
+                }
             }
         }
+        if (numberOfMatchingSubcategories == 0) {
+            result = getMatchingCategoryOrMatchingMainCategory(cats, defaultCategory);
+        } else if (allSubcategoriesMatchSameCategory) {
+            //Only one or all match the same category
+            result = firstMatchingSubcategory;
+        }
         if (result != null) {
-            logger.debug("Found category {} matching newznab categories {}", result.getName(), catsString);
+            logger.debug("Found category {} matching newznab categories {}", result.getName(), cats);
             return result;
         }
 
-        logger.debug("The supplied categories {} match multiple configured categories", catsString);
+        logger.debug("The supplied categories {} match multiple configured categories", cats);
         for (Integer cat : cats) {
-            for (Category category : categories) {
-                Optional<List<Integer>> matchingMainCategory = category.getNewznabCategories().stream().filter(x -> x.size() == 1 && checkCategoryMatchingMainCategory(cat, x.get(0))).findFirst();
-                if (matchingMainCategory.isPresent()) {
-                    logger.debug("The supplied categories {} match the configured main category {} and will be assigned to that", catsString, category.getName());
-                    return category;
-                }
+            Category category = table.getGeneral(cat);
+            if (category != null) {
+                logger.debug("The supplied categories {} match the configured main category {} and will be assigned to that", cats, category.getName());
+                return category;
             }
         }
         //No matching main category was found, use any one
         result = getMatchingCategoryOrMatchingMainCategory(cats, defaultCategory);
-        logger.warn("Unable to match the supplied categories {} to any specific or general category. Will use {}", catsString, (result == null ? defaultCategory : result).getName());
+        logger.warn("Unable to match the supplied categories {} to any specific or general category. Will use {}", cats, (result == null ? defaultCategory : result).getName());
         return result;
     }
 
@@ -237,33 +242,150 @@ public class CategoryProvider implements InitializingBean {
     }
 
     public Category getMatchingCategoryOrMatchingMainCategory(List<Integer> cats, Category defaultCategory) {
+        CategoryTable table = categoryTable;
         //Try to find categories with combined numbers which match the provided numbers
-        for (Map.Entry<List<Integer>, Category> listCategoryEntry : categoryMapByMultipleNumber.entrySet()) {
-            if (cats.containsAll(listCategoryEntry.getKey())) {
-                return listCategoryEntry.getValue();
+        for (int i = 0; i < table.combinedNumbers.length; i++) {
+            if (containsAll(cats, table.combinedNumbers[i])) {
+                return table.combinedNumbersCategories[i];
             }
         }
 
         //Try to find a category that matches any of the provided numbers
-        Optional<Category> matchingCategory;
         for (Integer cat : cats) {
-            if (categoryMapByNumber.containsKey(cat)) {
-                return categoryMapByNumber.get(cat);
+            Category category = table.getExact(cat);
+            if (category != null) {
+                return category;
             }
         }
 
-        //Let's try to find a more general one
-        Optional<Category> found = Optional.empty();
-        for (Category category : categories) {
-            List<Integer> categorySingleNewznabNumbers = category.getNewznabCategories().stream().filter(x -> x.size() == 1).map(x -> x.get(0)).collect(Collectors.toList());
+        //Let's try to find a more general one, preferring the one configured first
+        Category generalCategory = null;
+        int generalCategoryIndex = Integer.MAX_VALUE;
+        for (Integer cat : cats) {
+            int index = table.getGeneralIndex(cat);
+            if (index < generalCategoryIndex) {
+                generalCategoryIndex = index;
+                generalCategory = table.categories.get(index);
+            }
+        }
+        return generalCategory != null ? generalCategory : defaultCategory;
+    }
+
+    private static boolean containsAll(List<Integer> cats, int[] numbers) {
+        for (int number : numbers) {
+            boolean found = false;
             for (Integer cat : cats) {
-                if (categorySingleNewznabNumbers.contains(cat / 1000 * 1000)) {
-                    return category;
+                if (cat == number) {
+                    found = true;
+                    break;
                 }
             }
+            if (!found) {
+                return false;
+            }
         }
-        return defaultCategory;
+        return true;
     }
 
+    /**
+     * Compiled lookup structures for the configured categories. Newznab numbers between 0 and {@value #TABLE_SIZE} are
+     * resolved by array index, higher (custom) numbers using maps.
+     */
+    static class CategoryTable {
+
+        static final int TABLE_SIZE = 10_000;
+
+        /**
+         * Category which has the number configured as single number. If multiple do the last one wins.
+         */
+        private final Category[] exact = new Category[TABLE_SIZE];
+        private final Map<Integer, Category> exactOutOfTable = new HashMap<>();
+        /**
+         * Index of the first category which has the number's main category (e.g. 5000 for 5040) configured as single number, -1 if none.
+         */
+        private final int[] generalIndex = new int[TABLE_SIZE];
+        private final Map<Integer, Integer> generalIndexOutOfTable = new HashMap<>();
+        /**
+         * The exact match if one exists, otherwise the general one. This is what a single number resolves to.
+         */
+        private final Category[] single = new Category[TABLE_SIZE];
+        private final List<Category> categories;
+        private final int[][] combinedNumbers;
+        private final Category[] combinedNumbersCategories;
+        private final Map<Subtype, Category> bySubtype = new EnumMap<>(Subtype.class);
+
+        CategoryTable(List<Category> categories) {
+            this.categories = new ArrayList<>(categories);
+            Map<Integer, Integer> generalIndexByMainNumber = new HashMap<>();
+            List<int[]> combined = new ArrayList<>();
+            List<Category> combinedCategories = new ArrayList<>();
+            for (int i = 0; i < categories.size(); i++) {
+                Category category = categories.get(i);
+                for (List<Integer> numbers : category.getNewznabCategories()) {
+                    if (numbers.size() == 1) {
+                        int number = numbers.get(0);
+                        if (number >= 0 && number < TABLE_SIZE) {
+                            exact[number] = category;
+                        } else {
+                            exactOutOfTable.put(number, category);
+                        }
+                        if (number % 1000 == 0) {
+                            generalIndexByMainNumber.putIfAbsent(number, i);
+                        }
+                    } else if (numbers.size() > 1) {
+                        combined.add(numbers.stream().mapToInt(Integer::intValue).toArray());
+                        combinedCategories.add(category);
+                    }
+                }
+                if (category.getSubtype() != null) {
+                    bySubtype.putIfAbsent(category.getSubtype(), category);
+                }
+            }
+            for (int number = 0; number < TABLE_SIZE; number++) {
+                generalIndex[number] = generalIndexByMainNumber.getOrDefault(number / 1000 * 1000, -1);
+                single[number] = exact[number] != null ? exact[number] : (generalIndex[number] >= 0 ? categories.get(generalIndex[number]) : null);
+            }
+            for (Map.Entry<Integer, Integer> entry : generalIndexByMainNumber.entrySet()) {
+                if (entry.getKey() < 0 || entry.getKey() >= TABLE_SIZE) {
+                    generalIndexOutOfTable.put(entry.getKey(), entry.getValue());
+                }
+            }
+            combinedNumbers = combined.toArray(new int[0][]);
+            combinedNumbersCategories = combinedCategories.toArray(new Category[0]);
+        }
+
+        Category getExact(int number) {
+            if (number >= 0 && number < TABLE_SIZE) {
+                return exact[number];
+            }
+            return exactOutOfTable.get(number);
+        }
+
+        Category getSingle(int number) {
+            if (number >= 0 && number < TABLE_SIZE) {
+                return single[number];
+            }
+            Category exactCategory = exactOutOfTable.get(number);
+            return exactCategory != null ? exactCategory : getGeneral(number);
+        }
+
+        Category getGeneral(int number) {
+            int index = getGeneralIndex(number);
+            return index >= 0 ? categories.get(index) : null;
+        }
+
+        /**
+         * @return The index of the first category containing the main category of the given number or {@link Integer#MAX_VALUE} if none does
+         */
+        int getGeneralIndex(int number) {
+            int index;
+            if (number >= 0 && number < TABLE_SIZE) {
+                index = generalIndex[number];
+            } else {
+                index = generalIndexOutOfTable.getOrDefault(number / 1000 * 1000, -1);
+            }
+            return index >= 0 ? index : Integer.MAX_VALUE;
+        }
+    }
 
 }
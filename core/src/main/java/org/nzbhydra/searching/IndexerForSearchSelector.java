@@ -2,11 +2,11 @@ package org.nzbhydra.searching;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Stopwatch;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.nzbhydra.api.ApiSearchPrefetcher;
 import org.nzbhydra.config.ConfigProvider;
 import org.nzbhydra.config.SearchSourceRestriction;
 import org.nzbhydra.config.category.Category.Subtype;
@@ -16,6 +16,9 @@ import org.nzbhydra.downloading.FileDownloadRepository;
 import org.nzbhydra.indexers.Indexer;
 import org.nzbhydra.indexers.IndexerApiAccessEntityShortRepository;
 import org.nzbhydra.indexers.IndexerApiAccessType;
+import org.nzbhydra.indexers.IndexerApiAccessWriter;
+import org.nzbhydra.indexers.IndexerCircuitBreaker;
+import org.nzbhydra.indexers.IndexerRateLimiter;
 import org.nzbhydra.logging.LoggingMarkers;
 import org.nzbhydra.mediainfo.InfoProvider;
 import org.nzbhydra.searching.dtoseventsenums.DownloadType;
@@ -51,6 +54,7 @@ public class IndexerForSearchSelector {
     private static final Logger logger = LoggerFactory.getLogger(IndexerForSearchSelector.class);
     public static final Pattern SCHEDULER_PATTERN = Pattern.compile("(?<day1>(?:mo|tu|we|th|fr|sa|su))?\\-?(?<day2>(?:mo|tu|we|th|fr|sa|su))?(?<hour1>\\d{1,2})?\\-?(?<hour2>\\d{1,2})?", Pattern.CASE_INSENSITIVE);
     private static final Random random = new Random();
+    public static final String PREFETCH_LIMIT_REACHED = "Prefetch limit reached";
 
     @Autowired
     private InfoProvider infoProvider;
@@ -61,8 +65,12 @@ public class IndexerForSearchSelector {
     @Autowired
     private IndexerApiAccessEntityShortRepository shortRepository;
     @Autowired
+    private IndexerApiAccessWriter apiAccessWriter;
+    @Autowired
     private ConfigProvider configProvider;
     @Autowired
+    private IndexerRateLimiter rateLimiter;
+    @Autowired
     private ApplicationEventPublisher eventPublisher;
     @PersistenceContext
     private EntityManager entityManager;
@@ -117,9 +125,19 @@ public class IndexerForSearchSelector {
             if (!checkSearchId(indexer)) {
                 continue;
             }
+            if (!checkPrefetchLimit(indexer)) {
+                continue;
+            }
             if (!checkIndexerHitLimit(indexer)) {
                 continue;
             }
+            if (!checkRateLimit(indexer)) {
+                continue;
+            }
+            //Must be the last check because it may grant the trial call of a half open circuit
+            if (!checkCircuitBreaker(indexer)) {
+                continue;
+            }
 
             selectedIndexers.add(indexer);
         }
@@ -179,13 +197,6 @@ public class IndexerForSearchSelector {
     }
 
     protected boolean checkIndexerStatus(Indexer indexer) {
-        if (indexer.getConfig().getState() == IndexerConfig.State.DISABLED_SYSTEM_TEMPORARY) {
-            if (indexer.getConfig().getDisabledUntil() == null || Instant.ofEpochMilli(indexer.getConfig().getDisabledUntil()).isBefore(clock.instant())) {
-                return true;
-            }
-            String message = String.format("Not using %s because it's disabled until %s due to a previous error ", indexer.getName(), Instant.ofEpochMilli(indexer.getConfig().getDisabledUntil()));
-            return handleIndexerNotSelected(indexer, message, "Disabled temporarily because of previous errors");
-        }
         if (indexer.getConfig().getState() == IndexerConfig.State.DISABLED_SYSTEM) {
             String message = String.format("Not using %s because it's disabled due to a previous unrecoverable error", indexer.getName());
             return handleIndexerNotSelected(indexer, message, "Disabled permanently because of previous unrecoverable error");
@@ -193,6 +204,58 @@ public class IndexerForSearchSelector {
         return true;
     }
 
+    /**
+     * Prefetched searches are saved like API searches (with a special user agent), so the indexer searches made for them in
+     * the last 24 hours can be counted. They're also API hits and as such counted by {@link #checkIndexerHitLimit(Indexer)}.
+     */
+    protected boolean checkPrefetchLimit(Indexer indexer) {
+        if (!searchRequest.getInternalData().isPrefetch() || !indexer.getConfig().getPrefetchLimit().isPresent()) {
+            return true;
+        }
+        int prefetchLimit = indexer.getConfig().getPrefetchLimit().get();
+        Query query = entityManager.createNativeQuery("SELECT COUNT(*) FROM INDEXERSEARCH x JOIN SEARCH s ON x.SEARCH_ENTITY_ID = s.ID WHERE x.INDEXER_ENTITY_ID = (:indexerId) AND s.USER_AGENT = (:userAgent) AND s.TIME > (:since)");
+        query.setParameter("indexerId", indexer.getIndexerEntity().getId());
+        query.setParameter("userAgent", ApiSearchPrefetcher.PREFETCH_USER_AGENT);
+        query.setParameter("since", Timestamp.from(clock.instant().minus(1, ChronoUnit.DAYS)));
+        long numberOfPrefetches = ((Number) query.getSingleResult()).longValue();
+        if (numberOfPrefetches >= prefetchLimit) {
+            String message = String.format("Not using %s for prefetching because all %d allowed prefetches in the last 24 hours were already made", indexer.getName(), prefetchLimit);
+            return handleIndexerNotSelected(indexer, message, PREFETCH_LIMIT_REACHED);
+        }
+        return true;
+    }
+
+    /**
+     * Doesn't take a token from the rate limiter, that's done when the indexer is actually called.
+     */
+    protected boolean checkRateLimit(Indexer indexer) {
+        Duration waitTime = rateLimiter.getWaitTime(indexer.getConfig());
+        if (waitTime.isZero()) {
+            return true;
+        }
+        boolean skipRateLimitedIndexers = configProvider.getBaseConfig().getSearching().isSkipRateLimitedIndexers();
+        long timeout = indexer.getConfig().getTimeout().orElse(configProvider.getBaseConfig().getSearching().getTimeout());
+        if (skipRateLimitedIndexers || waitTime.getSeconds() >= timeout) {
+            String message = String.format("Not using %s because its rate limit doesn't allow another request for %d seconds", indexer.getName(), (long) Math.ceil(waitTime.toMillis() / 1000D));
+            return handleIndexerNotSelected(indexer, message, "Rate limit reached");
+        }
+        return true;
+    }
+
+    protected boolean checkCircuitBreaker(Indexer indexer) {
+        IndexerCircuitBreaker circuitBreaker = indexer.getCircuitBreaker();
+        if (circuitBreaker.isCallPermitted()) {
+            return true;
+        }
+        String message;
+        if (circuitBreaker.getState() == IndexerCircuitBreaker.State.HALF_OPEN) {
+            message = String.format("Not using %s because it's being called by another search to check if it's working again", indexer.getName());
+        } else {
+            message = String.format("Not using %s because it's disabled until %s due to previous errors", indexer.getName(), circuitBreaker.getOpenUntil());
+        }
+        return handleIndexerNotSelected(indexer, message, "Disabled temporarily because of previous errors");
+    }
+
     protected boolean checkIndexerSelectedByUser(Indexer indexer) {
         boolean indexerNotSelectedByUser =
                 searchRequest.getSource() == SearchSource.INTERNAL
@@ -262,10 +325,16 @@ public class IndexerForSearchSelector {
         query.setParameter("indexerId", indexer.getIndexerEntity().getId());
         query.setParameter("accessType", accessType.name());
         query.setParameter("hitLimit", limit);
-        List resultList = query.getResultList();
+        List<Instant> accessTimes = new ArrayList<>();
+        for (Object time : query.getResultList()) {
+            accessTimes.add(((Timestamp) time).toInstant());
+        }
+        //Accesses which are not yet written to the database must be counted as well
+        accessTimes.addAll(apiAccessWriter.getQueuedAccessTimes(indexer.getIndexerEntity().getId(), accessType));
+        accessTimes.sort(Comparator.reverseOrder());
 
-        if (resultList.size() == limit) { //Found as many as we want, so now we must check if they're all in the time window
-            Instant earliestAccess = ((Timestamp) Iterables.getLast(resultList)).toInstant();
+        if (accessTimes.size() >= limit) { //Found as many as we want, so now we must check if they're all in the time window
+            Instant earliestAccess = accessTimes.get(limit - 1);
             if (earliestAccess.isAfter(comparisonTime.toInstant(ZoneOffset.UTC))) {
                 LocalDateTime nextPossibleHit = calculateNextPossibleHit(indexerConfig, earliestAccess);
 
@@ -1,6 +1,7 @@
 package org.nzbhydra.searching;
 
 import org.nzbhydra.config.BaseConfig;
+import org.nzbhydra.config.ConfigChangeSet;
 import org.nzbhydra.config.ConfigChangedEvent;
 import org.nzbhydra.config.indexer.IndexerConfig;
 import org.slf4j.Logger;
@@ -30,7 +31,13 @@ public class SearchModuleConfigProvider implements InitializingBean {
     @EventListener
     public void handleNewConfig(ConfigChangedEvent configChangedEvent) {
         baseConfig = configChangedEvent.getNewConfig();
-        afterPropertiesSet();
+        ConfigChangeSet changeSet = configChangedEvent.getChangeSet();
+        if (changeSet.isUnknown()) {
+            afterPropertiesSet();
+        } else if (changeSet.isChanged("indexers")) {
+            indexers = baseConfig.getIndexers();
+            searchModuleProvider.updateIndexers(indexers, changeSet);
+        }
     }
 
     public void setIndexers(List<IndexerConfig> indexers) {
@@ -1,5 +1,6 @@
 package org.nzbhydra.searching;
 
+import org.nzbhydra.config.ConfigChangeSet;
 import org.nzbhydra.config.indexer.IndexerConfig;
 import org.nzbhydra.indexers.Indexer;
 import org.nzbhydra.indexers.IndexerEntity;
@@ -26,7 +27,7 @@ public class SearchModuleProvider {
     @Autowired
     private IndexerRepository indexerRepository;
 
-    private Map<String, Indexer> searchModuleInstances = new HashMap<>();
+    private volatile Map<String, Indexer> searchModuleInstances = new HashMap<>();
 
     @Autowired
     private List<IndexerHandlingStrategy> indexerHandlingStrategies;
@@ -59,42 +60,76 @@ public class SearchModuleProvider {
             return;
         }
         logger.info("Loading indexers");
-        searchModuleInstances.clear();
+        Map<String, Indexer> newInstances = new HashMap<>();
         for (IndexerConfig config : indexers) {
-            try {
-                Optional<IndexerHandlingStrategy> optionalStrategy = indexerHandlingStrategies.stream().filter(x -> x.handlesIndexerConfig(config)).findFirst();
-                if (!optionalStrategy.isPresent()) {
-                    logger.error("Unable to find implementation for indexer type {} and host {}", config.getSearchModuleType(), config.getHost());
-                    continue;
-                }
-
-                Indexer searchModule = beanFactory.createBean(optionalStrategy.get().getIndexerClass());
-                logger.info("Initializing indexer {}", config.getName());
-
-                IndexerEntity indexerEntity = indexerRepository.findByName(config.getName());
-                if (indexerEntity == null) {
-                    logger.info("Indexer with name {} not yet in database. Adding it", config.getName());
-                    indexerEntity = new IndexerEntity();
-                    indexerEntity.setName(config.getName());
-                    indexerEntity = indexerRepository.save(indexerEntity);
-                    logger.info("Now {} indexers in database", indexerRepository.count());
-                }
-
-                searchModule.initialize(config, indexerEntity);
-                searchModuleInstances.put(config.getName(), searchModule);
-            } catch (Exception e) {
-                logger.error("Unable to instantiate indexer with name {} and type {}", config.getName(), config.getSearchModuleType(), e);
-            }
+            createIndexer(config).ifPresent(x -> newInstances.put(config.getName(), x));
         }
+        searchModuleInstances = newInstances;
         logger.info("Finished initializing active indexers");
+        deleteIndexersNotConfigured(indexers);
+        if (searchModuleInstances.isEmpty()) {
+            logger.warn("No indexers configured");
+        }
+    }
+
+    /**
+     * Only creates new instances for indexers which were added or changed. The others keep their instance and with it
+     * their runtime state (e.g. the circuit breaker).
+     */
+    @Transactional
+    public void updateIndexers(List<IndexerConfig> indexers, ConfigChangeSet changeSet) {
+        Map<String, Indexer> newInstances = new HashMap<>();
+        for (IndexerConfig config : indexers) {
+            Indexer existing = searchModuleInstances.get(config.getName());
+            if (existing != null && existing.getConfig() == config && !changeSet.isIndexerChanged(config.getName())) {
+                newInstances.put(config.getName(), existing);
+                continue;
+            }
+            createIndexer(config).ifPresent(x -> newInstances.put(config.getName(), x));
+        }
+        searchModuleInstances = newInstances;
+        if (!changeSet.getRemovedIndexers().isEmpty()) {
+            deleteIndexersNotConfigured(indexers);
+        }
+        if (searchModuleInstances.isEmpty()) {
+            logger.warn("No indexers configured");
+        }
+    }
+
+    private Optional<Indexer> createIndexer(IndexerConfig config) {
+        try {
+            Optional<IndexerHandlingStrategy> optionalStrategy = indexerHandlingStrategies.stream().filter(x -> x.handlesIndexerConfig(config)).findFirst();
+            if (!optionalStrategy.isPresent()) {
+                logger.error("Unable to find implementation for indexer type {} and host {}", config.getSearchModuleType(), config.getHost());
+                return Optional.empty();
+            }
+
+            Indexer searchModule = beanFactory.createBean(optionalStrategy.get().getIndexerClass());
+            logger.info("Initializing indexer {}", config.getName());
+
+            IndexerEntity indexerEntity = indexerRepository.findByName(config.getName());
+            if (indexerEntity == null) {
+                logger.info("Indexer with name {} not yet in database. Adding it", config.getName());
+                indexerEntity = new IndexerEntity();
+                indexerEntity.setName(config.getName());
+                indexerEntity = indexerRepository.save(indexerEntity);
+                logger.info("Now {} indexers in database", indexerRepository.count());
+            }
+
+            searchModule.initialize(config, indexerEntity);
+            return Optional.of(searchModule);
+        } catch (Exception e) {
+            logger.error("Unable to instantiate indexer with name {} and type {}", config.getName(), config.getSearchModuleType(), e);
+            return Optional.empty();
+        }
+    }
+
+    private void deleteIndexersNotConfigured(List<IndexerConfig> indexers) {
         List<String> indexerNames = indexers.stream().map(IndexerConfig::getName).collect(Collectors.toList());
         Collection<IndexerEntity> byNameNotIn = indexerRepository.findByNameNotIn(indexerNames);
         if (!byNameNotIn.isEmpty()) {
             logger.info("Found {} indexers in database which are not configured. Will delete them and any related database entries. This may take some time", byNameNotIn.size());
             indexerRepository.deleteAll(byNameNotIn);
         }
-        if (searchModuleInstances.isEmpty()) {
-            logger.warn("No indexers configured");
-        }
     }
 }
@@ -0,0 +1,273 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.searching;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import net.jodah.expiringmap.ExpiringMap;
+import org.nzbhydra.searching.SearchWeb.SearchState;
+import org.nzbhydra.searching.dtoseventsenums.FallbackSearchInitiatedEvent;
+import org.nzbhydra.searching.dtoseventsenums.IndexerSearchFinishedEvent;
+import org.nzbhydra.searching.dtoseventsenums.IndexerSelectionEvent;
+import org.nzbhydra.searching.dtoseventsenums.SearchMessageEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes the progress of searches to the web UI using server sent events. Every subscribed client keeps its own state of
+ * the search which is updated by the search events, so it doesn't depend on the limited number of states kept for polling.
+ * The events are passed on by {@link SearchWeb} while holding its lock, so a new subscription doesn't miss or repeat any
+ * event compared to the state it's initialized with.
+ * <p>
+ * Events are sent by a separate thread so that a slow client doesn't block the search. Every event contains the current
+ * counts of selected and finished indexers, so when a client is too slow and its buffer is full the oldest events can be
+ * dropped without losing anything but their messages. Only a limited number of threads is used for sending, each
+ * subscription has at most one send task queued or running.
+ */
+@Component
+public class SearchStatePusher {
+
+    private static final Logger logger = LoggerFactory.getLogger(SearchStatePusher.class);
+
+    static final int MAX_BUFFERED_EVENTS = 50;
+    static final int MAX_FINISHED_SEARCHES = 100;
+    private static final int MAX_SENDING_THREADS = 10;
+    private static final long TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final ConcurrentMap<Long, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    //The state of a finished search may be evicted before a client subscribes to it, it must still be told that the search is finished
+    private final Set<Long> finishedSearchRequestIds = Collections.newSetFromMap(ExpiringMap.builder()
+            .maxSize(MAX_FINISHED_SEARCHES)
+            .expiration(1, TimeUnit.HOURS)
+            .<Long, Boolean>build());
+    protected ExecutorService executor = createExecutor();
+
+    private static ExecutorService createExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_SENDING_THREADS, MAX_SENDING_THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("SearchStatePush-%d").setDaemon(true).build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @param searchState The state of the search so far, may be null if the search hasn't started yet
+     */
+    public SseEmitter subscribe(long searchRequestId, SearchState searchState) {
+        SseEmitter emitter = createEmitter();
+        Subscription subscription = new Subscription(searchRequestId, emitter, searchState == null ? new SearchState() : searchState);
+        emitter.onCompletion(() -> unsubscribe(subscription));
+        emitter.onTimeout(() -> unsubscribe(subscription));
+        emitter.onError(e -> unsubscribe(subscription));
+        subscriptions.compute(searchRequestId, (id, searchSubscriptions) -> {
+            Set<Subscription> newSubscriptions = searchSubscriptions == null ? new CopyOnWriteArraySet<>() : searchSubscriptions;
+            newSubscriptions.add(subscription);
+            return newSubscriptions;
+        });
+        update(subscription, "state", state -> new ArrayList<>(state.getMessages()));
+        if (searchState == null && finishedSearchRequestIds.contains(searchRequestId)) {
+            logger.debug("Search {} is already finished", searchRequestId);
+            update(subscription, "searchFinished", SearchStatePusher::setSearchFinished);
+        }
+        return emitter;
+    }
+
+    protected SseEmitter createEmitter() {
+        return new SseEmitter(TIMEOUT_MILLIS);
+    }
+
+    public void searchFinished(long searchRequestId) {
+        finishedSearchRequestIds.add(searchRequestId);
+        update(searchRequestId, "searchFinished", SearchStatePusher::setSearchFinished);
+    }
+
+    private static List<String> setSearchFinished(SearchState state) {
+        state.setSearchFinished(true);
+        return Collections.emptyList();
+    }
+
+    public void handleSearchMessageEvent(SearchMessageEvent event) {
+        update(event.getSearchRequest().getSearchRequestId(), "message", state -> {
+            if (state.getMessages().contains(event.getMessage())) {
+                return Collections.emptyList();
+            }
+            state.getMessages().add(event.getMessage());
+            return Collections.singletonList(event.getMessage());
+        });
+    }
+
+    public void handleIndexerSelectionEvent(IndexerSelectionEvent event) {
+        update(event.getSearchRequest().getSearchRequestId(), "indexerSelection", state -> {
+            state.setIndexerSelectionFinished(true);
+            state.setIndexersSelected(event.getIndexersSelected());
+            return Collections.emptyList();
+        });
+    }
+
+    public void handleFallbackSearchInitatedEvent(FallbackSearchInitiatedEvent event) {
+        update(event.getSearchRequest().getSearchRequestId(), "indexerSelection", state -> {
+            state.setIndexersSelected(state.getIndexersSelected() + 1);
+            return Collections.emptyList();
+        });
+    }
+
+    public void handleIndexerSearchFinishedEvent(IndexerSearchFinishedEvent event) {
+        update(event.getSearchRequest().getSearchRequestId(), "indexerFinished", state -> {
+            state.setIndexersFinished(state.getIndexersFinished() + 1);
+            return Collections.emptyList();
+        });
+    }
+
+    int getNumberOfSubscriptions(long searchRequestId) {
+        return subscriptions.getOrDefault(searchRequestId, Collections.emptySet()).size();
+    }
+
+    private void update(long searchRequestId, String eventName, StateUpdate stateUpdate) {
+        Set<Subscription> searchSubscriptions = subscriptions.get(searchRequestId);
+        if (searchSubscriptions == null) {
+            return;
+        }
+        for (Subscription subscription : searchSubscriptions) {
+            update(subscription, eventName, stateUpdate);
+        }
+    }
+
+    private void update(Subscription subscription, String eventName, StateUpdate stateUpdate) {
+        synchronized (subscription) {
+            if (subscription.finished) {
+                return;
+            }
+            SearchState state = subscription.searchState;
+            List<String> newMessages = stateUpdate.apply(state);
+            if (subscription.buffer.size() >= MAX_BUFFERED_EVENTS) {
+                subscription.buffer.removeFirst();
+                logger.debug("Dropped oldest search state event for slow client of search {}", subscription.searchRequestId);
+            }
+            subscription.buffer.addLast(new PushedEvent(eventName, new SearchStateEvent(state.isIndexerSelectionFinished(), state.isSearchFinished(), state.getIndexersSelected(), state.getIndexersFinished(), newMessages)));
+            if (state.isSearchFinished()) {
+                //No more events will be sent
+                subscription.finished = true;
+            }
+            if (!subscription.sending) {
+                subscription.sending = true;
+                executor.execute(() -> send(subscription));
+            }
+        }
+    }
+
+    private void send(Subscription subscription) {
+        while (true) {
+            PushedEvent event;
+            boolean complete;
+            synchronized (subscription) {
+                event = subscription.buffer.pollFirst();
+                if (event == null) {
+                    subscription.sending = false;
+                    return;
+                }
+                complete = subscription.finished && subscription.buffer.isEmpty();
+            }
+            try {
+                subscription.emitter.send(SseEmitter.event().name(event.getName()).data(event.getData(), MediaType.APPLICATION_JSON));
+                if (complete) {
+                    subscription.emitter.complete();
+                }
+            } catch (Exception e) {
+                //Usually the client closed the connection
+                logger.debug("Unable to send search state event for search {}: {}", subscription.searchRequestId, e.getMessage());
+                subscription.emitter.completeWithError(e);
+                unsubscribe(subscription);
+                return;
+            }
+        }
+    }
+
+    private void unsubscribe(Subscription subscription) {
+        subscriptions.computeIfPresent(subscription.searchRequestId, (id, searchSubscriptions) -> {
+            searchSubscriptions.remove(subscription);
+            return searchSubscriptions.isEmpty() ? null : searchSubscriptions;
+        });
+    }
+
+    private interface StateUpdate {
+        /**
+         * Updates the state
+         *
+         * @return The messages added by the update
+         */
+        List<String> apply(SearchState state);
+    }
+
+    private static class Subscription {
+        private final long searchRequestId;
+        private final SseEmitter emitter;
+        private final SearchState searchState;
+        private final Deque<PushedEvent> buffer = new ArrayDeque<>();
+        private boolean sending;
+        private boolean finished;
+
+        Subscription(long searchRequestId, SseEmitter emitter, SearchState searchState) {
+            this.searchRequestId = searchRequestId;
+            this.emitter = emitter;
+            this.searchState = searchState;
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class PushedEvent {
+        private String name;
+        private SearchStateEvent data;
+    }
+
+    @Data
+    @AllArgsConstructor
+    static class SearchStateEvent {
+        private boolean indexerSelectionFinished;
+        private boolean searchFinished;
+        private int indexersSelected;
+        private int indexersFinished;
+        /**
+         * Messages added since the last event
+         */
+        private List<String> messages;
+    }
+
+}
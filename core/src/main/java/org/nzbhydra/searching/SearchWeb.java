@@ -13,6 +13,7 @@ import org.nzbhydra.searching.dtoseventsenums.*;
 import org.nzbhydra.searching.searchrequests.SearchRequest;
 import org.nzbhydra.searching.searchrequests.SearchRequest.SearchSource;
 import org.nzbhydra.searching.searchrequests.SearchRequestFactory;
+import org.nzbhydra.web.AsyncRequestExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -20,6 +21,8 @@ import org.springframework.context.event.EventListener;
 import org.springframework.http.MediaType;
 import org.springframework.security.access.annotation.Secured;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -41,6 +44,10 @@ public class SearchWeb {
     private SearchRequestFactory searchRequestFactory;
     @Autowired
     private InternalSearchResultProcessor searchResultProcessor;
+    @Autowired
+    private AsyncRequestExecutor asyncRequestExecutor;
+    @Autowired
+    private SearchStatePusher searchStatePusher;
 
     private Lock lock = new ReentrantLock();
 
@@ -53,8 +60,13 @@ public class SearchWeb {
 
     @Secured({"ROLE_USER"})
     @RequestMapping(value = "/internalapi/search", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
-    public SearchResponse search(@RequestBody SearchRequestParameters parameters) {
+    public DeferredResult<SearchResponse> search(@RequestBody SearchRequestParameters parameters) {
         SearchRequest searchRequest = createSearchRequest(parameters);
+        //Don't block one of the few request threads which are also needed to poll the search state
+        return asyncRequestExecutor.execute(() -> search(searchRequest));
+    }
+
+    private SearchResponse search(SearchRequest searchRequest) {
         Stopwatch stopwatch = Stopwatch.createStarted();
         logger.info("New search request: " + searchRequest);
         org.nzbhydra.searching.SearchResult searchResult = searcher.search(searchRequest);
@@ -62,20 +74,41 @@ public class SearchWeb {
         SearchResponse searchResponse = searchResultProcessor.createSearchResponse(searchResult);
 
         lock.lock();
-        SearchState searchState = searchStates.get(searchRequest.getSearchRequestId());
-        searchState.setSearchFinished(true);
-        lock.unlock();
+        try {
+            SearchState searchState = searchStates.get(searchRequest.getSearchRequestId());
+            if (searchState != null) {
+                searchState.setSearchFinished(true);
+            }
+            searchStatePusher.searchFinished(searchRequest.getSearchRequestId());
+        } finally {
+            lock.unlock();
+        }
 
         logger.info("Search took {}ms", stopwatch.elapsed(TimeUnit.MILLISECONDS));
         return searchResponse;
     }
 
+    /**
+     * Polling the state is only used by the UI when server sent events don't work, see {@link #getSearchEvents(long)}
+     */
     @Secured({"ROLE_USER"})
     @RequestMapping(value = "/internalapi/search/state", produces = MediaType.APPLICATION_JSON_VALUE)
     public SearchState getSearchState(@RequestParam("searchrequestid") long searchRequestId) {
         return searchStates.getOrDefault(searchRequestId, new SearchState());
     }
 
+    @Secured({"ROLE_USER"})
+    @RequestMapping(value = "/internalapi/search/events", method = RequestMethod.GET, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter getSearchEvents(@RequestParam("searchrequestid") long searchRequestId) {
+        lock.lock();
+        try {
+            SearchState searchState = searchStates.get(searchRequestId);
+            return searchStatePusher.subscribe(searchRequestId, searchState == null ? null : searchState.copy());
+        } finally {
+            lock.unlock();
+        }
+    }
+
     private SearchRequest createSearchRequest(@RequestBody SearchRequestParameters parameters) {
         Category category = categoryProvider.getByInternalName(parameters.getCategory());
         SearchType searchType;
@@ -140,23 +173,29 @@ public class SearchWeb {
 
     @EventListener
     public void handleSearchMessageEvent(SearchMessageEvent event) {
-        if (searchStates.containsKey(event.getSearchRequest().getSearchRequestId())) {
-            lock.lock();
+        lock.lock();
+        try {
             SearchState searchState = searchStates.get(event.getSearchRequest().getSearchRequestId());
-            if (!searchState.getMessages().contains(event.getMessage())) {
+            if (searchState != null && !searchState.getMessages().contains(event.getMessage())) {
                 searchState.getMessages().add(event.getMessage());
             }
+            searchStatePusher.handleSearchMessageEvent(event);
+        } finally {
             lock.unlock();
         }
     }
 
     @EventListener
     public void handleIndexerSelectionEvent(IndexerSelectionEvent event) {
-        if (searchStates.containsKey(event.getSearchRequest().getSearchRequestId())) {
-            lock.lock();
+        lock.lock();
+        try {
             SearchState searchState = searchStates.get(event.getSearchRequest().getSearchRequestId());
-            searchState.setIndexerSelectionFinished(true);
-            searchState.setIndexersSelected(event.getIndexersSelected());
+            if (searchState != null) {
+                searchState.setIndexerSelectionFinished(true);
+                searchState.setIndexersSelected(event.getIndexersSelected());
+            }
+            searchStatePusher.handleIndexerSelectionEvent(event);
+        } finally {
             lock.unlock();
         }
     }
@@ -164,27 +203,35 @@ public class SearchWeb {
     @EventListener
     public void handleFallbackSearchInitatedEvent(FallbackSearchInitiatedEvent event) {
         //An indexer will do a fallback search, meaning we'll have to wait for another indexer search. On the GUI side that's the same as if one more indexer had been selected
-        if (searchStates.containsKey(event.getSearchRequest().getSearchRequestId())) {
-            lock.lock();
+        lock.lock();
+        try {
             SearchState searchState = searchStates.get(event.getSearchRequest().getSearchRequestId());
-            searchState.setIndexersSelected(searchState.getIndexersSelected() + 1);
+            if (searchState != null) {
+                searchState.setIndexersSelected(searchState.getIndexersSelected() + 1);
+            }
+            searchStatePusher.handleFallbackSearchInitatedEvent(event);
+        } finally {
             lock.unlock();
         }
     }
 
     @EventListener
     public void handleIndexerSearchFinishedEvent(IndexerSearchFinishedEvent event) {
-        if (searchStates.containsKey(event.getSearchRequest().getSearchRequestId())) {
-            lock.lock();
+        lock.lock();
+        try {
             SearchState searchState = searchStates.get(event.getSearchRequest().getSearchRequestId());
-            searchState.setIndexersFinished(searchState.getIndexersFinished() + 1);
+            if (searchState != null) {
+                searchState.setIndexersFinished(searchState.getIndexersFinished() + 1);
+            }
+            searchStatePusher.handleIndexerSearchFinishedEvent(event);
+        } finally {
             lock.unlock();
         }
     }
 
     @Data
     @NoArgsConstructor
-    private static class SearchState {
+    static class SearchState {
 
         private boolean indexerSelectionFinished = false;
         private boolean searchFinished = false;
@@ -192,6 +239,16 @@ public class SearchWeb {
         private int indexersFinished = 0;
         private List<String> messages = new ArrayList<>();
 
+        SearchState copy() {
+            SearchState copy = new SearchState();
+            copy.setIndexerSelectionFinished(indexerSelectionFinished);
+            copy.setSearchFinished(searchFinished);
+            copy.setIndexersSelected(indexersSelected);
+            copy.setIndexersFinished(indexersFinished);
+            copy.setMessages(new ArrayList<>(messages));
+            return copy;
+        }
+
     }
 
 }
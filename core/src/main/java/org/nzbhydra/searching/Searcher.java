@@ -13,6 +13,9 @@ import org.nzbhydra.indexers.IndexerSearchEntity;
 import org.nzbhydra.indexers.IndexerSearchRepository;
 import org.nzbhydra.logging.LoggingMarkers;
 import org.nzbhydra.logging.MdcThreadPoolExecutor;
+import org.nzbhydra.metrics.Counter;
+import org.nzbhydra.metrics.Histogram;
+import org.nzbhydra.metrics.Metrics;
 import org.nzbhydra.searching.IndexerForSearchSelector.IndexerForSearchSelection;
 import org.nzbhydra.searching.db.IdentifierKeyValuePair;
 import org.nzbhydra.searching.db.SearchEntity;
@@ -29,16 +32,22 @@ import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import java.time.Instant;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
 
 @Component
 public class Searcher {
 
     private static final Logger logger = LoggerFactory.getLogger(Searcher.class);
+    private static final Histogram SEARCH_ROUND_DURATION = Metrics.histogram("hydra_search_round_duration_seconds", "Duration of one round of searching all indexers which may provide more results");
+    private static final Counter SEARCH_CACHE_HITS = Metrics.counter("hydra_search_cache_requests_total", "Requests for further results of a search answered from the search cache or not", "result", "hit");
+    private static final Counter SEARCH_CACHE_MISSES = Metrics.counter("hydra_search_cache_requests_total", "Requests for further results of a search answered from the search cache or not", "result", "miss");
 
     @Autowired
     protected DuplicateDetector duplicateDetector;
@@ -54,6 +63,20 @@ public class Searcher {
     private ConfigProvider configProvider;
     private final Set<ExecutorService> executors = Collections.synchronizedSet(new HashSet<>());
     private boolean shutdownRequested = false;
+    private final AtomicInteger searchesInFlight = new AtomicInteger();
+
+    @PostConstruct
+    public void registerMetrics() {
+        Metrics.gauge("hydra_searches_in_flight", "Number of searches currently executed", searchesInFlight::get);
+        Metrics.gauge("hydra_search_threads_active", "Number of threads currently searching indexers", () -> sumOverExecutors(ThreadPoolExecutor::getActiveCount));
+        Metrics.gauge("hydra_search_tasks_queued", "Number of indexer searches waiting for a thread", () -> sumOverExecutors(x -> x.getQueue().size()));
+    }
+
+    private double sumOverExecutors(ToIntFunction<ThreadPoolExecutor> function) {
+        synchronized (executors) {
+            return executors.stream().filter(x -> x instanceof ThreadPoolExecutor).mapToInt(x -> function.applyAsInt((ThreadPoolExecutor) x)).sum();
+        }
+    }
 
     @EventListener
     public void onShutdown(ShutdownEvent event) {
@@ -87,6 +110,17 @@ public class Searcher {
             .build();
 
     public SearchResult search(SearchRequest searchRequest) {
+        long start = System.nanoTime();
+        searchesInFlight.incrementAndGet();
+        try {
+            return doSearch(searchRequest);
+        } finally {
+            searchesInFlight.decrementAndGet();
+            Metrics.histogram("hydra_search_duration_seconds", "Duration of searches including all rounds of indexer searches", "source", String.valueOf(searchRequest.getSource())).recordSince(start);
+        }
+    }
+
+    private SearchResult doSearch(SearchRequest searchRequest) {
         Stopwatch stopwatch = Stopwatch.createStarted();
         eventPublisher.publishEvent(new SearchEvent(searchRequest));
         SearchCacheEntry searchCacheEntry = getSearchCacheEntry(searchRequest);
@@ -113,7 +147,9 @@ public class Searcher {
             }
 
             //Do the actual search
+            long roundStart = System.nanoTime();
             indexersToSearchAndTheirResults = callSearchModules(searchRequest, indexersToSearchAndTheirResults);
+            SEARCH_ROUND_DURATION.recordSince(roundStart);
 
             //Update cache
             searchCacheEntry.getIndexerSearchResultsByIndexer().putAll(indexersToSearchAndTheirResults);
@@ -232,18 +268,13 @@ public class Searcher {
     protected SearchCacheEntry getSearchCacheEntry(SearchRequest searchRequest) {
         SearchCacheEntry searchCacheEntry;
 
+        if (searchRequest.getOffset().orElse(0) > 0) {
+            //Only searches for further results may be answered from the cache
+            (searchRequestCache.containsKey(searchRequest.hashCode()) ? SEARCH_CACHE_HITS : SEARCH_CACHE_MISSES).increment();
+        }
         if (searchRequest.getOffset().orElse(0) == 0 || !searchRequestCache.containsKey(searchRequest.hashCode())) {
             //New search
-            SearchEntity searchEntity = new SearchEntity();
-            searchEntity.setSource(searchRequest.getSource());
-            searchEntity.setCategoryName(searchRequest.getCategory().getName());
-            searchEntity.setQuery(searchRequest.getQuery().orElse(null));
-            searchEntity.setIdentifiers(searchRequest.getIdentifiers().entrySet().stream().filter(x -> x.getValue() != null).map(x -> new IdentifierKeyValuePair(x.getKey().name(), x.getValue())).collect(Collectors.toSet()));
-            searchEntity.setSeason(searchRequest.getSeason().orElse(null));
-            searchEntity.setEpisode(searchRequest.getEpisode().orElse(null));
-            searchEntity.setSearchType(searchRequest.getSearchType());
-            searchEntity.setTitle(searchRequest.getTitle().orElse(null));
-            searchEntity.setAuthor(searchRequest.getAuthor().orElse(null));
+            SearchEntity searchEntity = createSearchEntity(searchRequest);
 
             //Extend search request
             searchRequest.extractForbiddenWords();
@@ -261,6 +292,27 @@ public class Searcher {
     }
 
 
+    /**
+     * Saves a search that was answered without calling the searcher (e.g. from prefetched results) so that it's shown in the history
+     */
+    public void saveSearchEntity(SearchRequest searchRequest) {
+        searchRepository.save(createSearchEntity(searchRequest));
+    }
+
+    private SearchEntity createSearchEntity(SearchRequest searchRequest) {
+        SearchEntity searchEntity = new SearchEntity();
+        searchEntity.setSource(searchRequest.getSource());
+        searchEntity.setCategoryName(searchRequest.getCategory().getName());
+        searchEntity.setQuery(searchRequest.getQuery().orElse(null));
+        searchEntity.setIdentifiers(searchRequest.getIdentifiers().entrySet().stream().filter(x -> x.getValue() != null).map(x -> new IdentifierKeyValuePair(x.getKey().name(), x.getValue())).collect(Collectors.toSet()));
+        searchEntity.setSeason(searchRequest.getSeason().orElse(null));
+        searchEntity.setEpisode(searchRequest.getEpisode().orElse(null));
+        searchEntity.setSearchType(searchRequest.getSearchType());
+        searchEntity.setTitle(searchRequest.getTitle().orElse(null));
+        searchEntity.setAuthor(searchRequest.getAuthor().orElse(null));
+        return searchEntity;
+    }
+
     protected Map<Indexer, List<IndexerSearchResult>> getIndexerSearchResultsToSearch(Map<Indexer, List<IndexerSearchResult>> map) {
         return map.entrySet().stream().filter(x -> {
             if (x.getValue().isEmpty()) {
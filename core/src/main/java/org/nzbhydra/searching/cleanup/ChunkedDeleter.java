@@ -0,0 +1,173 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.searching.cleanup;
+
+import lombok.Data;
+import org.nzbhydra.logging.LoggingMarkers;
+import org.nzbhydra.misc.Sleep;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Deletes rows in small batches ordered by an indexed key column (keyset pagination). Every batch is committed on its own and
+ * followed by a short pause so that locks are only held for the duration of one small batch and concurrent inserts can proceed.
+ * <p>
+ * All rows with a key below a given bound are deleted (e.g. <tt>FIRST_FOUND &lt; cutoff</tt>), so every batch is a range scan
+ * of the key's index starting where the previous batch ended.
+ */
+public class ChunkedDeleter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkedDeleter.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final long DEFAULT_PAUSE_BETWEEN_BATCHES = 50;
+
+    private final Connection connection;
+    private final int batchSize;
+    private final long pauseBetweenBatches;
+
+    public ChunkedDeleter(Connection connection) {
+        this(connection, DEFAULT_BATCH_SIZE, DEFAULT_PAUSE_BETWEEN_BATCHES);
+    }
+
+    public ChunkedDeleter(Connection connection, int batchSize, long pauseBetweenBatches) {
+        this.connection = connection;
+        this.batchSize = batchSize;
+        this.pauseBetweenBatches = pauseBetweenBatches;
+    }
+
+    /**
+     * Deletes all rows from the table with a key lower than the given bound which match the condition.
+     *
+     * @param tableName           the table to delete from. May be referenced in the condition for correlated subqueries
+     * @param keyColumn           indexed column used to order and delimit the batches, e.g. a time or ID column
+     * @param deleteBelow         rows with a key lower than this are deleted
+     * @param condition           additional SQL condition the rows to delete must match or null
+     * @param conditionParameters parameters for the placeholders in the condition
+     */
+    public DeletionStatistics delete(String tableName, String keyColumn, Object deleteBelow, String condition, Object... conditionParameters) throws SQLException {
+        String andCondition = condition == null ? "" : " and (" + condition + ")";
+        String firstBoundarySql = String.format("select max(%s) from (select %s from %s where %s < ?%s order by %s limit ?)", keyColumn, keyColumn, tableName, keyColumn, andCondition, keyColumn);
+        String nextBoundarySql = String.format("select max(%s) from (select %s from %s where %s > ? and %s < ?%s order by %s limit ?)", keyColumn, keyColumn, tableName, keyColumn, keyColumn, andCondition, keyColumn);
+        String firstDeleteSql = String.format("delete from %s where %s <= ?%s", tableName, keyColumn, andCondition);
+        String nextDeleteSql = String.format("delete from %s where %s > ? and %s <= ?%s", tableName, keyColumn, keyColumn, andCondition);
+
+        DeletionStatistics statistics = new DeletionStatistics(tableName);
+        long start = System.currentTimeMillis();
+        boolean autoCommitBefore = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (PreparedStatement firstBoundaryStatement = connection.prepareStatement(firstBoundarySql);
+             PreparedStatement nextBoundaryStatement = connection.prepareStatement(nextBoundarySql);
+             PreparedStatement firstDeleteStatement = connection.prepareStatement(firstDeleteSql);
+             PreparedStatement nextDeleteStatement = connection.prepareStatement(nextDeleteSql)) {
+            //Exclusive lower bound of the next batch, null before the first one
+            Object lowerBound = null;
+            while (true) {
+                PreparedStatement boundaryStatement = lowerBound == null ? firstBoundaryStatement : nextBoundaryStatement;
+                int index = 1;
+                if (lowerBound != null) {
+                    boundaryStatement.setObject(index++, lowerBound);
+                }
+                boundaryStatement.setObject(index++, deleteBelow);
+                index = setParameters(boundaryStatement, index, conditionParameters);
+                boundaryStatement.setInt(index, batchSize);
+                //Rows with the same key as the upper bound are all deleted in this batch, even if that's more than the batch size
+                Object upperBoundInclusive;
+                try (ResultSet resultSet = boundaryStatement.executeQuery()) {
+                    resultSet.next();
+                    upperBoundInclusive = resultSet.getObject(1);
+                    if (upperBoundInclusive == null) {
+                        break;
+                    }
+                }
+
+                PreparedStatement deleteStatement = lowerBound == null ? firstDeleteStatement : nextDeleteStatement;
+                index = 1;
+                if (lowerBound != null) {
+                    deleteStatement.setObject(index++, lowerBound);
+                }
+                deleteStatement.setObject(index++, upperBoundInclusive);
+                setParameters(deleteStatement, index, conditionParameters);
+                long batchStart = System.currentTimeMillis();
+                int deleted = deleteStatement.executeUpdate();
+                connection.commit();
+                long batchDuration = System.currentTimeMillis() - batchStart;
+
+                statistics.addBatch(deleted, batchDuration);
+                lowerBound = upperBoundInclusive;
+                //Give the rest of the program time to read from or write to the database
+                Sleep.sleep(pauseBetweenBatches);
+            }
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommitBefore);
+        }
+        statistics.setTotalMillis(System.currentTimeMillis() - start);
+        if (statistics.getRowsDeleted() > 0) {
+            logger.debug(LoggingMarkers.HISTORY_CLEANUP, "{}", statistics);
+        }
+        return statistics;
+    }
+
+    /**
+     * @return The index of the next parameter
+     */
+    private int setParameters(PreparedStatement statement, int firstIndex, Object[] parameters) throws SQLException {
+        for (int i = 0; i < parameters.length; i++) {
+            statement.setObject(firstIndex + i, parameters[i]);
+        }
+        return firstIndex + parameters.length;
+    }
+
+    @Data
+    public static class DeletionStatistics {
+        private final String tableName;
+        private int rowsDeleted;
+        private int batches;
+        /**
+         * Time spent in delete statements and commits, i.e. the time during which concurrent writers could be blocked by our locks. Includes any time we ourselves waited for locks
+         */
+        private long statementMillis;
+        private long maxBatchMillis;
+        private long totalMillis;
+
+        void addBatch(int deleted, long millis) {
+            rowsDeleted += deleted;
+            batches++;
+            statementMillis += millis;
+            maxBatchMillis = Math.max(maxBatchMillis, millis);
+        }
+
+        public long getRowsPerSecond() {
+            return totalMillis == 0 ? rowsDeleted : (rowsDeleted * 1000L) / totalMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Deleted %d rows from %s in %d batches and %dms (%d rows/s). Spent %dms in delete statements including lock waits, longest batch took %dms",
+                    rowsDeleted, tableName, batches, totalMillis, getRowsPerSecond(), statementMillis, maxBatchMillis);
+        }
+    }
+
+}
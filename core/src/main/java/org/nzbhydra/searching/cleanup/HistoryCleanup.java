@@ -18,7 +18,6 @@ package org.nzbhydra.searching.cleanup;
 
 import org.nzbhydra.config.ConfigProvider;
 import org.nzbhydra.logging.LoggingMarkers;
-import org.nzbhydra.misc.Sleep;
 import org.nzbhydra.tasks.HydraTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -62,16 +61,17 @@ public class HistoryCleanup {
             Optional<Integer> optionalHighestId = getIdBefore(deleteOlderThan, "SEARCH", ASC_DESC.DESC, connection);
             if (optionalHighestId.isPresent()) {
                 int highestId = optionalHighestId.get();
-                logger.debug(LoggingMarkers.HISTORY_CLEANUP, "Will delete all entries for search IDs lower than {}", highestId);
-                deleteOldIdentifiers(highestId, connection);
+                logger.debug(LoggingMarkers.HISTORY_CLEANUP, "Will delete all entries for search IDs up to {}", highestId);
+                //All searches older than the cutoff have an ID up to the highest one, their dependent entries must be deleted first
+                deleteOldIdentifiers(highestId + 1, connection);
 
-                deleteOldIndexerSearches(highestId, connection);
+                deleteOldIndexerSearches(highestId + 1, connection);
             }
 
             deleteOldIndexerApiAccesses(deleteOlderThan, connection);
 
             if (optionalHighestId.isPresent()) {
-                deleteOldSearches(optionalHighestId.get(), connection);
+                deleteOldSearches(deleteOlderThan, connection);
             }
         } catch (SQLException e) {
             logger.error("Error while executing SQL", e);
@@ -81,12 +81,12 @@ public class HistoryCleanup {
 
     public void deleteOldIndexerSearches(Integer searchId, Connection connection) {
         logger.debug(LoggingMarkers.HISTORY_CLEANUP, "Deleting old indexer searches");
-        deleteOldEntries(searchId, "delete from INDEXERSEARCH where SEARCH_ENTITY_ID < ? and rownum() < 10000", "Deleted {} indexer searches from database", connection);
+        deleteOldEntries("INDEXERSEARCH", "SEARCH_ENTITY_ID", searchId, "Deleted {} indexer searches from database", connection);
     }
 
     public void deleteOldIdentifiers(Integer searchId, Connection connection) {
         logger.debug(LoggingMarkers.HISTORY_CLEANUP, "Deleting old identifiers");
-        deleteOldEntries(searchId, "delete from SEARCH_IDENTIFIERS where SEARCH_ENTITY_ID < ? and rownum() < 10000", "Deleted {} search identifiers from database", connection);
+        deleteOldEntries("SEARCH_IDENTIFIERS", "SEARCH_ENTITY_ID", searchId, "Deleted {} search identifiers from database", connection);
         //Find the lowest searchIdentifierKey. All value pairs referencing a lower ID than that can be deleted
         int identifierId;
         try (PreparedStatement statement = connection.prepareStatement("select IDENTIFIERS_ID from SEARCH_IDENTIFIERS order by IDENTIFIERS_ID asc limit 1;")) {
@@ -103,23 +103,17 @@ public class HistoryCleanup {
         }
 
         logger.debug(LoggingMarkers.HISTORY_CLEANUP, "Deleting old identifier key value pairs");
-        deleteOldEntries(identifierId, "delete from IDENTIFIER_KEY_VALUE_PAIR where ID < ? and rownum() < 10000", "Deleted {} identifier key value pairs from database", connection);
+        deleteOldEntries("IDENTIFIER_KEY_VALUE_PAIR", "ID", identifierId, "Deleted {} identifier key value pairs from database", connection);
     }
 
     public void deleteOldIndexerApiAccesses(Instant deleteOlderThan, Connection connection) {
         logger.debug(LoggingMarkers.HISTORY_CLEANUP, "Deleting old indexer API accesses");
-        Optional<Integer> optionalId = getIdBefore(deleteOlderThan, "INDEXERAPIACCESS", ASC_DESC.DESC, connection);
-        if (!optionalId.isPresent()) {
-            logger.debug(LoggingMarkers.HISTORY_CLEANUP, "No older indexer API accesses to delete");
-            return;
-        }
-
-        deleteOldEntries(optionalId.get(), "delete from INDEXERAPIACCESS where ID < ? and rownum() < 10000", "Deleted {} indexer API accesses from database", connection);
+        deleteOldEntries("INDEXERAPIACCESS", "TIME", new Timestamp(deleteOlderThan.toEpochMilli()), "Deleted {} indexer API accesses from database", connection);
     }
 
-    public void deleteOldSearches(Integer searchId, Connection connection) {
+    public void deleteOldSearches(Instant deleteOlderThan, Connection connection) {
         logger.debug(LoggingMarkers.HISTORY_CLEANUP, "Deleting old searches");
-        deleteOldEntries(searchId, "delete from SEARCH where ID < ? and rownum() < 10000", "Deleted {} searches from database", connection);
+        deleteOldEntries("SEARCH", "TIME", new Timestamp(deleteOlderThan.toEpochMilli()), "Deleted {} searches from database", connection);
     }
 
     private Optional<Integer> getIdBefore(Instant deleteOlderThan, final String tableName, ASC_DESC ascDesc, Connection connection) {
@@ -137,21 +131,11 @@ public class HistoryCleanup {
         }
     }
 
-    public void deleteOldEntries(int lowerThan, String sql, String loggerMessage, Connection connection) {
+    public void deleteOldEntries(String tableName, String keyColumn, Object lowerThan, String loggerMessage, Connection connection) {
         try {
-            int deletedEntities = 0;
-            int lastDeletedEntities;
-            try (PreparedStatement statement = connection.prepareStatement(sql)) {
-                do {
-                    statement.setInt(1, lowerThan);
-                    lastDeletedEntities = statement.executeUpdate();
-                    deletedEntities += lastDeletedEntities;
-                    //Commit and sleep a bit to release locks and give the rest of the program time to read or write from or to db
-                    connection.commit();
-                    Sleep.sleep(100);
-                } while (lastDeletedEntities > 0);
-            }
-            logger.debug(LoggingMarkers.HISTORY_CLEANUP, loggerMessage, deletedEntities);
+            //Deletes in small batches along the key's index, committing and pausing after each one to release locks and give the rest of the program time to read or write from or to db
+            ChunkedDeleter.DeletionStatistics statistics = new ChunkedDeleter(connection).delete(tableName, keyColumn, lowerThan, null);
+            logger.debug(LoggingMarkers.HISTORY_CLEANUP, loggerMessage, statistics.getRowsDeleted());
         } catch (SQLException e) {
             logger.error("Error while executing SQL", e);
         }
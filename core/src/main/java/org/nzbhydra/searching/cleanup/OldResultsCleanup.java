@@ -23,10 +23,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
-import javax.persistence.EntityManager;
+import javax.sql.DataSource;
 import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.function.Predicate;
@@ -38,7 +40,7 @@ public class OldResultsCleanup {
     @Autowired
     private ConfigProvider configProvider;
     @Autowired
-    private EntityManager entityManager;
+    private DataSource dataSource;
 
     private static final Logger logger = LoggerFactory.getLogger(OldResultsCleanup.class);
 
@@ -46,23 +48,21 @@ public class OldResultsCleanup {
 
     //@Scheduled(initialDelay = HOUR, fixedRate = HOUR)
     @HydraTask(configId = "deleteOldSearchResults", name = "Delete old search results", interval = HOUR)
-    @Transactional
     public void deleteOldResults() {
         int keepSearchResultsForDays = configProvider.getBaseConfig().getSearching().getKeepSearchResultsForDays();
-        int deletedResults = entityManager.createNativeQuery(
-                "delete from SEARCHRESULT where FIRST_FOUND "
-                        + " < DATEADD('SECOND', :epochSecond, DATE '1970-01-01') " +
-                        "AND ID not in (select SEARCH_RESULT_ID from INDEXERNZBDOWNLOAD  where SEARCH_RESULT_ID is not null)")
-                .setParameter("epochSecond", Instant.now().minus(keepSearchResultsForDays, ChronoUnit.DAYS).getEpochSecond())
-                .executeUpdate();
-        if (deletedResults > 0) {
-            logger.debug("Deleted {} unused search results from database that were older than {} days", deletedResults, keepSearchResultsForDays);
+        try (Connection connection = dataSource.getConnection()) {
+            //Walks the index on FIRST_FOUND and uses an anti join on the indexed SEARCH_RESULT_ID instead of "not in", deleting in small batches to not block inserts of new results
+            ChunkedDeleter.DeletionStatistics statistics = new ChunkedDeleter(connection).delete("SEARCHRESULT", "FIRST_FOUND",
+                    new Timestamp(Instant.now().minus(keepSearchResultsForDays, ChronoUnit.DAYS).toEpochMilli()),
+                    "NOT EXISTS (select 1 from INDEXERNZBDOWNLOAD D where D.SEARCH_RESULT_ID = SEARCHRESULT.ID)");
+            if (statistics.getRowsDeleted() > 0) {
+                logger.debug("Deleted {} unused search results from database that were older than {} days. {}", statistics.getRowsDeleted(), keepSearchResultsForDays, statistics);
+            }
+        } catch (SQLException e) {
+            logger.error("Error while deleting old search results", e);
         }
 
-
         cleanupGcLogs();
-
-
     }
 
     protected void cleanupGcLogs() {
@@ -16,14 +16,16 @@
 
 package org.nzbhydra.searching.cleanup;
 
-import org.nzbhydra.indexers.IndexerApiAccessEntityShortRepository;
 import org.nzbhydra.tasks.HydraTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 
@@ -31,18 +33,21 @@ import java.time.temporal.ChronoUnit;
 public class ShortIndexerApiAccessCleanup {
 
     @Autowired
-    private IndexerApiAccessEntityShortRepository repository;
+    private DataSource dataSource;
 
     private static final Logger logger = LoggerFactory.getLogger(ShortIndexerApiAccessCleanup.class);
 
     private static final long TWELVE_HOURS = 1000 * 60 * 60 * 12;
 
     @HydraTask(configId = "deletShortTermStorageResults", name = "Delete short term storage results", interval = TWELVE_HOURS)
-    @Transactional
     public void deleteOldResults() {
-        int deletedResults = repository.deleteByTimeBefore(Instant.now().minus(2, ChronoUnit.DAYS));
-        if (deletedResults > 0) {
-            logger.debug("Deleted {} indexer API accesses from short term storage", deletedResults);
+        try (Connection connection = dataSource.getConnection()) {
+            ChunkedDeleter.DeletionStatistics statistics = new ChunkedDeleter(connection).delete("INDEXERAPIACCESS_SHORT", "TIME", new Timestamp(Instant.now().minus(2, ChronoUnit.DAYS).toEpochMilli()), null);
+            if (statistics.getRowsDeleted() > 0) {
+                logger.debug("Deleted {} indexer API accesses from short term storage", statistics.getRowsDeleted());
+            }
+        } catch (SQLException e) {
+            logger.error("Error while deleting indexer API accesses from short term storage", e);
         }
     }
 
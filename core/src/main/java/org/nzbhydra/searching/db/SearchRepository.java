@@ -17,12 +17,14 @@
 package org.nzbhydra.searching.db;
 
 
+import org.nzbhydra.searching.searchrequests.SearchRequest.SearchSource;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.Instant;
 import java.util.List;
 
 public interface SearchRepository extends JpaRepository<SearchEntity, Integer> {
@@ -34,4 +36,6 @@ public interface SearchRepository extends JpaRepository<SearchEntity, Integer> {
     Page<SearchEntity> findForUserSearchHistory(Pageable pageable);
 
     List<SearchEntity> findAllByTitle(String title);
+
+    List<SearchEntity> findBySourceAndQueryIsNullAndTimeAfterOrderByTime(SearchSource source, Instant time);
 }
@@ -45,7 +45,7 @@ public class SearchResultItem  {
     }
     //Note: Validation annotations relate to the needed state after the item was created by an indexer
     private boolean agePrecise;
-    private Map<String, String> attributes = new HashMap<>();
+    private Map<String, String> attributes = new CompactAttributeMap();
     private Category category;
     private Integer commentsCount;
     private String commentsLink;
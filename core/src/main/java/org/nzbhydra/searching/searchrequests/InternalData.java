@@ -20,6 +20,10 @@ public class InternalData {
     private List<String> forbiddenWords = new ArrayList<>();
     private List<String> requiredWords = new ArrayList<>();
     private List<Integer> newznabCategories = new ArrayList<>();
+    /**
+     * Set for searches executed in advance of an expected API search, see {@link org.nzbhydra.api.ApiSearchPrefetcher}
+     */
+    private boolean prefetch;
 
     public Optional<String> getTitle() {
         return Optional.ofNullable(title);
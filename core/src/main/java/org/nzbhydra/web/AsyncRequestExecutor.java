@@ -0,0 +1,137 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.web;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.nzbhydra.logging.MdcThreadPoolExecutor;
+import org.nzbhydra.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executes long running requests (i.e. searches) outside of the servlet container's request threads. The container only
+ * has a few threads so a handful of slow searches would otherwise block all other requests, e.g. those of the UI.
+ * <p>
+ * The number of concurrently executed and queued requests is limited. When both limits are reached new requests are
+ * rejected with a {@link ServerBusyException} which results in a 503 response with a Retry-After header.
+ */
+@Component
+public class AsyncRequestExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncRequestExecutor.class);
+
+    @Value("${nzbhydra.asyncRequests.threads:20}")
+    protected int numberOfThreads = 20;
+    @Value("${nzbhydra.asyncRequests.queueSize:100}")
+    protected int queueSize = 100;
+    @Value("${nzbhydra.asyncRequests.retryAfterSeconds:10}")
+    protected int retryAfterSeconds = 10;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        executor = MdcThreadPoolExecutor.newWithInheritedMdc(numberOfThreads, numberOfThreads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize));
+        executor.setThreadFactory(new ThreadFactoryBuilder().setNameFormat("AsyncRequest-%d").setDaemon(true).build());
+        executor.allowCoreThreadTimeOut(true);
+        Metrics.gauge("hydra_async_requests_active", "Number of requests executed outside of the servlet container's threads", executor::getActiveCount);
+        Metrics.gauge("hydra_async_requests_queued", "Number of requests waiting to be executed", () -> executor.getQueue().size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Executes the callable with the current thread's request, security context and session storage. The result or
+     * exception of the callable is set as the result of the returned {@link DeferredResult}. The task is interrupted if
+     * the request times out or the client closes the connection.
+     *
+     * @throws ServerBusyException If the maximum number of requests is already executed or waiting
+     */
+    public <T> DeferredResult<T> execute(Callable<T> callable) {
+        DeferredResult<T> deferredResult = new DeferredResult<>();
+        Callable<T> contextCallable = withCurrentContext(callable);
+        Future<?> future;
+        try {
+            future = executor.submit(() -> {
+                try {
+                    deferredResult.setResult(contextCallable.call());
+                } catch (Throwable e) {
+                    deferredResult.setErrorResult(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warn("Rejecting request because {} requests are already being executed and {} are waiting", executor.getActiveCount(), executor.getQueue().size());
+            throw new ServerBusyException("Too many concurrent requests", retryAfterSeconds);
+        }
+        deferredResult.onTimeout(() -> future.cancel(true));
+        deferredResult.onError(e -> future.cancel(true));
+        return deferredResult;
+    }
+
+    private static <T> Callable<T> withCurrentContext(Callable<T> callable) {
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        SecurityContext securityContext = SecurityContextHolder.getContext();
+        String ip = SessionStorage.IP.get();
+        String username = SessionStorage.username.get();
+        String userAgent = SessionStorage.userAgent.get();
+        String requestUrl = SessionStorage.requestUrl.get();
+        return () -> {
+            if (requestAttributes instanceof ServletRequestAttributes) {
+                //The original attributes are marked as completed when the request thread is released
+                RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(((ServletRequestAttributes) requestAttributes).getRequest()));
+            }
+            SecurityContextHolder.setContext(securityContext);
+            SessionStorage.IP.set(ip);
+            SessionStorage.username.set(username);
+            SessionStorage.userAgent.set(userAgent);
+            SessionStorage.requestUrl.set(requestUrl);
+            try {
+                return callable.call();
+            } finally {
+                RequestContextHolder.resetRequestAttributes();
+                SecurityContextHolder.clearContext();
+                SessionStorage.IP.remove();
+                SessionStorage.username.remove();
+                SessionStorage.userAgent.remove();
+                SessionStorage.requestUrl.remove();
+            }
+        };
+    }
+
+}
@@ -122,6 +122,15 @@ public class ErrorHandler {
         return new ResponseEntity<>(bodyOfResponse, new HttpHeaders(), status);
     }
 
+    @ExceptionHandler(ServerBusyException.class)
+    @ResponseBody
+    public ResponseEntity<Object> handleServerBusy(ServerBusyException ex, HttpServletRequest request) {
+        logger.warn("Rejected request to path {}: {}", request.getRequestURI(), ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(ex.getMessage());
+    }
+
     protected String getFormattedEntry(Entry<String, String[]> x) {
         return x.getKey() + "=" + (
                 x.getValue().length == 1
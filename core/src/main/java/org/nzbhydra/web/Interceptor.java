@@ -2,6 +2,7 @@ package org.nzbhydra.web;
 
 import com.google.common.base.Strings;
 import org.nzbhydra.config.ConfigProvider;
+import org.nzbhydra.downloading.CompletionTrackingInputStream;
 import org.nzbhydra.misc.UserAgentMapper;
 import org.slf4j.MDC;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -42,4 +43,10 @@ public class Interceptor extends HandlerInterceptorAdapter {
 
         return true;
     }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) throws Exception {
+        //Streamed downloads are closed after being written. If that didn't happen the indexer's connection must be released and the download recorded
+        CompletionTrackingInputStream.closeRegisteredStream(request);
+    }
 }
@@ -0,0 +1,61 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.nzbhydra.mapping.newznab.NewznabResponse;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.oxm.jaxb.Jaxb2Marshaller;
+
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serializes API responses. Output is compact because it's read by machines. Namespaces not belonging to the type of
+ * the response (newznab or torznab) are removed.
+ */
+public class NewznabResponseRenderer {
+
+    private final Jaxb2Marshaller marshaller;
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    public NewznabResponseRenderer(Jaxb2Marshaller marshaller) {
+        this.marshaller = marshaller;
+    }
+
+    public byte[] render(NewznabResponse newznabResponse) throws IOException {
+        if (isJson(newznabResponse)) {
+            return objectMapper.writeValueAsBytes(newznabResponse);
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        marshaller.marshal(newznabResponse, new StreamResult(bos));
+        String result;
+        if ("torznab".equalsIgnoreCase(newznabResponse.getSearchType())) {
+            result = bos.toString(StandardCharsets.UTF_8.name()).replace("xmlns:newznab=\"http://www.newznab.com/DTD/2010/feeds/attributes/\"", "");
+        } else {
+            result = bos.toString(StandardCharsets.UTF_8.name()).replace("xmlns:torznab=\"http://torznab.com/schemas/2015/feed\"", "");
+        }
+        return result.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public boolean isJson(NewznabResponse newznabResponse) {
+        return "json".equalsIgnoreCase(newznabResponse.getSearchType());
+    }
+
+}
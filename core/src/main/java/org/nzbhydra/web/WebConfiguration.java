@@ -18,9 +18,9 @@ import org.springframework.http.MediaType;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.http.converter.HttpMessageNotWritableException;
-import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.oxm.jaxb.Jaxb2Marshaller;
 import org.springframework.web.filter.CharacterEncodingFilter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
@@ -28,8 +28,6 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurationSupp
 import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
 
 import javax.xml.bind.Marshaller;
-import javax.xml.transform.stream.StreamResult;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
@@ -37,6 +35,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 public class WebConfiguration extends WebMvcConfigurationSupport {
@@ -68,6 +67,12 @@ public class WebConfiguration extends WebMvcConfigurationSupport {
     }
 
 
+    @Override
+    protected void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        //Searches may take much longer than the container's default timeout of 30 seconds
+        configurer.setDefaultTimeout(TimeUnit.MINUTES.toMillis(10));
+    }
+
     @Override
     protected void addCorsMappings(CorsRegistry registry) {
         //registry.addMapping("/**").allowedOrigins("http://127.0.0.1:5076", "https://127.0.0.1:9091");
@@ -103,41 +108,35 @@ public class WebConfiguration extends WebMvcConfigurationSupport {
     }
 
     /**
-     * Enable pretty printing of returned XML
+     * Returned XML is not formatted, it's read by machines and formatting only makes it bigger
      */
     @Bean
     public Jaxb2Marshaller marshaller() {
         Jaxb2Marshaller marshaller = new Jaxb2Marshaller();
         Map<String, Boolean> map = new HashMap<>();
-        map.put(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+        map.put(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.FALSE);
         marshaller.setMarshallerProperties(map);
         marshaller.setPackagesToScan("org.nzbhydra");
         return marshaller;
     }
 
-    /**
-     * Enable pretty printing of returned JSON
-     */
+    @Bean
+    public NewznabResponseRenderer newznabResponseRenderer() {
+        return new NewznabResponseRenderer(marshaller());
+    }
+
     @Override
     protected void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
-        for (HttpMessageConverter<?> converter : converters) {
-            if (converter instanceof MappingJackson2HttpMessageConverter) {
-                MappingJackson2HttpMessageConverter jacksonConverter = (MappingJackson2HttpMessageConverter) converter;
-                jacksonConverter.setPrettyPrint(true);
-            }
-        }
-        converters.add(0, new NewznabAndTorznabResponseNamespaceFixer(marshaller()));
+        converters.add(0, new NewznabAndTorznabResponseNamespaceFixer(newznabResponseRenderer()));
     }
 
 
     private static class NewznabAndTorznabResponseNamespaceFixer implements HttpMessageConverter<Object> {
 
-        private final Jaxb2Marshaller marshaller;
-        private MappingJackson2HttpMessageConverter jacksonConverter = new MappingJackson2HttpMessageConverter();
-
+        private final NewznabResponseRenderer renderer;
 
-        public NewznabAndTorznabResponseNamespaceFixer(Jaxb2Marshaller marshaller) {
-            this.marshaller = marshaller;
+        public NewznabAndTorznabResponseNamespaceFixer(NewznabResponseRenderer renderer) {
+            this.renderer = renderer;
         }
 
         @Override
@@ -164,21 +163,11 @@ public class WebConfiguration extends WebMvcConfigurationSupport {
         @Override
         public void write(Object o, MediaType contentType, HttpOutputMessage outputMessage) throws IOException, HttpMessageNotWritableException {
             NewznabResponse newznabResponse = (NewznabResponse) o;
-            if ("json".equalsIgnoreCase(((NewznabResponse) o).getSearchType())) {
-                jacksonConverter.setPrettyPrint(true);
-                jacksonConverter.write(o, MediaType.APPLICATION_JSON_UTF8, outputMessage);
-            } else {
-                outputMessage.getHeaders().setContentType(MediaType.APPLICATION_XML);
-                ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                marshaller.marshal(newznabResponse, new StreamResult(bos));
-                String result;
-                if ("torznab".equalsIgnoreCase(newznabResponse.getSearchType())) {
-                    result = bos.toString().replace("xmlns:newznab=\"http://www.newznab.com/DTD/2010/feeds/attributes/\"", "");
-                } else {
-                    result = bos.toString().replace("xmlns:torznab=\"http://torznab.com/schemas/2015/feed\"", "");
-                }
-                outputMessage.getBody().write(result.getBytes("UTF-8"));
-            }
+            byte[] content = renderer.render(newznabResponse);
+            outputMessage.getHeaders().setContentType(renderer.isJson(newznabResponse) ? MediaType.APPLICATION_JSON_UTF8 : MediaType.APPLICATION_XML);
+            //Allows the container to skip compression of small responses
+            outputMessage.getHeaders().setContentLength(content.length);
+            outputMessage.getBody().write(content);
         }
 
 
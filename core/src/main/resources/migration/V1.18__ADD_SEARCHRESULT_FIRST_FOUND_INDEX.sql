@@ -0,0 +1 @@
+CREATE INDEX SEARCHRESULT_FIRST_FOUND_INDEX ON SEARCHRESULT (FIRST_FOUND);
@@ -0,0 +1 @@
+CREATE INDEX INDEXERAPIACCESS_SHORT_TIME_INDEX ON INDEXERAPIACCESS_SHORT (TIME);
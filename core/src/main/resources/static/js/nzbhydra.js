@@ -1999,8 +1999,6 @@ function downloadNzbzipButton() {
                 var values = _.map($scope.searchResults, function (value) {
                     return value.searchResultId;
                 });
-                var link = "internalapi/nzbzip";
-
                 var searchTitle;
                 if (angular.isDefined($scope.searchTitle)) {
                     searchTitle = " for " + $scope.searchTitle.replace("[^a-zA-Z0-9.-]", "_");
@@ -2008,25 +2006,21 @@ function downloadNzbzipButton() {
                     searchTitle = "";
                 }
                 var filename = "NZBHydra NZBs" + searchTitle + ".zip";
-                $http({method: "post", url: link, data: values}).then(function (response) {
-                    if (response.data.successful && response.data.zip !== null) {
-                        //FileDownloadService.sendFile($base64.decode(response.zip), filename);
-                        link = "internalapi/nzbzipDownload";
-                        FileDownloadService.downloadFile(link, filename, "POST", response.data.zipFilepath);
+                //NZBs which could not be downloaded are listed in a file in the ZIP
+                FileDownloadService.downloadFile("internalapi/nzbzip", filename, "POST", values).then(function (response) {
+                    //The IDs of the NZBs which were actually added are only known after the ZIP was written
+                    $http.get("internalapi/nzbzip/" + response.headers("X-NZBHydra-Zip-Id") + "/added").then(function (addedResponse) {
+                        var addedIds = addedResponse.data;
                         if (angular.isDefined($scope.callback)) {
-                            $scope.callback({result: response.data.addedIds});
+                            $scope.callback({result: addedIds});
                         }
-                        if (response.data.missedIds.length > 0) {
-                            growl.error("Unable to add " + response.missedIds.length + " out of " + values.length + " NZBs to ZIP");
+                        if (addedIds.length < values.length) {
+                            growl.error("Unable to add " + (values.length - addedIds.length) + " out of " + values.length + " NZBs to ZIP");
                         }
-                    } else {
-                        growl.error(response.data.message);
-                    }
-                }, function (data, status, headers, config) {
-                    growl.error(status);
+                    });
                 });
             }
-        }
+        };
     }
 }
 
@@ -3084,6 +3078,43 @@ function getIndexerBoxFields(indexerModel, parentModel, isInitial, CategoriesSer
                 help: 'Supercedes the general timeout in "Searching"'
             }
         },
+        {
+            key: 'requestsPerMinute',
+            type: 'horizontalInput',
+            templateOptions: {
+                type: 'number',
+                label: 'Rate limit',
+                help: 'Maximum number of requests per minute, including searches, caps checks and downloads. Leave empty for no limit'
+            },
+            validators: {
+                greaterThanZero: {
+                    expression: function ($viewValue, $modelValue) {
+                        var value = $modelValue || $viewValue;
+                        return angular.isUndefined(value) || value === null || value === "" || value > 0;
+                    },
+                    message: '"Value must be greater than 0"'
+                }
+            }
+        },
+        {
+            key: 'requestBurst',
+            type: 'horizontalInput',
+            hideExpression: '!model.requestsPerMinute',
+            templateOptions: {
+                type: 'number',
+                label: 'Rate limit burst',
+                help: 'Number of requests which may be made at once before the rate limit applies. Defaults to 1'
+            },
+            validators: {
+                greaterThanZero: {
+                    expression: function ($viewValue, $modelValue) {
+                        var value = $modelValue || $viewValue;
+                        return angular.isUndefined(value) || value === null || value === "" || value > 0;
+                    },
+                    message: '"Value must be greater than 0"'
+                }
+            }
+        },
         {
             key: 'schedule',
             type: 'horizontalChips',
@@ -3132,6 +3163,24 @@ function getIndexerBoxFields(indexerModel, parentModel, isInitial, CategoriesSer
                         message: '"Value must be greater than 0"'
                     }
                 }
+            },
+            {
+                key: 'prefetchLimit',
+                type: 'horizontalInput',
+                templateOptions: {
+                    type: 'number',
+                    label: 'Prefetch limit',
+                    help: 'Maximum number of prefetched searches in 24 hours (see "Prefetch recurring searches" in the searching config). Prefetches also count towards the API hit limit. Leave empty for no limit'
+                },
+                validators: {
+                    greaterThanZero: {
+                        expression: function ($viewValue, $modelValue) {
+                            var value = $modelValue || $viewValue;
+                            return angular.isUndefined(value) || value === null || value === "" || value > 0;
+                        },
+                        message: '"Value must be greater than 0"'
+                    }
+                }
             }
         );
         fieldset.push(
@@ -3449,6 +3498,9 @@ angular.module('nzbhydraApp').controller('IndexerConfigSelectionBoxInstanceContr
                 name: null,
                 password: null,
                 preselect: true,
+                prefetchLimit: null,
+                requestBurst: null,
+                requestsPerMinute: null,
                 score: 0,
                 searchModuleType: 'NEWZNAB',
                 showOnSearch: true,
@@ -5339,6 +5391,51 @@ function ConfigFields($injector) {
                                 }
                             }
                         },
+                        {
+                            key: 'adaptiveTimeouts',
+                            type: 'horizontalSwitch',
+                            templateOptions: {
+                                type: 'switch',
+                                label: 'Adaptive timeouts',
+                                help: 'Use twice the time in which an indexer usually answers (99th percentile of the last calls) as timeout. The timeout above is the maximum.'
+                            }
+                        },
+                        {
+                            key: 'hedgeRequests',
+                            type: 'horizontalSwitch',
+                            templateOptions: {
+                                type: 'switch',
+                                label: 'Hedge requests',
+                                help: 'Repeat a call to an indexer without API hit limit when it takes longer than 95% of the last calls and use the first response.'
+                            }
+                        },
+                        {
+                            key: 'skipRateLimitedIndexers',
+                            type: 'horizontalSwitch',
+                            templateOptions: {
+                                type: 'switch',
+                                label: 'Skip rate limited indexers',
+                                help: 'Don\'t search indexers which have reached their rate limit. If disabled searches wait for the rate limit (up to the timeout).'
+                            }
+                        },
+                        {
+                            key: 'warmIndexerConnections',
+                            type: 'horizontalSwitch',
+                            templateOptions: {
+                                type: 'switch',
+                                label: 'Keep connections warm',
+                                help: 'Regularly open connections to indexers used within the last hour (without API hits) so that searches don\'t have to wait for connections to be established. Rate limited indexers are skipped.'
+                            }
+                        },
+                        {
+                            key: 'prefetchRecurringSearches',
+                            type: 'horizontalSwitch',
+                            templateOptions: {
+                                type: 'switch',
+                                label: 'Prefetch recurring searches',
+                                help: 'Learn when tools regularly poll for the latest releases (searches without query) and execute these searches shortly before the next poll so that it can be answered right away. Use the indexers\' prefetch limit to restrict the number of additional API hits.'
+                            }
+                        },
                         {
                             key: 'ignoreTemporarilyDisabled',
                             type: 'horizontalSwitch',
@@ -6107,6 +6204,33 @@ function ConfigFields($injector) {
                                 label: 'Update statuses',
                                 help: "Query your downloader for status updates of downloads"
                             }
+                        },
+                        {
+                            key: 'nzbCacheSizeMb',
+                            type: 'horizontalInput',
+                            templateOptions: {
+                                type: 'number',
+                                label: 'NZB cache size',
+                                addonRight: {
+                                    text: 'MB'
+                                },
+                                min: 0,
+                                help: 'Proxied NZBs are cached on disk so that repeated downloads don\'t access the indexer again. Set to 0 to disable.'
+                            }
+                        },
+                        {
+                            key: 'nzbCacheMaxAgeHours',
+                            type: 'horizontalInput',
+                            hideExpression: 'model.nzbCacheSizeMb === 0',
+                            templateOptions: {
+                                type: 'number',
+                                label: 'NZB cache max age',
+                                addonRight: {
+                                    text: 'hours'
+                                },
+                                min: 1,
+                                help: 'Cached NZBs older than this are deleted.'
+                            }
                         }
                     ]
                 },
@@ -7412,6 +7536,7 @@ function SearchService($http) {
         getLastResults: getLastResults,
         loadMore: loadMore,
         getSearchState: getSearchState,
+        getSearchEvents: getSearchEvents,
         getModalInstance: getModalInstance,
         setModalInstance: setModalInstance,
     };
@@ -7471,6 +7596,10 @@ function SearchService($http) {
         return $http.get("internalapi/search/state", {params: {searchrequestid: searchRequestId}});
     }
 
+    function getSearchEvents(searchRequestId) {
+        return new EventSource("internalapi/search/events?searchrequestid=" + searchRequestId);
+    }
+
     function processData(response) {
         var searchResults = response.data.searchResults;
         var indexerSearchMetaDatas = response.data.indexerSearchMetaDatas;
@@ -8927,37 +9056,79 @@ angular
 function SearchUpdateModalInstanceCtrl($scope, $interval, SearchService, $uibModalInstance, searchRequestId, onCancel) {
 
     var updateSearchMessagesInterval = undefined;
+    var searchEvents = undefined;
     var loggedSearchFinished = false;
     $scope.messages = [];
     $scope.indexerSelectionFinished = false;
     $scope.indexersSelected = 0;
     $scope.indexersFinished = 0;
 
-    updateSearchMessagesInterval = $interval(function () {
-        SearchService.getSearchState(searchRequestId).then(function (response) {
-                $scope.indexerSelectionFinished = response.data.indexerSelectionFinished;
-                $scope.searchFinished = response.data.searchFinished;
-                $scope.indexersSelected = response.data.indexersSelected;
-                $scope.indexersFinished = response.data.indexersFinished;
-                $scope.progressMax = response.data.indexersSelected;
-                if ($scope.progressMax > response.data.indexersSelected) {
-                    $scope.progressMax = ">=" + response.data.indexersSelected;
-                }
-                if (response.data.messages) {
-                    $scope.messages = response.data.messages;
+    function updateState(state) {
+        $scope.indexerSelectionFinished = state.indexerSelectionFinished;
+        $scope.searchFinished = state.searchFinished;
+        $scope.indexersSelected = state.indexersSelected;
+        $scope.indexersFinished = state.indexersFinished;
+        $scope.progressMax = state.indexersSelected;
+        if ($scope.progressMax > state.indexersSelected) {
+            $scope.progressMax = ">=" + state.indexersSelected;
+        }
+        if ($scope.searchFinished && !loggedSearchFinished) {
+            $scope.messages.push("Finished searching. Preparing results...");
+            loggedSearchFinished = true;
+        }
+    }
+
+    function pollSearchState() {
+        updateSearchMessagesInterval = $interval(function () {
+            SearchService.getSearchState(searchRequestId).then(function (response) {
+                    if (response.data.messages) {
+                        $scope.messages = response.data.messages;
+                    }
+                    updateState(response.data);
+                },
+                function () {
+                    $interval.cancel(updateSearchMessagesInterval);
                 }
-                if ($scope.searchFinished && !loggedSearchFinished) {
-                    $scope.messages.push("Finished searching. Preparing results...");
-                    loggedSearchFinished = true;
+            );
+        }, 100);
+    }
+
+    function closeSearchEvents() {
+        if (angular.isDefined(searchEvents)) {
+            searchEvents.close();
+            searchEvents = undefined;
+        }
+    }
+
+    if (window.EventSource) {
+        //The server pushes the search progress, polling is only used if that doesn't work
+        searchEvents = SearchService.getSearchEvents(searchRequestId);
+        _.each(["state", "message", "indexerSelection", "indexerFinished", "searchFinished"], function (eventName) {
+            searchEvents.addEventListener(eventName, function (event) {
+                var state = JSON.parse(event.data);
+                $scope.$applyAsync(function () {
+                    _.each(state.messages, function (message) {
+                        $scope.messages.push(message);
+                    });
+                    updateState(state);
+                });
+                if (state.searchFinished) {
+                    closeSearchEvents();
                 }
-            },
-            function () {
-                $interval.cancel(updateSearchMessagesInterval);
+            });
+        });
+        searchEvents.onerror = function () {
+            closeSearchEvents();
+            if (!loggedSearchFinished) {
+                pollSearchState();
             }
-        );
-    }, 100);
+        };
+    } else {
+        pollSearchState();
+    }
 
     $scope.cancelSearch = function () {
+        closeSearchEvents();
         if (angular.isDefined(updateSearchMessagesInterval)) {
             $interval.cancel(updateSearchMessagesInterval);
         }
@@ -8967,6 +9138,7 @@ function SearchUpdateModalInstanceCtrl($scope, $interval, SearchService, $uibMod
 
 
     $scope.$on('$destroy', function () {
+        closeSearchEvents();
         if (angular.isDefined(updateSearchMessagesInterval)) {
             $interval.cancel(updateSearchMessagesInterval);
         }
@@ -9981,11 +10153,11 @@ angular
 
 }]);
 
-FileDownloadService.$inject = ["$http", "growl"];angular
+FileDownloadService.$inject = ["$http", "growl", "$q"];angular
     .module('nzbhydraApp')
     .factory('FileDownloadService', FileDownloadService);
 
-function FileDownloadService($http, growl) {
+function FileDownloadService($http, growl, $q) {
 
     var service = {
         downloadFile: downloadFile
@@ -10008,8 +10180,10 @@ function FileDownloadService($http, growl) {
             document.body.appendChild(a);
             a.click();
             document.body.removeChild(a);
+            return response;
         }, function (data, status, headers, config) {
             growl.error(status);
+            return $q.reject(status);
         });
 
     }
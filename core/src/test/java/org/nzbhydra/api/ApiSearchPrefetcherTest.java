@@ -0,0 +1,212 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.nzbhydra.api;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.nzbhydra.config.BaseConfig;
+import org.nzbhydra.config.ConfigProvider;
+import org.nzbhydra.config.category.CategoriesConfig;
+import org.nzbhydra.mapping.newznab.ActionAttribute;
+import org.nzbhydra.mapping.newznab.NewznabParameters;
+import org.nzbhydra.searching.CategoryProvider;
+import org.nzbhydra.searching.IndexerForSearchSelector.IndexerForSearchSelection;
+import org.nzbhydra.searching.SearchResult;
+import org.nzbhydra.searching.Searcher;
+import org.nzbhydra.searching.db.SearchEntity;
+import org.nzbhydra.searching.db.SearchRepository;
+import org.nzbhydra.searching.dtoseventsenums.DownloadType;
+import org.nzbhydra.searching.dtoseventsenums.SearchType;
+import org.nzbhydra.searching.searchrequests.SearchRequest;
+import org.nzbhydra.searching.searchrequests.SearchRequest.SearchSource;
+import org.nzbhydra.searching.searchrequests.SearchRequestFactory;
+import org.nzbhydra.web.SessionStorage;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ApiSearchPrefetcherTest {
+
+    @Mock
+    private Searcher searcher;
+    @Mock
+    private SearchRepository searchRepository;
+    @Mock
+    private SearchRequestFactory searchRequestFactory;
+    @Mock
+    private CategoryProvider categoryProvider;
+    @Mock
+    private ConfigProvider configProvider;
+    @InjectMocks
+    private ApiSearchPrefetcher testee = new ApiSearchPrefetcher();
+
+    private BaseConfig baseConfig = new BaseConfig();
+    private Instant now = Instant.ofEpochSecond(1_000_000);
+    private List<SearchRequest> prefetchedSearchRequests = new ArrayList<>();
+    private List<String> prefetchUserAgents = new ArrayList<>();
+    private SearchResult searchResult = new SearchResult();
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        testee.clock = new Clock() {
+            @Override
+            public ZoneOffset getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return now;
+            }
+        };
+        baseConfig.getSearching().setPrefetchRecurringSearches(true);
+        baseConfig.getSearching().setTimeout(20);
+        when(configProvider.getBaseConfig()).thenReturn(baseConfig);
+        when(categoryProvider.fromSearchNewznabCategories(any(), any())).thenReturn(CategoriesConfig.allCategory);
+        when(searchRequestFactory.getSearchRequest(any(), any(), any(), anyLong(), any(), any())).thenAnswer(x -> new SearchRequest(SearchSource.API, SearchType.SEARCH, 0, 100));
+        searchResult.setPickingResult(new IndexerForSearchSelection());
+        when(searcher.search(any())).thenAnswer(x -> {
+            prefetchedSearchRequests.add(x.getArgument(0));
+            prefetchUserAgents.add(SessionStorage.userAgent.get());
+            return searchResult;
+        });
+        SessionStorage.userAgent.set("Sonarr");
+    }
+
+    @After
+    public void tearDown() {
+        SessionStorage.userAgent.remove();
+    }
+
+    @Test
+    public void shouldCalculateIntervalOfRegularPolls() {
+        assertThat(ApiSearchPrefetcher.calculateInterval(times(0, 15, 30))).isEmpty();
+        assertThat(ApiSearchPrefetcher.calculateInterval(times(0, 15, 30, 45))).contains(Duration.ofMinutes(15));
+        assertThat(ApiSearchPrefetcher.calculateInterval(times(0, 15, 31, 45, 60, 75, 82))).contains(Duration.ofMinutes(15));
+
+        assertThat(ApiSearchPrefetcher.calculateInterval(times(0, 15, 20, 45, 50))).isEmpty();
+        assertThat(ApiSearchPrefetcher.calculateInterval(Arrays.asList(now, now.plusSeconds(10), now.plusSeconds(20), now.plusSeconds(30)))).as("Too short interval").isEmpty();
+    }
+
+    @Test
+    public void shouldOnlyConsiderSearchesWithoutQueryAsPolls() {
+        assertThat(ApiSearchPrefetcher.isPoll(NewznabParameters.builder().t(ActionAttribute.TVSEARCH).cat(Arrays.asList(5030, 5040)).build())).isTrue();
+
+        assertThat(ApiSearchPrefetcher.isPoll(NewznabParameters.builder().t(ActionAttribute.SEARCH).q("query").build())).isFalse();
+        assertThat(ApiSearchPrefetcher.isPoll(NewznabParameters.builder().t(ActionAttribute.TVSEARCH).tvdbid("123").build())).isFalse();
+        assertThat(ApiSearchPrefetcher.isPoll(NewznabParameters.builder().t(ActionAttribute.SEARCH).offset(100).build())).isFalse();
+        assertThat(ApiSearchPrefetcher.isPoll(NewznabParameters.builder().t(ActionAttribute.SEARCH).maxage(10).build())).isFalse();
+    }
+
+    @Test
+    public void shouldPrefetchExpectedPollAndAnswerItFromMemory() {
+        when(searchRepository.findBySourceAndQueryIsNullAndTimeAfterOrderByTime(any(), any())).thenReturn(Arrays.asList(
+                searchEntity(60, "Sonarr"),
+                searchEntity(50, ApiSearchPrefetcher.PREFETCH_USER_AGENT),
+                searchEntity(45, "Sonarr"),
+                searchEntity(30, "Sonarr"),
+                searchEntity(15, "Sonarr"),
+                searchEntity(10, "Radarr")
+        ));
+        NewznabParameters params = NewznabParameters.builder().t(ActionAttribute.SEARCH).build();
+
+        assertThat(testee.getPrefetchedResult(params, searchRequest())).isEmpty();
+        testee.prefetch();
+        assertThat(prefetchedSearchRequests).as("Next poll is only expected in 15 minutes").isEmpty();
+
+        now = now.plus(Duration.ofMinutes(15)).minusSeconds(30);
+        testee.prefetch();
+        assertThat(prefetchedSearchRequests).hasSize(1);
+        assertThat(prefetchedSearchRequests.get(0).getInternalData().isPrefetch()).isTrue();
+        assertThat(prefetchedSearchRequests.get(0).getDownloadType()).isEqualTo(DownloadType.NZB);
+        assertThat(prefetchUserAgents).containsExactly(ApiSearchPrefetcher.PREFETCH_USER_AGENT);
+
+        //Only prefetched once per poll
+        testee.prefetch();
+        assertThat(prefetchedSearchRequests).hasSize(1);
+
+        now = now.plusSeconds(30);
+        //Prefetching is done in another thread in reality
+        SessionStorage.userAgent.set("Sonarr");
+        SearchRequest searchRequest = searchRequest();
+        Optional<SearchResult> prefetchedResult = testee.getPrefetchedResult(params, searchRequest);
+        assertThat(prefetchedResult).contains(searchResult);
+        verify(searcher).saveSearchEntity(searchRequest);
+
+        assertThat(testee.getPrefetchedResult(params, searchRequest())).as("Prefetched results are only used once").isEmpty();
+    }
+
+    @Test
+    public void shouldNotPrefetchWhenDisabled() {
+        baseConfig.getSearching().setPrefetchRecurringSearches(false);
+        NewznabParameters params = NewznabParameters.builder().t(ActionAttribute.SEARCH).build();
+
+        assertThat(testee.getPrefetchedResult(params, searchRequest())).isEmpty();
+        testee.prefetch();
+
+        verify(searchRepository, never()).findBySourceAndQueryIsNullAndTimeAfterOrderByTime(any(), any());
+    }
+
+    private SearchRequest searchRequest() {
+        SearchRequest searchRequest = new SearchRequest(SearchSource.API, SearchType.SEARCH, 0, 100);
+        searchRequest.setCategory(CategoriesConfig.allCategory);
+        searchRequest.setDownloadType(DownloadType.NZB);
+        return searchRequest;
+    }
+
+    private SearchEntity searchEntity(int minutesAgo, String userAgent) {
+        SearchEntity searchEntity = new SearchEntity();
+        searchEntity.setSource(SearchSource.API);
+        searchEntity.setSearchType(SearchType.SEARCH);
+        searchEntity.setCategoryName("All");
+        searchEntity.setTime(now.minus(Duration.ofMinutes(minutesAgo)));
+        searchEntity.setUserAgent(userAgent);
+        return searchEntity;
+    }
+
+    private List<Instant> times(int... minutes) {
+        List<Instant> times = new ArrayList<>();
+        for (int minute : minutes) {
+            times.add(now.plus(Duration.ofMinutes(minute)));
+        }
+        return times;
+    }
+
+}
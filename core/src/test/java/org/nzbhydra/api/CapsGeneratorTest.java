@@ -16,16 +16,25 @@
 
 package org.nzbhydra.api;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.nzbhydra.config.ConfigChangedEvent;
+import org.nzbhydra.config.ConfigCopier;
+import org.nzbhydra.mapping.newznab.OutputType;
+import org.nzbhydra.web.WebConfiguration;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.nzbhydra.config.BaseConfig;
 import org.nzbhydra.config.ConfigProvider;
 import org.nzbhydra.config.category.CategoriesConfig;
 import org.nzbhydra.config.category.Category;
 import org.nzbhydra.mapping.newznab.xml.caps.CapsXmlCategories;
+import org.nzbhydra.update.UpdateManager;
 
 import java.util.Arrays;
 
@@ -36,6 +45,8 @@ public class CapsGeneratorTest {
 
     @Mock
     private ConfigProvider configProviderMock;
+    @Mock
+    private UpdateManager updateManager;
 
     @InjectMocks
     private CapsGenerator testee = new CapsGenerator();
@@ -69,6 +80,35 @@ public class CapsGeneratorTest {
         when(configProviderMock.getBaseConfig()).thenReturn(baseConfig);
     }
 
+    @Test
+    public void shouldCacheRenderedCapsAndSupportEtag() throws Exception {
+        ReflectionTestUtils.setField(testee, "marshaller", new WebConfiguration().marshaller());
+        ReflectionTestUtils.setField(testee, "objectMapper", new ObjectMapper());
+
+        ResponseEntity<?> xmlCaps = testee.getCaps(OutputType.XML, null);
+        assertThat(xmlCaps.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(new String((byte[]) xmlCaps.getBody())).contains("<category id=\"2000\" name=\"Movies\">");
+        String etag = xmlCaps.getHeaders().getETag();
+        assertThat(etag).isNotNull();
+        assertThat(testee.getCaps(OutputType.XML, null).getBody()).isSameAs(xmlCaps.getBody());
+
+        ResponseEntity<?> notModified = testee.getCaps(OutputType.XML, etag);
+        assertThat(notModified.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(notModified.getBody()).isNull();
+
+        ResponseEntity<?> jsonCaps = testee.getCaps(OutputType.JSON, etag);
+        assertThat(jsonCaps.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(jsonCaps.getHeaders().getETag()).isNotEqualTo(etag);
+
+        BaseConfig oldConfig = ConfigCopier.copy(configProviderMock.getBaseConfig());
+        configProviderMock.getBaseConfig().getCategoriesConfig().getCategories().get(1).setName("Films");
+        testee.handleNewConfig(new ConfigChangedEvent(this, oldConfig, configProviderMock.getBaseConfig()));
+
+        ResponseEntity<?> changedXmlCaps = testee.getCaps(OutputType.XML, etag);
+        assertThat(changedXmlCaps.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(new String((byte[]) changedXmlCaps.getBody())).contains("<category id=\"2000\" name=\"Films\">");
+    }
+
     @Test
     public void shouldGenerateCategoriesFromConfig() throws Exception {
         CapsXmlCategories xmlCategories = testee.getCapsXmlCategories();
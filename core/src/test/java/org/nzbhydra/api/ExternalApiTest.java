@@ -1,5 +1,6 @@
 package org.nzbhydra.api;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InjectMocks;
@@ -26,13 +27,22 @@ import org.nzbhydra.searching.dtoseventsenums.SearchType;
 import org.nzbhydra.searching.searchrequests.SearchRequest;
 import org.nzbhydra.searching.searchrequests.SearchRequest.SearchSource;
 import org.nzbhydra.searching.searchrequests.SearchRequestFactory;
+import org.nzbhydra.web.NewznabResponseRenderer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.oxm.jaxb.Jaxb2Marshaller;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 
 import javax.xml.transform.stream.StreamResult;
 import java.time.Clock;
+import java.time.Instant;
 import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -71,11 +81,16 @@ public class ExternalApiTest {
     private NewznabJsonTransformer newznabJsonTransformerMock;
     @Mock
     private Jaxb2Marshaller jaxb2MarshallerMock;
+    @Mock
+    private ApiSearchPrefetcher apiSearchPrefetcher;
+    @Mock
+    private NewznabResponseRenderer newznabResponseRendererMock;
     IndexerConfig indexerConfig = new IndexerConfig();
+    private String searchResultContent = "results";
 
 
     @Before
-    public void setUp() {
+    public void setUp() throws Exception {
         MockitoAnnotations.initMocks(this);
         when(configProvider.getBaseConfig()).thenReturn(baseConfig);
         baseConfig.setMain(new MainConfig());
@@ -98,6 +113,13 @@ public class ExternalApiTest {
             }
         }).when(jaxb2MarshallerMock).marshal(any(), any());
         when(indexerMock.getConfig()).thenReturn(indexerConfig);
+        when(newznabXmlTransformerMock.getRssRoot(any(), any(), anyInt(), any())).thenReturn(new NewznabXmlRoot());
+        when(newznabResponseRendererMock.render(any())).thenAnswer(x -> ("<rss>" + searchResultContent + "</rss>").getBytes());
+    }
+
+    @After
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
     }
 
     @Test
@@ -108,10 +130,10 @@ public class ExternalApiTest {
         parameters.setT(ActionAttribute.SEARCH);
         parameters.setCachetime(5);
 
-        testee.api(parameters);
+        testee.handleApiRequest(parameters);
         verify(searcher).search(any());
 
-        testee.api(parameters);
+        testee.handleApiRequest(parameters);
         verify(searcher, times(1)).search(any());
     }
 
@@ -123,14 +145,14 @@ public class ExternalApiTest {
         parameters.setT(ActionAttribute.SEARCH);
         parameters.setCachetime(5);
 
-        testee.api(parameters);
+        testee.handleApiRequest(parameters);
         verify(searcher).search(any());
 
-        testee.api(parameters);
+        testee.handleApiRequest(parameters);
         verify(searcher, times(1)).search(any());
 
         testee.clock = Clock.fixed(testee.clock.instant().plus(6, ChronoUnit.MINUTES), ZoneId.of("UTC"));
-        testee.api(parameters);
+        testee.handleApiRequest(parameters);
         verify(searcher, times(2)).search(any());
     }
 
@@ -138,37 +160,77 @@ public class ExternalApiTest {
     public void shouldCacheRemoveEntriesWhenLimitReached() throws Exception {
         NewznabParameters parameters = getNewznabParameters("q1");
 
-        testee.api(parameters);
+        testee.handleApiRequest(parameters);
         verify(searcher).search(any());
 
-        testee.api(parameters);
+        testee.handleApiRequest(parameters);
         verify(searcher, times(1)).search(any());
 
         parameters.setQ("q2");
-        testee.api(getNewznabParameters("q2"));
+        testee.handleApiRequest(getNewznabParameters("q2"));
         verify(searcher, times(2)).search(any());
         parameters.setQ("q3");
-        testee.api(getNewznabParameters("q3"));
+        testee.handleApiRequest(getNewznabParameters("q3"));
         verify(searcher, times(3)).search(any());
         parameters.setQ("q4");
-        testee.api(getNewznabParameters("q4"));
+        testee.handleApiRequest(getNewznabParameters("q4"));
         verify(searcher, times(4)).search(any());
         parameters.setQ("q5");
-        testee.api(getNewznabParameters("q5"));
+        testee.handleApiRequest(getNewznabParameters("q5"));
         verify(searcher, times(5)).search(any());
 
         //q1 is still cached
-        testee.api(getNewznabParameters("q1"));
+        testee.handleApiRequest(getNewznabParameters("q1"));
         verify(searcher, times(5)).search(any());
 
         //now q1 is removed as oldest entry
-        testee.api(getNewznabParameters("q6"));
+        testee.handleApiRequest(getNewznabParameters("q6"));
         verify(searcher, times(6)).search(any());
         //Not cached anymore, will do another search
-        testee.api(getNewznabParameters("q1"));
+        testee.handleApiRequest(getNewznabParameters("q1"));
         verify(searcher, times(7)).search(any());
     }
 
+    @Test
+    public void shouldReturnNotModifiedForUnchangedCachedResults() throws Exception {
+        NewznabParameters parameters = getNewznabParameters("q");
+
+        ResponseEntity<?> responseEntity = testee.handleApiRequest(parameters);
+        assertThat(responseEntity.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(new String((byte[]) responseEntity.getBody())).isEqualTo("<rss>results</rss>");
+        String etag = responseEntity.getHeaders().getETag();
+        long lastModified = responseEntity.getHeaders().getLastModified();
+        assertThat(etag).isNotNull();
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, etag);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        responseEntity = testee.handleApiRequest(parameters);
+        assertThat(responseEntity.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(responseEntity.getBody()).isNull();
+        verify(newznabResponseRendererMock, times(1)).render(any());
+
+        //New search with the same results
+        testee.clock = Clock.fixed(testee.clock.instant().plus(6, ChronoUnit.MINUTES), ZoneId.of("UTC"));
+        request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(lastModified).atZone(ZoneOffset.UTC)));
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        responseEntity = testee.handleApiRequest(parameters);
+        verify(searcher, times(2)).search(any());
+        assertThat(responseEntity.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+
+        //New search with different results
+        testee.clock = Clock.fixed(testee.clock.instant().plus(6, ChronoUnit.MINUTES), ZoneId.of("UTC"));
+        searchResultContent = "other results";
+        request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, etag);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        responseEntity = testee.handleApiRequest(parameters);
+        assertThat(responseEntity.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(responseEntity.getHeaders().getETag()).isNotEqualTo(etag);
+        assertThat(responseEntity.getHeaders().getLastModified()).isGreaterThan(lastModified);
+    }
+
     @Test
     public void shouldUseCorrectHeaders() throws Exception {
         NewznabJsonRoot jsonRoot = new NewznabJsonRoot();
@@ -179,14 +241,14 @@ public class ExternalApiTest {
         parameters.setT(ActionAttribute.SEARCH);
         parameters.setO(OutputType.JSON);
 
-        ResponseEntity<?> responseEntity = testee.api(parameters);
+        ResponseEntity<?> responseEntity = testee.handleApiRequest(parameters);
         assertThat(responseEntity.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_JSON_UTF8);
 
         NewznabXmlRoot xmlRoot = new NewznabXmlRoot();
         when(newznabXmlTransformerMock.getRssRoot(any(), any(), anyInt(), any())).thenReturn(xmlRoot);
 
         parameters.setO(OutputType.XML);
-        responseEntity = testee.api(parameters);
+        responseEntity = testee.handleApiRequest(parameters);
         assertThat(responseEntity.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_XML);
     }
 
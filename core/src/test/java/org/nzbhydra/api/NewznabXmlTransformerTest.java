@@ -28,10 +28,12 @@ import org.nzbhydra.config.category.Category;
 import org.nzbhydra.config.indexer.IndexerConfig;
 import org.nzbhydra.downloading.FileHandler;
 import org.nzbhydra.indexers.Indexer;
+import org.nzbhydra.mapping.newznab.xml.NewznabAttribute;
 import org.nzbhydra.mapping.newznab.xml.NewznabXmlItem;
 import org.nzbhydra.searching.SearchResult;
 import org.nzbhydra.searching.dtoseventsenums.DownloadType;
 import org.nzbhydra.searching.dtoseventsenums.SearchResultItem;
+import org.nzbhydra.searching.dtoseventsenums.SearchResultItem.HasNfo;
 import org.nzbhydra.searching.dtoseventsenums.SearchType;
 import org.nzbhydra.searching.searchrequests.SearchRequest;
 import org.nzbhydra.searching.searchrequests.SearchRequest.SearchSource;
@@ -92,4 +94,25 @@ public class NewznabXmlTransformerTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    public void shouldOnlyUseReceivedAttributesWithHydraGuid() {
+        SearchRequest searchRequest = new SearchRequest(SearchSource.API, SearchType.SEARCH, 0, 100);
+        searchRequest.setDownloadType(DownloadType.NZB);
+        SearchResultItem searchResultItem = new SearchResultItem();
+        searchResultItem.setIndexer(indexerMock);
+        searchResultItem.setCategory(new Category());
+        searchResultItem.setSearchResultId(123L);
+        searchResultItem.setSize(456L);
+        searchResultItem.setHasNfo(HasNfo.YES);
+        searchResultItem.getAttributes().put("size", "455");
+        searchResultItem.getAttributes().put("category", "5000");
+        searchResultItem.getAttributes().put("guid", "indexerguid");
+
+        NewznabXmlItem item = testee.buildRssItem(searchResultItem, searchRequest);
+
+        assertThat(item.getNewznabAttributes()).extracting(NewznabAttribute::getName).startsWith("category", "guid", "size", "hydraIndexerScore");
+        assertThat(item.getNewznabAttributes()).contains(new NewznabAttribute("guid", "123"), new NewznabAttribute("size", "455"));
+        assertThat(searchResultItem.getAttributes()).containsEntry("guid", "indexerguid");
+    }
+
+}
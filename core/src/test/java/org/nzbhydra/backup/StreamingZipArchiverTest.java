@@ -0,0 +1,87 @@
+package org.nzbhydra.backup;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class StreamingZipArchiverTest {
+
+    @Test
+    public void shouldWriteAllEntriesInOnePassAndReportProgress() throws Exception {
+        File file = File.createTempFile("nzbhydra", ".log");
+        file.deleteOnExit();
+        Files.write(file.toPath(), "logcontent".getBytes(StandardCharsets.UTF_8));
+
+        File otherZip = File.createTempFile("nzbhydra", ".zip");
+        otherZip.deleteOnExit();
+        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(otherZip))) {
+            zos.putNextEntry(new ZipEntry("nzbhydra.mv.db"));
+            zos.write("database".getBytes(StandardCharsets.UTF_8));
+            zos.closeEntry();
+        }
+
+        List<ArchiveProgressEvent> events = new ArrayList<>();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (StreamingZipArchiver testee = new StreamingZipArchiver("test", bos, events::add)) {
+            testee.addEntriesOfZip(otherZip);
+            testee.addString("nzbhydra.yml", "config");
+            testee.addFile("nzbhydra.log", file);
+            testee.finish();
+        }
+
+        Map<String, String> entries = new HashMap<>();
+        try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(bos.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                entries.put(entry.getName(), new String(ByteStreams.toByteArray(zis), StandardCharsets.UTF_8));
+            }
+        }
+        assertThat(entries.size(), is(3));
+        assertThat(entries.get("nzbhydra.mv.db"), is("database"));
+        assertThat(entries.get("nzbhydra.yml"), is("config"));
+        assertThat(entries.get("nzbhydra.log"), is("logcontent"));
+
+        assertThat(events.size(), is(4));
+        assertThat(events.get(0).getEntryName(), is("nzbhydra.mv.db"));
+        assertThat(events.get(3).isFinished(), is(true));
+        assertThat(events.get(3).getEntriesWritten(), is(3));
+        assertThat(events.get(3).getBytesWritten(), is(24L));
+        assertThat(events.get(3).isFailed(), is(false));
+    }
+
+    @Test
+    public void shouldReportFailureIfNotFinished() throws Exception {
+        List<ArchiveProgressEvent> events = new ArrayList<>();
+        File missingFile = new File("doesNotExist.log");
+        try (StreamingZipArchiver testee = new StreamingZipArchiver("test", new ByteArrayOutputStream(), events::add)) {
+            testee.addString("nzbhydra.yml", "config");
+            testee.addFile("nzbhydra.log", missingFile);
+            testee.finish();
+        } catch (FileNotFoundException e) {
+            //Expected
+        }
+
+        assertThat(events.size(), is(2));
+        assertThat(events.get(1).isFinished(), is(false));
+        assertThat(events.get(1).isFailed(), is(true));
+        assertThat(events.get(1).getEntriesWritten(), is(1));
+    }
+
+}
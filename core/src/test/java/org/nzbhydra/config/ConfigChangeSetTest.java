@@ -0,0 +1,122 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.config;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.nzbhydra.config.category.Category;
+import org.nzbhydra.config.indexer.IndexerConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConfigChangeSetTest {
+
+    private BaseConfig oldConfig;
+
+    @Before
+    public void setUp() throws Exception {
+        oldConfig = new ConfigReaderWriter().originalConfig();
+        oldConfig.setIndexers(new ArrayList<>(Arrays.asList(indexerConfig("indexer1"), indexerConfig("indexer2"))));
+    }
+
+    @Test
+    public void shouldCopyConfig() {
+        BaseConfig copy = ConfigCopier.copy(oldConfig);
+
+        assertThat(copy).isNotSameAs(oldConfig);
+        assertThat(copy.getIndexers().get(0)).isNotSameAs(oldConfig.getIndexers().get(0));
+        assertThat(copy.getCategoriesConfig().getCategories()).isNotSameAs(oldConfig.getCategoriesConfig().getCategories());
+        assertThat(ConfigCopier.deepEquals(copy, oldConfig)).isTrue();
+        assertThat(new ConfigReaderWriter().getAsYamlString(copy)).isEqualTo(new ConfigReaderWriter().getAsYamlString(oldConfig));
+
+        copy.getIndexers().get(0).setHost("changed");
+        assertThat(oldConfig.getIndexers().get(0).getHost()).isEqualTo("http://indexer1.com");
+        assertThat(ConfigCopier.deepEquals(copy, oldConfig)).isFalse();
+    }
+
+    @Test
+    public void shouldFindNoChangesForCopy() {
+        ConfigChangeSet changeSet = ConfigChangeSet.between(oldConfig, ConfigCopier.copy(oldConfig));
+
+        assertThat(changeSet.isAnythingChanged()).isFalse();
+        assertThat(changeSet.isChanged("main")).isFalse();
+        assertThat(changeSet.isIndexerChanged("indexer1")).isFalse();
+    }
+
+    @Test
+    public void shouldFindChangedSettings() {
+        BaseConfig newConfig = ConfigCopier.copy(oldConfig);
+        newConfig.getMain().setProxyHost("proxy");
+
+        ConfigChangeSet changeSet = ConfigChangeSet.between(oldConfig, newConfig);
+
+        assertThat(changeSet.getChangedSettings()).containsExactly("main.proxyHost");
+        assertThat(changeSet.isChanged("main")).isTrue();
+        assertThat(changeSet.isChanged("main.proxyHost")).isTrue();
+        assertThat(changeSet.isChanged("main.proxyPort")).isFalse();
+        assertThat(changeSet.isChanged("indexers")).isFalse();
+        assertThat(changeSet.isChanged("categoriesConfig")).isFalse();
+    }
+
+    @Test
+    public void shouldFindChangedIndexers() {
+        BaseConfig newConfig = ConfigCopier.copy(oldConfig);
+        newConfig.getIndexers().get(0).setTimeout(10);
+        newConfig.getIndexers().remove(1);
+        newConfig.getIndexers().add(indexerConfig("indexer3"));
+
+        ConfigChangeSet changeSet = ConfigChangeSet.between(oldConfig, newConfig);
+
+        assertThat(changeSet.isChanged("indexers")).isTrue();
+        assertThat(changeSet.getChangedIndexers()).containsExactly("indexer1");
+        assertThat(changeSet.getRemovedIndexers()).containsExactly("indexer2");
+        assertThat(changeSet.getAddedIndexers()).containsExactly("indexer3");
+        assertThat(changeSet.isChanged("categoriesConfig")).isFalse();
+    }
+
+    @Test
+    public void shouldFindChangedCategories() {
+        BaseConfig newConfig = ConfigCopier.copy(oldConfig);
+        Category category = newConfig.getCategoriesConfig().getCategories().get(1);
+        String oldName = category.getName();
+        category.setName("Films");
+
+        ConfigChangeSet changeSet = ConfigChangeSet.between(oldConfig, newConfig);
+
+        assertThat(changeSet.isChanged("categoriesConfig")).isTrue();
+        assertThat(changeSet.getChangedCategories()).containsExactlyInAnyOrder(oldName, "Films");
+        assertThat(changeSet.isChanged("indexers")).isFalse();
+    }
+
+    @Test
+    public void shouldTreatUnknownChangesAsChanged() {
+        assertThat(ConfigChangeSet.unknown().isChanged("main.proxyHost")).isTrue();
+        assertThat(ConfigChangeSet.unknown().isIndexerChanged("indexer1")).isTrue();
+        assertThat(ConfigChangeSet.between(null, oldConfig).isUnknown()).isTrue();
+    }
+
+    private IndexerConfig indexerConfig(String name) {
+        IndexerConfig indexerConfig = new IndexerConfig();
+        indexerConfig.setName(name);
+        indexerConfig.setHost("http://" + name + ".com");
+        return indexerConfig;
+    }
+
+}
@@ -0,0 +1,120 @@
+package org.nzbhydra.downloading;
+
+import com.google.common.io.ByteStreams;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CompletionTrackingInputStreamTest {
+
+    private final List<String> callbacks = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    public void shouldCallSuccessCallbackOnceWhenReadCompletely() throws Exception {
+        CompletionTrackingInputStream testee = new CompletionTrackingInputStream(new ByteArrayInputStream("content".getBytes()), () -> callbacks.add("success"), callbacks::add);
+
+        assertThat(ByteStreams.toByteArray(testee)).isEqualTo("content".getBytes());
+        testee.close();
+        testee.close();
+
+        assertThat(callbacks).containsExactly("success");
+    }
+
+    @Test
+    public void shouldCallFailureCallbackWhenClosedBeforeEnd() throws Exception {
+        CompletionTrackingInputStream testee = new CompletionTrackingInputStream(new ByteArrayInputStream("content".getBytes()), () -> callbacks.add("success"), callbacks::add);
+
+        testee.read(new byte[3]);
+        testee.close();
+
+        assertThat(callbacks).containsExactly("Transfer was aborted before it was completed");
+    }
+
+    @Test
+    public void shouldCallFailureCallbackWithReadError() throws Exception {
+        InputStream failingStream = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Connection reset");
+            }
+        };
+        CompletionTrackingInputStream testee = new CompletionTrackingInputStream(failingStream, () -> callbacks.add("success"), callbacks::add);
+
+        try {
+            testee.read();
+        } catch (IOException ignored) {
+        }
+        testee.close();
+
+        assertThat(callbacks).containsExactly("Connection reset");
+    }
+
+    @Test
+    public void shouldBeClosedWhenRequestIsCompletedWithoutWritingIt() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        CompletionTrackingInputStream testee = new CompletionTrackingInputStream(new ByteArrayInputStream("content".getBytes()), () -> callbacks.add("success"), callbacks::add).closeWhenRequestCompleted();
+
+        CompletionTrackingInputStream.closeRegisteredStream(request);
+        CompletionTrackingInputStream.closeRegisteredStream(request);
+
+        assertThat(callbacks).containsExactly("Transfer was aborted before it was completed");
+        assertThat(request.getAttribute(CompletionTrackingInputStream.REQUEST_ATTRIBUTE)).isNull();
+        testee.close();
+        assertThat(callbacks).hasSize(1);
+    }
+
+    @Test
+    public void shouldNotRecordDownloadTwiceWhenClosedAfterBeingWritten() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        CompletionTrackingInputStream testee = new CompletionTrackingInputStream(new ByteArrayInputStream("content".getBytes()), () -> callbacks.add("success"), callbacks::add).closeWhenRequestCompleted();
+
+        ByteStreams.toByteArray(testee);
+        testee.close();
+        CompletionTrackingInputStream.closeRegisteredStream(request);
+
+        assertThat(callbacks).containsExactly("success");
+    }
+
+    @Test
+    public void shouldCallCallbackOnceWhenClosedByTwoThreads() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            AtomicInteger calls = new AtomicInteger();
+            CompletionTrackingInputStream testee = new CompletionTrackingInputStream(new ByteArrayInputStream("content".getBytes()), calls::incrementAndGet, x -> calls.incrementAndGet());
+            ByteStreams.toByteArray(testee);
+            CountDownLatch start = new CountDownLatch(1);
+            Thread other = new Thread(() -> {
+                try {
+                    start.await();
+                    testee.close();
+                } catch (Exception ignored) {
+                }
+            });
+            other.start();
+            start.countDown();
+            testee.close();
+            other.join();
+
+            assertThat(calls.get()).isEqualTo(1);
+        }
+    }
+
+}
@@ -19,7 +19,11 @@ package org.nzbhydra.downloading;
 import org.junit.Test;
 import org.nzbhydra.searching.db.SearchResultEntity;
 import org.nzbhydra.searching.dtoseventsenums.SearchResultItem;
+import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+
+import java.io.ByteArrayInputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -40,6 +44,21 @@ public class DownloadResultTest {
         assertThat(testee.getAsResponseEntity().getHeaders().get(HttpHeaders.CONTENT_DISPOSITION)).containsExactly("attachment; filename=\"title.torrent\"");
     }
 
+    @Test
+    public void shouldStreamContentWithLength() {
+        SearchResultEntity searchResultEntity = new SearchResultEntity();
+        searchResultEntity.setDownloadType(SearchResultItem.DownloadType.NZB);
+        FileDownloadEntity nzbDownloadEntity = new FileDownloadEntity();
+        nzbDownloadEntity.setSearchResult(searchResultEntity);
+
+        DownloadResult testee = DownloadResult.createSuccessfulStreamingResult("title", new ByteArrayInputStream("content".getBytes()), 7, nzbDownloadEntity);
+        ResponseEntity<Object> responseEntity = testee.getAsResponseEntity();
+
+        assertThat(responseEntity.getBody()).isInstanceOf(InputStreamResource.class);
+        assertThat(responseEntity.getHeaders().getContentLength()).isEqualTo(7);
+        assertThat(responseEntity.getHeaders().get(HttpHeaders.CONTENT_DISPOSITION)).containsExactly("attachment; filename=\"title.nzb\"");
+    }
+
     @Test
     public void shouldCleanMagnetLink() {
         FileDownloadEntity nzbDownloadEntity = new FileDownloadEntity();
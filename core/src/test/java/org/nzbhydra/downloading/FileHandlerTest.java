@@ -0,0 +1,109 @@
+package org.nzbhydra.downloading;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nzbhydra.searching.db.SearchResultEntity;
+import org.nzbhydra.searching.dtoseventsenums.SearchResultItem.DownloadType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.spy;
+
+public class FileHandlerTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private FileHandler testee = spy(new FileHandler());
+
+    @Test
+    public void shouldWriteZipWithUniqueEntriesAndListOfFailures() throws Exception {
+        doReturn(successfulResult("title", "content1")).when(testee).getFileByGuid(eq(1L), any(), any());
+        doReturn(successfulResult("title", "content2")).when(testee).getFileByGuid(eq(2L), any(), any());
+        doReturn(DownloadResult.createErrorResult("Download failed")).when(testee).getFileByGuid(eq(3L), any(), any());
+        doThrow(new InvalidSearchResultIdException(4L, true)).when(testee).getFileByGuid(eq(4L), any(), any());
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        testee.writeFilesAsZip(Arrays.asList(1L, 2L, 3L, 4L), outputStream);
+
+        Map<String, String> entries = new HashMap<>();
+        try (ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(outputStream.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zipInputStream.getNextEntry()) != null) {
+                entries.put(entry.getName(), new String(ByteStreams.toByteArray(zipInputStream)));
+            }
+        }
+        assertThat(entries).containsKeys("title.nzb", "title (2).nzb", FileHandler.ZIP_FAILURES_ENTRY);
+        assertThat(Arrays.asList(entries.get("title.nzb"), entries.get("title (2).nzb"))).containsExactlyInAnyOrder("content1", "content2");
+        assertThat(entries.get(FileHandler.ZIP_FAILURES_ENTRY)).contains("Download failed", "Unable to find search result with ID 4");
+    }
+
+    @Test
+    public void shouldReturnAddedSearchResultIds() throws Exception {
+        doReturn(successfulResult("title1", "content1")).when(testee).getFileByGuid(eq(-1L), any(), any());
+        doReturn(DownloadResult.createErrorResult("Download failed")).when(testee).getFileByGuid(eq(2L), any(), any());
+        doReturn(successfulResult("title3", "content3")).when(testee).getFileByGuid(eq(3L), any(), any());
+
+        File zipFile = tempFolder.newFile("nzbs.zip");
+        List<Long> addedGuids;
+        try (FileOutputStream outputStream = new FileOutputStream(zipFile)) {
+            addedGuids = testee.writeFilesAsZip(Arrays.asList(-1L, 2L, 3L), outputStream);
+        }
+
+        assertThat(addedGuids).containsExactlyInAnyOrder(-1L, 3L);
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            assertThat(zip.size()).isEqualTo(3);
+            assertThat(zip.getEntry(FileHandler.ZIP_FAILURES_ENTRY)).isNotNull();
+        }
+    }
+
+    @Test
+    public void shouldCopyStreamedFilesToZip() throws Exception {
+        DownloadResult streamedResult = successfulResult("cached", "");
+        AtomicBoolean closed = new AtomicBoolean();
+        streamedResult.setContent(null);
+        streamedResult.setContentStream(new ByteArrayInputStream("cachedContent".getBytes()) {
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        });
+        doReturn(streamedResult).when(testee).getFileByGuid(eq(1L), any(), any());
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        testee.writeFilesAsZip(Arrays.asList(1L), outputStream);
+
+        try (ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(outputStream.toByteArray()))) {
+            assertThat(zipInputStream.getNextEntry().getName()).isEqualTo("cached.nzb");
+            assertThat(new String(ByteStreams.toByteArray(zipInputStream))).isEqualTo("cachedContent");
+        }
+        assertThat(closed).isTrue();
+    }
+
+    private DownloadResult successfulResult(String title, String content) {
+        SearchResultEntity searchResultEntity = new SearchResultEntity();
+        searchResultEntity.setDownloadType(DownloadType.NZB);
+        FileDownloadEntity downloadEntity = new FileDownloadEntity();
+        downloadEntity.setSearchResult(searchResultEntity);
+        return DownloadResult.createSuccessfulDownloadResult(title, content.getBytes(), downloadEntity);
+    }
+
+}
@@ -0,0 +1,157 @@
+package org.nzbhydra.downloading;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.nzbhydra.config.BaseConfig;
+import org.nzbhydra.config.ConfigChangedEvent;
+import org.nzbhydra.config.ConfigProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+public class NzbCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private ConfigProvider configProvider;
+    private BaseConfig baseConfig = new BaseConfig();
+
+    @InjectMocks
+    private NzbCache testee = new NzbCache();
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(configProvider.getBaseConfig()).thenReturn(baseConfig);
+        baseConfig.getDownloading().setNzbCacheSizeMb(1);
+        baseConfig.getDownloading().setNzbCacheMaxAgeHours(24);
+        testee.cacheFolder = temporaryFolder.newFolder("nzbcache");
+        testee.clock = Clock.fixed(Instant.now(), ZoneId.of("UTC"));
+    }
+
+    @Test
+    public void shouldCacheContent() throws Exception {
+        assertThat(testee.get(1L)).isEmpty();
+
+        testee.put(1L, "content".getBytes());
+
+        assertThat(testee.get(1L)).isPresent();
+        assertThat(testee.get(1L).get().readContent()).isEqualTo("content".getBytes());
+        assertThat(testee.get(1L).get().getSize()).isEqualTo(7);
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedWhenFull() throws Exception {
+        testee.put(1L, new byte[400_000]);
+        testee.put(2L, new byte[400_000]);
+        testee.get(1L);
+
+        testee.put(3L, new byte[400_000]);
+
+        assertThat(testee.get(1L)).isPresent();
+        assertThat(testee.get(2L)).isEmpty();
+        assertThat(testee.get(3L)).isPresent();
+        assertThat(testee.cacheFolder.listFiles()).hasSize(2);
+    }
+
+    @Test
+    public void shouldNotReturnExpiredContent() throws Exception {
+        testee.put(1L, "content".getBytes());
+
+        testee.clock = Clock.fixed(Instant.now().plus(25, ChronoUnit.HOURS), ZoneId.of("UTC"));
+
+        assertThat(testee.get(1L)).isEmpty();
+        assertThat(testee.cacheFolder.listFiles()).isEmpty();
+    }
+
+    @Test
+    public void shouldOnlyCacheCompletelyReadStreams() throws Exception {
+        try (InputStream inputStream = testee.caching(1L, new ByteArrayInputStream("content".getBytes()))) {
+            assertThat(ByteStreams.toByteArray(inputStream)).isEqualTo("content".getBytes());
+        }
+        try (InputStream inputStream = testee.caching(2L, new ByteArrayInputStream("content".getBytes()))) {
+            inputStream.read(new byte[3]);
+        }
+
+        assertThat(testee.get(1L).get().readContent()).isEqualTo("content".getBytes());
+        assertThat(testee.get(2L)).isEmpty();
+        assertThat(testee.cacheFolder.listFiles()).hasSize(1);
+    }
+
+    @Test
+    public void shouldLoadCachedFilesOfNegativeSearchResultIdsAfterRestart() throws Exception {
+        testee.put(-1L, new byte[400_000]);
+        testee.put(2L, new byte[400_000]);
+
+        NzbCache restarted = new NzbCache();
+        ReflectionTestUtils.setField(restarted, "configProvider", configProvider);
+        restarted.cacheFolder = testee.cacheFolder;
+        restarted.clock = testee.clock;
+
+        assertThat(restarted.get(-1L)).isPresent();
+        assertThat(restarted.get(-1L).get().getSize()).isEqualTo(400_000);
+
+        restarted.put(-3L, new byte[400_000]);
+        assertThat(restarted.get(2L)).as("Size of files with negative IDs must be counted").isEmpty();
+        assertThat(restarted.cacheFolder.listFiles()).hasSize(2);
+
+        BaseConfig oldConfig = new BaseConfig();
+        oldConfig.getDownloading().setNzbCacheSizeMb(1);
+        baseConfig.getDownloading().setNzbCacheSizeMb(0);
+        restarted.handleNewConfig(new ConfigChangedEvent(this, oldConfig, baseConfig));
+        assertThat(restarted.cacheFolder).doesNotExist();
+    }
+
+    @Test
+    public void shouldWriteSkippedBytesToCache() throws Exception {
+        try (InputStream inputStream = testee.caching(1L, new ByteArrayInputStream("content".getBytes()))) {
+            assertThat(inputStream.skip(3)).isEqualTo(3);
+            assertThat(inputStream.markSupported()).isFalse();
+            assertThat(ByteStreams.toByteArray(inputStream)).isEqualTo("tent".getBytes());
+        }
+
+        assertThat(testee.get(1L).get().readContent()).isEqualTo("content".getBytes());
+    }
+
+    @Test
+    public void shouldDeleteCacheFolderWhenDisabledBeforeItWasUsed() throws Exception {
+        testee.put(1L, "content".getBytes());
+        NzbCache restarted = new NzbCache();
+        ReflectionTestUtils.setField(restarted, "configProvider", configProvider);
+        restarted.cacheFolder = testee.cacheFolder;
+
+        BaseConfig oldConfig = new BaseConfig();
+        oldConfig.getDownloading().setNzbCacheSizeMb(1);
+        baseConfig.getDownloading().setNzbCacheSizeMb(0);
+        restarted.handleNewConfig(new ConfigChangedEvent(this, oldConfig, baseConfig));
+
+        assertThat(restarted.cacheFolder).doesNotExist();
+    }
+
+    @Test
+    public void shouldNotCacheWhenDisabled() throws Exception {
+        baseConfig.getDownloading().setNzbCacheSizeMb(0);
+
+        testee.put(1L, "content".getBytes());
+
+        assertThat(testee.get(1L)).isEmpty();
+        assertThat(testee.cacheFolder.listFiles()).isEmpty();
+    }
+
+}
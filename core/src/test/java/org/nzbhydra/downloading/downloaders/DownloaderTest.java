@@ -18,23 +18,33 @@ package org.nzbhydra.downloading.downloaders;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.nzbhydra.config.downloading.DownloaderConfig;
+import org.nzbhydra.config.downloading.NzbAddingType;
+import org.nzbhydra.downloading.AddFilesRequest;
+import org.nzbhydra.downloading.DownloadResult;
 import org.nzbhydra.downloading.FileDownloadEntity;
 import org.nzbhydra.downloading.FileDownloadStatus;
 import org.nzbhydra.downloading.FileHandler;
+import org.nzbhydra.downloading.downloaders.Downloader.AddNzbsResponse;
 import org.nzbhydra.downloading.downloaders.Downloader.DownloaderEntry;
 import org.nzbhydra.downloading.downloaders.Downloader.StatusCheckType;
+import org.nzbhydra.downloading.exceptions.DownloaderException;
+import org.nzbhydra.indexers.IndexerEntity;
 import org.nzbhydra.searching.db.SearchResultEntity;
 import org.nzbhydra.searching.db.SearchResultRepository;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -58,7 +68,7 @@ public class DownloaderTest {
         MockitoAnnotations.initMocks(this);
         testee.nzbHandler = nzbHandler;
         testee.searchResultRepository = searchResultRepository;
-        testee.downloaderConfig = new DownloaderConfig();
+        testee.intialize(new DownloaderConfig());
 
         when(downloadEntityMock.getSearchResult()).thenReturn(searchResultEntityMock);
         when(downloadEntityMock.getStatus()).thenReturn(FileDownloadStatus.REQUESTED);
@@ -126,5 +136,66 @@ public class DownloaderTest {
         assertThat(updatedEntites.size()).isEqualTo(1);
     }
 
+    @Test
+    public void shouldAddEachNzbOfBatchIndependently() throws Exception {
+        testee.downloaderConfig.setNzbAddingType(NzbAddingType.UPLOAD);
+        IndexerEntity indexerEntity = new IndexerEntity();
+        indexerEntity.setName("indexer");
+        List<SearchResultEntity> searchResultEntities = Arrays.asList(searchResultEntity(1L, "failedDownload", indexerEntity), searchResultEntity(2L, "failedAdd", indexerEntity), searchResultEntity(3L, "added", indexerEntity));
+        when(searchResultRepository.findAllById(any())).thenReturn(searchResultEntities);
+        FileDownloadEntity addedDownloadEntity = new FileDownloadEntity();
+        when(nzbHandler.getFileByGuid(eq(1L), any(), any())).thenReturn(DownloadResult.createErrorResult("error", new FileDownloadEntity()));
+        when(nzbHandler.getFileByGuid(eq(2L), any(), any())).thenReturn(DownloadResult.createSuccessfulDownloadResult("failedAdd", new byte[0], new FileDownloadEntity()));
+        when(nzbHandler.getFileByGuid(eq(3L), any(), any())).thenReturn(DownloadResult.createSuccessfulDownloadResult("added", new byte[0], addedDownloadEntity));
+        doThrow(new DownloaderException("Downloader error")).when(testee).addNzb(any(), eq("failedAdd"), any());
+        doReturn("externalId").when(testee).addNzb(any(), eq("added"), any());
+
+        AddNzbsResponse response = testee.addBySearchResultIds(Arrays.asList(
+                new AddFilesRequest.SearchResult("1", "N/A"),
+                new AddFilesRequest.SearchResult("2", "N/A"),
+                new AddFilesRequest.SearchResult("4", "N/A"),
+                new AddFilesRequest.SearchResult("3", "N/A")
+        ), "category");
+
+        assertThat(response.isSuccessful()).isFalse();
+        assertThat(response.getAddedIds()).containsExactly(3L);
+        assertThat(response.getMissedIds()).containsExactly(1L, 2L, 4L);
+        assertThat(response.getMessage()).contains("Downloader error");
+        verify(nzbHandler, times(3)).getFileByGuid(anyLong(), any(), any());
+
+        ArgumentCaptor<Collection<FileDownloadEntity>> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(nzbHandler).updateStatusByEntities(captor.capture(), eq(FileDownloadStatus.NZB_ADDED));
+        assertThat(captor.getValue()).containsExactly(addedDownloadEntity);
+        assertThat(addedDownloadEntity.getExternalId()).isEqualTo("externalId");
+    }
+
+    @Test
+    public void shouldRecordUnexpectedErrorOfSingleNzb() throws Exception {
+        testee.downloaderConfig.setNzbAddingType(NzbAddingType.SEND_LINK);
+        IndexerEntity indexerEntity = new IndexerEntity();
+        indexerEntity.setName("indexer");
+        List<SearchResultEntity> searchResultEntities = Arrays.asList(searchResultEntity(1L, "failing", indexerEntity), searchResultEntity(2L, "added", indexerEntity));
+        when(searchResultRepository.findAllById(any())).thenReturn(searchResultEntities);
+        doThrow(new IllegalStateException("Something went wrong")).when(testee).addLink(any(), eq("failing"), any());
+        doReturn("externalId").when(testee).addLink(any(), eq("added"), any());
+
+        AddNzbsResponse response = testee.addBySearchResultIds(Arrays.asList(
+                new AddFilesRequest.SearchResult("1", "N/A"),
+                new AddFilesRequest.SearchResult("2", "N/A")
+        ), "category");
+
+        assertThat(response.isSuccessful()).isFalse();
+        assertThat(response.getAddedIds()).containsExactly(2L);
+        assertThat(response.getMissedIds()).containsExactly(1L);
+        assertThat(response.getMessage()).contains("Something went wrong");
+    }
+
+    private SearchResultEntity searchResultEntity(long id, String title, IndexerEntity indexerEntity) {
+        SearchResultEntity searchResultEntity = mock(SearchResultEntity.class);
+        when(searchResultEntity.getId()).thenReturn(id);
+        when(searchResultEntity.getTitle()).thenReturn(title);
+        when(searchResultEntity.getIndexer()).thenReturn(indexerEntity);
+        return searchResultEntity;
+    }
 
-}
\ No newline at end of file
+}
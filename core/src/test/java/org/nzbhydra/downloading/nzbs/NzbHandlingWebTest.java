@@ -0,0 +1,59 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.downloading.nzbs;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.nzbhydra.downloading.FileHandler;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+public class NzbHandlingWebTest {
+
+    @InjectMocks
+    private NzbHandlingWeb testee = new NzbHandlingWeb();
+    @Mock
+    private FileHandler fileHandlerMock;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @Test
+    public void shouldProvideGuidsAddedToZip() throws Exception {
+        when(fileHandlerMock.writeFilesAsZip(eq(Arrays.asList(1L, 2L, 3L)), any())).thenReturn(Arrays.asList(1L, 3L));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        testee.downloadNzbZip(Arrays.asList(1L, 2L, 3L), response);
+
+        String zipId = response.getHeader(NzbHandlingWeb.ZIP_ID_HEADER);
+        assertThat(zipId).isNotEmpty();
+        assertThat(testee.getGuidsAddedToZip(zipId)).containsExactly(1L, 3L);
+        assertThat(testee.getGuidsAddedToZip("unknown")).isEmpty();
+    }
+
+}
@@ -0,0 +1,88 @@
+package org.nzbhydra.indexers;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+public class IndexerApiAccessWriterTest {
+
+    @Mock
+    private IndexerApiAccessRepository apiAccessRepository;
+    @Mock
+    private IndexerApiAccessEntityShortRepository shortRepository;
+    @Captor
+    private ArgumentCaptor<List<IndexerApiAccessEntity>> apiAccessCaptor;
+    @Captor
+    private ArgumentCaptor<List<IndexerApiAccessEntityShort>> shortApiAccessCaptor;
+
+    @InjectMocks
+    private IndexerApiAccessWriter testee = new IndexerApiAccessWriter();
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @Test
+    public void shouldWriteQueuedAccessesInOneBatch() {
+        IndexerEntity indexerEntity = new IndexerEntity();
+        testee.save(new IndexerApiAccessEntity(indexerEntity), new IndexerApiAccessEntityShort(indexerEntity, true, IndexerApiAccessType.SEARCH));
+        testee.save(new IndexerApiAccessEntity(indexerEntity), new IndexerApiAccessEntityShort(indexerEntity, false, IndexerApiAccessType.SEARCH));
+        testee.saveShort(new IndexerApiAccessEntityShort(indexerEntity, true, IndexerApiAccessType.NZB));
+        verify(apiAccessRepository, never()).saveAll(any());
+
+        testee.flush();
+
+        verify(apiAccessRepository).saveAll(apiAccessCaptor.capture());
+        assertThat(apiAccessCaptor.getValue().size(), is(2));
+        verify(shortRepository).saveAll(shortApiAccessCaptor.capture());
+        assertThat(shortApiAccessCaptor.getValue().size(), is(3));
+
+        testee.flush();
+        verifyNoMoreInteractions(apiAccessRepository, shortRepository);
+    }
+
+    @Test
+    public void shouldKeepQueuedAccessesIfWritingFails() {
+        IndexerEntity indexerEntity = new IndexerEntity();
+        indexerEntity.setId(1);
+        testee.save(new IndexerApiAccessEntity(indexerEntity), new IndexerApiAccessEntityShort(indexerEntity, true, IndexerApiAccessType.SEARCH));
+        when(shortRepository.saveAll(any())).thenThrow(new RuntimeException("Database locked"));
+
+        try {
+            testee.flush();
+            fail("Expected exception");
+        } catch (RuntimeException e) {
+            //Expected
+        }
+        assertThat(testee.getQueuedAccessTimes(1, IndexerApiAccessType.SEARCH).size(), is(1));
+        assertThat(testee.getQueuedAccessTimes(1, IndexerApiAccessType.NZB).size(), is(0));
+        assertThat(testee.getQueuedAccessTimes(2, IndexerApiAccessType.SEARCH).size(), is(0));
+
+        reset(shortRepository);
+        testee.flush();
+
+        verify(apiAccessRepository).saveAll(apiAccessCaptor.capture());
+        assertThat("Already written accesses are not written again", apiAccessCaptor.getValue().size(), is(1));
+        verify(shortRepository).saveAll(shortApiAccessCaptor.capture());
+        assertThat(shortApiAccessCaptor.getValue().size(), is(1));
+        assertThat(testee.getQueuedAccessTimes(1, IndexerApiAccessType.SEARCH).size(), is(0));
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.nzbhydra.indexers;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.nzbhydra.indexers.IndexerCircuitBreaker.State;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IndexerCircuitBreakerTest {
+
+    private Instant now = Instant.ofEpochSecond(1_000_000);
+    private List<State> transitions = new ArrayList<>();
+    private IndexerCircuitBreaker testee;
+
+    @Before
+    public void setUp() {
+        Clock clock = new Clock() {
+            @Override
+            public ZoneOffset getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(java.time.ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return now;
+            }
+        };
+        testee = new IndexerCircuitBreaker("indexer", clock, (circuitBreaker, from, to, reason) -> transitions.add(to));
+    }
+
+    @Test
+    public void shouldOpenWhenFailureRateIsReached() {
+        testee.recordSuccess();
+        testee.recordFailure("error");
+        testee.recordSuccess();
+        assertThat(testee.getState()).isEqualTo(State.CLOSED);
+
+        testee.recordFailure("error");
+
+        assertThat(testee.getState()).isEqualTo(State.OPEN);
+        assertThat(testee.isCallPermitted()).isFalse();
+        assertThat(testee.getOpenUntil()).isEqualTo(now.plus(IndexerCircuitBreaker.INITIAL_OPEN_DURATION));
+        assertThat(transitions).containsExactly(State.OPEN);
+    }
+
+    @Test
+    public void shouldOnlyCountLastCalls() {
+        for (int i = 0; i < IndexerCircuitBreaker.WINDOW_SIZE; i++) {
+            testee.recordFailure("error");
+            testee.recordSuccess();
+            testee.recordSuccess();
+            testee.recordSuccess();
+        }
+        //Failures from before the window don't count
+        for (int i = 0; i < IndexerCircuitBreaker.WINDOW_SIZE; i++) {
+            testee.recordSuccess();
+        }
+        for (int i = 0; i < IndexerCircuitBreaker.WINDOW_SIZE / 2 - 1; i++) {
+            testee.recordFailure("error");
+        }
+        assertThat(testee.getState()).isEqualTo(State.CLOSED);
+
+        testee.recordFailure("error");
+        assertThat(testee.getState()).isEqualTo(State.OPEN);
+    }
+
+    @Test
+    public void shouldPermitSingleTrialAndDoubleOpenPeriod() {
+        openCircuit();
+        now = now.plus(IndexerCircuitBreaker.INITIAL_OPEN_DURATION);
+
+        assertThat(testee.isCallPermitted()).isTrue();
+        assertThat(testee.getState()).isEqualTo(State.HALF_OPEN);
+        assertThat(testee.isCallPermitted()).as("Other callers must skip the indexer while the trial is running").isFalse();
+
+        testee.recordFailure("error");
+        assertThat(testee.getState()).isEqualTo(State.OPEN);
+        assertThat(testee.getOpenUntil()).isEqualTo(now.plus(IndexerCircuitBreaker.INITIAL_OPEN_DURATION.multipliedBy(2)));
+        assertThat(testee.getOpenedInARow()).isEqualTo(2);
+
+        now = now.plus(IndexerCircuitBreaker.INITIAL_OPEN_DURATION.multipliedBy(2));
+        assertThat(testee.isCallPermitted()).isTrue();
+        testee.recordSuccess();
+
+        assertThat(testee.getState()).isEqualTo(State.CLOSED);
+        assertThat(testee.getOpenedInARow()).isEqualTo(0);
+        assertThat(transitions).containsExactly(State.OPEN, State.HALF_OPEN, State.OPEN, State.HALF_OPEN, State.CLOSED);
+    }
+
+    @Test
+    public void shouldPermitAnotherTrialWhenResultIsNotReported() {
+        openCircuit();
+        now = now.plus(IndexerCircuitBreaker.INITIAL_OPEN_DURATION);
+        assertThat(testee.isCallPermitted()).isTrue();
+
+        now = now.plus(IndexerCircuitBreaker.TRIAL_TIMEOUT);
+
+        assertThat(testee.isCallPermitted()).isTrue();
+    }
+
+    @Test
+    public void shouldLimitOpenPeriod() {
+        testee.restoreOpen(now, 30);
+        assertThat(testee.isCallPermitted()).isTrue();
+
+        testee.recordFailure("error");
+
+        assertThat(testee.getOpenUntil()).isEqualTo(now.plus(IndexerCircuitBreaker.MAX_OPEN_DURATION));
+    }
+
+    @Test
+    public void shouldOpenRightAwayWhenApiLimitIsReached() {
+        testee.recordApiLimitReached("limit reached");
+
+        assertThat(testee.getState()).isEqualTo(State.OPEN);
+        assertThat(testee.getOpenUntil()).isEqualTo(now.plus(IndexerCircuitBreaker.API_LIMIT_OPEN_DURATION));
+
+        //Failures of calls started before the circuit was opened don't change anything
+        testee.recordFailure("error");
+        assertThat(testee.getOpenUntil()).isEqualTo(now.plus(IndexerCircuitBreaker.API_LIMIT_OPEN_DURATION));
+        assertThat(transitions).containsExactly(State.OPEN);
+    }
+
+    private void openCircuit() {
+        for (int i = 0; i < IndexerCircuitBreaker.MINIMUM_NUMBER_OF_CALLS; i++) {
+            testee.recordFailure("error");
+        }
+        assertThat(testee.getState()).isEqualTo(State.OPEN);
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.nzbhydra.indexers;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+public class IndexerLatencyTrackerTest {
+
+    @Mock
+    private IndexerRepository indexerRepositoryMock;
+    @Mock
+    private IndexerApiAccessRepository apiAccessRepositoryMock;
+    @InjectMocks
+    private IndexerLatencyTracker testee = new IndexerLatencyTracker();
+
+    private IndexerEntity indexerEntity = new IndexerEntity();
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        indexerEntity.setName("indexer");
+        when(indexerRepositoryMock.findByName("indexer")).thenReturn(indexerEntity);
+    }
+
+    @Test
+    public void shouldLoadResponseTimesFromDatabase() {
+        List<IndexerApiAccessEntity> accesses = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            IndexerApiAccessEntity access = new IndexerApiAccessEntity(indexerEntity);
+            access.setResponseTime((long) i * 10);
+            accesses.add(access);
+        }
+        when(apiAccessRepositoryMock.findByIndexerAndResultAndResponseTimeNotNullOrderByTimeDesc(eq(indexerEntity), eq(IndexerAccessResult.SUCCESSFUL), any())).thenReturn(accesses);
+
+        assertThat(testee.getResponseTime("indexer", 0.5)).contains(500L);
+        assertThat(testee.getResponseTime("indexer", 0.99)).contains(990L);
+        assertThat(testee.getResponseTime("indexer", 1)).contains(1000L);
+    }
+
+    @Test
+    public void shouldNeedMinimumNumberOfResponseTimes() {
+        for (int i = 1; i < IndexerLatencyTracker.MIN_SAMPLES; i++) {
+            testee.record("indexer", 100);
+        }
+        assertThat(testee.getResponseTime("indexer", 0.5)).isEqualTo(Optional.empty());
+
+        testee.record("indexer", 100);
+        assertThat(testee.getResponseTime("indexer", 0.5)).contains(100L);
+    }
+
+    @Test
+    public void shouldOnlyKeepLatestResponseTimes() {
+        for (int i = 0; i < IndexerLatencyTracker.WINDOW_SIZE; i++) {
+            testee.record("indexer", 5000);
+        }
+        for (int i = 0; i < IndexerLatencyTracker.WINDOW_SIZE; i++) {
+            testee.record("indexer", 100);
+        }
+        assertThat(testee.getResponseTime("indexer", 1)).contains(100L);
+    }
+
+}
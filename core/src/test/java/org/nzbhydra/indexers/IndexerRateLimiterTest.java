@@ -0,0 +1,134 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.nzbhydra.indexers;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.nzbhydra.config.indexer.IndexerConfig;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IndexerRateLimiterTest {
+
+    private IndexerRateLimiter testee = new IndexerRateLimiter();
+    private IndexerConfig indexerConfig = new IndexerConfig();
+    private Instant now = Instant.ofEpochSecond(1_000_000);
+
+    @Before
+    public void setUp() {
+        indexerConfig.setName("indexer");
+        testee.clock = Clock.fixed(now, ZoneOffset.UTC);
+    }
+
+    @Test
+    public void shouldNotLimitWithoutConfiguredRate() {
+        for (int i = 0; i < 100; i++) {
+            assertThat(testee.tryAcquire(indexerConfig)).isTrue();
+        }
+        assertThat(testee.getStatus(indexerConfig).getAvailableRequests()).isNull();
+    }
+
+    @Test
+    public void shouldNotLimitWithRateOfZeroOrLower() {
+        indexerConfig.setRequestsPerMinute(0);
+        for (int i = 0; i < 10; i++) {
+            assertThat(testee.tryAcquire(indexerConfig)).isTrue();
+        }
+        indexerConfig.setRequestsPerMinute(-1);
+        assertThat(testee.tryAcquire(indexerConfig)).isTrue();
+        assertThat(testee.getWaitTime(indexerConfig)).isEqualTo(Duration.ZERO);
+    }
+
+    @Test
+    public void shouldGiveBackTokenWhenInterruptedWhileWaiting() {
+        indexerConfig.setRequestsPerMinute(6);
+        indexerConfig.setRequestBurst(1);
+        assertThat(testee.tryAcquire(indexerConfig)).isTrue();
+
+        Thread.currentThread().interrupt();
+        assertThat(testee.acquire(indexerConfig, Duration.ofSeconds(30))).isFalse();
+        assertThat(Thread.interrupted()).isTrue();
+
+        assertThat(testee.getWaitTime(indexerConfig)).as("Only the first call's token is taken").isEqualTo(Duration.ofSeconds(10));
+    }
+
+    @Test
+    public void shouldAllowBurstAndThenRefill() {
+        indexerConfig.setRequestsPerMinute(6);
+        indexerConfig.setRequestBurst(2);
+
+        assertThat(testee.tryAcquire(indexerConfig)).isTrue();
+        assertThat(testee.tryAcquire(indexerConfig)).isTrue();
+        assertThat(testee.tryAcquire(indexerConfig)).isFalse();
+        assertThat(testee.getWaitTime(indexerConfig)).isEqualTo(Duration.ofSeconds(10));
+
+        setNow(now.plusSeconds(10));
+        assertThat(testee.tryAcquire(indexerConfig)).isTrue();
+        assertThat(testee.tryAcquire(indexerConfig)).isFalse();
+
+        //Never more than the burst
+        setNow(now.plusSeconds(600));
+        assertThat(testee.getStatus(indexerConfig).getAvailableRequests()).isEqualTo(2D);
+    }
+
+    @Test
+    public void shouldWaitForTokenWithinDeadline() {
+        indexerConfig.setRequestsPerMinute(600);
+        assertThat(testee.tryAcquire(indexerConfig)).isTrue();
+
+        //The next token is available after 100ms
+        assertThat(testee.acquire(indexerConfig, Duration.ofMillis(50))).isFalse();
+        assertThat(testee.acquire(indexerConfig, Duration.ofSeconds(1))).isTrue();
+        //The token was reserved, the next caller has to wait for the one after that
+        assertThat(testee.getWaitTime(indexerConfig)).isEqualTo(Duration.ofMillis(200));
+    }
+
+    @Test
+    public void shouldBlockUntilGivenTime() {
+        testee.blockUntil(indexerConfig, now.plusSeconds(30));
+
+        assertThat(testee.tryAcquire(indexerConfig)).isFalse();
+        assertThat(testee.getWaitTime(indexerConfig)).isEqualTo(Duration.ofSeconds(30));
+        assertThat(testee.getStatus(indexerConfig).getBlockedUntil()).isEqualTo(now.plusSeconds(30));
+
+        setNow(now.plusSeconds(30));
+        assertThat(testee.tryAcquire(indexerConfig)).isTrue();
+        assertThat(testee.getStatus(indexerConfig).getBlockedUntil()).isNull();
+    }
+
+    @Test
+    public void shouldRememberLastCall() {
+        assertThat(testee.getLastCall(indexerConfig)).isEmpty();
+        assertThat(testee.tryAcquire(indexerConfig)).isTrue();
+        assertThat(testee.getLastCall(indexerConfig)).contains(now);
+
+        testee.blockUntil(indexerConfig, now.plusSeconds(60));
+        setNow(now.plusSeconds(10));
+        assertThat(testee.tryAcquire(indexerConfig)).isFalse();
+        assertThat(testee.getLastCall(indexerConfig)).as("Calls that didn't get a token don't count").contains(now.minusSeconds(10));
+    }
+
+    private void setNow(Instant instant) {
+        now = instant;
+        testee.clock = Clock.fixed(now, ZoneOffset.UTC);
+    }
+
+}
@@ -31,6 +31,9 @@ import java.time.temporal.ChronoUnit;
 import java.util.Arrays;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class IndexerStatusesCleanupTaskTest {
@@ -92,5 +95,15 @@ public class IndexerStatusesCleanupTaskTest {
         assertThat(indexerConfigEnabled.getState()).isEqualTo(IndexerConfig.State.ENABLED);
         assertThat(indexerConfigUserDisabled.getState()).isEqualTo(IndexerConfig.State.DISABLED_USER);
         assertThat(indexerConfigDisabledSystem.getState()).isEqualTo(IndexerConfig.State.DISABLED_SYSTEM);
+        verify(configReaderWriterMock).save(baseConfig);
+    }
+
+    @Test
+    public void shouldNotSaveConfigIfNothingChanged() {
+        when(baseConfig.getIndexers()).thenReturn(Arrays.asList(indexerConfigDisabledSystem, indexerConfigDisabledTempInTimeWindow, indexerConfigEnabled));
+
+        testee.cleanup();
+
+        verify(configReaderWriterMock, never()).save(any(BaseConfig.class));
     }
 }
\ No newline at end of file
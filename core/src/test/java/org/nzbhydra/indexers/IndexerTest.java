@@ -66,6 +66,8 @@ public class IndexerTest {
     @Mock
     private IndexerApiAccessEntityShortRepository shortRepositoryMock;
     @Mock
+    private IndexerApiAccessWriter apiAccessWriterMock;
+    @Mock
     private SearchResultRepository searchResultRepositoryMock;
     @Captor
     private ArgumentCaptor<List<SearchResultEntity>> searchResultEntitiesCaptor;
@@ -131,9 +133,8 @@ public class IndexerTest {
         when(indexerEntityMock.getName()).thenReturn("indexerName");
         when(indexerMock.getName()).thenReturn("indexerName");
 
-        testee.indexer = indexerEntityMock;
-        testee.config = indexerConfig;
         indexerConfig.setTimeout(1);
+        testee.initialize(indexerConfig, indexerEntityMock);
         baseConfig = new BaseConfig();
         when(configProviderMock.getBaseConfig()).thenReturn(baseConfig);
         baseConfig.getSearching().setIdFallbackToQueryGeneration(SearchSourceRestriction.BOTH);
@@ -191,12 +192,14 @@ public class IndexerTest {
         indexerConfig.setState(IndexerConfig.State.DISABLED_SYSTEM_TEMPORARY);
         indexerConfig.setDisabledLevel(1);
         indexerConfig.setDisabledUntil(Instant.now().toEpochMilli());
+        testee.initialize(indexerConfig, indexerEntityMock);
 
         testee.handleSuccess(IndexerApiAccessType.SEARCH, 0L);
 
         assertThat(indexerConfig.getState(), is(IndexerConfig.State.ENABLED));
         assertThat(indexerConfig.getDisabledLevel(), is(0));
         assertThat(indexerConfig.getDisabledUntil(), is(nullValue()));
+        assertThat(testee.getCircuitBreaker().getState(), is(IndexerCircuitBreaker.State.CLOSED));
     }
 
     @Test
@@ -205,12 +208,19 @@ public class IndexerTest {
         indexerConfig.setDisabledLevel(0);
         indexerConfig.setDisabledUntil(null);
 
+        //A single failure doesn't open the circuit
         testee.handleFailure("reason", false, null, null, null);
+        assertThat(indexerConfig.getState(), is(IndexerConfig.State.ENABLED));
+
+        for (int i = 1; i < IndexerCircuitBreaker.MINIMUM_NUMBER_OF_CALLS; i++) {
+            testee.handleFailure("reason", false, null, null, null);
+        }
 
         assertThat(indexerConfig.getState(), is(IndexerConfig.State.DISABLED_SYSTEM_TEMPORARY));
         assertThat(indexerConfig.getDisabledLevel(), is(1));
+        assertThat(indexerConfig.getLastError(), is("reason"));
         long disabledPeriod = Math.abs(Instant.ofEpochMilli(indexerConfig.getDisabledUntil()).getEpochSecond() - Instant.now().getEpochSecond());
-        long delta = Math.abs(Indexer.DISABLE_PERIODS.get(1) * 60 - disabledPeriod);
+        long delta = Math.abs(IndexerCircuitBreaker.INITIAL_OPEN_DURATION.getSeconds() - disabledPeriod);
         org.assertj.core.api.Assertions.assertThat(delta).isLessThan(5);
 
         indexerConfig.setState(IndexerConfig.State.ENABLED);
@@ -222,6 +232,15 @@ public class IndexerTest {
         assertThat(indexerConfig.getState(), is(IndexerConfig.State.DISABLED_SYSTEM));
     }
 
+    @Test
+    public void shouldOpenCircuitWhenApiLimitIsReached() throws Exception {
+        testee.handleIndexerAccessException(new IndexerErrorCodeException(new NewznabXmlError("500", "Request limit reached")), IndexerApiAccessType.SEARCH);
+
+        assertThat(indexerConfig.getState(), is(IndexerConfig.State.DISABLED_SYSTEM_TEMPORARY));
+        assertThat(testee.getCircuitBreaker().getState(), is(IndexerCircuitBreaker.State.OPEN));
+        verify(testee, never()).handleFailure(any(), any(), any(), any(), any());
+    }
+
     @Test
     public void shouldGetAndStoreResultToDatabaseWithSuccess() throws Exception {
         when(indexerWebAccessMock.get(any(), eq(testee.config), any())).thenReturn("result");
@@ -1,5 +1,6 @@
 package org.nzbhydra.indexers;
 
+import com.google.common.base.Stopwatch;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.*;
@@ -7,18 +8,35 @@ import org.nzbhydra.config.BaseConfig;
 import org.nzbhydra.config.ConfigProvider;
 import org.nzbhydra.config.SearchingConfig;
 import org.nzbhydra.config.indexer.IndexerConfig;
+import org.nzbhydra.indexers.exceptions.IndexerAccessException;
+import org.nzbhydra.indexers.exceptions.IndexerRateLimitedException;
+import org.nzbhydra.indexers.exceptions.IndexerUnreachableException;
 import org.nzbhydra.mapping.newznab.xml.NewznabXmlRoot;
+import org.nzbhydra.okhttp.TooManyRequestsException;
 import org.nzbhydra.okhttp.WebAccess;
 import org.springframework.oxm.Unmarshaller;
 
+import java.io.IOException;
+import java.net.SocketTimeoutException;
 import java.net.URI;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
 import static org.assertj.core.data.MapEntry.entry;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class IndexerWebAccessTest {
@@ -32,6 +50,8 @@ public class IndexerWebAccessTest {
     private IndexerConfig indexerConfig = new IndexerConfig();
     @Mock
     private Unmarshaller unmarshallerMock;
+    @Mock
+    private IndexerLatencyTracker latencyTrackerMock;
     @Captor
     ArgumentCaptor<Map<String, String>> headersCaptor;
     @Captor
@@ -53,8 +73,10 @@ public class IndexerWebAccessTest {
         when(searchingConfigMock.getUserAgent()).thenReturn(Optional.of("globalUa"));
         when(searchingConfigMock.getTimeout()).thenReturn(100);
         indexerConfig.setTimeout(10);
+        indexerConfig.setName("indexer");
         indexerConfig.setUserAgent("indexerUa");
         when(unmarshallerMock.unmarshal(any())).thenReturn(new NewznabXmlRoot());
+        testee.rateLimiter = new IndexerRateLimiter();
     }
 
     @Test
@@ -89,7 +111,174 @@ public class IndexerWebAccessTest {
         assertThat(timeoutCaptor.getValue()).isEqualTo(100);
     }
 
+    @Test
+    public void shouldUseAdaptiveTimeout() throws Exception {
+        when(searchingConfigMock.isAdaptiveTimeouts()).thenReturn(true);
+        when(latencyTrackerMock.getResponseTime("indexer", 0.99)).thenReturn(Optional.of(1500L));
+
+        testee.get(new URI("http://127.0.0.1"), indexerConfig);
+
+        assertThat(timeoutCaptor.getValue()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldLimitAdaptiveTimeoutToConfiguredTimeout() throws Exception {
+        when(searchingConfigMock.isAdaptiveTimeouts()).thenReturn(true);
+        when(latencyTrackerMock.getResponseTime("indexer", 0.99)).thenReturn(Optional.of(8000L));
+        assertThat(testee.getTimeoutMillis(indexerConfig)).isEqualTo(10_000);
+
+        when(latencyTrackerMock.getResponseTime("indexer", 0.99)).thenReturn(Optional.of(10L));
+        assertThat(testee.getTimeoutMillis(indexerConfig)).isEqualTo(2000);
+
+        when(latencyTrackerMock.getResponseTime("indexer", 0.99)).thenReturn(Optional.empty());
+        assertThat(testee.getTimeoutMillis(indexerConfig)).isEqualTo(10_000);
+    }
+
+    @Test
+    public void shouldSendHedgedRequestWhenFirstIsSlow() throws Exception {
+        when(searchingConfigMock.isHedgeRequests()).thenReturn(true);
+        when(latencyTrackerMock.getResponseTime("indexer", 0.95)).thenReturn(Optional.of(50L));
+        //Bimodal: The first call hangs, the repeated one is answered immediately
+        when(webAccessMock.callUrl(anyString(), any(), anyInt())).thenAnswer(x -> {
+            Thread.sleep(5000);
+            return "slow";
+        }).thenReturn("fast");
+
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        String response = testee.get(new URI("http://127.0.0.1"), indexerConfig, String.class);
+
+        assertThat(response).isEqualTo("fast");
+        assertThat(stopwatch.elapsed(TimeUnit.MILLISECONDS)).isLessThan(4000);
+        verify(webAccessMock, times(2)).callUrl(anyString(), any(), anyInt());
+    }
+
+    @Test
+    public void shouldWaitForHedgedRequestWhenFirstFails() throws Exception {
+        when(searchingConfigMock.isHedgeRequests()).thenReturn(true);
+        when(latencyTrackerMock.getResponseTime("indexer", 0.95)).thenReturn(Optional.of(50L));
+        when(webAccessMock.callUrl(anyString(), any(), anyInt())).thenAnswer(x -> {
+            Thread.sleep(200);
+            throw new IOException("error");
+        }).thenReturn("fast");
+
+        String response = testee.get(new URI("http://127.0.0.1"), indexerConfig, String.class);
+
+        assertThat(response).isEqualTo("fast");
+    }
+
+    @Test
+    public void shouldNotHedgeRequestsToIndexersWithHitLimit() throws Exception {
+        when(searchingConfigMock.isHedgeRequests()).thenReturn(true);
+        when(latencyTrackerMock.getResponseTime("indexer", 0.95)).thenReturn(Optional.of(50L));
+        indexerConfig.setHitLimit(100);
+        when(webAccessMock.callUrl(anyString(), any(), anyInt())).thenAnswer(x -> {
+            Thread.sleep(200);
+            return "slow";
+        });
+
+        String response = testee.get(new URI("http://127.0.0.1"), indexerConfig, String.class);
+
+        assertThat(response).isEqualTo("slow");
+        verify(webAccessMock, times(1)).callUrl(anyString(), any(), anyInt());
+    }
+
+    @Test
+    public void shouldIncreaseAdaptiveTimeoutWhenIndexerBecomesSlower() throws Exception {
+        when(searchingConfigMock.isAdaptiveTimeouts()).thenReturn(true);
+        testee.latencyTracker = new IndexerLatencyTracker();
+        for (int i = 0; i < IndexerLatencyTracker.WINDOW_SIZE; i++) {
+            testee.latencyTracker.record("indexer", 100);
+        }
+        //The indexer now takes 4 seconds to answer
+        List<Integer> timeouts = new ArrayList<>();
+        when(webAccessMock.callUrl(anyString(), any(), anyInt())).then(invocation -> {
+            timeouts.add(invocation.getArgument(2));
+            if ((Integer) invocation.getArgument(2) <= 4) {
+                throw new SocketTimeoutException("timeout");
+            }
+            return "response";
+        });
+
+        int failedCalls = 0;
+        while (true) {
+            try {
+                assertThat(testee.<String>get(new URI("http://127.0.0.1"), indexerConfig, String.class)).isEqualTo("response");
+                break;
+            } catch (IndexerUnreachableException e) {
+                assertThat(++failedCalls).as("Adaptive timeout should have grown").isLessThan(20);
+            }
+        }
+
+        assertThat(timeouts.get(0)).isEqualTo(2);
+        assertThat(timeouts).isSorted();
+        assertThat(timeouts.get(timeouts.size() - 1)).isGreaterThan(4).isLessThanOrEqualTo(10);
+    }
+
+    @Test
+    public void shouldRecordTimeoutOfHedgedRequestOnlyOnce() throws Exception {
+        when(searchingConfigMock.isHedgeRequests()).thenReturn(true);
+        when(latencyTrackerMock.getResponseTime("indexer", 0.95)).thenReturn(Optional.of(50L));
+        indexerConfig.setTimeout(1);
+        //Both attempts only time out after the deadline of two seconds, ignoring the interrupt when they're cancelled
+        when(webAccessMock.callUrl(anyString(), any(), anyInt())).thenAnswer(x -> {
+            long start = System.nanoTime();
+            while (System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(2500)) {
+                Thread.yield();
+            }
+            throw new SocketTimeoutException("timeout");
+        });
+
+        try {
+            testee.get(new URI("http://127.0.0.1"), indexerConfig, String.class);
+            fail("Expected exception");
+        } catch (IndexerAccessException e) {
+            assertThat(e.getMessage()).contains("did not complete request");
+        }
+        Thread.sleep(1000);
 
+        verify(webAccessMock, times(2)).callUrl(anyString(), any(), anyInt());
+        verify(latencyTrackerMock, times(1)).record("indexer", 1000L);
+    }
 
+    @Test
+    public void shouldRecordResponseTimes() throws Exception {
+        testee.get(new URI("http://127.0.0.1"), indexerConfig, String.class);
+
+        verify(latencyTrackerMock).record(eq("indexer"), anyLong());
+    }
+
+    @Test
+    public void shouldNotCallIndexerWhenRateLimitIsReached() throws Exception {
+        indexerConfig.setRequestsPerMinute(1);
+        indexerConfig.setTimeout(1);
+        testee.get(new URI("http://127.0.0.1"), indexerConfig, String.class);
+
+        try {
+            testee.get(new URI("http://127.0.0.1"), indexerConfig, String.class);
+            fail("Expected exception");
+        } catch (IndexerRateLimitedException e) {
+            verify(webAccessMock, times(1)).callUrl(anyString(), any(), anyInt());
+        }
+    }
+
+    @Test
+    public void shouldHonorRetryAfterOfTooManyRequestsResponse() throws Exception {
+        //The blocking time is kept in epoch millis
+        Instant retryAfter = Instant.now().plus(5, ChronoUnit.MINUTES).truncatedTo(ChronoUnit.MILLIS);
+        when(webAccessMock.callUrl(anyString(), any(), anyInt())).thenThrow(new TooManyRequestsException("429", retryAfter));
+
+        try {
+            testee.get(new URI("http://127.0.0.1"), indexerConfig, String.class);
+            fail("Expected exception");
+        } catch (IndexerRateLimitedException e) {
+            assertThat(testee.rateLimiter.getStatus(indexerConfig).getBlockedUntil()).isEqualTo(retryAfter);
+        }
+        try {
+            testee.get(new URI("http://127.0.0.1"), indexerConfig, String.class);
+            fail("Expected exception");
+        } catch (IndexerRateLimitedException e) {
+            verify(webAccessMock, times(1)).callUrl(anyString(), any(), anyInt());
+        }
+    }
 
-}
\ No newline at end of file
+}
@@ -1,12 +1,15 @@
 package org.nzbhydra.indexers;
 
+import com.google.common.base.Charsets;
 import com.google.common.collect.HashMultiset;
 import com.google.common.collect.Lists;
+import com.google.common.io.Resources;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.*;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
+import org.nzbhydra.api.NewznabAttributesBuilder;
 import org.nzbhydra.config.BaseConfig;
 import org.nzbhydra.config.ConfigProvider;
 import org.nzbhydra.config.SearchSourceRestriction;
@@ -25,6 +28,7 @@ import org.nzbhydra.mapping.newznab.ActionAttribute;
 import org.nzbhydra.mapping.newznab.builder.RssBuilder;
 import org.nzbhydra.mapping.newznab.builder.RssItemBuilder;
 import org.nzbhydra.mapping.newznab.xml.*;
+import org.nzbhydra.mapping.RssMappingTest;
 import org.nzbhydra.mediainfo.InfoProvider;
 import org.nzbhydra.mediainfo.InfoProvider.IdType;
 import org.nzbhydra.mediainfo.MediaInfo;
@@ -40,13 +44,18 @@ import org.nzbhydra.searching.dtoseventsenums.SearchType;
 import org.nzbhydra.searching.searchrequests.InternalData.FallbackState;
 import org.nzbhydra.searching.searchrequests.SearchRequest;
 import org.nzbhydra.searching.searchrequests.SearchRequest.SearchSource;
+import org.springframework.http.MediaType;
 import org.springframework.oxm.Unmarshaller;
+import org.springframework.test.web.client.MockRestServiceServer;
 import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponents;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.io.IOException;
 import java.time.Instant;
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.is;
@@ -57,6 +66,8 @@ import static org.mockito.ArgumentMatchers.anySet;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 import static org.mockito.Mockito.eq;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
 
 @SuppressWarnings("ALL")
 public class NewznabTest {
@@ -75,6 +86,8 @@ public class NewznabTest {
     @Mock
     private IndexerApiAccessEntityShortRepository shortRepositoryMock;
     @Mock
+    private IndexerApiAccessWriter apiAccessWriterMock;
+    @Mock
     private SearchResultRepository searchResultRepositoryMock;
     @Mock
     private IndexerRepository indexerRepositoryMock;
@@ -123,7 +136,7 @@ public class NewznabTest {
         when(infoProviderMock.convert("tvmazeId", IdType.TVMAZE)).thenReturn(info);
         //when(indexerEntityMock.getStatus()).thenReturn(indexerStatusEntityMock);
 
-        testee.config = new IndexerConfig();
+        testee.initialize(new IndexerConfig(), indexerEntityMock);
         testee.config.setSupportedSearchIds(Lists.newArrayList(IdType.TMDB, IdType.TVRAGE));
         testee.config.setHost("http://127.0.0.1:1234");
 
@@ -475,6 +488,60 @@ public class NewznabTest {
         assertThat(item.getHasNfo(), is(HasNfo.YES));
     }
 
+    @Test
+    public void shouldKeepAllAttributesInMapAndDecodeTypedFields() throws Exception {
+        NewznabXmlItem rssItem = buildBasicRssItem();
+        rssItem.getNewznabAttributes().add(new NewznabAttribute("size", "456"));
+        rssItem.getNewznabAttributes().add(new NewznabAttribute("grabs", "20"));
+        rssItem.getNewznabAttributes().add(new NewznabAttribute("poster", "not available"));
+        rssItem.getNewznabAttributes().add(new NewznabAttribute("password", "1"));
+        rssItem.getNewznabAttributes().add(new NewznabAttribute("password", "0"));
+        rssItem.getNewznabAttributes().add(new NewznabAttribute("category", "5000"));
+        rssItem.getNewznabAttributes().add(new NewznabAttribute("coverurl", "http://indexer.com/cover.jpg"));
+        SearchResultItem searchResultItem = new SearchResultItem();
+
+        testee.parseAttributes(rssItem, searchResultItem);
+
+        assertThat(searchResultItem.getSize(), is(456L));
+        assertThat(searchResultItem.getGrabs(), is(20));
+        assertThat(searchResultItem.getPoster().isPresent(), is(false));
+        assertThat("Last value wins", searchResultItem.isPassworded(), is(false));
+        assertThat(searchResultItem.getAttributes().size(), is(6));
+        assertThat(searchResultItem.getAttributes().get("size"), is("456"));
+        assertThat(searchResultItem.getAttributes().get("poster"), is("not available"));
+        assertThat(searchResultItem.getAttributes().get("password"), is("0"));
+        assertThat(searchResultItem.getAttributes().get("coverurl"), is("http://indexer.com/cover.jpg"));
+    }
+
+    @Test
+    public void shouldBuildSameApiAttributesAsBeforeSinglePassDecoding() throws Exception {
+        testee.config.setBackend(BackendType.NZEDB);
+        for (String fileName : Arrays.asList("nzbSuResponse.xml", "drunkenSlugResponse.xml", "nzbFinderResponse.xml", "newztownResponse.xml", "omgwtfResponse.xml", "tabulaRasaResponse.xml", "nzbCatResponse.xml", "newznab_3results.xml")) {
+            NewznabXmlRoot root = getRssRootFromXml(fileName);
+            assertFalse(fileName, root.getRssChannel().getItems().isEmpty());
+            for (NewznabXmlItem item : root.getRssChannel().getItems()) {
+                SearchResultItem searchResultItem = new SearchResultItem();
+                searchResultItem.setSearchResultId(42L);
+                testee.parseAttributes(item, searchResultItem);
+
+                //How the API attributes were built before the attributes were decoded in a single pass
+                Map<String, String> previousAttributes = item.getNewznabAttributes().stream().collect(Collectors.toMap(NewznabAttribute::getName, NewznabAttribute::getValue, (a, b) -> b));
+                previousAttributes.put("guid", "42");
+                List<NewznabAttribute> expected = previousAttributes.entrySet().stream().map(x -> new NewznabAttribute(x.getKey(), x.getValue())).sorted(Comparator.comparing(NewznabAttribute::getName)).collect(Collectors.toList());
+
+                List<NewznabAttribute> actual = NewznabAttributesBuilder.build(searchResultItem).entrySet().stream().map(x -> new NewznabAttribute(x.getKey(), x.getValue())).collect(Collectors.toList());
+                assertEquals(fileName + ": " + item.getTitle(), expected, actual);
+            }
+        }
+    }
+
+    private NewznabXmlRoot getRssRootFromXml(String xmlFileName) throws IOException {
+        RestTemplate restTemplate = new RestTemplate();
+        MockRestServiceServer mockServer = MockRestServiceServer.createServer(restTemplate);
+        mockServer.expect(requestTo("/api")).andRespond(withSuccess(Resources.toString(Resources.getResource(RssMappingTest.class, xmlFileName), Charsets.UTF_8), MediaType.APPLICATION_XML));
+        return restTemplate.getForObject("/api", NewznabXmlRoot.class);
+    }
+
     @Test
     public void shouldUseIndexersCategoryMappingToBuildOriginalCategoryName() throws Exception {
         testee.config.getCategoryMapping().setCategories(Arrays.asList(new MainCategory(5000, "TV", Arrays.asList(new SubCategory(5040, "HD")))));
@@ -48,6 +48,8 @@ public class TorznabTest {
     @Mock
     private IndexerApiAccessRepository indexerApiAccessRepositoryMock;
     @Mock
+    private IndexerApiAccessWriter apiAccessWriterMock;
+    @Mock
     private UriComponentsBuilder uriComponentsBuilderMock;
     @Captor
     private ArgumentCaptor<String> errorMessageCaptor;
@@ -46,6 +46,11 @@ import org.springframework.oxm.Unmarshaller;
 import javax.xml.transform.stream.StreamSource;
 import java.io.StringReader;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.*;
@@ -205,5 +210,84 @@ public class NewznabCheckerTest {
         verify(indexerWebAccess, times(7)).get(any(), eq(indexerConfig));
     }
 
+    @Test
+    public void shouldSkipRemainingIdChecksIfFirstSearchFails() throws Exception {
+        when(indexerWebAccess.get(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=tvsearch&tvdbid=121361"), indexerConfig))
+                .thenThrow(new IndexerAccessException("some error"));
+
+        CheckCapsResponse checkCapsRespone = testee.checkCaps(indexerConfig);
+        assertEquals(0, checkCapsRespone.getIndexerConfig().getSupportedSearchIds().size());
+        assertFalse(checkCapsRespone.isAllCapsChecked());
+        //Only the first ID search and the caps call
+        verify(indexerWebAccess, times(2)).get(any(), eq(indexerConfig));
+    }
+
+    @Test
+    public void shouldReleasePermitOfProbeCancelledBeforeItRan() throws Exception {
+        Semaphore semaphore = new Semaphore(1);
+        semaphore.acquire();
+        NewznabChecker.PermitHoldingProbe<String> probe = new NewznabChecker.PermitHoldingProbe<>(() -> "result", semaphore);
+
+        probe.cancel(true);
+        assertEquals(1, semaphore.availablePermits());
+
+        //Executors still run cancelled tasks taken from their queue
+        probe.run();
+        assertEquals(1, semaphore.availablePermits());
+    }
+
+    @Test
+    public void shouldReleasePermitOfExecutedProbeOnce() throws Exception {
+        Semaphore semaphore = new Semaphore(1);
+        semaphore.acquire();
+        NewznabChecker.PermitHoldingProbe<String> probe = new NewznabChecker.PermitHoldingProbe<>(() -> "result", semaphore);
+
+        probe.run();
+        assertEquals(1, semaphore.availablePermits());
+        assertEquals("result", probe.get());
+
+        probe.cancel(true);
+        assertEquals(1, semaphore.availablePermits());
+    }
+
+    @Test
+    public void shouldReleasePermitsOfQueuedAndRunningProbesOnShutdown() throws Exception {
+        int numberOfProbes = NewznabChecker.MAX_CONCURRENT_PROBES + 2;
+        Semaphore semaphore = new Semaphore(numberOfProbes);
+        CountDownLatch blocker = new CountDownLatch(1);
+        List<NewznabChecker.PermitHoldingProbe<String>> probes = new ArrayList<>();
+        for (int i = 0; i < numberOfProbes; i++) {
+            semaphore.acquire();
+            NewznabChecker.PermitHoldingProbe<String> probe = new NewznabChecker.PermitHoldingProbe<>(() -> {
+                blocker.await();
+                return "result";
+            }, semaphore);
+            testee.executeProbe(probe);
+            probes.add(probe);
+        }
+
+        testee.shutdown();
+
+        assertTrue(semaphore.tryAcquire(numberOfProbes, 5, TimeUnit.SECONDS));
+        for (NewznabChecker.PermitHoldingProbe<String> probe : probes) {
+            assertTrue(probe.isCancelled());
+        }
+    }
+
+    @Test
+    public void shouldNotWaitForTimedOutFirstProbeAgain() throws Exception {
+        when(searchingConfig.getTimeout()).thenReturn(0);
+        when(indexerWebAccess.get(new URI("http://127.0.0.1:1234/api?apikey=apikey&t=tvsearch&tvdbid=121361"), indexerConfig)).thenAnswer(invocation -> {
+            Thread.sleep(10_000);
+            return null;
+        });
+
+        long before = System.currentTimeMillis();
+        CheckCapsResponse checkCapsRespone = testee.checkCaps(indexerConfig);
+        //Timeout is 0 + 1 seconds, waiting for the probe twice would take 2 seconds
+        assertTrue(System.currentTimeMillis() - before < 2000);
+        assertFalse(checkCapsRespone.isAllCapsChecked());
+        verify(indexerWebAccess, times(2)).get(any(), eq(indexerConfig));
+    }
 
-}
\ No newline at end of file
+}
@@ -52,11 +52,7 @@ public class RssCapsMappingTest {
 
         StreamResult streamResult = new StreamResult(writer);
         jaxb2Marshaller.marshal(caps, streamResult);
-        assertThat(writer.toString(), containsString("<categories>\n" +
-                "        <category id=\"1000\" name=\"1000\">\n" +
-                "            <subcat id=\"1010\" name=\"1010\"/>\n" +
-                "        </category>\n" +
-                "    </categories>"));
+        assertThat(writer.toString(), containsString("<categories><category id=\"1000\" name=\"1000\"><subcat id=\"1010\" name=\"1010\"/></category></categories>"));
     }
 
 
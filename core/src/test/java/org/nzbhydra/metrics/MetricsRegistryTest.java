@@ -0,0 +1,107 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.nzbhydra.metrics;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MetricsRegistryTest {
+
+    private MetricsRegistry testee = new MetricsRegistry();
+
+    @Test
+    public void shouldWriteTextFormat() throws Exception {
+        testee.counter("hydra_test_total", "Test counter", "indexer", "one").increment(3);
+        testee.gauge("hydra_test_gauge", "Test gauge", () -> 5);
+        Histogram histogram = testee.histogram("hydra_test_seconds", "Test histogram", "indexer", "one");
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(100));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(300));
+
+        StringWriter writer = new StringWriter();
+        testee.write(writer);
+        String text = writer.toString();
+
+        assertThat(text).contains("# TYPE hydra_test_total counter\nhydra_test_total{indexer=\"one\"} 3\n");
+        assertThat(text).contains("# TYPE hydra_test_gauge gauge\nhydra_test_gauge 5\n");
+        assertThat(text).contains("# TYPE hydra_test_seconds summary\n");
+        assertThat(text).contains("hydra_test_seconds_count{indexer=\"one\"} 2\n");
+        assertThat(text).contains("hydra_test_seconds_sum{indexer=\"one\"} 0.4\n");
+        assertThat(text).contains("hydra_test_seconds_max{indexer=\"one\"} 0.3\n");
+        assertThat(text).contains("hydra_test_seconds{indexer=\"one\",quantile=\"0.5\"} 0.1");
+    }
+
+    @Test
+    public void shouldReturnSameMetricForSameLabels() {
+        assertThat(testee.counter("hydra_test_total", "", "a", "b")).isSameAs(testee.counter("hydra_test_total", "", "a", "b"));
+        assertThat(testee.counter("hydra_test_total", "", "a", "b")).isNotSameAs(testee.counter("hydra_test_total", "", "a", "c"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotAllowDifferentTypesWithSameName() {
+        testee.counter("hydra_test", "");
+        testee.histogram("hydra_test", "");
+    }
+
+    @Test
+    public void shouldEscapeLabelValues() {
+        assertThat(MetricsRegistry.renderLabels("indexer", "a \"b\"\\c\nd")).isEqualTo("indexer=\"a \\\"b\\\"\\\\c\\nd\"");
+        assertThat(MetricsRegistry.renderLabels("indexer", null)).isEqualTo("indexer=\"\"");
+    }
+
+    @Test
+    public void shouldSkipFailingGauges() throws Exception {
+        testee.gauge("hydra_test_gauge", "", () -> {
+            throw new IllegalStateException();
+        });
+        StringWriter writer = new StringWriter();
+        testee.write(writer);
+        assertThat(writer.toString()).doesNotContain("\nhydra_test_gauge ");
+    }
+
+    @Test
+    public void shouldCalculateQuantilesWithBoundedError() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 10_000; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+        assertThat(histogram.getCount()).isEqualTo(10_000);
+        assertThat(histogram.getMax()).isEqualTo(TimeUnit.MICROSECONDS.toNanos(10_000));
+        assertQuantile(histogram, 0.5, 5_000);
+        assertQuantile(histogram, 0.9, 9_000);
+        assertQuantile(histogram, 0.99, 9_900);
+        assertThat(histogram.getValueAtQuantile(1)).isEqualTo(histogram.getMax());
+        assertThat(new Histogram().getValueAtQuantile(0.5)).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldMapValuesToBucketsContainingThem() {
+        for (long value : new long[]{0, 1, 15, 16, 17, 31, 32, 1000, 123_456_789, 1L << 40}) {
+            long highest = Histogram.highestEquivalentValue(Histogram.bucketIndex(value));
+            assertThat(highest).isGreaterThanOrEqualTo(value);
+            assertThat(highest - value).isLessThanOrEqualTo(value / Histogram.SUB_BUCKETS);
+        }
+    }
+
+    private static void assertQuantile(Histogram histogram, double quantile, long expectedMicros) {
+        long expected = TimeUnit.MICROSECONDS.toNanos(expectedMicros);
+        assertThat(histogram.getValueAtQuantile(quantile)).isBetween(expected, expected + expected / Histogram.SUB_BUCKETS);
+    }
+
+}
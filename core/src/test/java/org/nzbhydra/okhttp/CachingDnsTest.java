@@ -0,0 +1,131 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.okhttp;
+
+import okhttp3.Dns;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class CachingDnsTest {
+
+    private List<String> lookedUpHosts = new ArrayList<>();
+    private InetAddress address;
+    private Instant now = Instant.ofEpochSecond(1_000_000);
+
+    private Dns stubDns = hostname -> {
+        lookedUpHosts.add(hostname);
+        if (hostname.equals("unknown.com")) {
+            throw new UnknownHostException(hostname);
+        }
+        return Collections.singletonList(address);
+    };
+
+    private CachingDns testee = new CachingDns(stubDns, Duration.ofSeconds(60), Duration.ofSeconds(10));
+
+    @Before
+    public void setUp() throws Exception {
+        address = InetAddress.getByAddress("indexer.com", new byte[]{10, 0, 0, 1});
+        testee.clock = new Clock() {
+            @Override
+            public ZoneOffset getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return now;
+            }
+        };
+    }
+
+    @Test
+    public void shouldCacheLookupsForTtl() throws Exception {
+        assertThat(testee.lookup("indexer.com")).containsExactly(address);
+        assertThat(testee.lookup("INDEXER.com")).containsExactly(address);
+        assertThat(lookedUpHosts).containsExactly("indexer.com");
+
+        now = now.plusSeconds(59);
+        testee.lookup("indexer.com");
+        assertThat(lookedUpHosts).hasSize(1);
+
+        now = now.plusSeconds(1);
+        testee.lookup("indexer.com");
+        assertThat(lookedUpHosts).hasSize(2);
+    }
+
+    @Test
+    public void shouldCacheFailedLookupsForNegativeTtl() {
+        assertThat(catchThrowable(() -> testee.lookup("unknown.com"))).isInstanceOf(UnknownHostException.class);
+        assertThat(catchThrowable(() -> testee.lookup("unknown.com"))).isInstanceOf(UnknownHostException.class).hasMessage("unknown.com");
+        assertThat(lookedUpHosts).containsExactly("unknown.com");
+
+        now = now.plusSeconds(10);
+        assertThat(catchThrowable(() -> testee.lookup("unknown.com"))).isInstanceOf(UnknownHostException.class);
+        assertThat(lookedUpHosts).hasSize(2);
+    }
+
+    @Test
+    public void shouldNotCacheWithTtlOfZero() throws Exception {
+        testee = new CachingDns(stubDns, Duration.ZERO, Duration.ZERO);
+        testee.lookup("indexer.com");
+        testee.lookup("indexer.com");
+        assertThat(lookedUpHosts).hasSize(2);
+    }
+
+    @Test
+    public void shouldKeepCachedHostsBounded() throws Exception {
+        testee.lookup("indexer.com");
+        assertThat(catchThrowable(() -> testee.lookup("unknown.com"))).isInstanceOf(UnknownHostException.class);
+        now = now.plusSeconds(60);
+        //Expired entries are dropped first
+        for (int i = 0; i < CachingDns.MAX_CACHED_HOSTS - 2; i++) {
+            testee.lookup("host" + i + ".com");
+        }
+        testee.lookup("host.com");
+        assertThat(testee.getCachedHostsCount()).isEqualTo(CachingDns.MAX_CACHED_HOSTS - 1);
+
+        for (int i = 0; i < CachingDns.MAX_CACHED_HOSTS * 3; i++) {
+            testee.lookup("other" + i + ".com");
+            assertThat(testee.getCachedHostsCount()).isLessThanOrEqualTo(CachingDns.MAX_CACHED_HOSTS);
+        }
+    }
+
+    @Test
+    public void shouldUseDefaultTtlIfPropertyIsNotUsable() {
+        assertThat(CachingDns.getTtlFromSecurityProperty("nzbhydra.notExisting", Duration.ofSeconds(5))).isEqualTo(Duration.ofSeconds(5));
+    }
+
+}
@@ -1,6 +1,9 @@
 package org.nzbhydra.okhttp;
 
+import okhttp3.ConnectionPool;
 import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InjectMocks;
@@ -9,15 +12,29 @@ import org.mockito.MockitoAnnotations;
 import org.nzbhydra.config.BaseConfig;
 import org.nzbhydra.config.ConfigProvider;
 import org.nzbhydra.config.downloading.ProxyType;
+import org.nzbhydra.config.indexer.IndexerConfig;
 import org.nzbhydra.okhttp.HydraOkHttp3ClientHttpRequestFactory.SockProxySocketFactory;
-
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.StreamUtils;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.InputStream;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.when;
@@ -95,5 +112,100 @@ public class HydraOkHttp3ClientHttpRequestFactoryTest {
         assertThat(((SockProxySocketFactory) client.socketFactory()).password, is("pass"));
     }
 
+    @Test
+    public void shouldUseSameSocksSocketFactoryUntilProxyIsChanged() throws URISyntaxException {
+        baseConfig.getMain().setProxyType(ProxyType.SOCKS);
+        baseConfig.getMain().setProxyHost("proxyhost");
+        baseConfig.getMain().setProxyPort(1080);
+        OkHttpClient client1 = testee.getOkHttpClientBuilder(new URI("http://www.google.de")).build();
+        OkHttpClient client2 = testee.getOkHttpClientBuilder(new URI("http://www.github.com")).build();
+        //Otherwise OkHttp never reuses pooled connections
+        assertThat(client1.socketFactory(), sameInstance(client2.socketFactory()));
+
+        baseConfig.getMain().setProxyPort(1081);
+        OkHttpClient client3 = testee.getOkHttpClientBuilder(new URI("http://www.google.de")).build();
+        assertThat(client3.socketFactory(), is(not(sameInstance(client1.socketFactory()))));
+        assertThat(((SockProxySocketFactory) client3.socketFactory()).port, is(1081));
+    }
+
+    @Test
+    public void shouldReuseConnectionsToSameHost() throws Exception {
+        baseConfig.getMain().setVerifySsl(false);
+        MockWebServer server = new MockWebServer();
+        server.useHttps(getServerSslSocketFactory(), false);
+        server.enqueue(new MockResponse().setBody("first"));
+        server.enqueue(new MockResponse().setBody("second"));
+        server.start();
+        try {
+            URI uri = server.url("/api").uri();
+            for (int i = 0; i < 2; i++) {
+                try (ClientHttpResponse response = testee.createRequest(uri, HttpMethod.GET).execute()) {
+                    StreamUtils.copyToString(response.getBody(), StandardCharsets.UTF_8);
+                }
+            }
+            assertThat(server.takeRequest().getSequenceNumber(), is(0));
+            assertThat("Second request uses the same connection", server.takeRequest().getSequenceNumber(), is(1));
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldUseSameSslSocketFactoryForAllRequests() throws URISyntaxException {
+        OkHttpClient client1 = testee.getOkHttpClientBuilder(new URI("https://www.google.de")).build();
+        OkHttpClient client2 = testee.getOkHttpClientBuilder(new URI("https://www.github.com")).build();
+        assertThat(client1.sslSocketFactory(), sameInstance(client2.sslSocketFactory()));
+        assertThat(client1.dns(), sameInstance(client2.dns()));
+    }
+
+    @Test
+    public void shouldKeepIdleConnectionsForAllEnabledIndexers() {
+        assertThat(HydraOkHttp3ClientHttpRequestFactory.getMaxIdleConnections(baseConfig), is(HydraOkHttp3ClientHttpRequestFactory.MIN_IDLE_CONNECTIONS));
+
+        List<IndexerConfig> indexers = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            IndexerConfig indexerConfig = new IndexerConfig();
+            indexerConfig.setHost("https://indexer" + i + ".com");
+            indexers.add(indexerConfig);
+        }
+        indexers.get(0).setState(IndexerConfig.State.DISABLED_USER);
+        baseConfig.setIndexers(indexers);
+        assertThat(HydraOkHttp3ClientHttpRequestFactory.getMaxIdleConnections(baseConfig), is(19 * HydraOkHttp3ClientHttpRequestFactory.IDLE_CONNECTIONS_PER_INDEXER_HOST));
+    }
+
+    @Test
+    public void shouldOnlyReplaceConnectionPoolWhenItNeedsToGrow() {
+        ConnectionPool initialPool = testee.getConnectionPool();
+        testee.resizeConnectionPool(baseConfig);
+        assertThat(testee.getConnectionPool(), sameInstance(initialPool));
+
+        List<IndexerConfig> indexers = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            IndexerConfig indexerConfig = new IndexerConfig();
+            indexerConfig.setHost("https://indexer" + i + ".com");
+            indexers.add(indexerConfig);
+        }
+        baseConfig.setIndexers(indexers);
+        testee.resizeConnectionPool(baseConfig);
+        ConnectionPool grownPool = testee.getConnectionPool();
+        assertThat(grownPool, is(not(sameInstance(initialPool))));
+
+        //Fewer indexers keep the existing pool and its connections
+        baseConfig.setIndexers(new ArrayList<>(indexers.subList(0, 5)));
+        testee.resizeConnectionPool(baseConfig);
+        assertThat(testee.getConnectionPool(), sameInstance(grownPool));
+    }
+
+    private SSLSocketFactory getServerSslSocketFactory() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream inputStream = getClass().getResourceAsStream("localhost.p12")) {
+            keyStore.load(inputStream, "password".toCharArray());
+        }
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, "password".toCharArray());
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
+        return sslContext.getSocketFactory();
+    }
 
-}
\ No newline at end of file
+}
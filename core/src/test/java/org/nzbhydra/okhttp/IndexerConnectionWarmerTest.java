@@ -0,0 +1,117 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.okhttp;
+
+import okhttp3.HttpUrl;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.nzbhydra.config.indexer.IndexerConfig;
+import org.nzbhydra.indexers.Indexer;
+import org.nzbhydra.indexers.IndexerCircuitBreaker;
+import org.nzbhydra.indexers.IndexerRateLimiter;
+import org.nzbhydra.searching.SearchModuleProvider;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class IndexerConnectionWarmerTest {
+
+    @InjectMocks
+    private IndexerConnectionWarmer testee = new IndexerConnectionWarmer();
+
+    @Mock
+    private SearchModuleProvider searchModuleProviderMock;
+    @Mock
+    private IndexerRateLimiter rateLimiterMock;
+
+    private Instant now = Instant.ofEpochSecond(1_000_000);
+    private List<Indexer> indexers = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        testee.clock = Clock.fixed(now, ZoneOffset.UTC);
+        when(rateLimiterMock.getLastCall(any())).thenReturn(Optional.empty());
+        when(rateLimiterMock.getWaitTime(any())).thenReturn(Duration.ZERO);
+        when(searchModuleProviderMock.getEnabledIndexers()).thenReturn(indexers);
+    }
+
+    @Test
+    public void shouldOnlyWarmRecentlyCalledIndexers() {
+        Indexer recent = addIndexer("recent", "https://recent.com/api");
+        Indexer old = addIndexer("old", "https://old.com");
+        addIndexer("never", "https://never.com");
+
+        callAt(recent, now.minusSeconds(60));
+        callAt(old, now.minus(IndexerConnectionWarmer.RECENT_CALL_WINDOW).minusSeconds(1));
+
+        assertThat(testee.getUrlsToWarm()).containsExactly(HttpUrl.parse("https://recent.com/"));
+    }
+
+    @Test
+    public void shouldNotWarmRateLimitedIndexers() {
+        Indexer limited = addIndexer("limited", "https://limited.com");
+        Indexer free = addIndexer("free", "http://free.com:5075");
+
+        callAt(limited, now);
+        callAt(free, now);
+        when(rateLimiterMock.getWaitTime(limited.getConfig())).thenReturn(Duration.ofSeconds(30));
+
+        assertThat(testee.getUrlsToWarm()).containsExactly(HttpUrl.parse("http://free.com:5075/"));
+    }
+
+    @Test
+    public void shouldNotWarmIndexersWithOpenCircuit() {
+        Indexer open = addIndexer("open", "https://open.com");
+        Indexer closed = addIndexer("closed", "https://closed.com");
+        callAt(open, now);
+        callAt(closed, now);
+        open.getCircuitBreaker().recordApiLimitReached("API limit reached");
+
+        assertThat(testee.getUrlsToWarm()).containsExactly(HttpUrl.parse("https://closed.com/"));
+    }
+
+    private Indexer addIndexer(String name, String host) {
+        IndexerConfig config = new IndexerConfig();
+        config.setName(name);
+        config.setHost(host);
+        Indexer indexer = mock(Indexer.class);
+        when(indexer.getConfig()).thenReturn(config);
+        when(indexer.getCircuitBreaker()).thenReturn(new IndexerCircuitBreaker(name, testee.clock, (circuitBreaker, from, to, reason) -> {
+        }));
+        indexers.add(indexer);
+        return indexer;
+    }
+
+    private void callAt(Indexer indexer, Instant instant) {
+        when(rateLimiterMock.getLastCall(indexer.getConfig())).thenReturn(Optional.of(instant));
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.okhttp;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ProxyBypassMatcherTest {
+
+    @Test
+    public void shouldRecognizeLocalAddresses() {
+        ProxyBypassMatcher testee = new ProxyBypassMatcher(true, Collections.emptyList());
+
+        assertThat(testee.isToBeIgnored("localhost")).isTrue();
+        assertThat(testee.isToBeIgnored("127.0.0.1")).isTrue();
+        assertThat(testee.isToBeIgnored("127.0.1.1")).isTrue();
+        assertThat(testee.isToBeIgnored("10.0.240.3")).isTrue();
+        assertThat(testee.isToBeIgnored("172.16.0.1")).isTrue();
+        assertThat(testee.isToBeIgnored("172.31.255.255")).isTrue();
+        assertThat(testee.isToBeIgnored("192.168.240.3")).isTrue();
+        assertThat(testee.isToBeIgnored("[::1]")).isTrue();
+
+        assertThat(testee.isToBeIgnored("172.32.0.1")).isFalse();
+        assertThat(testee.isToBeIgnored("8.8.8.8")).isFalse();
+        assertThat(testee.isToBeIgnored("[2001:db8::1]")).isFalse();
+        assertThat(testee.isToBeIgnored("github.com")).isFalse();
+        assertThat(testee.isToBeIgnored(null)).isFalse();
+    }
+
+    @Test
+    public void shouldNotIgnoreLocalAddressesWhenDisabled() {
+        ProxyBypassMatcher testee = new ProxyBypassMatcher(false, Collections.emptyList());
+
+        assertThat(testee.isToBeIgnored("localhost")).isFalse();
+        assertThat(testee.isToBeIgnored("192.168.1.1")).isFalse();
+        assertThat(testee.isToBeIgnored("[::1]")).isFalse();
+    }
+
+    @Test
+    public void shouldMatchDomainsAndSubdomainWildcards() {
+        ProxyBypassMatcher testee = new ProxyBypassMatcher(false, Arrays.asList("mydomain.com", " GitHub.com ", "*.otherdomain.net", ""));
+
+        assertThat(testee.isToBeIgnored("mydomain.com")).isTrue();
+        assertThat(testee.isToBeIgnored("github.com")).isTrue();
+        assertThat(testee.isToBeIgnored("GITHUB.com")).isTrue();
+        assertThat(testee.isToBeIgnored("subdomain.otherdomain.net")).isTrue();
+        assertThat(testee.isToBeIgnored("a.b.otherDOmain.NET")).isTrue();
+
+        assertThat(testee.isToBeIgnored("sub.mydomain.com")).as("Only wildcards match subdomains").isFalse();
+        assertThat(testee.isToBeIgnored("otherdomain.net")).as("Wildcard requires a subdomain").isFalse();
+        assertThat(testee.isToBeIgnored("subdomain.otherdomain.org")).isFalse();
+        assertThat(testee.isToBeIgnored("somedomain.com")).isFalse();
+        assertThat(testee.isToBeIgnored("com")).isFalse();
+        assertThat(testee.isToBeIgnored("")).isFalse();
+    }
+
+    @Test
+    public void shouldMatchOtherWildcards() {
+        ProxyBypassMatcher testee = new ProxyBypassMatcher(false, Arrays.asList("indexer*.com", "192.168.*", "*domain.org"));
+
+        assertThat(testee.isToBeIgnored("indexer.com")).isTrue();
+        assertThat(testee.isToBeIgnored("indexer1.com")).isTrue();
+        assertThat(testee.isToBeIgnored("192.168.1.1")).isTrue();
+        assertThat(testee.isToBeIgnored("mydomain.org")).isTrue();
+        assertThat(testee.isToBeIgnored("sub.mydomain.org")).isTrue();
+
+        assertThat(testee.isToBeIgnored("myindexer.com")).isFalse();
+        assertThat(testee.isToBeIgnored("10.0.0.1")).isFalse();
+    }
+
+    @Test
+    public void shouldMatchIpRanges() {
+        ProxyBypassMatcher testee = new ProxyBypassMatcher(false, Arrays.asList("100.64.0.0/10", "8.8.8.8/32", "1.2.3.4", "300.0.0.0/8", "1.0.0.0/abc"));
+
+        assertThat(testee.isToBeIgnored("100.64.0.1")).isTrue();
+        assertThat(testee.isToBeIgnored("100.127.255.255")).isTrue();
+        assertThat(testee.isToBeIgnored("8.8.8.8")).isTrue();
+        assertThat(testee.isToBeIgnored("1.2.3.4")).isTrue();
+
+        assertThat(testee.isToBeIgnored("100.128.0.0")).isFalse();
+        assertThat(testee.isToBeIgnored("8.8.4.4")).isFalse();
+        assertThat(testee.isToBeIgnored("1.0.0.1")).isFalse();
+    }
+
+    @Test
+    public void shouldParseIpRanges() {
+        ProxyBypassMatcher.IpRange range = ProxyBypassMatcher.IpRange.parse("10.1.2.3/16");
+        assertThat(range.contains(0x0A010000L)).isTrue();
+        assertThat(range.contains(0x0A01FFFFL)).isTrue();
+        assertThat(range.contains(0x0A020000L)).isFalse();
+
+        assertThat(ProxyBypassMatcher.IpRange.parse("0.0.0.0/0").contains(0xFFFFFFFFL)).isTrue();
+        assertThat(ProxyBypassMatcher.IpRange.parse("10.0.0.0/33")).isNull();
+        assertThat(ProxyBypassMatcher.IpRange.parse("::1/128")).isNull();
+        assertThat(ProxyBypassMatcher.IpRange.parse("example.com/8")).isNull();
+    }
+
+    @Test
+    public void shouldKeepCachedDecisionsBounded() {
+        ProxyBypassMatcher testee = new ProxyBypassMatcher(false, Collections.singletonList("*.example.com"));
+
+        for (int i = 0; i < ProxyBypassMatcher.MAX_CACHED_DECISIONS * 3; i++) {
+            assertThat(testee.isToBeIgnored("host" + i + ".example.com")).isTrue();
+            assertThat(testee.isToBeIgnored("host" + i + ".example.org")).isFalse();
+        }
+        assertThat(testee.getCachedDecisionsCount()).isLessThanOrEqualTo(ProxyBypassMatcher.MAX_CACHED_DECISIONS);
+    }
+
+}
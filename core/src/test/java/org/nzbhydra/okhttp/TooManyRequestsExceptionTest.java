@@ -0,0 +1,37 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.nzbhydra.okhttp;
+
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TooManyRequestsExceptionTest {
+
+    private Instant now = Instant.ofEpochSecond(1_000_000);
+
+    @Test
+    public void shouldParseRetryAfter() {
+        assertThat(TooManyRequestsException.parseRetryAfter("120", now)).contains(now.plusSeconds(120));
+        assertThat(TooManyRequestsException.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT", now)).contains(Instant.parse("2015-10-21T07:28:00Z"));
+        assertThat(TooManyRequestsException.parseRetryAfter(null, now)).isEqualTo(Optional.empty());
+        assertThat(TooManyRequestsException.parseRetryAfter("soon", now)).isEqualTo(Optional.empty());
+    }
+
+}
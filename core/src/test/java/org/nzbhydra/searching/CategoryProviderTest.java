@@ -186,6 +186,26 @@ public class CategoryProviderTest {
         assertThat(foundCategory.getName(), is(category.getName()));
     }
 
+    @Test
+    public void shouldUseChangedCategoriesAfterReinitialization() {
+        testee.baseConfig.getCategoriesConfig().getCategories().clear();
+        Category category = new Category();
+        category.setName("Custom");
+        category.setSubtype(Subtype.MAGAZINE);
+        category.setNewznabCategories(Arrays.asList(Collections.singletonList(3030), Collections.singletonList(100_000)));
+        testee.baseConfig.getCategoriesConfig().getCategories().add(category);
+
+        testee.initialize();
+
+        assertThat(testee.fromSearchNewznabCategories(Arrays.asList(3030), CategoriesConfig.allCategory).getName(), is("Custom"));
+        assertThat(testee.fromSearchNewznabCategories(Arrays.asList(100_000), CategoriesConfig.allCategory).getName(), is("Custom"));
+        assertThat(testee.fromSearchNewznabCategories(Arrays.asList(100_010), CategoriesConfig.allCategory).getName(), is("Custom"));
+        assertThat(testee.fromSearchNewznabCategories(Arrays.asList(4090), CategoriesConfig.allCategory).getName(), is("All"));
+        assertThat(testee.fromResultNewznabCategories(Arrays.asList(4090, 11_000)).getName(), is("N/A"));
+        assertThat(testee.fromSubtype(Subtype.COMIC).isPresent(), is(false));
+        assertThat(testee.fromSubtype(Subtype.MAGAZINE).get().getName(), is("Custom"));
+    }
+
     @Test
     public void shouldFindBySubtype() {
         Optional<Category> animeOptional = testee.fromSubtype(Subtype.ANIME);
@@ -6,6 +6,7 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.internal.util.collections.Sets;
+import org.nzbhydra.api.ApiSearchPrefetcher;
 import org.nzbhydra.config.BaseConfig;
 import org.nzbhydra.config.ConfigProvider;
 import org.nzbhydra.config.SearchSourceRestriction;
@@ -17,16 +18,22 @@ import org.nzbhydra.config.indexer.SearchModuleType;
 import org.nzbhydra.downloading.FileDownloadRepository;
 import org.nzbhydra.indexers.Indexer;
 import org.nzbhydra.indexers.IndexerApiAccessRepository;
+import org.nzbhydra.indexers.IndexerApiAccessType;
+import org.nzbhydra.indexers.IndexerApiAccessWriter;
+import org.nzbhydra.indexers.IndexerCircuitBreaker;
 import org.nzbhydra.indexers.IndexerEntity;
+import org.nzbhydra.indexers.IndexerRateLimiter;
 import org.nzbhydra.mediainfo.InfoProvider;
 import org.nzbhydra.mediainfo.InfoProvider.IdType;
 import org.nzbhydra.searching.dtoseventsenums.DownloadType;
+import org.nzbhydra.searching.searchrequests.InternalData;
 import org.nzbhydra.searching.searchrequests.SearchRequest;
 import org.nzbhydra.searching.searchrequests.SearchRequest.SearchSource;
 import org.springframework.context.ApplicationEventPublisher;
 
 import javax.persistence.EntityManager;
 import javax.persistence.Query;
+import java.math.BigInteger;
 import java.sql.Timestamp;
 import java.time.*;
 import java.time.temporal.ChronoField;
@@ -36,7 +43,9 @@ import java.util.*;
 import static junit.framework.TestCase.*;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 public class IndexerForSearchSelectorTest {
@@ -46,6 +55,8 @@ public class IndexerForSearchSelectorTest {
     @Mock
     private FileDownloadRepository nzbDownloadRepository;
     @Mock
+    private IndexerApiAccessWriter apiAccessWriter;
+    @Mock
     private SearchModuleProvider searchModuleProviderMock;
     @Mock
     private Indexer indexer;
@@ -70,6 +81,8 @@ public class IndexerForSearchSelectorTest {
     private EntityManager entityManagerMock;
     @Mock
     private Query queryMock;
+    @Mock
+    private IndexerRateLimiter rateLimiter;
 
     private Map<Indexer, String> count;
 
@@ -121,14 +134,63 @@ public class IndexerForSearchSelectorTest {
         indexerConfigMock.setDisabledUntil(null);
         assertTrue(testee.checkIndexerStatus(indexer));
 
-        indexerConfigMock.setState(IndexerConfig.State.DISABLED_SYSTEM_TEMPORARY);
-        indexerConfigMock.setDisabledUntil(Instant.now().plus(1, ChronoUnit.DAYS).toEpochMilli());
-        assertFalse(testee.checkIndexerStatus(indexer));
-
         indexerConfigMock.setState(IndexerConfig.State.DISABLED_SYSTEM);
         assertFalse(testee.checkIndexerStatus(indexer));
     }
 
+    @Test
+    public void shouldCheckRateLimit() {
+        when(searchingConfig.getTimeout()).thenReturn(30);
+        when(rateLimiter.getWaitTime(indexerConfigMock)).thenReturn(Duration.ZERO);
+        assertTrue(testee.checkRateLimit(indexer));
+
+        //Search will wait for the rate limit
+        when(rateLimiter.getWaitTime(indexerConfigMock)).thenReturn(Duration.ofSeconds(5));
+        assertTrue(testee.checkRateLimit(indexer));
+
+        when(searchingConfig.isSkipRateLimitedIndexers()).thenReturn(true);
+        assertFalse(testee.checkRateLimit(indexer));
+
+        //Waiting longer than the timeout doesn't make sense
+        when(searchingConfig.isSkipRateLimitedIndexers()).thenReturn(false);
+        when(rateLimiter.getWaitTime(indexerConfigMock)).thenReturn(Duration.ofSeconds(60));
+        assertFalse(testee.checkRateLimit(indexer));
+    }
+
+    @Test
+    public void shouldCheckPrefetchLimit() {
+        InternalData internalData = new InternalData();
+        when(searchRequest.getInternalData()).thenReturn(internalData);
+        indexerConfigMock.setPrefetchLimit(10);
+        when(queryMock.getSingleResult()).thenReturn(BigInteger.valueOf(10));
+        //Only prefetches are limited
+        assertTrue(testee.checkPrefetchLimit(indexer));
+        verify(entityManagerMock, never()).createNativeQuery(anyString());
+
+        internalData.setPrefetch(true);
+        assertFalse(testee.checkPrefetchLimit(indexer));
+        verify(queryMock).setParameter("userAgent", ApiSearchPrefetcher.PREFETCH_USER_AGENT);
+
+        when(queryMock.getSingleResult()).thenReturn(BigInteger.valueOf(9));
+        assertTrue(testee.checkPrefetchLimit(indexer));
+    }
+
+    @Test
+    public void shouldCheckCircuitBreaker() {
+        IndexerCircuitBreaker circuitBreaker = new IndexerCircuitBreaker("indexer", Clock.systemUTC(), null);
+        when(indexer.getCircuitBreaker()).thenReturn(circuitBreaker);
+        assertTrue(testee.checkCircuitBreaker(indexer));
+
+        circuitBreaker.restoreOpen(Instant.now().plus(1, ChronoUnit.DAYS), 1);
+        assertFalse(testee.checkCircuitBreaker(indexer));
+        assertThat(testee.notSelectedIndersWithReason).containsKey(indexer);
+
+        //First search after the open period is the trial, the next one must not wait for it
+        circuitBreaker.restoreOpen(Instant.now().minus(1, ChronoUnit.MINUTES), 1);
+        assertTrue(testee.checkCircuitBreaker(indexer));
+        assertFalse(testee.checkCircuitBreaker(indexer));
+    }
+
     @Test
     public void shouldCheckForCategory() {
         when(searchRequest.getCategory()).thenReturn(category);
@@ -222,6 +284,16 @@ public class IndexerForSearchSelectorTest {
         verify(entityManagerMock).createNativeQuery(anyString());
     }
 
+    @Test
+    public void shouldCountQueuedApiAccessesForHitLimit() {
+        indexerConfigMock.setHitLimit(2);
+        when(queryMock.getResultList()).thenReturn(Arrays.asList(Timestamp.from(Instant.now().minus(10, ChronoUnit.MINUTES))));
+        when(apiAccessWriter.getQueuedAccessTimes(anyInt(), eq(IndexerApiAccessType.SEARCH))).thenReturn(Arrays.asList(Instant.now().minus(10, ChronoUnit.MILLIS)));
+        boolean result = testee.checkIndexerHitLimit(indexer);
+        assertFalse(result);
+        verify(apiAccessWriter, never()).flush();
+    }
+
     @Test
     public void shouldIgnoreDownloadLimitIfNotYetReached() {
         indexerConfigMock.setDownloadLimit(10);
@@ -0,0 +1,148 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.searching;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.Before;
+import org.junit.Test;
+import org.nzbhydra.searching.SearchStatePusher.SearchStateEvent;
+import org.nzbhydra.searching.SearchWeb.SearchState;
+import org.nzbhydra.searching.dtoseventsenums.IndexerSearchFinishedEvent;
+import org.nzbhydra.searching.dtoseventsenums.IndexerSelectionEvent;
+import org.nzbhydra.searching.dtoseventsenums.SearchMessageEvent;
+import org.nzbhydra.searching.dtoseventsenums.SearchType;
+import org.nzbhydra.searching.searchrequests.SearchRequest;
+import org.nzbhydra.searching.searchrequests.SearchRequest.SearchSource;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SearchStatePusherTest {
+
+    private List<String> sentEventNames = new ArrayList<>();
+    private List<SearchStateEvent> sentEvents = new ArrayList<>();
+    private boolean completed;
+    private Runnable onFirstSend;
+
+    private SearchStatePusher testee = new SearchStatePusher() {
+        @Override
+        protected SseEmitter createEmitter() {
+            return new SseEmitter() {
+                @Override
+                public void send(SseEventBuilder builder) {
+                    Set<DataWithMediaType> dataWithMediaTypes = builder.build();
+                    String eventString = (String) dataWithMediaTypes.iterator().next().getData();
+                    sentEventNames.add(eventString.substring("event:".length(), eventString.indexOf('\n')));
+                    for (DataWithMediaType dataWithMediaType : dataWithMediaTypes) {
+                        if (dataWithMediaType.getData() instanceof SearchStateEvent) {
+                            sentEvents.add((SearchStateEvent) dataWithMediaType.getData());
+                        }
+                    }
+                    if (onFirstSend != null) {
+                        Runnable runnable = onFirstSend;
+                        onFirstSend = null;
+                        runnable.run();
+                    }
+                }
+
+                @Override
+                public synchronized void complete() {
+                    completed = true;
+                }
+            };
+        }
+    };
+
+    private SearchRequest searchRequest = new SearchRequest(SearchSource.INTERNAL, SearchType.SEARCH, 0, 100);
+
+    @Before
+    public void setUp() {
+        testee.executor = MoreExecutors.newDirectExecutorService();
+        searchRequest.setSearchRequestId(1L);
+    }
+
+    @Test
+    public void shouldPushSearchProgress() {
+        SearchState searchState = new SearchState();
+        searchState.getMessages().add("Picking indexers");
+        testee.subscribe(1L, searchState);
+        assertThat(sentEventNames).containsExactly("state");
+        assertThat(sentEvents.get(0).getMessages()).containsExactly("Picking indexers");
+
+        testee.handleIndexerSelectionEvent(new IndexerSelectionEvent(searchRequest, 2));
+        testee.handleSearchMessageEvent(new SearchMessageEvent(searchRequest, "Searching indexer1"));
+        testee.handleSearchMessageEvent(new SearchMessageEvent(searchRequest, "Searching indexer1"));
+        testee.handleIndexerSearchFinishedEvent(new IndexerSearchFinishedEvent(searchRequest));
+        assertThat(sentEventNames).containsExactly("state", "indexerSelection", "message", "message", "indexerFinished");
+        assertThat(sentEvents.get(2).getMessages()).containsExactly("Searching indexer1");
+        assertThat(sentEvents.get(3).getMessages()).as("Message was already sent").isEmpty();
+        assertThat(sentEvents.get(4).getIndexersSelected()).isEqualTo(2);
+        assertThat(sentEvents.get(4).getIndexersFinished()).isEqualTo(1);
+        assertThat(completed).isFalse();
+
+        testee.searchFinished(1L);
+        assertThat(sentEventNames).endsWith("searchFinished");
+        assertThat(sentEvents.get(5).isSearchFinished()).isTrue();
+        assertThat(completed).isTrue();
+
+        testee.handleSearchMessageEvent(new SearchMessageEvent(searchRequest, "Too late"));
+        assertThat(sentEvents).hasSize(6);
+    }
+
+    @Test
+    public void shouldDropOldestEventsForSlowClient() {
+        testee.subscribe(1L, null);
+        sentEvents.clear();
+        //Events are published while the first event is being sent
+        onFirstSend = () -> {
+            for (int i = 0; i < SearchStatePusher.MAX_BUFFERED_EVENTS + 10; i++) {
+                testee.handleIndexerSearchFinishedEvent(new IndexerSearchFinishedEvent(searchRequest));
+            }
+        };
+        testee.handleIndexerSelectionEvent(new IndexerSelectionEvent(searchRequest, 100));
+
+        assertThat(sentEvents).hasSize(SearchStatePusher.MAX_BUFFERED_EVENTS + 1);
+        assertThat(sentEvents.get(1).getIndexersFinished()).isEqualTo(11);
+        assertThat(sentEvents.get(sentEvents.size() - 1).getIndexersFinished()).isEqualTo(SearchStatePusher.MAX_BUFFERED_EVENTS + 10);
+    }
+
+    @Test
+    public void shouldFinishLateSubscriptionToFinishedSearch() {
+        testee.searchFinished(1L);
+
+        //The search's state was already evicted
+        testee.subscribe(1L, null);
+
+        assertThat(sentEventNames).containsExactly("state", "searchFinished");
+        assertThat(sentEvents.get(1).isSearchFinished()).isTrue();
+        assertThat(completed).isTrue();
+    }
+
+    @Test
+    public void shouldOnlyPushToSubscribersOfSearch() {
+        testee.subscribe(2L, null);
+        testee.handleSearchMessageEvent(new SearchMessageEvent(searchRequest, "Searching indexer1"));
+        assertThat(sentEventNames).containsExactly("state");
+        assertThat(testee.getNumberOfSubscriptions(1L)).isEqualTo(0);
+        assertThat(testee.getNumberOfSubscriptions(2L)).isEqualTo(1);
+    }
+
+}
@@ -0,0 +1,79 @@
+package org.nzbhydra.searching.cleanup;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ChunkedDeleterTest {
+
+    private Connection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        connection = DriverManager.getConnection("jdbc:h2:mem:chunkeddeletertest", "sa", "");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("create table SEARCHRESULT (ID BIGINT PRIMARY KEY, FIRST_FOUND INTEGER)");
+            statement.execute("create table INDEXERNZBDOWNLOAD (ID INTEGER PRIMARY KEY, SEARCH_RESULT_ID BIGINT)");
+            for (int i = 1; i <= 250; i++) {
+                statement.execute("insert into SEARCHRESULT values (" + i + ", " + i + ")");
+            }
+            statement.execute("insert into INDEXERNZBDOWNLOAD values (1, 50)");
+            statement.execute("insert into INDEXERNZBDOWNLOAD values (2, 150)");
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("drop all objects");
+        }
+        connection.close();
+    }
+
+    @Test
+    public void shouldDeleteInBatchesAndKeepReferencedRows() throws Exception {
+        ChunkedDeleter testee = new ChunkedDeleter(connection, 30, 0);
+
+        ChunkedDeleter.DeletionStatistics statistics = testee.delete("SEARCHRESULT", "FIRST_FOUND", 200,
+                "NOT EXISTS (select 1 from INDEXERNZBDOWNLOAD D where D.SEARCH_RESULT_ID = SEARCHRESULT.ID)");
+
+        //IDs 1 to 199 minus the two referenced ones
+        assertThat(statistics.getRowsDeleted(), is(197));
+        assertThat(statistics.getBatches(), is(7));
+        assertThat(connection.getAutoCommit(), is(true));
+        try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery("select count(*) from SEARCHRESULT")) {
+            resultSet.next();
+            assertThat(resultSet.getInt(1), is(53));
+        }
+    }
+
+    @Test
+    public void shouldDeleteRowsWithSameKeyInOneBatch() throws Exception {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("update SEARCHRESULT set FIRST_FOUND = 10 where ID <= 50");
+        }
+
+        ChunkedDeleter.DeletionStatistics statistics = new ChunkedDeleter(connection, 30, 0).delete("SEARCHRESULT", "FIRST_FOUND", 100, null);
+
+        //The first batch contains all 50 rows with FIRST_FOUND = 10, then 51 to 99 in two batches
+        assertThat(statistics.getRowsDeleted(), is(99));
+        assertThat(statistics.getBatches(), is(3));
+    }
+
+    @Test
+    public void shouldHandleNothingToDelete() throws Exception {
+        ChunkedDeleter.DeletionStatistics statistics = new ChunkedDeleter(connection, 30, 0).delete("SEARCHRESULT", "FIRST_FOUND", 0, null);
+
+        assertThat(statistics.getRowsDeleted(), is(0));
+        assertThat(statistics.getBatches(), is(0));
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.nzbhydra.searching.dtoseventsenums;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CompactAttributeMapTest {
+
+    @Test
+    public void shouldBehaveLikeMap() {
+        Map<String, String> testee = new CompactAttributeMap(1);
+        testee.put("size", "100");
+        testee.put("grabs", "2");
+        testee.put("size", "200");
+        testee.put("files", "3");
+
+        Map<String, String> expected = new HashMap<>();
+        expected.put("size", "200");
+        expected.put("grabs", "2");
+        expected.put("files", "3");
+        assertThat(testee).isEqualTo(expected);
+        assertThat(testee.hashCode()).isEqualTo(expected.hashCode());
+        assertThat(testee.keySet()).containsExactly("size", "grabs", "files");
+        assertThat(testee.get("nfo")).isNull();
+        assertThat(testee.get(null)).isNull();
+
+        assertThat(testee.remove("grabs")).isEqualTo("2");
+        assertThat(testee).containsOnlyKeys("size", "files");
+        assertThat(testee.get("files")).isEqualTo("3");
+    }
+
+    @Test
+    public void shouldRemoveAndUpdateViaEntries() {
+        Map<String, String> testee = new CompactAttributeMap();
+        testee.put("a", "1");
+        testee.put("b", "2");
+        testee.put("c", "3");
+
+        Iterator<Map.Entry<String, String>> iterator = testee.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, String> entry = iterator.next();
+            if (entry.getKey().equals("b")) {
+                iterator.remove();
+            } else {
+                entry.setValue(entry.getValue() + "0");
+            }
+        }
+
+        assertThat(testee).hasSize(2).containsEntry("a", "10").containsEntry("c", "30");
+    }
+
+}
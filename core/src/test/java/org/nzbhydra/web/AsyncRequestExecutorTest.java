@@ -0,0 +1,108 @@
+/*
+ *  (C) Copyright 2017 TheOtherP (theotherp@gmx.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.nzbhydra.web;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class AsyncRequestExecutorTest {
+
+    private AsyncRequestExecutor testee = new AsyncRequestExecutor();
+
+    @Before
+    public void setUp() {
+        testee.numberOfThreads = 2;
+        testee.queueSize = 1;
+        testee.retryAfterSeconds = 5;
+        testee.init();
+    }
+
+    @After
+    public void tearDown() {
+        testee.shutdown();
+        RequestContextHolder.resetRequestAttributes();
+        SessionStorage.username.remove();
+    }
+
+    @Test
+    public void shouldExecuteWithContextOfRequest() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("User-Agent", "sonarr");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        SessionStorage.username.set("someuser");
+
+        DeferredResult<String> result = testee.execute(() -> SessionStorage.username.get() + ":" + ((ServletRequestAttributes) RequestContextHolder.getRequestAttributes()).getRequest().getHeader("User-Agent"));
+
+        assertThat(awaitResult(result)).isEqualTo("someuser:sonarr");
+    }
+
+    @Test
+    public void shouldSetExceptionAsErrorResult() throws Exception {
+        IOException exception = new IOException("indexer down");
+        DeferredResult<String> result = testee.execute(() -> {
+            throw exception;
+        });
+
+        assertThat(awaitResult(result)).isSameAs(exception);
+    }
+
+    @Test
+    public void shouldRejectWhenThreadsAndQueueAreBusy() throws Exception {
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 2; i++) {
+            testee.execute(() -> {
+                started.countDown();
+                return release.await(10, TimeUnit.SECONDS);
+            });
+        }
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        DeferredResult<Boolean> queued = testee.execute(() -> true);
+
+        try {
+            testee.execute(() -> true);
+            fail("Request should've been rejected");
+        } catch (ServerBusyException e) {
+            assertThat(e.getRetryAfterSeconds()).isEqualTo(5);
+        }
+
+        release.countDown();
+        assertThat(awaitResult(queued)).isEqualTo(true);
+        //Capacity is available again
+        assertThat(awaitResult(testee.execute(() -> true))).isEqualTo(true);
+    }
+
+    private static Object awaitResult(DeferredResult<?> result) throws InterruptedException {
+        for (int i = 0; i < 500 && !result.hasResult(); i++) {
+            Thread.sleep(10);
+        }
+        assertThat(result.hasResult()).isTrue();
+        return result.getResult();
+    }
+
+}
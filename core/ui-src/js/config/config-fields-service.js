@@ -499,6 +499,51 @@ function ConfigFields($injector) {
                                 }
                             }
                         },
+                        {
+                            key: 'adaptiveTimeouts',
+                            type: 'horizontalSwitch',
+                            templateOptions: {
+                                type: 'switch',
+                                label: 'Adaptive timeouts',
+                                help: 'Use twice the time in which an indexer usually answers (99th percentile of the last calls) as timeout. The timeout above is the maximum.'
+                            }
+                        },
+                        {
+                            key: 'hedgeRequests',
+                            type: 'horizontalSwitch',
+                            templateOptions: {
+                                type: 'switch',
+                                label: 'Hedge requests',
+                                help: 'Repeat a call to an indexer without API hit limit when it takes longer than 95% of the last calls and use the first response.'
+                            }
+                        },
+                        {
+                            key: 'skipRateLimitedIndexers',
+                            type: 'horizontalSwitch',
+                            templateOptions: {
+                                type: 'switch',
+                                label: 'Skip rate limited indexers',
+                                help: 'Don\'t search indexers which have reached their rate limit. If disabled searches wait for the rate limit (up to the timeout).'
+                            }
+                        },
+                        {
+                            key: 'warmIndexerConnections',
+                            type: 'horizontalSwitch',
+                            templateOptions: {
+                                type: 'switch',
+                                label: 'Keep connections warm',
+                                help: 'Regularly open connections to indexers used within the last hour (without API hits) so that searches don\'t have to wait for connections to be established. Rate limited indexers are skipped.'
+                            }
+                        },
+                        {
+                            key: 'prefetchRecurringSearches',
+                            type: 'horizontalSwitch',
+                            templateOptions: {
+                                type: 'switch',
+                                label: 'Prefetch recurring searches',
+                                help: 'Learn when tools regularly poll for the latest releases (searches without query) and execute these searches shortly before the next poll so that it can be answered right away. Use the indexers\' prefetch limit to restrict the number of additional API hits.'
+                            }
+                        },
                         {
                             key: 'ignoreTemporarilyDisabled',
                             type: 'horizontalSwitch',
@@ -1267,6 +1312,33 @@ function ConfigFields($injector) {
                                 label: 'Update statuses',
                                 help: "Query your downloader for status updates of downloads"
                             }
+                        },
+                        {
+                            key: 'nzbCacheSizeMb',
+                            type: 'horizontalInput',
+                            templateOptions: {
+                                type: 'number',
+                                label: 'NZB cache size',
+                                addonRight: {
+                                    text: 'MB'
+                                },
+                                min: 0,
+                                help: 'Proxied NZBs are cached on disk so that repeated downloads don\'t access the indexer again. Set to 0 to disable.'
+                            }
+                        },
+                        {
+                            key: 'nzbCacheMaxAgeHours',
+                            type: 'horizontalInput',
+                            hideExpression: 'model.nzbCacheSizeMb === 0',
+                            templateOptions: {
+                                type: 'number',
+                                label: 'NZB cache max age',
+                                addonRight: {
+                                    text: 'hours'
+                                },
+                                min: 1,
+                                help: 'Cached NZBs older than this are deleted.'
+                            }
                         }
                     ]
                 },
@@ -169,6 +169,43 @@ function getIndexerBoxFields(indexerModel, parentModel, isInitial, CategoriesSer
                 help: 'Supercedes the general timeout in "Searching"'
             }
         },
+        {
+            key: 'requestsPerMinute',
+            type: 'horizontalInput',
+            templateOptions: {
+                type: 'number',
+                label: 'Rate limit',
+                help: 'Maximum number of requests per minute, including searches, caps checks and downloads. Leave empty for no limit'
+            },
+            validators: {
+                greaterThanZero: {
+                    expression: function ($viewValue, $modelValue) {
+                        var value = $modelValue || $viewValue;
+                        return angular.isUndefined(value) || value === null || value === "" || value > 0;
+                    },
+                    message: '"Value must be greater than 0"'
+                }
+            }
+        },
+        {
+            key: 'requestBurst',
+            type: 'horizontalInput',
+            hideExpression: '!model.requestsPerMinute',
+            templateOptions: {
+                type: 'number',
+                label: 'Rate limit burst',
+                help: 'Number of requests which may be made at once before the rate limit applies. Defaults to 1'
+            },
+            validators: {
+                greaterThanZero: {
+                    expression: function ($viewValue, $modelValue) {
+                        var value = $modelValue || $viewValue;
+                        return angular.isUndefined(value) || value === null || value === "" || value > 0;
+                    },
+                    message: '"Value must be greater than 0"'
+                }
+            }
+        },
         {
             key: 'schedule',
             type: 'horizontalChips',
@@ -217,6 +254,24 @@ function getIndexerBoxFields(indexerModel, parentModel, isInitial, CategoriesSer
                         message: '"Value must be greater than 0"'
                     }
                 }
+            },
+            {
+                key: 'prefetchLimit',
+                type: 'horizontalInput',
+                templateOptions: {
+                    type: 'number',
+                    label: 'Prefetch limit',
+                    help: 'Maximum number of prefetched searches in 24 hours (see "Prefetch recurring searches" in the searching config). Prefetches also count towards the API hit limit. Leave empty for no limit'
+                },
+                validators: {
+                    greaterThanZero: {
+                        expression: function ($viewValue, $modelValue) {
+                            var value = $modelValue || $viewValue;
+                            return angular.isUndefined(value) || value === null || value === "" || value > 0;
+                        },
+                        message: '"Value must be greater than 0"'
+                    }
+                }
             }
         );
         fieldset.push(
@@ -534,6 +589,9 @@ angular.module('nzbhydraApp').controller('IndexerConfigSelectionBoxInstanceContr
                 name: null,
                 password: null,
                 preselect: true,
+                prefetchLimit: null,
+                requestBurst: null,
+                requestsPerMinute: null,
                 score: 0,
                 searchModuleType: 'NEWZNAB',
                 showOnSearch: true,
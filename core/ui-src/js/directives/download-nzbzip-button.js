@@ -22,8 +22,6 @@ function downloadNzbzipButton() {
                 var values = _.map($scope.searchResults, function (value) {
                     return value.searchResultId;
                 });
-                var link = "internalapi/nzbzip";
-
                 var searchTitle;
                 if (angular.isDefined($scope.searchTitle)) {
                     searchTitle = " for " + $scope.searchTitle.replace("[^a-zA-Z0-9.-]", "_");
@@ -31,25 +29,21 @@ function downloadNzbzipButton() {
                     searchTitle = "";
                 }
                 var filename = "NZBHydra NZBs" + searchTitle + ".zip";
-                $http({method: "post", url: link, data: values}).then(function (response) {
-                    if (response.data.successful && response.data.zip !== null) {
-                        //FileDownloadService.sendFile($base64.decode(response.zip), filename);
-                        link = "internalapi/nzbzipDownload";
-                        FileDownloadService.downloadFile(link, filename, "POST", response.data.zipFilepath);
+                //NZBs which could not be downloaded are listed in a file in the ZIP
+                FileDownloadService.downloadFile("internalapi/nzbzip", filename, "POST", values).then(function (response) {
+                    //The IDs of the NZBs which were actually added are only known after the ZIP was written
+                    $http.get("internalapi/nzbzip/" + response.headers("X-NZBHydra-Zip-Id") + "/added").then(function (addedResponse) {
+                        var addedIds = addedResponse.data;
                         if (angular.isDefined($scope.callback)) {
-                            $scope.callback({result: response.data.addedIds});
+                            $scope.callback({result: addedIds});
                         }
-                        if (response.data.missedIds.length > 0) {
-                            growl.error("Unable to add " + response.missedIds.length + " out of " + values.length + " NZBs to ZIP");
+                        if (addedIds.length < values.length) {
+                            growl.error("Unable to add " + (values.length - addedIds.length) + " out of " + values.length + " NZBs to ZIP");
                         }
-                    } else {
-                        growl.error(response.data.message);
-                    }
-                }, function (data, status, headers, config) {
-                    growl.error(status);
+                    });
                 });
             }
-        }
+        };
     }
 }
 
@@ -2,7 +2,7 @@ angular
     .module('nzbhydraApp')
     .factory('FileDownloadService', FileDownloadService);
 
-function FileDownloadService($http, growl) {
+function FileDownloadService($http, growl, $q) {
 
     var service = {
         downloadFile: downloadFile
@@ -25,8 +25,10 @@ function FileDownloadService($http, growl) {
             document.body.appendChild(a);
             a.click();
             document.body.removeChild(a);
+            return response;
         }, function (data, status, headers, config) {
             growl.error(status);
+            return $q.reject(status);
         });
 
     }
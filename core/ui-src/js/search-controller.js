@@ -365,37 +365,79 @@ angular
 function SearchUpdateModalInstanceCtrl($scope, $interval, SearchService, $uibModalInstance, searchRequestId, onCancel) {
 
     var updateSearchMessagesInterval = undefined;
+    var searchEvents = undefined;
     var loggedSearchFinished = false;
     $scope.messages = [];
     $scope.indexerSelectionFinished = false;
     $scope.indexersSelected = 0;
     $scope.indexersFinished = 0;
 
-    updateSearchMessagesInterval = $interval(function () {
-        SearchService.getSearchState(searchRequestId).then(function (response) {
-                $scope.indexerSelectionFinished = response.data.indexerSelectionFinished;
-                $scope.searchFinished = response.data.searchFinished;
-                $scope.indexersSelected = response.data.indexersSelected;
-                $scope.indexersFinished = response.data.indexersFinished;
-                $scope.progressMax = response.data.indexersSelected;
-                if ($scope.progressMax > response.data.indexersSelected) {
-                    $scope.progressMax = ">=" + response.data.indexersSelected;
-                }
-                if (response.data.messages) {
-                    $scope.messages = response.data.messages;
+    function updateState(state) {
+        $scope.indexerSelectionFinished = state.indexerSelectionFinished;
+        $scope.searchFinished = state.searchFinished;
+        $scope.indexersSelected = state.indexersSelected;
+        $scope.indexersFinished = state.indexersFinished;
+        $scope.progressMax = state.indexersSelected;
+        if ($scope.progressMax > state.indexersSelected) {
+            $scope.progressMax = ">=" + state.indexersSelected;
+        }
+        if ($scope.searchFinished && !loggedSearchFinished) {
+            $scope.messages.push("Finished searching. Preparing results...");
+            loggedSearchFinished = true;
+        }
+    }
+
+    function pollSearchState() {
+        updateSearchMessagesInterval = $interval(function () {
+            SearchService.getSearchState(searchRequestId).then(function (response) {
+                    if (response.data.messages) {
+                        $scope.messages = response.data.messages;
+                    }
+                    updateState(response.data);
+                },
+                function () {
+                    $interval.cancel(updateSearchMessagesInterval);
                 }
-                if ($scope.searchFinished && !loggedSearchFinished) {
-                    $scope.messages.push("Finished searching. Preparing results...");
-                    loggedSearchFinished = true;
+            );
+        }, 100);
+    }
+
+    function closeSearchEvents() {
+        if (angular.isDefined(searchEvents)) {
+            searchEvents.close();
+            searchEvents = undefined;
+        }
+    }
+
+    if (window.EventSource) {
+        //The server pushes the search progress, polling is only used if that doesn't work
+        searchEvents = SearchService.getSearchEvents(searchRequestId);
+        _.each(["state", "message", "indexerSelection", "indexerFinished", "searchFinished"], function (eventName) {
+            searchEvents.addEventListener(eventName, function (event) {
+                var state = JSON.parse(event.data);
+                $scope.$applyAsync(function () {
+                    _.each(state.messages, function (message) {
+                        $scope.messages.push(message);
+                    });
+                    updateState(state);
+                });
+                if (state.searchFinished) {
+                    closeSearchEvents();
                 }
-            },
-            function () {
-                $interval.cancel(updateSearchMessagesInterval);
+            });
+        });
+        searchEvents.onerror = function () {
+            closeSearchEvents();
+            if (!loggedSearchFinished) {
+                pollSearchState();
             }
-        );
-    }, 100);
+        };
+    } else {
+        pollSearchState();
+    }
 
     $scope.cancelSearch = function () {
+        closeSearchEvents();
         if (angular.isDefined(updateSearchMessagesInterval)) {
             $interval.cancel(updateSearchMessagesInterval);
         }
@@ -405,6 +447,7 @@ function SearchUpdateModalInstanceCtrl($scope, $interval, SearchService, $uibMod
 
 
     $scope.$on('$destroy', function () {
+        closeSearchEvents();
         if (angular.isDefined(updateSearchMessagesInterval)) {
             $interval.cancel(updateSearchMessagesInterval);
         }
@@ -175,6 +175,11 @@ public class MockNewznab {
             Thread.sleep(5000);
         }
 
+        if (params.getQ() != null && params.getQ().equals("bimodal")) {
+            //Mostly fast with a few very slow responses, to test adaptive timeouts and hedged requests
+            Thread.sleep(new Random().nextInt(10) == 0 ? 8000 : 100 + new Random().nextInt(100));
+        }
+
 
         if (params.getQ() != null && params.getQ().contains("movies")) {
             NewznabXmlRoot rssRoot = NewznabMockBuilder.generateResponse(0, 100, itemTitleBase, false, Arrays.asList("cam", "ts", "blu-ray 2160p", "web-dl 1080p", "bluray 1080p", "3d bluray"));
@@ -0,0 +1,113 @@
+package org.nzbhydra.mockserver.loadtest;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.ByteStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal HTTP client for the Hydra instance under test. Uses plain {@link HttpURLConnection}s (with keep-alive) so that
+ * the measured latencies contain as little client overhead as possible.
+ */
+public class HydraClient {
+
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<Map<String, Object>>() {
+    };
+    private static final String CSRF_COOKIE = "XSRF-TOKEN";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String hydraUrl;
+    private final String authorization;
+    private String csrfToken;
+
+    public HydraClient(LoadTestProperties properties) {
+        hydraUrl = properties.getHydraUrl().replaceAll("/$", "");
+        if (properties.getHydraUsername() != null) {
+            String credentials = properties.getHydraUsername() + ":" + properties.getHydraPassword();
+            authorization = "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+        } else {
+            authorization = null;
+        }
+    }
+
+    public Map<String, Object> getConfig() throws IOException {
+        HttpURLConnection connection = open("/internalapi/config");
+        String response = readResponse(connection);
+        //Hydra may use CSRF protection in which case the token from the cookie must be sent when changing the config
+        List<String> cookies = connection.getHeaderFields().getOrDefault("Set-Cookie", Collections.emptyList());
+        for (String cookie : cookies) {
+            if (cookie.startsWith(CSRF_COOKIE + "=")) {
+                csrfToken = cookie.substring(CSRF_COOKIE.length() + 1).split(";")[0];
+            }
+        }
+        return objectMapper.readValue(response, MAP_TYPE);
+    }
+
+    public void setConfig(Map<String, Object> config) throws IOException {
+        HttpURLConnection connection = open("/internalapi/config");
+        connection.setRequestMethod("PUT");
+        connection.setRequestProperty("Content-Type", "application/json");
+        connection.setDoOutput(true);
+        if (csrfToken != null) {
+            connection.setRequestProperty("Cookie", CSRF_COOKIE + "=" + csrfToken);
+            connection.setRequestProperty("X-XSRF-TOKEN", csrfToken);
+        }
+        try (OutputStream outputStream = connection.getOutputStream()) {
+            objectMapper.writeValue(outputStream, config);
+        }
+        Map<String, Object> result = objectMapper.readValue(readResponse(connection), MAP_TYPE);
+        if (!Boolean.TRUE.equals(result.get("ok"))) {
+            throw new IOException("Hydra rejected the config: " + result.get("errorMessages"));
+        }
+    }
+
+    public Map<String, Object> getJvmStats() throws IOException {
+        return objectMapper.readValue(get("/internalapi/debuginfos/jvmstats"), MAP_TYPE);
+    }
+
+    /**
+     * Executes a GET request and reads the complete response.
+     *
+     * @throws IOException If the request failed or returned a status other than 2xx
+     */
+    public String get(String pathAndQuery) throws IOException {
+        return readResponse(open(pathAndQuery));
+    }
+
+    private HttpURLConnection open(String pathAndQuery) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(hydraUrl + pathAndQuery).openConnection();
+        connection.setConnectTimeout(10_000);
+        connection.setReadTimeout(120_000);
+        if (authorization != null) {
+            connection.setRequestProperty("Authorization", authorization);
+        }
+        return connection;
+    }
+
+    private String readResponse(HttpURLConnection connection) throws IOException {
+        int status = connection.getResponseCode();
+        if (status < 200 || status >= 300) {
+            //Read the error stream so that the connection can be reused
+            try (InputStream errorStream = connection.getErrorStream()) {
+                if (errorStream != null) {
+                    ByteStreams.exhaust(errorStream);
+                }
+            }
+            throw new IOException("Request to " + connection.getURL() + " returned status " + status);
+        }
+        try (InputStream inputStream = connection.getInputStream()) {
+            return new String(ByteStreams.toByteArray(inputStream), StandardCharsets.UTF_8);
+        }
+    }
+
+}
@@ -0,0 +1,43 @@
+package org.nzbhydra.mockserver.loadtest;
+
+import java.util.Random;
+
+public enum LatencyDistribution {
+
+    FIXED {
+        @Override
+        public long sample(Random random, long meanMillis) {
+            return meanMillis;
+        }
+    },
+    UNIFORM {
+        @Override
+        public long sample(Random random, long meanMillis) {
+            return (long) (random.nextDouble() * 2 * meanMillis);
+        }
+    },
+    EXPONENTIAL {
+        @Override
+        public long sample(Random random, long meanMillis) {
+            return (long) (-meanMillis * Math.log(1 - random.nextDouble()));
+        }
+    },
+    /**
+     * Most responses are close to the mean but with a long tail of slow responses, like real indexers.
+     */
+    LOG_NORMAL {
+        @Override
+        public long sample(Random random, long meanMillis) {
+            if (meanMillis <= 0) {
+                return 0;
+            }
+            double mu = Math.log(meanMillis) - LOG_NORMAL_SIGMA * LOG_NORMAL_SIGMA / 2;
+            return (long) Math.exp(mu + LOG_NORMAL_SIGMA * random.nextGaussian());
+        }
+    };
+
+    private static final double LOG_NORMAL_SIGMA = 0.75;
+
+    public abstract long sample(Random random, long meanMillis);
+
+}
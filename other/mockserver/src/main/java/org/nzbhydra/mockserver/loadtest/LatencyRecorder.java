@@ -0,0 +1,47 @@
+package org.nzbhydra.mockserver.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Records all latencies of one request type so that exact percentiles can be calculated at the end of a phase.
+ */
+public class LatencyRecorder {
+
+    private long[] latenciesMicros = new long[1024];
+    private int count;
+    private int errors;
+
+    public synchronized void record(long latencyMicros) {
+        if (count == latenciesMicros.length) {
+            latenciesMicros = Arrays.copyOf(latenciesMicros, count * 2);
+        }
+        latenciesMicros[count++] = latencyMicros;
+    }
+
+    public synchronized void recordError() {
+        errors++;
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    public synchronized int getErrors() {
+        return errors;
+    }
+
+    /**
+     * @param percentile Between 0 and 100
+     * @return The latency in milliseconds below which the given percentage of requests were answered (nearest rank)
+     */
+    public synchronized double getPercentileMillis(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latenciesMicros, count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * count);
+        return sorted[Math.max(0, Math.min(count, rank) - 1)] / 1000D;
+    }
+
+}
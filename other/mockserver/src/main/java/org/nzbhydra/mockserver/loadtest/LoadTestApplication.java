@@ -0,0 +1,27 @@
+package org.nzbhydra.mockserver.loadtest;
+
+import org.nzbhydra.mockserver.MockserverApplication;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+
+/**
+ * Starts the mock server with the load test indexers and runs the load test against an already running Hydra instance.
+ * Hydra must be reachable without authentication or with basic auth. Its config is replaced during the test and
+ * restored afterwards. Run this class with arguments like
+ * <pre>
+ * --loadtest.hydraUrl=http://127.0.0.1:5076 --loadtest.indexerCounts=5,25,100 --loadtest.clients=20 --loadtest.latencyMillis=500
+ * </pre>
+ * See {@link LoadTestProperties} for all settings. Heap and thread counts are sampled from Hydra's debug infos.
+ */
+public class LoadTestApplication {
+
+    public static void main(String[] args) {
+        //Allow one kept-alive connection per client
+        System.setProperty("http.maxConnections", "1000");
+        int exitCode = SpringApplication.exit(new SpringApplicationBuilder(MockserverApplication.class)
+                .profiles("loadtest")
+                .run(args));
+        System.exit(exitCode);
+    }
+
+}
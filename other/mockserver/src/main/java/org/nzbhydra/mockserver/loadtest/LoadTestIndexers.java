@@ -0,0 +1,119 @@
+package org.nzbhydra.mockserver.loadtest;
+
+import com.google.common.base.Strings;
+import org.nzbhydra.mapping.newznab.ActionAttribute;
+import org.nzbhydra.mapping.newznab.NewznabParameters;
+import org.nzbhydra.mapping.newznab.mock.NewznabMockBuilder;
+import org.nzbhydra.mapping.newznab.mock.NewznabMockRequest;
+import org.nzbhydra.mapping.newznab.xml.NewznabAttribute;
+import org.nzbhydra.mapping.newznab.xml.NewznabXmlEnclosure;
+import org.nzbhydra.mapping.newznab.xml.NewznabXmlGuid;
+import org.nzbhydra.mapping.newznab.xml.NewznabXmlItem;
+import org.nzbhydra.mapping.newznab.xml.NewznabXmlRoot;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Any number of mock newznab indexers, reachable under /loadtest/{indexerNumber}. Response times, error rate and response
+ * sizes are controlled by {@link LoadTestProperties}. Results for the same query have the same titles on all indexers so
+ * that Hydra finds duplicates like with real indexers.
+ */
+@RestController
+@Profile("loadtest")
+public class LoadTestIndexers {
+
+    @Autowired
+    private LoadTestProperties properties;
+
+    private byte[] nzb;
+
+    @PostConstruct
+    public void createNzb() {
+        StringBuilder builder = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<nzb xmlns=\"http://www.newzbin.com/DTD/2003/nzb\">\n<file poster=\"loadtest\" date=\"1500000000\" subject=\"loadtest\">\n<groups><group>alt.binaries.loadtest</group></groups>\n<segments>\n");
+        int segment = 1;
+        while (builder.length() < properties.getNzbSizeKb() * 1024) {
+            builder.append("<segment bytes=\"768000\" number=\"").append(segment).append("\">loadtest").append(segment).append("@loadtest.local</segment>\n");
+            segment++;
+        }
+        builder.append("</segments>\n</file>\n</nzb>\n");
+        nzb = builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @RequestMapping(value = "/loadtest/{indexer}/api", produces = MediaType.TEXT_XML_VALUE)
+    public ResponseEntity<Object> api(@PathVariable int indexer, NewznabParameters params) throws InterruptedException {
+        if (params.getT() == ActionAttribute.CAPS) {
+            return ResponseEntity.ok(NewznabMockBuilder.getCaps());
+        }
+        if (!simulateIndexer(indexer)) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+
+        String query = params.getQ() == null ? "rss" : params.getQ();
+        int offset = params.getOffset() == null ? 0 : params.getOffset();
+        NewznabMockRequest mockRequest = NewznabMockRequest.builder()
+                .numberOfResults(properties.getResultsPerResponse())
+                .titleBase(query)
+                .offset(offset)
+                .total(properties.getResultsPerResponse())
+                .titleWords(Collections.emptyList())
+                .build();
+        NewznabXmlRoot rssRoot = NewznabMockBuilder.generateResponse(mockRequest);
+        String description = Strings.padEnd("Description", properties.getDescriptionLength(), '.');
+        int i = offset;
+        for (NewznabXmlItem item : rssRoot.getRssChannel().getItems()) {
+            String link = properties.getMockUrl() + "/loadtest/" + indexer + "/nzb/" + query.replace(' ', '.') + "-" + i++;
+            item.setLink(link);
+            item.setRssGuid(new NewznabXmlGuid(link, true));
+            item.setEnclosure(new NewznabXmlEnclosure(link, item.getEnclosure().getLength(), "application/x-nzb"));
+            item.setDescription(description);
+            for (NewznabAttribute attribute : item.getNewznabAttributes()) {
+                if (attribute.getName().equals("guid")) {
+                    attribute.setValue(link);
+                }
+            }
+        }
+        return ResponseEntity.ok(rssRoot);
+    }
+
+    @RequestMapping(value = "/loadtest/{indexer}/nzb/{nzbId}", produces = "application/x-nzb")
+    public ResponseEntity<byte[]> nzb(@PathVariable int indexer, @PathVariable String nzbId) throws InterruptedException {
+        if (!simulateIndexer(indexer)) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        return ResponseEntity.ok(nzb);
+    }
+
+    /**
+     * Waits for the sampled response time of the given indexer.
+     *
+     * @return false if the request should fail
+     */
+    private boolean simulateIndexer(int indexer) throws InterruptedException {
+        Random random = ThreadLocalRandom.current();
+        long latency = properties.getLatencyDistribution().sample(random, isSlow(indexer) ? properties.getSlowLatencyMillis() : properties.getLatencyMillis());
+        if (latency > 0) {
+            Thread.sleep(latency);
+        }
+        return random.nextDouble() >= properties.getErrorRate();
+    }
+
+    private boolean isSlow(int indexer) {
+        if (properties.getSlowIndexerShare() <= 0) {
+            return false;
+        }
+        return indexer % Math.max(1, Math.round(1 / properties.getSlowIndexerShare())) == 0;
+    }
+
+}
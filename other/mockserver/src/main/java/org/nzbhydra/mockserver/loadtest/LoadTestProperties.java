@@ -0,0 +1,83 @@
+package org.nzbhydra.mockserver.loadtest;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * All settings of the load test. Can be set as command line arguments, e.g. <tt>--loadtest.indexerCounts=5,100 --loadtest.clients=50</tt>.
+ */
+@Data
+@Component
+@Profile("loadtest")
+@ConfigurationProperties(prefix = "loadtest")
+public class LoadTestProperties {
+
+    /**
+     * URL under which the Hydra instance under test is reachable from the harness.
+     */
+    private String hydraUrl = "http://127.0.0.1:5076";
+    /**
+     * Only needed if Hydra uses basic auth.
+     */
+    private String hydraUsername;
+    private String hydraPassword;
+    /**
+     * URL under which the mock indexers are reachable from Hydra.
+     */
+    private String mockUrl = "http://127.0.0.1:5080";
+
+    /**
+     * One test phase is run for each number of indexers.
+     */
+    private List<Integer> indexerCounts = Arrays.asList(5, 25, 50, 100);
+    /**
+     * Number of concurrently running clients (like Sonarr or Radarr instances).
+     */
+    private int clients = 20;
+    private int warmupSeconds = 10;
+    private int durationSeconds = 60;
+    /**
+     * Share of client requests which download an NZB (t=get) for a previously found result instead of searching.
+     */
+    private double getRatio = 0.2;
+    /**
+     * Interval in which a UI request is made to check if Hydra stays responsive while the clients are searching.
+     */
+    private int uiProbeIntervalMillis = 500;
+    /**
+     * Number of different queries used by the clients. Lower numbers result in more hits of Hydra's search cache.
+     */
+    private int distinctQueries = 1000;
+
+    private LatencyDistribution latencyDistribution = LatencyDistribution.LOG_NORMAL;
+    /**
+     * Mean response time of the mock indexers.
+     */
+    private int latencyMillis = 300;
+    /**
+     * Share of indexers which use {@link #slowLatencyMillis} instead, e.g. 0.1 for every 10th indexer.
+     */
+    private double slowIndexerShare = 0.1;
+    private int slowLatencyMillis = 3000;
+    /**
+     * Share of indexer requests answered with HTTP 503.
+     */
+    private double errorRate = 0.01;
+    private int resultsPerResponse = 100;
+    /**
+     * Length of the description of every result, used to control the response size.
+     */
+    private int descriptionLength = 100;
+    private int nzbSizeKb = 200;
+
+    /**
+     * CSV file to which the results of all phases are written.
+     */
+    private String resultFile = "loadtest-result.csv";
+
+}
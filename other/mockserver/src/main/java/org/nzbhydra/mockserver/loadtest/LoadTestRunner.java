@@ -0,0 +1,286 @@
+package org.nzbhydra.mockserver.loadtest;
+
+import com.google.common.base.Stopwatch;
+import lombok.Data;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Configures the Hydra instance under test with increasing numbers of mock indexers and drives API traffic against it
+ * for each configuration. Hydra's original config is restored at the end.
+ */
+@Component
+@Profile("loadtest")
+public class LoadTestRunner implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadTestRunner.class);
+    private static final Pattern GUID_PATTERN = Pattern.compile("<guid[^>]*>([^<]+)</guid>");
+
+    public enum RequestType {
+        SEARCH,
+        TVSEARCH,
+        MOVIE,
+        GET
+    }
+
+    @Autowired
+    private LoadTestProperties properties;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        HydraClient hydraClient = new HydraClient(properties);
+        Map<String, Object> originalConfig = hydraClient.getConfig();
+        String apiKey = (String) ((Map) originalConfig.get("main")).get("apiKey");
+        List<PhaseResult> results = new ArrayList<>();
+        try {
+            for (Integer numberOfIndexers : properties.getIndexerCounts()) {
+                logger.info("Configuring Hydra with {} mock indexers", numberOfIndexers);
+                hydraClient.setConfig(buildConfig(originalConfig, numberOfIndexers));
+                logger.info("Warming up for {} seconds", properties.getWarmupSeconds());
+                runPhase(hydraClient, apiKey, numberOfIndexers, properties.getWarmupSeconds());
+                logger.info("Measuring for {} seconds", properties.getDurationSeconds());
+                PhaseResult result = runPhase(hydraClient, apiKey, numberOfIndexers, properties.getDurationSeconds());
+                results.add(result);
+                logger.info("Finished phase with {} indexers: {} requests, {} errors, p99 {}ms{}", numberOfIndexers, result.getTotal().getCount(), result.getTotal().getErrors(), result.getTotal().getPercentileMillis(99), result.isComplete() ? "" : " (incomplete)");
+            }
+        } finally {
+            logger.info("Restoring original config");
+            hydraClient.setConfig(originalConfig);
+        }
+        logger.info("Results:\n{}", formatResults(results));
+        writeResults(results);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected Map<String, Object> buildConfig(Map<String, Object> originalConfig, int numberOfIndexers) {
+        Map<String, Object> config = new HashMap<>(originalConfig);
+        List<Map<String, Object>> indexers = new ArrayList<>();
+        for (int i = 1; i <= numberOfIndexers; i++) {
+            Map<String, Object> indexer = new HashMap<>();
+            indexer.put("name", "loadtest-" + i);
+            indexer.put("host", properties.getMockUrl() + "/loadtest/" + i);
+            indexer.put("apiKey", "loadtest");
+            indexer.put("searchModuleType", "NEWZNAB");
+            indexer.put("state", "ENABLED");
+            indexer.put("enabledForSearchSource", "BOTH");
+            indexer.put("configComplete", true);
+            indexer.put("allCapsChecked", true);
+            indexer.put("preselect", true);
+            indexer.put("showOnSearch", true);
+            indexer.put("supportedSearchIds", Arrays.asList("TVDB", "TVRAGE", "TVMAZE", "TRAKT", "IMDB", "TMDB"));
+            indexer.put("supportedSearchTypes", Arrays.asList("SEARCH", "TVSEARCH", "MOVIE"));
+            indexers.add(indexer);
+        }
+        config.put("indexers", indexers);
+        return config;
+    }
+
+    protected PhaseResult runPhase(HydraClient hydraClient, String apiKey, int numberOfIndexers, int seconds) throws InterruptedException {
+        PhaseResult result = new PhaseResult(numberOfIndexers, seconds);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        ScheduledExecutorService sampler = Executors.newScheduledThreadPool(2);
+        sampler.scheduleAtFixedRate(() -> {
+            try {
+                result.sample(hydraClient.getJvmStats());
+            } catch (IOException e) {
+                logger.warn("Unable to get JVM stats from Hydra: {}", e.getMessage());
+            }
+        }, 0, 1, TimeUnit.SECONDS);
+        //Requests the UI makes while a search is running, must stay responsive even when the API searches are slow
+        sampler.scheduleWithFixedDelay(() -> {
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            try {
+                hydraClient.get("/internalapi/search/state?searchrequestid=0");
+                result.getUi().record(stopwatch.elapsed(TimeUnit.MICROSECONDS));
+            } catch (IOException e) {
+                result.getUi().recordError();
+            }
+        }, 0, properties.getUiProbeIntervalMillis(), TimeUnit.MILLISECONDS);
+
+        ExecutorService clients = Executors.newFixedThreadPool(properties.getClients());
+        for (int i = 0; i < properties.getClients(); i++) {
+            clients.submit(() -> {
+                String lastGuid = null;
+                while (System.nanoTime() < deadline && !Thread.currentThread().isInterrupted()) {
+                    lastGuid = executeRequest(hydraClient, apiKey, lastGuid, result);
+                }
+            });
+        }
+        clients.shutdown();
+        if (!clients.awaitTermination(seconds + 180, TimeUnit.SECONDS)) {
+            //Hung clients would otherwise keep running into the next phase and skew its numbers
+            logger.warn("Clients didn't finish in time, stopping them and marking the phase as incomplete");
+            result.setComplete(false);
+            clients.shutdownNow();
+            if (!clients.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warn("Some clients are still running after being interrupted");
+            }
+        }
+        //Requests finishing after the phase was stopped are not counted
+        result.setClosed(true);
+        sampler.shutdownNow();
+        return result;
+    }
+
+    /**
+     * Executes one search or download request like Sonarr or Radarr would.
+     *
+     * @return A GUID from the search results or the GUID used before
+     */
+    private String executeRequest(HydraClient hydraClient, String apiKey, String lastGuid, PhaseResult result) {
+        Random random = ThreadLocalRandom.current();
+        RequestType requestType;
+        if (lastGuid != null && random.nextDouble() < properties.getGetRatio()) {
+            requestType = RequestType.GET;
+        } else {
+            requestType = RequestType.values()[random.nextInt(3)];
+        }
+        String query = "loadtest" + random.nextInt(Math.max(1, properties.getDistinctQueries()));
+        String path = "/api?apikey=" + encode(apiKey) + "&t=" + requestType.name().toLowerCase(Locale.ROOT);
+        switch (requestType) {
+            case GET:
+                path += "&id=" + encode(lastGuid);
+                break;
+            case TVSEARCH:
+                path += "&q=" + query + "&season=" + (random.nextInt(10) + 1) + "&ep=" + (random.nextInt(20) + 1);
+                break;
+            default:
+                path += "&q=" + query;
+        }
+
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        try {
+            String response = hydraClient.get(path);
+            result.record(requestType, stopwatch.elapsed(TimeUnit.MICROSECONDS));
+            if (requestType == RequestType.GET) {
+                return lastGuid;
+            }
+            List<String> guids = new ArrayList<>();
+            Matcher matcher = GUID_PATTERN.matcher(response);
+            while (matcher.find()) {
+                guids.add(matcher.group(1));
+            }
+            return guids.isEmpty() ? lastGuid : guids.get(random.nextInt(guids.size()));
+        } catch (IOException e) {
+            logger.debug("Request failed: {}", e.getMessage());
+            result.recordError(requestType);
+            return lastGuid;
+        }
+    }
+
+    private String formatResults(List<PhaseResult> results) {
+        StringBuilder builder = new StringBuilder(String.format("%8s %8s %6s %8s %8s %8s %8s %10s %8s %8s %9s %8s %8s%n", "Indexers", "Requests", "Errors", "Req/s", "p50 ms", "p95 ms", "p99 ms", "Search p99", "Get p99", "UI p99", "Heap MB", "Threads", "Complete"));
+        for (PhaseResult result : results) {
+            LatencyRecorder total = result.getTotal();
+            builder.append(String.format(Locale.ROOT, "%8d %8d %6d %8.1f %8.1f %8.1f %8.1f %10.1f %8.1f %8.1f %9d %8d %8s%n",
+                    result.getNumberOfIndexers(), total.getCount(), total.getErrors(), total.getCount() / (double) result.getSeconds(),
+                    total.getPercentileMillis(50), total.getPercentileMillis(95), total.getPercentileMillis(99),
+                    result.getRecorders().get(RequestType.SEARCH).getPercentileMillis(99), result.getRecorders().get(RequestType.GET).getPercentileMillis(99), result.getUi().getPercentileMillis(99),
+                    result.getMaxHeapUsed() / (1024 * 1024), result.getMaxThreads(), result.isComplete() ? "yes" : "no"));
+        }
+        return builder.toString();
+    }
+
+    private void writeResults(List<PhaseResult> results) throws IOException {
+        File file = new File(properties.getResultFile());
+        try (PrintWriter writer = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+            writer.println("indexers;type;requests;errors;throughput;p50;p95;p99;maxHeapUsedMb;maxThreads;complete");
+            for (PhaseResult result : results) {
+                Map<String, LatencyRecorder> recorders = new LinkedHashMap<>();
+                result.getRecorders().forEach((type, recorder) -> recorders.put(type.name(), recorder));
+                recorders.put("TOTAL", result.getTotal());
+                recorders.put("UI", result.getUi());
+                recorders.forEach((type, recorder) -> writer.println(String.format(Locale.ROOT, "%d;%s;%d;%d;%.2f;%.1f;%.1f;%.1f;%d;%d;%b",
+                        result.getNumberOfIndexers(), type, recorder.getCount(), recorder.getErrors(), recorder.getCount() / (double) result.getSeconds(),
+                        recorder.getPercentileMillis(50), recorder.getPercentileMillis(95), recorder.getPercentileMillis(99),
+                        result.getMaxHeapUsed() / (1024 * 1024), result.getMaxThreads(), result.isComplete())));
+            }
+        }
+        logger.info("Wrote results to {}", file.getAbsolutePath());
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Data
+    public static class PhaseResult {
+        private final int numberOfIndexers;
+        private final int seconds;
+        private final Map<RequestType, LatencyRecorder> recorders = new EnumMap<>(RequestType.class);
+        private final LatencyRecorder total = new LatencyRecorder();
+        /**
+         * Latencies of UI requests made while the clients are searching, not included in the total
+         */
+        private final LatencyRecorder ui = new LatencyRecorder();
+        private long maxHeapUsed;
+        private int maxThreads;
+        /**
+         * False if the clients had to be stopped because they didn't finish in time
+         */
+        private volatile boolean complete = true;
+        private volatile boolean closed;
+
+        public PhaseResult(int numberOfIndexers, int seconds) {
+            this.numberOfIndexers = numberOfIndexers;
+            this.seconds = seconds;
+            for (RequestType requestType : RequestType.values()) {
+                recorders.put(requestType, new LatencyRecorder());
+            }
+        }
+
+        public void record(RequestType requestType, long latencyMicros) {
+            if (closed) {
+                return;
+            }
+            recorders.get(requestType).record(latencyMicros);
+            total.record(latencyMicros);
+        }
+
+        public void recordError(RequestType requestType) {
+            if (closed) {
+                return;
+            }
+            recorders.get(requestType).recordError();
+            total.recordError();
+        }
+
+        public synchronized void sample(Map<String, Object> jvmStats) {
+            maxHeapUsed = Math.max(maxHeapUsed, ((Number) jvmStats.get("heapUsed")).longValue());
+            maxThreads = Math.max(maxThreads, ((Number) jvmStats.get("threadCount")).intValue());
+        }
+    }
+
+}
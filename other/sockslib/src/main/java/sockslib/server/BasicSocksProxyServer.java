@@ -20,12 +20,15 @@ import sockslib.client.SocksProxy;
 import sockslib.common.methods.SocksMethod;
 import sockslib.common.net.MonitorSocketWrapper;
 import sockslib.common.net.NetworkMonitor;
+import sockslib.server.io.SelectorRelay;
 import sockslib.server.listener.PipeInitializer;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
@@ -128,6 +131,8 @@ public class BasicSocksProxyServer implements SocksProxyServer, Runnable {
 
     private PipeInitializer pipeInitializer;
 
+    private SelectorRelay selectorRelay;
+
     /**
      * Constructs a {@link BasicSocksProxyServer} by a {@link SocksHandler} class. The bind port is
      * 1080.
@@ -195,11 +200,15 @@ public class BasicSocksProxyServer implements SocksProxyServer, Runnable {
                 executorService.execute(socksHandler);
 
             } catch (IOException e) {
-                // Catches the exception that cause by shutdown method.
-                if (e.getMessage().equals("Socket closed") && stop) {
+                // Catches the exception that cause by shutdown method. Channel backed server sockets throw exceptions without message
+                if (stop) {
                     logger.debug("Server shutdown");
                     return;
                 }
+                if ("Socket closed".equals(e.getMessage())) {
+                    logger.debug("Server socket closed");
+                    return;
+                }
                 logger.debug(e.getMessage(), e);
             }
         }
@@ -232,6 +241,12 @@ public class BasicSocksProxyServer implements SocksProxyServer, Runnable {
     }
 
     protected ServerSocket createServerSocket(int bindPort, InetAddress bindAddr) throws IOException {
+        if (selectorRelay != null) {
+            // Accepted sockets need a channel to be relayed by the selector relay.
+            ServerSocket serverSocket = ServerSocketChannel.open().socket();
+            serverSocket.bind(new InetSocketAddress(bindAddr, bindPort), 50);
+            return serverSocket;
+        }
         return new ServerSocket(bindPort, 50, bindAddr);
     }
 
@@ -383,4 +398,14 @@ public class BasicSocksProxyServer implements SocksProxyServer, Runnable {
     public void setPipeInitializer(PipeInitializer pipeInitializer) {
         this.pipeInitializer = pipeInitializer;
     }
+
+    @Override
+    public SelectorRelay getSelectorRelay() {
+        return selectorRelay;
+    }
+
+    @Override
+    public void setSelectorRelay(SelectorRelay selectorRelay) {
+        this.selectorRelay = selectorRelay;
+    }
 }
@@ -21,7 +21,9 @@ import sockslib.client.SocksSocket;
 import sockslib.common.ProtocolErrorException;
 import sockslib.common.SocksException;
 import sockslib.common.methods.SocksMethod;
+import sockslib.server.io.NioSocketPipe;
 import sockslib.server.io.Pipe;
+import sockslib.server.io.SelectorRelay;
 import sockslib.server.io.SocketPipe;
 import sockslib.server.msg.CommandMessage;
 import sockslib.server.msg.CommandResponseMessage;
@@ -29,11 +31,13 @@ import sockslib.server.msg.MethodSelectionMessage;
 import sockslib.server.msg.MethodSelectionResponseMessage;
 import sockslib.server.msg.ServerReply;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 
 /**
  * The class <code>Socks5Handler</code> represents a handler that can handle SOCKS5 protocol.
@@ -74,6 +78,12 @@ public class Socks5Handler implements SocksHandler {
 
     private SessionManager sessionManager;
 
+    /**
+     * Set when the session was handed off to a pipe relayed by a {@link SelectorRelay}. The
+     * session is then closed when the pipe is closed instead of when the handler returns.
+     */
+    private volatile boolean handedOff = false;
+
     @Override
     public void handle(Session session) throws Exception {
         sessionManager = getSocksProxyServer().getSessionManager();
@@ -142,7 +152,9 @@ public class Socks5Handler implements SocksHandler {
         // DO connect
         try {
             // Connect directly.
-            if (proxy == null) {
+            if (proxy == null && getSelectorRelay() != null) {
+                socket = SocketChannel.open(new InetSocketAddress(remoteServerAddress, remoteServerPort)).socket();
+            } else if (proxy == null) {
                 socket = new Socket(remoteServerAddress, remoteServerPort);
             } else {
                 socket = new SocksSocket(proxy, remoteServerAddress, remoteServerPort);
@@ -152,13 +164,13 @@ public class Socks5Handler implements SocksHandler {
             reply = ServerReply.SUCCEEDED;
 
         } catch (IOException e) {
-            if (e.getMessage().equals("Connection refused")) {
+            if ("Connection refused".equals(e.getMessage())) {
                 reply = ServerReply.CONNECTION_REFUSED;
-            } else if (e.getMessage().equals("Operation timed out")) {
+            } else if ("Operation timed out".equals(e.getMessage())) {
                 reply = ServerReply.TTL_EXPIRED;
-            } else if (e.getMessage().equals("Network is unreachable")) {
+            } else if ("Network is unreachable".equals(e.getMessage())) {
                 reply = ServerReply.NETWORK_UNREACHABLE;
-            } else if (e.getMessage().equals("Connection timed out")) {
+            } else if ("Connection timed out".equals(e.getMessage())) {
                 reply = ServerReply.TTL_EXPIRED;
             } else {
                 reply = ServerReply.GENERAL_SOCKS_SERVER_FAILURE;
@@ -175,13 +187,16 @@ public class Socks5Handler implements SocksHandler {
             return;
         }
 
-        Pipe pipe = new SocketPipe(session.getSocket(), socket);
+        Pipe pipe = createPipe(session.getSocket(), socket);
         pipe.setName("SESSION[" + session.getId() + "]");
         pipe.setBufferSize(bufferSize);
         if (getSocksProxyServer().getPipeInitializer() != null) {
             pipe = getSocksProxyServer().getPipeInitializer().initialize(pipe);
         }
         pipe.start(); // This method will build tow thread to run tow internal pipes.
+        if (handOff(session, pipe, null)) {
+            return;
+        }
 
         // wait for pipe exit.
         while (pipe.isRunning()) {
@@ -196,6 +211,59 @@ public class Socks5Handler implements SocksHandler {
 
     }
 
+    /**
+     * Creates a pipe which is relayed by the server's {@link SelectorRelay} if possible.
+     *
+     * @param socket1 A connected socket.
+     * @param socket2 Another connected socket.
+     * @return The pipe.
+     * @throws IOException If an I/O error occurred.
+     */
+    protected Pipe createPipe(Socket socket1, Socket socket2) throws IOException {
+        SelectorRelay selectorRelay = getSelectorRelay();
+        if (selectorRelay != null && selectorRelay.isRunning() && NioSocketPipe.isSupported(socket1, socket2)) {
+            return new NioSocketPipe(socket1, socket2, selectorRelay);
+        }
+        return new SocketPipe(socket1, socket2);
+    }
+
+    /**
+     * Hands the session off to the pipe if it's relayed by a {@link SelectorRelay}. The relay's
+     * event loops own the connection then, so the handler's thread can return instead of waiting
+     * for the pipe to stop. The session is closed when the pipe is closed.
+     *
+     * @param session         The session.
+     * @param pipe            The started pipe.
+     * @param resourceToClose Resource to close together with the session, may be <code>null</code>.
+     * @return <code>true</code> if the session was handed off.
+     */
+    private boolean handOff(Session session, Pipe pipe, Closeable resourceToClose) {
+        if (!(pipe instanceof NioSocketPipe) || !pipe.isRunning()) {
+            return false;
+        }
+        handedOff = true;
+        ((NioSocketPipe) pipe).setCloseCallback(() -> {
+            if (resourceToClose != null) {
+                try {
+                    resourceToClose.close();
+                } catch (IOException e) {
+                    logger.debug("SESSION[{}] Unable to close {}: {}", session.getId(), resourceToClose, e.getMessage());
+                }
+            }
+            closeSession(session);
+        });
+        return true;
+    }
+
+    private void closeSession(Session session) {
+        session.close();
+        sessionManager.sessionOnClose(session);
+    }
+
+    private SelectorRelay getSelectorRelay() {
+        return socksProxyServer == null ? null : socksProxyServer.getSelectorRelay();
+    }
+
     @Override
     public void doBind(Session session, CommandMessage commandMessage) throws SocksException,
             IOException {
@@ -212,9 +280,12 @@ public class Socks5Handler implements SocksHandler {
         session.write(new CommandResponseMessage(VERSION, ServerReply.SUCCEEDED, socket
                 .getLocalAddress(), socket.getLocalPort()));
 
-        Pipe pipe = new SocketPipe(session.getSocket(), socket);
+        Pipe pipe = createPipe(session.getSocket(), socket);
         pipe.setBufferSize(bufferSize);
         pipe.start();
+        if (handOff(session, pipe, serverSocket)) {
+            return;
+        }
 
         // wait for pipe exit.
         while (pipe.isRunning()) {
@@ -271,8 +342,9 @@ public class Socks5Handler implements SocksHandler {
             sessionManager.sessionOnException(session, e);
             //      logger.error("SESSION[{}]: {}", session.getId(), e.getMessage());
         } finally {
-            session.close();
-            sessionManager.sessionOnClose(session);
+            if (!handedOff) {
+                closeSession(session);
+            }
             //      logger.info("SESSION[{}] closed, {}", session.getId(), session.getNetworkMonitor().toString
             //          ());
         }
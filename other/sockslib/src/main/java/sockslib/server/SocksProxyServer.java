@@ -16,6 +16,7 @@ package sockslib.server;
 
 import sockslib.client.SocksProxy;
 import sockslib.common.methods.SocksMethod;
+import sockslib.server.io.SelectorRelay;
 import sockslib.server.listener.PipeInitializer;
 
 import java.io.IOException;
@@ -185,4 +186,20 @@ public interface SocksProxyServer {
     PipeInitializer getPipeInitializer();
 
     void setPipeInitializer(PipeInitializer pipeInitializer);
+
+    /**
+     * Returns the {@link SelectorRelay} used to relay connections.
+     *
+     * @return The relay or <code>null</code> if each connection is relayed by its own threads.
+     */
+    SelectorRelay getSelectorRelay();
+
+    /**
+     * Sets a {@link SelectorRelay} which relays all connections on its event loop threads instead
+     * of using two threads per connection. Connections whose sockets don't have a channel (e.g. SSL
+     * or chained through another proxy) are still relayed by their own threads.
+     *
+     * @param selectorRelay The relay or <code>null</code> to use threads per connection.
+     */
+    void setSelectorRelay(SelectorRelay selectorRelay);
 }
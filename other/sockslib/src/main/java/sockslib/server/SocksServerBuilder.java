@@ -7,6 +7,7 @@ import sockslib.common.SSLConfiguration;
 import sockslib.common.methods.NoAuthenticationRequiredMethod;
 import sockslib.common.methods.SocksMethod;
 import sockslib.common.methods.UsernamePasswordMethod;
+import sockslib.server.io.SelectorRelay;
 import sockslib.server.listener.PipeInitializer;
 import sockslib.server.listener.SessionListener;
 import sockslib.server.manager.MemoryBasedUserManager;
@@ -49,6 +50,7 @@ public class SocksServerBuilder {
     private SSLConfiguration sslConfiguration;
     private Map<String, SessionListener> sessionListeners = new HashMap<>();
     private PipeInitializer pipeInitializer;
+    private SelectorRelay selectorRelay;
 
     /**
      * Creates a <code>SocksServerBuilder</code> with a <code>Class<? extends {@link
@@ -156,6 +158,18 @@ public class SocksServerBuilder {
         return this;
     }
 
+    /**
+     * Relays connections using the given {@link SelectorRelay} instead of two threads per
+     * connection.
+     *
+     * @param selectorRelay instance of {@link SelectorRelay}.
+     * @return Instance of {@link SocksServerBuilder}.
+     */
+    public SocksServerBuilder setSelectorRelay(SelectorRelay selectorRelay) {
+        this.selectorRelay = selectorRelay;
+        return this;
+    }
+
     public SocksServerBuilder setSocksMethods(Set<SocksMethod> methods) {
         socksMethods = checkNotNull(methods, "Argument [methods] may not be null");
         return this;
@@ -253,6 +267,7 @@ public class SocksServerBuilder {
         proxyServer.setDaemon(daemon);
         proxyServer.setSessionManager(sessionManager);
         proxyServer.setPipeInitializer(pipeInitializer);
+        proxyServer.setSelectorRelay(selectorRelay);
         if (socksMethods == null) {
             socksMethods = new HashSet<>();
             socksMethods.add(new NoAuthenticationRequiredMethod());
@@ -0,0 +1,532 @@
+/*
+ * Copyright 2015-2025 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package sockslib.server.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sockslib.common.net.MonitorSocketWrapper;
+import sockslib.common.net.SocketMonitor;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static sockslib.server.io.SocketPipe.ATTR_DESTINATION_SOCKET;
+import static sockslib.server.io.SocketPipe.ATTR_PARENT_PIPE;
+import static sockslib.server.io.SocketPipe.ATTR_SOURCE_SOCKET;
+import static sockslib.server.io.SocketPipe.INPUT_PIPE_NAME;
+import static sockslib.server.io.SocketPipe.OUTPUT_PIPE_NAME;
+
+
+/**
+ * The class <code>NioSocketPipe</code> represents a pipe that transfers data between two sockets
+ * like {@link SocketPipe} but uses the sockets' channels in non-blocking mode and is driven by a
+ * {@link SelectorRelay} instead of two threads. Both sockets must have been created by a channel.
+ * <p>
+ * When one side closes its output the other side's output is shut down as well and data is still
+ * transferred in the other direction. The pipe is closed when both directions are finished or an
+ * error occurred. {@link PipeListener}s are called with a pipe for each direction, named and
+ * attributed like the ones of {@link SocketPipe}.
+ * </p>
+ */
+public class NioSocketPipe implements Pipe {
+
+    /**
+     * Logger
+     */
+    protected static final Logger logger = LoggerFactory.getLogger(NioSocketPipe.class);
+
+    private final Socket socket1;
+
+    private final Socket socket2;
+
+    private final SocketChannel channel1;
+
+    private final SocketChannel channel2;
+
+    private final SelectorRelay relay;
+
+    /**
+     * Transfers data from socket one to socket two.
+     */
+    private final Direction outputDirection;
+
+    /**
+     * Transfers data from socket two to socket one.
+     */
+    private final Direction inputDirection;
+
+    private final List<PipeListener> pipeListeners = new CopyOnWriteArrayList<>();
+
+    private final Map<String, Object> attributes = new HashMap<>();
+
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    private final AtomicReference<Runnable> closeCallback = new AtomicReference<>();
+
+    private String name;
+
+    private volatile boolean running = false;
+
+    private SelectionKey key1;
+
+    private SelectionKey key2;
+
+    private volatile Thread eventLoopThread;
+
+    /**
+     * Constructs NioSocketPipe instance by two connected sockets.
+     *
+     * @param socket1 A connected socket created by a {@link SocketChannel}.
+     * @param socket2 Another connected socket created by a {@link SocketChannel}.
+     * @param relay   Relay which transfers the data.
+     */
+    public NioSocketPipe(Socket socket1, Socket socket2, SelectorRelay relay) {
+        this.socket1 = checkNotNull(socket1, "Argument [socket1] may not be null");
+        this.socket2 = checkNotNull(socket2, "Argument [socket2] may not be null");
+        this.relay = checkNotNull(relay, "Argument [relay] may not be null");
+        channel1 = socket1.getChannel();
+        channel2 = socket2.getChannel();
+        checkArgument(channel1 != null && channel2 != null, "Both sockets must have a channel");
+        outputDirection = new Direction(OUTPUT_PIPE_NAME, socket1, socket2);
+        inputDirection = new Direction(INPUT_PIPE_NAME, socket2, socket1);
+    }
+
+    /**
+     * Returns <code>true</code> if both sockets can be relayed by a {@link NioSocketPipe}.
+     *
+     * @param socket1 A socket.
+     * @param socket2 Another socket.
+     * @return <code>true</code> if both sockets have a channel.
+     */
+    public static boolean isSupported(Socket socket1, Socket socket2) {
+        return socket1.getChannel() != null && socket2.getChannel() != null;
+    }
+
+    @Override
+    public boolean start() {
+        if (running || closed.get()) {
+            return false;
+        }
+        try {
+            channel1.configureBlocking(false);
+            channel2.configureBlocking(false);
+        } catch (IOException e) {
+            onError(outputDirection, e);
+            close();
+            return false;
+        }
+        running = relay.register(this);
+        if (running) {
+            for (PipeListener listener : pipeListeners) {
+                listener.onStart(outputDirection);
+                listener.onStart(inputDirection);
+            }
+        }
+        return running;
+    }
+
+    @Override
+    public boolean stop() {
+        if (running) {
+            running = false;
+            cancelKeys();
+            for (PipeListener listener : pipeListeners) {
+                if (outputDirection.running) {
+                    listener.onStop(outputDirection);
+                }
+                if (inputDirection.running) {
+                    listener.onStop(inputDirection);
+                }
+            }
+            outputDirection.running = false;
+            inputDirection.running = false;
+            //Like a SocketPipe a stopped pipe can't be started again
+            close();
+        }
+        return running;
+    }
+
+    @Override
+    public boolean close() {
+        if (!closed.compareAndSet(false, true)) {
+            return true;
+        }
+        stop();
+        cancelKeys();
+        if (Thread.currentThread() == eventLoopThread) {
+            //Buffers may only be returned to the pool by the thread using them
+            outputDirection.releaseBuffer();
+            inputDirection.releaseBuffer();
+        }
+        try {
+            if (!socket1.isClosed()) {
+                socket1.close();
+            }
+            if (!socket2.isClosed()) {
+                socket2.close();
+            }
+            channel1.close();
+            channel2.close();
+            return true;
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+        } finally {
+            runCloseCallback();
+        }
+        return false;
+    }
+
+    /**
+     * Sets a callback which is called once when the pipe is closed, by whichever thread closes it.
+     * If the pipe is already closed it's called immediately. This allows the thread which started
+     * the pipe to return instead of waiting for the pipe to stop.
+     *
+     * @param closeCallback Callback to call when the pipe is closed.
+     */
+    public void setCloseCallback(Runnable closeCallback) {
+        this.closeCallback.set(closeCallback);
+        if (closed.get()) {
+            runCloseCallback();
+        }
+    }
+
+    private void runCloseCallback() {
+        Runnable callback = closeCallback.getAndSet(null);
+        if (callback != null) {
+            try {
+                callback.run();
+            } catch (RuntimeException e) {
+                logger.error("Error in close callback of pipe " + name, e);
+            }
+        }
+    }
+
+    /**
+     * Registers both channels. Called by the event loop thread.
+     */
+    void register(Selector selector, Thread eventLoopThread) {
+        this.eventLoopThread = eventLoopThread;
+        if (closed.get()) {
+            return;
+        }
+        try {
+            key1 = channel1.register(selector, SelectionKey.OP_READ, this);
+            key2 = channel2.register(selector, SelectionKey.OP_READ, this);
+        } catch (IOException e) {
+            onError(outputDirection, e);
+            close();
+        }
+    }
+
+    /**
+     * Handles a selected key of one of the channels. Called by the event loop thread.
+     */
+    void handle(SelectionKey key) {
+        boolean isChannel1 = key.channel() == channel1;
+        Direction reading = isChannel1 ? outputDirection : inputDirection;
+        Direction writing = isChannel1 ? inputDirection : outputDirection;
+        Direction current = writing;
+        try {
+            if (key.isValid() && key.isWritable()) {
+                writing.write();
+            }
+            if (key.isValid() && key.isReadable()) {
+                current = reading;
+                reading.read();
+            }
+        } catch (IOException e) {
+            onError(current, e);
+            close();
+        }
+    }
+
+    private void onError(Direction direction, Exception exception) {
+        logger.info("{} {}", name, exception.getMessage());
+        for (PipeListener listener : pipeListeners) {
+            listener.onError(direction, exception);
+        }
+    }
+
+    private void onDirectionFinished(Direction direction) {
+        for (PipeListener listener : pipeListeners) {
+            listener.onStop(direction);
+        }
+        logger.trace("Pipe[{}] stopped", direction.getName());
+        if (!outputDirection.running && !inputDirection.running) {
+            close();
+        }
+    }
+
+    private void setInterest(SocketChannel channel, int operation, boolean interested) {
+        SelectionKey key = channel == channel1 ? key1 : key2;
+        if (key != null && key.isValid()) {
+            key.interestOps(interested ? key.interestOps() | operation : key.interestOps() & ~operation);
+        }
+    }
+
+    private void cancelKeys() {
+        if (key1 != null) {
+            key1.cancel();
+        }
+        if (key2 != null) {
+            key2.cancel();
+        }
+    }
+
+    private static List<SocketMonitor> getMonitors(Socket socket) {
+        if (socket instanceof MonitorSocketWrapper && ((MonitorSocketWrapper) socket).getMonitors() != null) {
+            return ((MonitorSocketWrapper) socket).getMonitors();
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public int getBufferSize() {
+        return relay.getBufferSize();
+    }
+
+    /**
+     * Does nothing because the buffers are provided by the {@link SelectorRelay}.
+     *
+     * @param bufferSize Buffer size.
+     */
+    @Override
+    public void setBufferSize(int bufferSize) {
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void addPipeListener(PipeListener pipeListener) {
+        pipeListeners.add(pipeListener);
+    }
+
+    @Override
+    public void removePipeListener(PipeListener pipeListener) {
+        pipeListeners.remove(pipeListener);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        attributes.put(name, value);
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+
+    /**
+     * One direction of the pipe. Only used by the event loop thread except for its flag.
+     */
+    private class Direction implements Pipe {
+
+        private final SocketChannel source;
+        private final SocketChannel destination;
+        private final List<SocketMonitor> sourceMonitors;
+        private final List<SocketMonitor> destinationMonitors;
+        private final Map<String, Object> attributes = new HashMap<>();
+        private String name;
+        private volatile boolean running = true;
+
+        /**
+         * Data read from the source which wasn't written to the destination yet. Only set while
+         * there's data to be written.
+         */
+        private ByteBuffer buffer;
+
+        Direction(String name, Socket source, Socket destination) {
+            this.name = name;
+            this.source = source.getChannel();
+            this.destination = destination.getChannel();
+            sourceMonitors = getMonitors(source);
+            destinationMonitors = getMonitors(destination);
+            attributes.put(ATTR_SOURCE_SOCKET, source);
+            attributes.put(ATTR_DESTINATION_SOCKET, destination);
+            attributes.put(ATTR_PARENT_PIPE, NioSocketPipe.this);
+        }
+
+        void read() throws IOException {
+            if (buffer != null || !running) {
+                return;
+            }
+            buffer = relay.acquireBuffer();
+            int length = source.read(buffer);
+            if (length <= 0) {
+                releaseBuffer();
+                if (length == -1) {
+                    finish();
+                }
+                return;
+            }
+            //Cast so that builds with newer JDKs don't link to ByteBuffer.flip() which doesn't exist in Java 8
+            ((Buffer) buffer).flip();
+            notifyTransfer(length);
+            write();
+        }
+
+        void write() throws IOException {
+            if (buffer == null) {
+                return;
+            }
+            destination.write(buffer);
+            if (buffer.hasRemaining()) {
+                //Don't read any more until the destination accepted what we have
+                setInterest(source, SelectionKey.OP_READ, false);
+                setInterest(destination, SelectionKey.OP_WRITE, true);
+            } else {
+                releaseBuffer();
+                setInterest(destination, SelectionKey.OP_WRITE, false);
+                setInterest(source, SelectionKey.OP_READ, true);
+            }
+        }
+
+        /**
+         * The source reached its end, pass the half-close on to the destination.
+         */
+        private void finish() {
+            running = false;
+            setInterest(source, SelectionKey.OP_READ, false);
+            try {
+                destination.shutdownOutput();
+            } catch (IOException e) {
+                logger.debug("Unable to shut down output of pipe {}: {}", name, e.getMessage());
+            }
+            onDirectionFinished(this);
+        }
+
+        private void notifyTransfer(int length) {
+            if (pipeListeners.isEmpty() && sourceMonitors.isEmpty() && destinationMonitors.isEmpty()) {
+                return;
+            }
+            byte[] bytes = new byte[length];
+            buffer.duplicate().get(bytes);
+            for (SocketMonitor monitor : sourceMonitors) {
+                monitor.onRead(bytes);
+            }
+            for (SocketMonitor monitor : destinationMonitors) {
+                monitor.onWrite(bytes);
+            }
+            for (PipeListener listener : pipeListeners) {
+                listener.onTransfer(this, bytes, length);
+            }
+        }
+
+        void releaseBuffer() {
+            if (buffer != null) {
+                relay.releaseBuffer(buffer);
+                buffer = null;
+            }
+        }
+
+        @Override
+        public boolean start() {
+            return false;
+        }
+
+        @Override
+        public boolean stop() {
+            return NioSocketPipe.this.stop();
+        }
+
+        @Override
+        public boolean close() {
+            return NioSocketPipe.this.close();
+        }
+
+        @Override
+        public int getBufferSize() {
+            return relay.getBufferSize();
+        }
+
+        @Override
+        public void setBufferSize(int bufferSize) {
+        }
+
+        @Override
+        public boolean isRunning() {
+            return running;
+        }
+
+        @Override
+        public void addPipeListener(PipeListener pipeListener) {
+            NioSocketPipe.this.addPipeListener(pipeListener);
+        }
+
+        @Override
+        public void removePipeListener(PipeListener pipeListener) {
+            NioSocketPipe.this.removePipeListener(pipeListener);
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void setAttribute(String name, Object value) {
+            attributes.put(name, value);
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            return attributes.get(name);
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+    }
+
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2015-2025 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package sockslib.server.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * The class <code>SelectorRelay</code> transfers the data of {@link NioSocketPipe}s using a small
+ * fixed number of event loop threads. Each event loop multiplexes the pipes assigned to it with a
+ * {@link Selector}, so relaying a connection doesn't need any threads of its own.
+ * <p>
+ * Data is transferred using pooled direct buffers which are only held by a pipe while it has data
+ * that wasn't written yet, so idle connections don't hold any buffers.
+ * </p>
+ */
+public class SelectorRelay {
+
+    /**
+     * Logger
+     */
+    protected static final Logger logger = LoggerFactory.getLogger(SelectorRelay.class);
+
+    /**
+     * Default buffer size.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 32 * 1024;
+
+    /**
+     * Maximum number of unused buffers kept in the pool.
+     */
+    private static final int MAX_POOLED_BUFFERS = 256;
+
+    private final EventLoop[] eventLoops;
+
+    private final AtomicInteger nextEventLoop = new AtomicInteger();
+
+    private final BlockingQueue<ByteBuffer> bufferPool = new ArrayBlockingQueue<>(MAX_POOLED_BUFFERS);
+
+    private final int bufferSize;
+
+    private volatile boolean running = true;
+
+    /**
+     * Constructs a relay with one event loop per available processor (at most four) and the
+     * default buffer size.
+     *
+     * @throws IOException If a selector can't be opened.
+     */
+    public SelectorRelay() throws IOException {
+        this(Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())), DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructs a relay and starts its event loop threads.
+     *
+     * @param numberOfThreads Number of event loop threads.
+     * @param bufferSize      Size of the buffers used to transfer data.
+     * @throws IOException If a selector can't be opened.
+     */
+    public SelectorRelay(int numberOfThreads, int bufferSize) throws IOException {
+        checkArgument(numberOfThreads > 0, "Argument [numberOfThreads] must be positive");
+        checkArgument(bufferSize > 0, "Argument [bufferSize] must be positive");
+        this.bufferSize = bufferSize;
+        eventLoops = new EventLoop[numberOfThreads];
+        for (int i = 0; i < numberOfThreads; i++) {
+            eventLoops[i] = new EventLoop(Selector.open(), "SocksRelay-" + i);
+        }
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.thread.start();
+        }
+    }
+
+    /**
+     * Stops all event loops and closes the pipes they relay.
+     */
+    public void shutdown() {
+        running = false;
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.selector.wakeup();
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Assigns the pipe to one of the event loops which will register its channels.
+     *
+     * @param pipe Pipe to relay.
+     * @return <code>true</code> if the pipe was accepted.
+     */
+    boolean register(NioSocketPipe pipe) {
+        if (!running) {
+            return false;
+        }
+        EventLoop eventLoop = eventLoops[Math.abs(nextEventLoop.getAndIncrement() % eventLoops.length)];
+        eventLoop.execute(() -> pipe.register(eventLoop.selector, eventLoop.thread));
+        return true;
+    }
+
+    ByteBuffer acquireBuffer() {
+        ByteBuffer buffer = bufferPool.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    void releaseBuffer(ByteBuffer buffer) {
+        //Cast so that builds with newer JDKs don't link to ByteBuffer.clear() which doesn't exist in Java 8
+        ((Buffer) buffer).clear();
+        //If the pool is full the buffer is left to the garbage collector
+        bufferPool.offer(buffer);
+    }
+
+
+    private class EventLoop implements Runnable {
+
+        private final Selector selector;
+        private final Thread thread;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        EventLoop(Selector selector, String name) {
+            this.selector = selector;
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select();
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                    while (iterator.hasNext()) {
+                        SelectionKey key = iterator.next();
+                        iterator.remove();
+                        if (key.isValid()) {
+                            ((NioSocketPipe) key.attachment()).handle(key);
+                        }
+                    }
+                } catch (IOException e) {
+                    logger.error(e.getMessage(), e);
+                } catch (RuntimeException e) {
+                    logger.error("Unexpected error in event loop " + thread.getName(), e);
+                }
+            }
+            //Register pipes added while shutting down so that they're closed as well
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+            for (SelectionKey key : selector.keys()) {
+                ((NioSocketPipe) key.attachment()).close();
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                logger.error(e.getMessage(), e);
+            }
+        }
+    }
+
+}
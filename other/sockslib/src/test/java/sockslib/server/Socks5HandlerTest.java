@@ -0,0 +1,140 @@
+/*
+ * Copyright 2015-2025 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package sockslib.server;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import sockslib.server.io.SelectorRelay;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class Socks5HandlerTest {
+
+    private SelectorRelay relay;
+    private ThreadPoolExecutor executor;
+    private SocksProxyServer server;
+    private ServerSocket echoServer;
+    private Thread echoThread;
+    private int proxyPort;
+
+    @Before
+    public void setUp() throws Exception {
+        echoServer = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        echoThread = new Thread(() -> {
+            try (Socket socket = echoServer.accept()) {
+                InputStream inputStream = socket.getInputStream();
+                OutputStream outputStream = socket.getOutputStream();
+                int read;
+                while ((read = inputStream.read()) != -1) {
+                    outputStream.write(read);
+                }
+            } catch (IOException ignored) {
+            }
+        });
+        echoThread.setDaemon(true);
+        echoThread.start();
+
+        try (ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            proxyPort = serverSocket.getLocalPort();
+        }
+        relay = new SelectorRelay(1, 1024);
+        executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(2);
+        server = SocksServerBuilder.newSocks5ServerBuilder()
+                .setBindAddr(InetAddress.getLoopbackAddress())
+                .setBindPort(proxyPort)
+                .setSelectorRelay(relay)
+                .setExecutorService(executor)
+                .setDaemon(true)
+                .build();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+        relay.shutdown();
+        executor.shutdownNow();
+        echoServer.close();
+    }
+
+    @Test(timeout = 20000)
+    public void shouldReturnFromHandlerWhenRelayOwnsTheSession() throws Exception {
+        CountDownLatch sessionClosed = new CountDownLatch(1);
+        server.getSessionManager().onSessionClose("test", session -> sessionClosed.countDown());
+
+        Socket client = new Socket(new Proxy(Proxy.Type.SOCKS, new InetSocketAddress(InetAddress.getLoopbackAddress(), proxyPort)));
+        client.setSoTimeout(5000);
+        client.connect(echoServer.getLocalSocketAddress());
+        assertEquals("first", echo(client, "first"));
+
+        //The handler's thread is free again while the session is still relayed
+        long deadline = System.currentTimeMillis() + 5000;
+        while (executor.getActiveCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, executor.getActiveCount());
+        assertEquals(1, sessionClosed.getCount());
+        assertEquals("second", echo(client, "second"));
+
+        client.close();
+        assertTrue(sessionClosed.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 20000)
+    public void shouldStopServerThreadWithoutErrorOnShutdown() throws Exception {
+        Thread serverThread = ((BasicSocksProxyServer) server).getServerThread();
+        AtomicReference<Throwable> uncaught = new AtomicReference<>();
+        serverThread.setUncaughtExceptionHandler((thread, throwable) -> uncaught.set(throwable));
+
+        //The channel backed server socket throws an exception without message when it's closed
+        server.shutdown();
+        serverThread.join(5000);
+        assertFalse(serverThread.isAlive());
+        assertNull(uncaught.get());
+    }
+
+    private static String echo(Socket socket, String message) throws IOException {
+        socket.getOutputStream().write(message.getBytes());
+        byte[] bytes = new byte[message.length()];
+        int read = 0;
+        while (read < bytes.length) {
+            int count = socket.getInputStream().read(bytes, read, bytes.length - read);
+            if (count == -1) {
+                break;
+            }
+            read += count;
+        }
+        return new String(bytes, 0, read);
+    }
+
+}
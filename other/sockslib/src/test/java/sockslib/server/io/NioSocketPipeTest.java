@@ -0,0 +1,279 @@
+/*
+ * Copyright 2015-2025 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package sockslib.server.io;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NioSocketPipeTest {
+
+    private static final int TIMEOUT_MILLIS = 5000;
+
+    private SelectorRelay relay;
+    private ServerSocketChannel clientSideServer;
+    private ServerSocket remoteServer;
+    private final List<Socket> sockets = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        //Small buffers so that transfers need many reads and writes
+        relay = new SelectorRelay(1, 1024);
+        clientSideServer = ServerSocketChannel.open();
+        clientSideServer.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        remoteServer = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        relay.shutdown();
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        clientSideServer.close();
+        remoteServer.close();
+    }
+
+    @Test(timeout = 20000)
+    public void shouldTransferDataInBothDirections() throws Exception {
+        Connection connection = connect();
+
+        connection.client.getOutputStream().write("request".getBytes());
+        assertArrayEquals("request".getBytes(), readFully(connection.remote.getInputStream(), 7));
+        connection.remote.getOutputStream().write("response".getBytes());
+        assertArrayEquals("response".getBytes(), readFully(connection.client.getInputStream(), 8));
+        assertTrue(connection.pipe.isRunning());
+    }
+
+    @Test(timeout = 20000)
+    public void shouldTransferAllDataWhenDestinationIsSlow() throws Exception {
+        Connection connection = connect();
+        byte[] content = new byte[4 * 1024 * 1024];
+        new Random(1).nextBytes(content);
+
+        //Much more than fits into the sockets' buffers so that the pipe's writes are only partial
+        Thread writer = new Thread(() -> {
+            try {
+                OutputStream outputStream = connection.client.getOutputStream();
+                for (int i = 0; i < content.length; i += 64 * 1024) {
+                    outputStream.write(content, i, Math.min(64 * 1024, content.length - i));
+                }
+                connection.client.shutdownOutput();
+            } catch (IOException ignored) {
+            }
+        });
+        writer.start();
+        Thread.sleep(500);
+
+        byte[] received = readUntilEnd(connection.remote.getInputStream());
+        writer.join();
+        assertEquals(content.length, received.length);
+        assertArrayEquals(content, received);
+    }
+
+    @Test(timeout = 20000)
+    public void shouldPassHalfCloseOnAndKeepOtherDirectionOpen() throws Exception {
+        Connection connection = connect();
+        CountDownLatch closed = new CountDownLatch(1);
+        connection.pipe.setCloseCallback(closed::countDown);
+
+        connection.client.getOutputStream().write("request".getBytes());
+        connection.client.shutdownOutput();
+        assertArrayEquals("request".getBytes(), readUntilEnd(connection.remote.getInputStream()));
+
+        connection.remote.getOutputStream().write("response".getBytes());
+        assertArrayEquals("response".getBytes(), readFully(connection.client.getInputStream(), 8));
+        assertTrue(connection.pipe.isRunning());
+        assertEquals(1, closed.getCount());
+
+        connection.remote.shutdownOutput();
+        assertEquals(-1, connection.client.getInputStream().read());
+        assertTrue(closed.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertFalse(connection.pipe.isRunning());
+    }
+
+    @Test(timeout = 20000)
+    public void shouldCloseBothSidesWhenOneSideIsReset() throws Exception {
+        Connection connection = connect();
+        CountDownLatch closed = new CountDownLatch(1);
+        AtomicInteger errors = new AtomicInteger();
+        connection.pipe.addPipeListener(new PipeListenerAdapter() {
+            @Override
+            public void onError(Pipe pipe, Exception exception) {
+                errors.incrementAndGet();
+            }
+        });
+        connection.pipe.setCloseCallback(closed::countDown);
+
+        connection.remote.setSoLinger(true, 0);
+        connection.remote.close();
+
+        assertTrue(closed.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertFalse(connection.pipe.isRunning());
+        assertEquals(-1, connection.client.getInputStream().read());
+        assertEquals(1, errors.get());
+    }
+
+    @Test(timeout = 20000)
+    public void shouldCallCloseCallbackOnceAndImmediatelyIfAlreadyClosed() throws Exception {
+        Connection connection = connect();
+        AtomicInteger calls = new AtomicInteger();
+        connection.pipe.setCloseCallback(calls::incrementAndGet);
+
+        connection.pipe.close();
+        connection.pipe.close();
+        assertEquals(1, calls.get());
+
+        AtomicInteger lateCalls = new AtomicInteger();
+        connection.pipe.setCloseCallback(lateCalls::incrementAndGet);
+        assertEquals(1, lateCalls.get());
+    }
+
+    @Test(timeout = 20000)
+    public void shouldRelayManyPipesOnOneEventLoop() throws Exception {
+        List<Connection> connections = new ArrayList<>();
+        //Each pipe is registered while the event loop is blocked in select
+        for (int i = 0; i < 20; i++) {
+            connections.add(connect());
+        }
+        for (int i = 0; i < connections.size(); i++) {
+            byte[] request = ("request" + i).getBytes();
+            connections.get(i).client.getOutputStream().write(request);
+            assertArrayEquals(request, readFully(connections.get(i).remote.getInputStream(), request.length));
+        }
+        for (Connection connection : connections) {
+            assertTrue(connection.pipe.isRunning());
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void shouldClosePipesWhenRelayIsShutDown() throws Exception {
+        Connection connection = connect();
+        CountDownLatch closed = new CountDownLatch(1);
+        connection.pipe.setCloseCallback(closed::countDown);
+
+        relay.shutdown();
+
+        assertTrue(closed.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals(-1, connection.client.getInputStream().read());
+        assertEquals(-1, connection.remote.getInputStream().read());
+
+        NioSocketPipe notStarted = createPipe();
+        assertFalse(notStarted.start());
+    }
+
+    /**
+     * Creates a pipe between a server side client socket and a connection to the remote server
+     * and returns it with the other ends of both connections.
+     */
+    private Connection connect() throws IOException {
+        Connection connection = new Connection();
+        connection.client = register(new Socket(InetAddress.getLoopbackAddress(), clientSideServer.socket().getLocalPort()));
+        Socket clientSide = register(clientSideServer.accept().socket());
+        Socket remoteSide = register(SocketChannel.open(remoteServer.getLocalSocketAddress()).socket());
+        connection.remote = register(remoteServer.accept());
+        connection.pipe = new NioSocketPipe(clientSide, remoteSide, relay);
+        connection.pipe.setName("test");
+        assertTrue(connection.pipe.start());
+        return connection;
+    }
+
+    private NioSocketPipe createPipe() throws IOException {
+        register(new Socket(InetAddress.getLoopbackAddress(), clientSideServer.socket().getLocalPort()));
+        Socket clientSide = register(clientSideServer.accept().socket());
+        Socket remoteSide = register(SocketChannel.open(remoteServer.getLocalSocketAddress()).socket());
+        register(remoteServer.accept());
+        return new NioSocketPipe(clientSide, remoteSide, relay);
+    }
+
+    private Socket register(Socket socket) throws IOException {
+        if (socket.getChannel() == null) {
+            socket.setSoTimeout(TIMEOUT_MILLIS);
+        }
+        sockets.add(socket);
+        return socket;
+    }
+
+    private static byte[] readFully(InputStream inputStream, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int count = inputStream.read(bytes, read, length - read);
+            if (count == -1) {
+                return Arrays.copyOf(bytes, read);
+            }
+            read += count;
+        }
+        return bytes;
+    }
+
+    private static byte[] readUntilEnd(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, count);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static class Connection {
+        private Socket client;
+        private Socket remote;
+        private NioSocketPipe pipe;
+    }
+
+    private static class PipeListenerAdapter implements PipeListener {
+        @Override
+        public void onStart(Pipe pipe) {
+        }
+
+        @Override
+        public void onStop(Pipe pipe) {
+        }
+
+        @Override
+        public void onTransfer(Pipe pipe, byte[] buffer, int bufferLength) {
+        }
+
+        @Override
+        public void onError(Pipe pipe, Exception exception) {
+        }
+    }
+
+}